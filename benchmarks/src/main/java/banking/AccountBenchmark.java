@@ -0,0 +1,84 @@
+package banking;
+
+import java.util.concurrent.TimeUnit;
+// Importing TimeUnit to report the average time per operation in nanoseconds.
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+// Importing the JMH annotations that describe the benchmark, its state and its parameters.
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccountBenchmark {
+    // Defining the single-account benchmarks: every thread hammers the same account,
+    // so the thread count passed with -t is the contention level.
+    // Run with "-prof gc" to see the allocation rate of each call next to its speed.
+
+    @Param({"LOCKED", "ATOMIC"})
+    public String accountType;
+    // Declaring which account implementation to measure: the lock-based BankAccount or the CAS-based AtomicBankAccount.
+
+    @Param({"true", "false"})
+    public boolean fair;
+    // Declaring whether the BankAccount locks are fair; the atomic account ignores this.
+
+    @Param({"OFF"})
+    public String logLevel;
+    // Declaring the event log level, so the cost of DEBUG logging can be measured with -p logLevel=DEBUG.
+
+    private BankAccount account;
+    // Declaring the shared account every benchmark thread works on.
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Method to build the shared account once per parameter combination.
+
+        EventLog.setLevel(LogLevel.valueOf(logLevel));
+        // Setting the event log level before any operation is measured.
+
+        if ("ATOMIC".equals(accountType)) {
+            // Checking if the lock-free account was requested.
+
+            account = new AtomicBankAccount(1, 1_000_000_000.0);
+            // Creating a lock-free account with a balance large enough that withdrawals keep succeeding.
+        } else {
+            account = new BankAccount(1, 1_000_000_000.0, fair);
+            // Creating a lock-based account with the requested lock fairness.
+        }
+    }
+
+    @Benchmark
+    public void deposit() {
+        // Method to measure a single deposit.
+
+        account.deposit(1.0);
+    }
+
+    @Benchmark
+    public boolean withdraw() {
+        // Method to measure a single withdrawal; the result is returned so JMH keeps the call.
+
+        return account.withdraw(1.0);
+    }
+
+    @Benchmark
+    public double getBalance() {
+        // Method to measure a single balance read; the result is returned so JMH keeps the call.
+
+        return account.getBalance();
+    }
+}
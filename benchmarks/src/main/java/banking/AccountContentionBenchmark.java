@@ -0,0 +1,60 @@
+package banking;
+
+import java.io.PrintStream;
+// Importing the PrintStream class to hold the real console while the accounts are measured.
+
+public class AccountContentionBenchmark {
+    // Defining a benchmark that compares lock-based and lock-free accounts on one hot account.
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+    // Thread counts to measure, from uncontended up to heavy contention.
+
+    public static void main(String[] args) throws InterruptedException {
+        // Main method to run the contention benchmark.
+
+        long durationMillis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        // Reading the measurement time per data point from the command line, defaulting to one second.
+
+        System.out.println("Hot-account contention: deposit $1.00 / withdraw $1.00, ops/sec");
+        // Printing the benchmark description.
+
+        System.out.printf("%8s %18s %18s %8s%n", "threads", "BankAccount", "AtomicBankAccount", "speedup");
+        // Printing the table header.
+
+        for (int threads : THREAD_COUNTS) {
+            // Measuring each thread count in turn.
+
+            double locked = run(new BankAccount(1, 1_000_000.0), threads, durationMillis);
+            // Measuring the current lock-based account.
+
+            double lockFree = run(new AtomicBankAccount(1, 1_000_000.0), threads, durationMillis);
+            // Measuring the lock-free account.
+
+            System.out.printf("%8d %18.0f %18.0f %7.1fx%n", threads, locked, lockFree, lockFree / locked);
+            // Printing the throughput of both accounts and their ratio.
+        }
+    }
+
+    private static double run(BankAccount account, int threads, long durationMillis) throws InterruptedException {
+        // Method to hammer one account from several threads and return operations per second.
+
+        PrintStream console = BenchmarkSupport.silenceStdout();
+        // Discarding whatever the EventLog's consumer prints at the configured level, so only locking is measured.
+
+        try {
+            return BenchmarkSupport.measureThroughput(threads, durationMillis, () -> {
+                // Each operation is a deposit followed by a withdrawal of the same amount.
+
+                account.deposit(1.00);
+                // Depositing one dollar.
+
+                account.withdraw(1.00);
+                // Withdrawing one dollar, which always succeeds because of the large starting balance.
+            }) * 2;
+            // Counting the deposit and the withdrawal as two operations.
+        } finally {
+            BenchmarkSupport.restoreStdout(console);
+            // Restoring the console for the results.
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package banking;
+
+import java.lang.management.BufferPoolMXBean;
+// Importing the BufferPoolMXBean interface to read how much direct memory is allocated.
+
+import java.lang.management.GarbageCollectorMXBean;
+// Importing the GarbageCollectorMXBean interface to read collection counts and times.
+
+import java.lang.management.ManagementFactory;
+// Importing the ManagementFactory class to reach the memory and GC beans.
+
+import java.util.ArrayList;
+// Importing the ArrayList class to build the account list for the heap store.
+
+import java.util.List;
+// Importing the List interface for the heap store's accounts.
+
+import java.util.SplittableRandom;
+// Importing the SplittableRandom class to pick the accounts of the check transfers.
+
+public class AccountStoreFootprintBenchmark {
+    // Defining a report of bytes per account and garbage-collection cost for a TransactionSystem on a
+    // HeapAccountStore, one BankAccount per account, versus one on an OffHeapAccountStore. Both systems run
+    // the same transfers before they are measured, and must still hold the money they started with. The
+    // off-heap store needs about 27 bytes of direct memory per account at 50M accounts, so they need
+    // -XX:MaxDirectMemorySize of at least 1400m when the heap is smaller than that.
+
+    private static final int CHECK_TRANSFERS = 1_000_000;
+    // Number of transfers each system runs before it is measured.
+
+    private static volatile Object sink;
+    // Field that keeps the churn allocations from being optimized away.
+
+    public static void main(String[] args) {
+        // Main method to run the footprint report.
+
+        int heapAccounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        // Reading the number of accounts for the heap store, defaulting to 1M.
+
+        int offHeapAccounts = args.length > 1 ? Integer.parseInt(args[1]) : 50_000_000;
+        // Reading the number of accounts for the off-heap store, defaulting to 50M.
+
+        long churnBytes = args.length > 2 ? Long.parseLong(args[2]) : 4L << 30;
+        // Reading how much short-lived garbage to allocate while each store is live, defaulting to 4 GB.
+
+        System.out.printf("%-22s %12s %14s %14s %10s %12s %12s%n", "store", "accounts", "heap MB",
+                "off-heap MB", "bytes/acct", "young GC ms", "full GC ms");
+        // Printing the table header.
+
+        long baseHeap = usedHeap();
+        // Measuring the heap in use before any store exists.
+
+        long baseDirect = usedDirect();
+        // Measuring the direct memory in use before any store exists.
+
+        List<BankAccount> accountList = new ArrayList<>(heapAccounts);
+        // Creating the accounts for the heap store.
+
+        for (int id = 1; id <= heapAccounts; id++) {
+            accountList.add(new BankAccount(id, 1000.0));
+        }
+
+        TransactionSystem system = new TransactionSystem(accountList);
+        // Building a system on the heap store.
+
+        accountList = null;
+        // Dropping the list so only the store keeps the accounts alive.
+
+        check(system, heapAccounts);
+        // Running the check transfers.
+
+        report("HeapAccountStore", heapAccounts, baseHeap, baseDirect, churnBytes);
+        // Measuring the heap store.
+
+        if (system.getAccount(heapAccounts) == null) {
+            // Keeping the system reachable until after the measurement.
+
+            throw new IllegalStateException("Heap store lost accounts");
+        }
+
+        system = null;
+        // Releasing the heap store.
+
+        baseHeap = usedHeap();
+        // Re-measuring the heap once the heap store is gone.
+
+        OffHeapAccountStore store = new OffHeapAccountStore(offHeapAccounts);
+        // Allocating the off-heap store.
+
+        for (int id = 1; id <= offHeapAccounts; id++) {
+            // Opening every account.
+
+            store.open(id, 100_000);
+        }
+
+        system = new TransactionSystem(store);
+        // Building a system on the off-heap store.
+
+        check(system, offHeapAccounts);
+        // Running the same check transfers.
+
+        report("OffHeapAccountStore", offHeapAccounts, baseHeap, baseDirect, churnBytes);
+        // Measuring the off-heap store.
+
+        if (system.getAccount(offHeapAccounts) == null) {
+            // Keeping the system reachable until after the measurement.
+
+            throw new IllegalStateException("Off-heap store lost accounts");
+        }
+    }
+
+    private static void check(TransactionSystem system, int accounts) {
+        // Method to run transfers between random accounts and check no money was created or lost.
+
+        long before = system.getTotalBalanceCents();
+        // The money held before the transfers.
+
+        SplittableRandom random = new SplittableRandom(42);
+        // Picking the same accounts for both systems.
+
+        for (int i = 0; i < CHECK_TRANSFERS; i++) {
+            system.transferCents(1 + random.nextInt(accounts), 1 + random.nextInt(accounts), 1 + random.nextInt(10_000), 0);
+        }
+
+        if (system.getTotalBalanceCents() != before) {
+            throw new IllegalStateException("Transfers changed the total from " + before + " to "
+                    + system.getTotalBalanceCents());
+        }
+    }
+
+    private static void report(String name, int accounts, long baseHeap, long baseDirect, long churnBytes) {
+        // Method to print the footprint of the live store and the GC time spent while it is live.
+
+        long heap = usedHeap() - baseHeap;
+        // The heap retained by the store.
+
+        long direct = usedDirect() - baseDirect;
+        // The direct memory retained by the store.
+
+        long youngBefore = gcMillis();
+        // Collector time before the churn.
+
+        for (long allocated = 0; allocated < churnBytes; allocated += 1024) {
+            // Allocating short-lived garbage so young collections run with the store live.
+
+            sink = new byte[1024];
+        }
+
+        long young = gcMillis() - youngBefore;
+        // Time spent in collections during the churn.
+
+        long fullStart = System.nanoTime();
+        // Recording the start of an explicit full collection.
+
+        System.gc();
+        // Running a full collection, which has to trace everything the store keeps on the heap.
+
+        long full = (System.nanoTime() - fullStart) / 1_000_000;
+        // Measuring the full collection.
+
+        System.out.printf("%-22s %12d %14.1f %14.1f %10.1f %12d %12d%n", name, accounts, heap / 1048576.0,
+                direct / 1048576.0, (heap + direct) / (double) accounts, young, full);
+        // Printing the results.
+    }
+
+    private static long usedHeap() {
+        // Method to return the heap in use after a full collection.
+
+        System.gc();
+        // Collecting garbage so only live objects are counted.
+
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long usedDirect() {
+        // Method to return the direct buffer memory in use.
+
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            // Looking for the pool of direct buffers.
+
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+
+        return 0;
+    }
+
+    private static long gcMillis() {
+        // Method to return the total collection time reported by every collector.
+
+        long total = 0;
+
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            // Adding each collector's accumulated time.
+
+            total += Math.max(0, collector.getCollectionTime());
+        }
+
+        return total;
+    }
+}
@@ -0,0 +1,171 @@
+package banking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+// Importing the collections, the random source and the futures used by the demonstration.
+
+public class BankingServiceDemo {
+    // Defining a demonstration that BankingService holds 100k transfers in flight at once with bounded memory.
+    // It locks every account, so each admitted transfer has to wait, submits 100k transfers plus some extra,
+    // and measures the heap with all of them outstanding. Then it releases the accounts and checks
+    // every transfer finished and no money was lost. A second phase holds one hot account past
+    // the request timeout, to show the bounded lock wait giving up.
+
+    public static void main(String[] args) throws Exception {
+        // Main method to run the demonstration.
+
+        int inFlight = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        // Reading how many transfers to hold in flight, defaulting to 100k.
+
+        int accountCount = 10_000;
+        // Number of accounts the transfers move money between.
+
+        EventLog.setLevel(LogLevel.OFF);
+        // Keeping logging out of the demonstration.
+
+        List<BankAccount> accounts = new ArrayList<>(accountCount);
+        // Creating the account list.
+
+        for (int id = 0; id < accountCount; id++) {
+            // Creating each account with $1000.00.
+
+            accounts.add(new BankAccount(id, 1000.0));
+        }
+
+        TransactionSystem system = new TransactionSystem(accounts);
+        // Creating the transaction system.
+
+        long initialCents = system.getTotalBalanceCents();
+        // Recording the money before any transfer.
+
+        BankingService service = new BankingService(system, inFlight, 60, TimeUnit.SECONDS, 64);
+        // Creating the service with room for exactly the transfers to hold, a 60 second timeout
+        // and, on JDKs without virtual threads, 64 platform threads.
+
+        System.out.println("Requests run on " + (service.usesVirtualThreads() ? "virtual threads"
+                : "64 platform threads (virtual threads need JDK 21 or later)"));
+        // Printing which executor the service chose.
+
+        long heapBefore = usedHeap();
+        // Measuring the heap before any request.
+
+        for (BankAccount account : accounts) {
+            // Locking every account so no admitted transfer can finish yet.
+
+            account.lock();
+        }
+
+        Random random = new Random(7);
+        // Using a fixed seed for the transfer endpoints.
+
+        List<CompletableFuture<TransferResult>> results = new ArrayList<>(inFlight);
+        // Keeping every admitted transfer's future.
+
+        int rejected = 0;
+        // Counting transfers refused at the cap.
+
+        for (int i = 0; i < inFlight + 1_000; i++) {
+            // Submitting 1000 more transfers than the cap allows.
+
+            int from = random.nextInt(accountCount);
+            int to = (from + 1 + random.nextInt(accountCount - 1)) % accountCount;
+            // Choosing two distinct accounts.
+
+            CompletableFuture<TransferResult> result = service.transfer(from, to, 1.0);
+            // Submitting a one dollar transfer.
+
+            if (result.isDone() && result.join() == TransferResult.REJECTED) {
+                // Checking if admission control refused it.
+
+                rejected++;
+            } else {
+                results.add(result);
+            }
+        }
+
+        long heapInFlight = usedHeap();
+        // Measuring the heap with every admitted transfer outstanding.
+
+        System.out.println("In flight: " + service.getInFlight() + ", rejected at the cap: " + rejected);
+        System.out.printf("Heap for the in-flight transfers: %.1f MB (%d bytes each)%n",
+                (heapInFlight - heapBefore) / 1e6, (heapInFlight - heapBefore) / Math.max(1, service.getInFlight()));
+        // Printing the admission results and the memory they cost.
+
+        long start = System.nanoTime();
+        // Starting the timer for the release.
+
+        for (BankAccount account : accounts) {
+            // Releasing every account so the transfers can run.
+
+            account.unlock();
+        }
+
+        int completed = 0;
+        // Counting transfers that went through.
+
+        for (CompletableFuture<TransferResult> result : results) {
+            // Waiting for each admitted transfer.
+
+            if (result.join() == TransferResult.COMPLETED) {
+                completed++;
+            }
+        }
+
+        System.out.printf("Completed %d of %d admitted transfers in %.2f s%n", completed, results.size(),
+                (System.nanoTime() - start) / 1e9);
+        // Printing how many finished and how long the release took.
+
+        System.out.println("Money " + (system.getTotalBalanceCents() == initialCents ? "conserved" : "NOT conserved"));
+        // Checking no money was created or lost.
+
+        service.close();
+        // Stopping the first service.
+
+        BankingService strict = new BankingService(system, 1_000, 100, TimeUnit.MILLISECONDS, 64);
+        // Creating a service with a 100 ms timeout.
+
+        BankAccount hot = system.getAccount(0);
+        // Choosing the account to hold.
+
+        hot.lock();
+        // Holding the hot account past the timeout.
+
+        List<CompletableFuture<TransferResult>> hotResults = new ArrayList<>();
+        // Collecting the transfers out of the hot account.
+
+        for (int i = 0; i < 100; i++) {
+            // Submitting transfers that all need the held account.
+
+            hotResults.add(strict.transfer(0, 1 + i, 1.0));
+        }
+
+        for (CompletableFuture<TransferResult> result : hotResults) {
+            // Waiting for each; none can wait longer than the timeout.
+
+            result.join();
+        }
+
+        hot.unlock();
+        // Releasing the hot account.
+
+        System.out.println("Transfers out of a held account that timed out after 100 ms: "
+                + strict.getTimedOutCount() + " of " + hotResults.size());
+        // Printing the timeouts.
+
+        strict.close();
+        // Stopping the second service.
+    }
+
+    private static long usedHeap() {
+        // Method to return the heap in use after a garbage collection.
+
+        System.gc();
+        // Asking for a collection so only live objects are counted.
+
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,42 @@
+package banking;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+// Importing the JMH runner API and the GC profiler.
+
+public class BenchmarkRunner {
+    // Defining a driver that runs every benchmark at several thread counts with the GC profiler attached,
+    // so one command gives the contention curve together with the allocation rate of each hot path.
+    // Usage: java -cp benchmarks/target/benchmarks.jar banking.BenchmarkRunner [threadCounts] [include regex]
+    // for example "1,2,4,8" "TransferBenchmark".
+
+    public static void main(String[] args) throws RunnerException {
+        // Main method to run the sweep.
+
+        String threadCounts = args.length > 0 ? args[0] : "1,2,4,8";
+        // Reading the comma-separated thread counts to sweep.
+
+        String include = args.length > 1 ? args[1] : "banking\\..*Benchmark";
+        // Reading which benchmarks to run; the default runs all of them.
+
+        for (String count : threadCounts.split(",")) {
+            // Looping over every thread count.
+
+            int threads = Integer.parseInt(count.trim());
+            // Parsing the thread count.
+
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .build();
+            // Building the run options for this thread count, with allocation and GC counters.
+
+            new Runner(options).run();
+            // Running the benchmarks; JMH prints the results table at the end of each run.
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package banking;
+
+import java.io.OutputStream;
+// Importing the OutputStream class to build a stream that discards everything written to it.
+
+import java.io.PrintStream;
+// Importing the PrintStream class to swap System.out while a benchmark is running.
+
+import java.util.concurrent.CountDownLatch;
+// Importing the CountDownLatch class to start all benchmark threads at the same moment.
+
+import java.util.concurrent.atomic.LongAdder;
+// Importing the LongAdder class to sum operation counts from many threads cheaply.
+
+public class BenchmarkSupport {
+    // Defining a utility class shared by the benchmark drivers.
+
+    private static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+        // Creating a PrintStream whose output goes nowhere.
+
+        @Override
+        public void write(int b) {
+            // Ignoring every single byte written.
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            // Ignoring every block of bytes written.
+        }
+    });
+
+    // Silence console output while measuring
+    public static PrintStream silenceStdout() {
+        // Method to replace System.out with a discarding stream and return the original one.
+
+        PrintStream original = System.out;
+        // Remembering the real console stream so it can be restored afterwards.
+
+        System.setOut(DISCARD);
+        // Sending all println calls made by the code under test to the discarding stream.
+
+        return original;
+        // Returning the real console stream to the caller.
+    }
+
+    // Restore console output after measuring
+    public static void restoreStdout(PrintStream original) {
+        // Method to put the real console stream back in place.
+
+        System.setOut(original);
+        // Restoring System.out so results can be printed.
+    }
+
+    // Run an operation on several threads for a fixed time
+    public static double measureThroughput(int threads, long durationMillis, Runnable operation)
+            throws InterruptedException {
+        // Method to run the operation in a loop on the given number of threads and return operations per second.
+
+        LongAdder operations = new LongAdder();
+        // Counting completed operations across all threads.
+
+        CountDownLatch start = new CountDownLatch(1);
+        // Latch that releases all threads together so they contend from the first operation.
+
+        long[] deadline = new long[1];
+        // Holding the shared end time, written once before the start latch is released.
+
+        Thread[] workers = new Thread[threads];
+        // Array holding the benchmark threads.
+
+        for (int i = 0; i < threads; i++) {
+            // Creating one worker per requested thread.
+
+            workers[i] = new Thread(() -> {
+                // Each worker loops on the operation until the deadline passes.
+
+                try {
+                    start.await();
+                    // Waiting for the start signal.
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    // Re-interrupt the current thread.
+
+                    return;
+                    // Leaving the worker if it was interrupted before starting.
+                }
+
+                long count = 0;
+                // Counting operations locally to avoid touching the shared counter on every call.
+
+                long end = deadline[0];
+                // Reading the deadline once.
+
+                while (true) {
+                    // Running batches of operations until time is up.
+
+                    for (int j = 0; j < 256; j++) {
+                        // Running a small batch between clock reads to keep timing overhead low.
+
+                        operation.run();
+                        // Performing one operation.
+                    }
+
+                    count += 256;
+                    // Adding the batch to the local count.
+
+                    if (System.nanoTime() >= end) {
+                        // Stopping once the deadline has passed.
+
+                        break;
+                    }
+                }
+
+                operations.add(count);
+                // Publishing the local count.
+            }, "Bench-" + i);
+            // Naming the worker thread.
+
+            workers[i].start();
+            // Starting the worker; it blocks on the latch until all are ready.
+        }
+
+        long begin = System.nanoTime();
+        // Recording the start time.
+
+        deadline[0] = begin + durationMillis * 1_000_000L;
+        // Setting the deadline before the latch release makes it visible to the workers.
+
+        start.countDown();
+        // Releasing all workers together.
+
+        for (Thread worker : workers) {
+            // Waiting for every worker to finish.
+
+            worker.join();
+        }
+
+        long elapsed = System.nanoTime() - begin;
+        // Measuring the actual elapsed time, including the last partial batch.
+
+        return operations.sum() * 1_000_000_000.0 / elapsed;
+        // Returning the throughput in operations per second.
+    }
+}
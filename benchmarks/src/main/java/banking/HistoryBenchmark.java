@@ -0,0 +1,258 @@
+package banking;
+
+import java.util.ArrayList;
+// Importing the ArrayList class to build the account list.
+
+import java.util.Arrays;
+// Importing the Arrays class to sort the timings.
+
+import java.util.List;
+// Importing the List interface for the accounts.
+
+import java.util.Random;
+// Importing the Random class to generate the synthetic history.
+
+import java.util.concurrent.ThreadLocalRandom;
+// Importing the ThreadLocalRandom class so each thread picks its transfers without sharing a Random.
+
+import java.util.concurrent.TimeUnit;
+// Importing the TimeUnit class for the time spans of the queries.
+
+import java.util.function.Supplier;
+// Importing the Supplier interface for the timed queries.
+
+public class HistoryBenchmark {
+    // Defining a benchmark of AccountHistory:
+    //   queries   - one account is loaded with a year of history, a million entries by default, and each
+    //               statement query is timed and checked against a scan of a plain copy of the entries,
+    //               which is also timed as the cost of answering without the index;
+    //   transfers - transfer throughput with history off and on, after which every account's history must
+    //               add up to exactly how much its balance changed.
+    // Usage: HistoryBenchmark [entries] [durationMillis] [threads,threads,...]
+
+    private static final int ACCOUNTS = 10_000;
+    // Number of accounts in the transfer runs.
+
+    private static final long YEAR_MILLIS = TimeUnit.DAYS.toMillis(365);
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    // The span of the synthetic history, and of a day.
+
+    private static final int WARMUP = 1_000;
+    // Number of times each query runs before it is timed, so the compiled code is measured.
+
+    private static final int REPEATS = 50;
+    // Number of times each query is timed; the median is printed.
+
+    public static void main(String[] args) throws InterruptedException {
+        // Main method to time the queries, then the transfers.
+
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        // Reading the number of entries of the loaded account.
+
+        long durationMillis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+        // Reading the measurement time per data point, defaulting to two seconds.
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        // Counting the cores, for the default thread counts.
+
+        String threadList = args.length > 2 ? args[2] : 1 + "," + 4 * cores;
+        // Reading the thread counts, defaulting to one thread and four per core.
+
+        EventLog.setLevel(LogLevel.OFF);
+        // Keeping logging out of the measurement.
+
+        measureQueries(entries);
+        // Timing every query on the loaded account.
+
+        run(false, 1, durationMillis / 2);
+        run(true, 1, durationMillis / 2);
+        // Warming up both modes so the first data point is not measuring the compiler.
+
+        System.out.println(ACCOUNTS + " accounts, " + cores + " cores, transfers/sec");
+        System.out.printf("%8s %14s %14s %8s%n", "threads", "no history", "history", "ratio");
+        // Printing the table header.
+
+        for (String count : threadList.split(",")) {
+            // Measuring each thread count.
+
+            int threads = Integer.parseInt(count.trim());
+            double off = run(false, threads, durationMillis);
+            double on = run(true, threads, durationMillis);
+
+            System.out.printf("%8d %14.0f %14.0f %7.2fx%n", threads, off, on, on / off);
+        }
+    }
+
+    private static void measureQueries(int entries) {
+        // Method to load one account's history, then time and check each kind of query.
+
+        AccountHistory history = new AccountHistory();
+        long[] times = new long[entries];
+        long[] amounts = new long[entries];
+        // Keeping a plain copy of the entries to check the answers against and to time a scan.
+
+        Random random = new Random(20);
+        // Using a fixed seed so runs are repeatable.
+
+        long start = System.currentTimeMillis() - YEAR_MILLIS;
+        // Spreading the entries over the past year.
+
+        for (int i = 0; i < entries; i++) {
+            times[i] = start + (long) i * YEAR_MILLIS / entries;
+            amounts[i] = random.nextBoolean() ? 1 + random.nextInt(100_000) : -1 - random.nextInt(100_000);
+            history.append(0, times[i], amounts[i], 1 + random.nextInt(ACCOUNTS));
+            // Adding an entry of up to $1,000.00 either way.
+        }
+
+        System.out.printf("Account with %d entries over a year: %.1f MB of history%n", entries,
+                history.getTableBytes() / 1e6);
+        // Reporting the memory, 32 bytes per entry.
+
+        long end = start + YEAR_MILLIS;
+        long weekAgo = end - TimeUnit.DAYS.toMillis(7);
+        long midYear = start + YEAR_MILLIS / 2;
+        // Choosing the query ranges.
+
+        System.out.printf("%-34s %8s %12s%n", "query", "entries", "median us");
+        // Printing the table header.
+
+        time("last 100 entries", () -> history.last(0, 100), times, amounts, times[Math.max(0, entries - 100)], end);
+        time("one day's entries", () -> history.between(0, midYear, midYear + DAY_MILLIS), times, amounts,
+                midYear, midYear + DAY_MILLIS);
+        time("last week's entries", () -> history.between(0, weekAgo, end), times, amounts, weekAgo, end);
+        time("totals of the whole year", () -> history.totals(0, start, end), times, amounts, start, end);
+
+        Statement[] days = history.dailyTotals(0, start, 366);
+        long dailyCredits = 0;
+
+        for (Statement day : days) {
+            dailyCredits += day.getCreditsCents();
+        }
+
+        if (dailyCredits != scan(times, amounts, Long.MIN_VALUE, Long.MAX_VALUE)[1]) {
+            // The days must add up to the whole history.
+
+            throw new IllegalStateException("Daily totals do not add up to the history's credits");
+        }
+
+        time("daily totals of the year", () -> history.dailyTotals(0, start, 366)[0], times, amounts,
+                days[0].getFromMillis(), days[0].getToMillis());
+
+        long started = System.nanoTime();
+
+        for (int i = 0; i < REPEATS; i++) {
+            scan(times, amounts, weekAgo, end);
+        }
+
+        System.out.printf("%-34s %8d %12.1f%n", "scan of every entry, for comparison", entries,
+                (System.nanoTime() - started) / 1e3 / REPEATS);
+        // Timing the scan a query would need without the index, even over plain arrays.
+    }
+
+    private static void time(String name, Supplier<Statement> query, long[] times, long[] amounts, long fromMillis,
+                             long toMillis) {
+        // Method to check a query's answer against a scan, then time it and print the median.
+
+        Statement statement = query.get();
+        long[] expected = scan(times, amounts, fromMillis, toMillis);
+
+        if (statement.getCount() != expected[0] || statement.getCreditsCents() != expected[1]
+                || statement.getDebitsCents() != expected[2]) {
+            // The totals must match the scan.
+
+            throw new IllegalStateException(name + ": " + statement + " but the scan found " + expected[0]
+                    + " entries, credits " + expected[1] + ", debits " + expected[2]);
+        }
+
+        for (int i = 0; i < WARMUP; i++) {
+            query.get();
+        }
+
+        long[] nanos = new long[REPEATS];
+
+        for (int i = 0; i < REPEATS; i++) {
+            long started = System.nanoTime();
+            query.get();
+            nanos[i] = System.nanoTime() - started;
+        }
+
+        Arrays.sort(nanos);
+        System.out.printf("%-34s %8d %12.1f%n", name, statement.size(), nanos[REPEATS / 2] / 1e3);
+    }
+
+    private static long[] scan(long[] times, long[] amounts, long fromMillis, long toMillis) {
+        // Method to count and total the entries in a time range by looking at every one of them.
+
+        long count = 0;
+        long credits = 0;
+        long debits = 0;
+
+        for (int i = 0; i < times.length; i++) {
+            if (times[i] >= fromMillis && times[i] < toMillis) {
+                count++;
+
+                if (amounts[i] > 0) {
+                    credits += amounts[i];
+                } else {
+                    debits -= amounts[i];
+                }
+            }
+        }
+
+        return new long[] {count, credits, debits};
+    }
+
+    private static double run(boolean withHistory, int threads, long durationMillis) throws InterruptedException {
+        // Method to measure transfers with fresh accounts and check each account's history against its balance.
+
+        TransactionSystem system = newSystem();
+        // Creating fresh accounts for the run.
+
+        long[] before = new long[ACCOUNTS];
+
+        for (int id = 0; id < ACCOUNTS; id++) {
+            before[id] = system.getAccount(id).peekBalanceCents();
+        }
+
+        if (withHistory) {
+            system.setHistory(new AccountHistory());
+        }
+
+        double throughput = BenchmarkSupport.measureThroughput(threads, durationMillis, () -> {
+            // Each operation is one transfer between two distinct random accounts.
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int from = random.nextInt(ACCOUNTS);
+            int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+            system.transferCents(from, to, 1 + random.nextInt(10_000), 0);
+        });
+
+        AccountHistory history = system.getHistory();
+
+        for (int id = 0; history != null && id < ACCOUNTS; id++) {
+            // Every account's history must add up to how much its balance changed.
+
+            long change = system.getAccount(id).peekBalanceCents() - before[id];
+            long net = history.totals(id, Long.MIN_VALUE, Long.MAX_VALUE).getNetCents();
+
+            if (net != change) {
+                throw new IllegalStateException("Account " + id + " changed by " + AccountUtils.formatCents(change)
+                        + " but its history adds up to " + AccountUtils.formatCents(net));
+            }
+        }
+
+        return throughput;
+    }
+
+    private static TransactionSystem newSystem() {
+        // Method to create the accounts, each holding $1,000,000.00.
+
+        List<BankAccount> accounts = new ArrayList<>(ACCOUNTS);
+
+        for (int id = 0; id < ACCOUNTS; id++) {
+            accounts.add(new BankAccount(id, 1_000_000.0));
+        }
+
+        return new TransactionSystem(accounts);
+    }
+}
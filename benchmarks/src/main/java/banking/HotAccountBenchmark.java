@@ -0,0 +1,165 @@
+package banking;
+
+import java.util.ArrayList;
+// Importing the ArrayList class to build the account list.
+
+import java.util.List;
+// Importing the List interface for the accounts.
+
+import java.util.concurrent.ThreadLocalRandom;
+// Importing the ThreadLocalRandom class so each thread picks its payers without sharing a Random.
+
+import java.util.concurrent.atomic.AtomicBoolean;
+// Importing the AtomicBoolean class to stop the auditor thread.
+
+public class HotAccountBenchmark {
+    // Defining a benchmark of a single hot account, such as a fee-collection or big merchant account:
+    // every transfer pays into account 0 from a random payer, and one in PAYOUT_EVERY pays out of it.
+    // It measures throughput as threads are added, once with auto-splitting off, so every transfer
+    // queues on account 0's lock, and once with it on, so account 0 splits itself into sub-balances
+    // after the first burst of contention and takes credits without its lock.
+    // While each run is measured an auditor thread keeps reading the total of every balance as one
+    // consistent view; the total must never differ from the money the run started with.
+    // Usage: HotAccountBenchmark [durationMillis] [threads,threads,...]
+
+    private static final int PAYERS = 1_000;
+    // Number of accounts paying into the hot account; their IDs start at 1.
+
+    private static final int PAYOUT_EVERY = 64;
+    // One transfer in this many pays out of the hot account instead of into it.
+
+    private static final long CREDIT_CENTS = 100;
+    private static final long PAYOUT_CENTS = 2_000;
+    // Each payment is $1.00 and each payout $20.00, so the hot account's balance grows.
+
+    public static void main(String[] args) throws InterruptedException {
+        // Main method to measure both modes at each thread count.
+
+        long durationMillis = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+        // Reading the measurement time per data point, defaulting to two seconds.
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        // Counting the cores.
+
+        StringBuilder defaultThreads = new StringBuilder("1");
+        // Defaulting to doubling thread counts up to four per core, and at least up to eight.
+
+        for (int threads = 2; threads <= Math.max(8, 4 * cores); threads *= 2) {
+            defaultThreads.append(',').append(threads);
+        }
+
+        String threadList = args.length > 1 ? args[1] : defaultThreads.toString();
+        // Reading the thread counts.
+
+        EventLog.setLevel(LogLevel.OFF);
+        // Keeping logging out of the measurement.
+
+        run(false, 1, durationMillis / 2);
+        run(true, 1, durationMillis / 2);
+        // Warming up both modes so the first data point is not measuring the compiler.
+
+        System.out.println("1 hot account, " + PAYERS + " payers, " + cores + " cores, transfers/sec");
+        // Printing the benchmark description.
+
+        System.out.printf("%8s %14s %14s %8s %10s%n", "threads", "locked", "split", "speedup", "audits");
+        // Printing the table header.
+
+        for (String count : threadList.split(",")) {
+            // Measuring each thread count.
+
+            int threads = Integer.parseInt(count.trim());
+
+            double[] locked = run(false, threads, durationMillis);
+            double[] split = run(true, threads, durationMillis);
+            // Measuring the plain account, then the self-splitting one.
+
+            System.out.printf("%8d %14.0f %14.0f %7.2fx %10.0f%n", threads, locked[0], split[0],
+                    split[0] / locked[0], locked[1] + split[1]);
+            // Printing both results and how many consistent totals were checked.
+        }
+    }
+
+    private static double[] run(boolean autoSplit, int threads, long durationMillis) throws InterruptedException {
+        // Method to measure one mode with fresh accounts, returning the throughput and the number of audits.
+
+        TransactionSystem system = newSystem();
+        // Creating fresh accounts for the run.
+
+        system.setAutoSplit(autoSplit);
+        // Letting the hot account split itself, or not.
+
+        long expected = system.getTotalBalanceCents();
+        // Recording the money before the run.
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        long[] audits = new long[1];
+        long[] mismatch = {Long.MIN_VALUE};
+        // Declaring the auditor's stop flag, its count and the first inconsistent total it saw.
+
+        Thread auditor = new Thread(() -> {
+            // Reading the consistent total over and over while the transfers run.
+
+            while (running.get()) {
+                long total = system.getTotalBalanceCents();
+                audits[0]++;
+
+                if (total != expected && mismatch[0] == Long.MIN_VALUE) {
+                    mismatch[0] = total;
+                }
+
+                Thread.yield();
+                // Leaving most of the machine to the transfer threads.
+            }
+        }, "Auditor");
+
+        auditor.start();
+        // Starting the auditor.
+
+        double throughput = BenchmarkSupport.measureThroughput(threads, durationMillis, () -> {
+            // Each operation is one payment into the hot account, or now and then one payout from it.
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int payer = 1 + random.nextInt(PAYERS);
+
+            if (random.nextInt(PAYOUT_EVERY) == 0) {
+                system.transferCents(0, payer, PAYOUT_CENTS, 0);
+            } else {
+                system.transferCents(payer, 0, CREDIT_CENTS, 0);
+            }
+        });
+
+        running.set(false);
+        auditor.join();
+        // Stopping the auditor.
+
+        if (mismatch[0] != Long.MIN_VALUE || system.getTotalBalanceCents() != expected) {
+            // Checking no consistent read saw a half-applied transfer and no money was lost.
+
+            throw new IllegalStateException((autoSplit ? "split" : "locked") + " run with " + threads
+                    + " threads: expected a total of " + AccountUtils.formatCents(expected) + ", an audit read "
+                    + AccountUtils.formatCents(mismatch[0]) + ", final "
+                    + AccountUtils.formatCents(system.getTotalBalanceCents()));
+        }
+
+        if (autoSplit && threads > 1 && !system.getAccount(0).isSplit()) {
+            // Reporting a run whose hot account never saw enough contention to split.
+
+            System.out.println("  (hot account not split with " + threads + " threads)");
+        }
+
+        return new double[] {throughput, audits[0]};
+    }
+
+    private static TransactionSystem newSystem() {
+        // Method to create the hot account and the payers, each holding $1,000,000.00.
+
+        List<BankAccount> accounts = new ArrayList<>(PAYERS + 1);
+        // Creating the account list.
+
+        for (int id = 0; id <= PAYERS; id++) {
+            accounts.add(new BankAccount(id, 1_000_000.0));
+        }
+
+        return new TransactionSystem(accounts);
+    }
+}
@@ -0,0 +1,290 @@
+package banking;
+
+import java.io.IOException;
+// Importing the IOException class for failures while setting up the failing journal.
+
+import java.nio.file.Files;
+// Importing the Files class to create and remove the journal directory.
+
+import java.nio.file.Path;
+// Importing the Path class for the journal directory.
+
+import java.util.ArrayList;
+// Importing the ArrayList class to build the account list.
+
+import java.util.List;
+// Importing the List interface for the accounts.
+
+import java.util.concurrent.ThreadLocalRandom;
+// Importing the ThreadLocalRandom class so each thread draws its keys without sharing a Random.
+
+import java.util.concurrent.TimeUnit;
+// Importing the TimeUnit class for the retention periods.
+
+import java.util.concurrent.atomic.LongAdder;
+// Importing the LongAdder class to count the retries that applied.
+
+import java.util.stream.Stream;
+// Importing the Stream interface to list the journal segments.
+
+public class IdempotencyBenchmark {
+    // Defining a benchmark and check of keyed transfers:
+    //   rollback   - a transfer whose journal append fails must leave both balances as they were and
+    //                forget its key, so the client's retry can still apply;
+    //   retries    - every thread submits the same keyed transfers, as clients retrying after a lost reply
+    //                would; each key must apply exactly once and the balances must match applying every
+    //                transfer once;
+    //   throughput - plain transfers against keyed transfers with a fresh key each, and keyed transfers
+    //                each sent twice, so half the calls are retries answered with DUPLICATE;
+    //   memory     - keys are claimed flat out against a short retention period, and the key tables must
+    //                never grow beyond the size fixed when the set was created.
+    // Usage: IdempotencyBenchmark [durationMillis] [threads,threads,...]
+
+    private static final int ACCOUNTS = 10_000;
+    // Number of accounts.
+
+    private static final int RETRIED_KEYS = 100_000;
+    // Number of distinct keys every thread submits in the retry check.
+
+    private static final long AMOUNT_CENTS = 100;
+    // Every transfer moves $1.00.
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        // Main method to run the checks, then measure throughput and memory.
+
+        long durationMillis = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+        // Reading the measurement time per data point, defaulting to two seconds.
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        // Counting the cores, for the default thread counts.
+
+        String threadList = args.length > 1 ? args[1] : 1 + "," + cores + "," + 4 * cores;
+        // Reading the thread counts, defaulting to one thread, one per core and four per core.
+
+        EventLog.setLevel(LogLevel.OFF);
+        // Keeping logging out of the measurement.
+
+        checkRollback();
+        // Making sure a failed transfer is undone before measuring anything.
+
+        for (String mode : new String[] {"plain", "keyed", "retried"}) {
+            // Warming up every mode so the first data point is not measuring the compiler.
+
+            run(mode, 1, durationMillis / 2);
+        }
+
+        System.out.println(ACCOUNTS + " accounts, " + cores + " cores, transfer calls/sec");
+        // Printing the benchmark description.
+
+        System.out.printf("%8s %14s %14s %14s %10s%n", "threads", "plain", "keyed", "retried", "retries");
+        // Printing the table header.
+
+        for (String count : threadList.split(",")) {
+            // Measuring each thread count.
+
+            int threads = Integer.parseInt(count.trim());
+
+            System.out.printf("%8d %14.0f %14.0f %14.0f %10s%n", threads,
+                    run("plain", threads, durationMillis),
+                    run("keyed", threads, durationMillis),
+                    run("retried", threads, durationMillis),
+                    checkRetries(threads));
+            // Printing the three modes side by side, then checking concurrent retries at this thread count.
+        }
+
+        measureMemory(Integer.parseInt(threadList.split(",")[threadList.split(",").length - 1].trim()),
+                durationMillis);
+        // Claiming keys with the most threads to check memory stays bounded.
+    }
+
+    private static double run(String mode, int threads, long durationMillis) throws InterruptedException {
+        // Method to measure one mode with fresh accounts and check money was conserved.
+
+        TransactionSystem system = newSystem();
+        // Creating fresh accounts, with the default key set.
+
+        long before = system.getTotalBalanceCents();
+        // Recording the money before the run.
+
+        double throughput = BenchmarkSupport.measureThroughput(threads, durationMillis, () -> {
+            // Each operation is one transfer between two distinct random accounts.
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int from = random.nextInt(ACCOUNTS);
+            int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+            // Picking the accounts.
+
+            if (mode.equals("plain")) {
+                system.transferCents(from, to, AMOUNT_CENTS, 0);
+            } else {
+                long key = random.nextLong() | 1;
+                // Drawing a fresh non-zero key; a collision among 64-bit random keys is vanishingly unlikely.
+
+                system.transferOnce(key, from, to, AMOUNT_CENTS);
+
+                if (mode.equals("retried")) {
+                    system.transferOnce(key, from, to, AMOUNT_CENTS);
+                    // Retrying it, which must change nothing.
+                }
+            }
+        });
+
+        if (system.getTotalBalanceCents() != before) {
+            // Checking that no transfer was lost or applied twice.
+
+            throw new IllegalStateException(mode + ": money not conserved, " + AccountUtils.formatCents(before)
+                    + " before, " + AccountUtils.formatCents(system.getTotalBalanceCents()) + " after");
+        }
+
+        return mode.equals("retried") ? throughput * 2 : throughput;
+        // Counting both calls of a retried transfer.
+    }
+
+    private static String checkRetries(int threads) throws InterruptedException {
+        // Method to have every thread submit the same keyed transfers and check each applied exactly once.
+
+        TransactionSystem system = newSystem();
+        TransactionSystem expected = newSystem();
+        // Creating the system under test and one that applies every transfer once without keys.
+
+        for (int key = 1; key <= RETRIED_KEYS; key++) {
+            expected.transferCents(from(key), to(key), AMOUNT_CENTS, 0);
+        }
+
+        LongAdder applied = new LongAdder();
+        // Counting the calls that reported COMPLETED.
+
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            // Each thread walks the keys from a different starting point, so retries of a key overlap in time.
+
+            int start = t * (RETRIED_KEYS / threads);
+
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < RETRIED_KEYS; i++) {
+                    int key = 1 + (start + i) % RETRIED_KEYS;
+
+                    if (system.transferOnce(key, from(key), to(key), AMOUNT_CENTS) == TransferResult.COMPLETED) {
+                        applied.increment();
+                    }
+                }
+            }, "Retrier-" + t);
+
+            workers[t].start();
+        }
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        for (int id = 0; id < ACCOUNTS; id++) {
+            // Every balance must be what applying each transfer once gives.
+
+            if (system.getAccount(id).peekBalanceCents() != expected.getAccount(id).peekBalanceCents()) {
+                throw new IllegalStateException("Account " + id + " differs after concurrent retries: "
+                        + AccountUtils.formatCents(system.getAccount(id).peekBalanceCents()) + " instead of "
+                        + AccountUtils.formatCents(expected.getAccount(id).peekBalanceCents()));
+            }
+        }
+
+        if (applied.sum() != RETRIED_KEYS) {
+            // Exactly one call per key may report that it applied.
+
+            throw new IllegalStateException(applied.sum() + " of " + RETRIED_KEYS + " keys reported as applied");
+        }
+
+        return "ok";
+    }
+
+    private static int from(int key) {
+        // Method to choose the source of the transfer with this key.
+
+        return key % ACCOUNTS;
+    }
+
+    private static int to(int key) {
+        // Method to choose the destination of the transfer with this key, never its source.
+
+        return (from(key) + 1 + key / ACCOUNTS % (ACCOUNTS - 1)) % ACCOUNTS;
+    }
+
+    private static void checkRollback() throws IOException {
+        // Method to make a transfer fail after its balances changed and check it was undone.
+
+        Path directory = Files.createTempDirectory("idempotency-journal");
+        // Creating a journal directory for the check.
+
+        TransactionJournal journal = TransactionJournal.open(directory, FsyncPolicy.OS_MANAGED, 1_000,
+                2 * TransactionJournal.RECORD_SIZE);
+        // Opening a journal whose first segment holds exactly the two opening records.
+
+        TransactionSystem system = new TransactionSystem(List.of(new BankAccount(0, 100.0),
+                new BankAccount(1, 100.0)), journal);
+        // Creating two accounts, which fills the segment.
+
+        try (Stream<Path> segments = Files.list(directory)) {
+            // Removing the journal directory, so the next append cannot start a new segment and throws.
+
+            for (Path segment : (Iterable<Path>) segments::iterator) {
+                Files.delete(segment);
+            }
+        }
+
+        Files.delete(directory);
+
+        TransferResult first = system.transferOnce(42, 0, 1, 2_500);
+        // Transferring $25.00; both balances change before the journal append fails.
+
+        if (first != TransferResult.FAILED || system.getAccount(0).peekBalanceCents() != 10_000
+                || system.getAccount(1).peekBalanceCents() != 10_000
+                || system.getIdempotencyKeys().contains(42)) {
+            // Both balances must be back where they were and the key must be free for a retry.
+
+            throw new IllegalStateException("Failed transfer was not rolled back: " + first + ", balances "
+                    + AccountUtils.formatCents(system.getAccount(0).peekBalanceCents()) + " and "
+                    + AccountUtils.formatCents(system.getAccount(1).peekBalanceCents()));
+        }
+
+        journal.close();
+        // Closing the journal, whose directory is already gone.
+
+        System.out.println("Transfer failing at its journal append: " + first + ", balances unchanged, key released");
+        // Reporting the check.
+    }
+
+    private static void measureMemory(int threads, long durationMillis) throws InterruptedException {
+        // Method to claim keys flat out against a short retention period and report the memory used.
+
+        IdempotencyKeys keys = new IdempotencyKeys(100, TimeUnit.MILLISECONDS, 1 << 16);
+        // Remembering keys for 100 ms, sized for 65,536 keys in that time, which the claims below exceed.
+
+        double claims = BenchmarkSupport.measureThroughput(threads, durationMillis,
+                () -> keys.claim(ThreadLocalRandom.current().nextLong() | 1));
+        // Claiming fresh keys as fast as the threads can.
+
+        if (keys.getTableBytes() > keys.getMaxTableBytes()) {
+            // The tables are sized up front and must never grow.
+
+            throw new IllegalStateException("Key tables grew to " + keys.getTableBytes() + " bytes");
+        }
+
+        System.out.printf("Key set: %.0f claims/sec over %d ms, %d keys held, %d KiB of tables (max %d KiB), "
+                        + "%d early rotations%n", claims, durationMillis, keys.size(), keys.getTableBytes() / 1024,
+                keys.getMaxTableBytes() / 1024, keys.getEarlyRotationCount());
+        // Reporting the rate and the bounded memory.
+    }
+
+    private static TransactionSystem newSystem() {
+        // Method to create the accounts, each holding $1,000,000.00.
+
+        List<BankAccount> accounts = new ArrayList<>(ACCOUNTS);
+        // Creating the account list.
+
+        for (int id = 0; id < ACCOUNTS; id++) {
+            accounts.add(new BankAccount(id, 1_000_000.0));
+        }
+
+        return new TransactionSystem(accounts);
+    }
+}
@@ -0,0 +1,246 @@
+package banking;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+// Importing the stream classes used to write the generated files.
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+// Importing the buffer and file classes.
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+// Importing the account list, the random source and the record counter.
+
+public class IngestionBenchmark {
+    // Defining a benchmark for TransferFileReader. It writes the same generated transfers as a binary and
+    // a CSV file, then reports the parse rate of each in GB/s and checks both parse to the same cents.
+    // It also prints the heap in use before and after, which stays flat whatever the file size.
+    // Last, it ingests a smaller CSV file into a TransactionSystem through the bounded pipeline.
+    // Usage: IngestionBenchmark [records] [directory]; the default 20M records write about 0.8 GB.
+
+    private static final int ACCOUNTS = 100_000;
+    // Number of accounts the generated transfers move money between.
+
+    public static void main(String[] args) throws Exception {
+        // Main method to run the ingestion benchmark.
+
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 20_000_000;
+        // Reading the number of records to generate.
+
+        Path dir = args.length > 1 ? Path.of(args[1]) : Files.createTempDirectory("ingest");
+        // Reading the directory for the generated files.
+
+        Path binary = dir.resolve("transfers.bin");
+        Path csv = dir.resolve("transfers.csv");
+        // Naming the two files.
+
+        long expectedCents = writeFiles(binary, csv, records, 5);
+        // Writing the files and remembering the total of their amounts.
+
+        System.out.printf("Files: %d records, binary %.2f GB, CSV %.2f GB%n", records,
+                Files.size(binary) / 1e9, Files.size(csv) / 1e9);
+        // Printing the file sizes.
+
+        long heapBefore = usedHeap();
+        // Measuring the heap before parsing.
+
+        for (int round = 1; round <= 3; round++) {
+            // Parsing each file three times; the first round includes JIT warm-up and page cache misses.
+
+            parse(binary, TransferFileReader.Format.BINARY, expectedCents, round);
+            parse(csv, TransferFileReader.Format.CSV, expectedCents, round);
+        }
+
+        System.out.printf("Heap in use before parsing %.1f MB, after %.1f MB%n", heapBefore / 1e6, usedHeap() / 1e6);
+        // Showing the heap does not grow with the file.
+
+        int applied = Math.min(records, 2_000_000);
+        // Ingesting a smaller file into the transaction system, which is far slower than parsing.
+
+        Path small = dir.resolve("transfers-small.csv");
+        writeFiles(dir.resolve("transfers-small.bin"), small, applied, 5);
+        // Writing it from the same seed.
+
+        List<BankAccount> accounts = new ArrayList<>(ACCOUNTS);
+        // Creating the account list.
+
+        for (int id = 0; id < ACCOUNTS; id++) {
+            accounts.add(new BankAccount(id, 1_000_000.0));
+        }
+
+        EventLog.setLevel(LogLevel.OFF);
+        // Keeping logging out of the measurement.
+
+        TransactionSystem system = new TransactionSystem(accounts);
+        // Creating the transaction system.
+
+        long initialCents = system.getTotalBalanceCents();
+        // Recording the money before ingestion.
+
+        LongAdder completed = new LongAdder();
+        // Counting the transfers that went through.
+
+        long start = System.nanoTime();
+        // Starting the timer.
+
+        long ingested = TransferFileReader.ingest(small, TransferFileReader.Format.CSV, 4096, 4, chunk -> {
+            for (int i = 0; i < chunk.size(); i++) {
+                // Running each record of the chunk as a transfer.
+
+                if (system.transfer(chunk.getFromId(i), chunk.getToId(i),
+                        AccountUtils.fromCents(chunk.getAmountCents(i)), 0)) {
+                    completed.increment();
+                }
+            }
+        });
+        // Ingesting through four chunks of 4096 records; the parser waits whenever all four are full.
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        // Stopping the timer.
+
+        System.out.printf("Ingested %d records into TransactionSystem in %.2f s (%.0f transfers/s), %d completed, money %s%n",
+                ingested, seconds, ingested / seconds, completed.sum(),
+                system.getTotalBalanceCents() == initialCents ? "conserved" : "NOT conserved");
+        // Printing the ingestion result.
+
+        if (args.length < 2) {
+            // Removing the files if they were written to a temporary directory.
+
+            Files.delete(binary);
+            Files.delete(csv);
+            Files.delete(small);
+            Files.delete(dir.resolve("transfers-small.bin"));
+            Files.delete(dir);
+        }
+    }
+
+    private static void parse(Path file, TransferFileReader.Format format, long expectedCents, int round)
+            throws IOException {
+        // Method to parse a whole file into one reused chunk and print the rate.
+
+        TransferFileReader.Chunk chunk = new TransferFileReader.Chunk(8192);
+        // Allocating the single chunk.
+
+        long total = 0;
+        long count = 0;
+        // Accumulating the amounts so the parse cannot be optimized away and can be checked.
+
+        long start = System.nanoTime();
+        // Starting the timer.
+
+        try (TransferFileReader reader = new TransferFileReader(file, format)) {
+            while (reader.next(chunk)) {
+                // Reading each chunk.
+
+                for (int i = 0; i < chunk.size(); i++) {
+                    total += chunk.getAmountCents(i) + chunk.getFromId(i) - chunk.getToId(i);
+                }
+
+                count += chunk.size();
+            }
+        }
+
+        long nanos = System.nanoTime() - start;
+        // Stopping the timer.
+
+        System.out.printf("round %d %-6s %6.2f GB/s %12.0f records/s  %s%n", round, format,
+                Files.size(file) / (double) nanos, count * 1e9 / nanos,
+                total == expectedCents ? "checksum ok" : "CHECKSUM MISMATCH");
+        // Printing the rate and the check.
+    }
+
+    private static long writeFiles(Path binary, Path csv, int records, long seed) throws IOException {
+        // Method to write the same random transfers to both files and return the checksum the parse should see.
+
+        Random random = new Random(seed);
+        // Using a fixed seed.
+
+        long checksum = 0;
+        // Accumulating amount + from - to over all records.
+
+        ByteBuffer record = ByteBuffer.allocate(TransferFileReader.BINARY_RECORD_BYTES);
+        // Reusing one buffer for each binary record.
+
+        byte[] line = new byte[64];
+        // Reusing one buffer for each CSV line.
+
+        try (OutputStream bin = new BufferedOutputStream(Files.newOutputStream(binary), 1 << 20);
+             OutputStream text = new BufferedOutputStream(Files.newOutputStream(csv), 1 << 20)) {
+            text.write("from,to,amount\n".getBytes());
+            // Writing the CSV header.
+
+            for (int i = 0; i < records; i++) {
+                // Writing each record.
+
+                int from = random.nextInt(ACCOUNTS);
+                int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+                long cents = 100 + random.nextInt(50_000);
+                // Choosing two distinct accounts and $1.00 to $500.99.
+
+                checksum += cents + from - to;
+                // Adding the record to the checksum.
+
+                record.clear();
+                record.putInt(from).putInt(to).putLong(cents);
+                bin.write(record.array());
+                // Writing the binary record.
+
+                int n = writeDigits(line, 0, from);
+                line[n++] = ',';
+                n = writeDigits(line, n, to);
+                line[n++] = ',';
+                n = writeDigits(line, n, cents / 100);
+
+                if (cents % 100 != 0) {
+                    // Writing the decimals only when there are some, as real files often do.
+
+                    line[n++] = '.';
+                    line[n++] = (byte) ('0' + cents % 100 / 10);
+                    line[n++] = (byte) ('0' + cents % 10);
+                }
+
+                line[n++] = '\n';
+                text.write(line, 0, n);
+                // Writing the CSV line.
+            }
+        }
+
+        return checksum;
+    }
+
+    private static int writeDigits(byte[] out, int at, long value) {
+        // Method to write a non-negative number as ASCII digits and return the next free index.
+
+        int start = at;
+        // Remembering where the digits begin.
+
+        do {
+            out[at++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        // Writing the digits backwards.
+
+        for (int i = start, j = at - 1; i < j; i++, j--) {
+            // Reversing them into reading order.
+
+            byte swap = out[i];
+            out[i] = out[j];
+            out[j] = swap;
+        }
+
+        return at;
+    }
+
+    private static long usedHeap() {
+        // Method to return the heap in use after a garbage collection.
+
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
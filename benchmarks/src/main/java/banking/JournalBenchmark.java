@@ -0,0 +1,180 @@
+package banking;
+
+import java.io.IOException;
+// Importing the IOException class for journal file failures.
+
+import java.nio.file.Files;
+// Importing the Files class to create and delete the temporary journal directories.
+
+import java.nio.file.Path;
+// Importing the Path class for the journal directories.
+
+import java.util.Comparator;
+// Importing the Comparator interface to delete directory contents before the directory itself.
+
+import java.util.Random;
+// Importing the Random class to generate transfer records.
+
+import java.util.function.ObjIntConsumer;
+// Importing the ObjIntConsumer interface for the record each appending thread writes.
+
+import java.util.stream.Stream;
+// Importing the Stream interface to walk a directory for deletion.
+
+public class JournalBenchmark {
+    // Defining a benchmark for journal write throughput under each fsync policy and for recovery time.
+
+    private static final int ACCOUNTS = 100_000;
+    // Number of accounts opened at the start of each journal.
+
+    private static final int GROUP_COMMIT_THREADS = 64;
+    // Number of threads appending under GROUP_COMMIT, where each append waits for the next commit and only
+    // concurrent appenders can share one.
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // Main method to run the journal benchmark.
+
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        // Reading the number of transfer records to write, defaulting to 10M.
+
+        int syncedRecords = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        // Reading the number of records for EVERY_RECORD and GROUP_COMMIT, which wait for a sync and are far slower.
+
+        System.out.println("Journal write throughput, " + ACCOUNTS + " accounts opened first");
+        // Printing the benchmark description.
+
+        System.out.printf("%-14s %8s %12s %16s %12s%n", "policy", "threads", "records", "records/sec", "MB/sec");
+        // Printing the table header.
+
+        for (FsyncPolicy policy : FsyncPolicy.values()) {
+            // Measuring each policy in its own directory.
+
+            int count = policy == FsyncPolicy.OS_MANAGED ? records : syncedRecords;
+            int threads = policy == FsyncPolicy.GROUP_COMMIT ? GROUP_COMMIT_THREADS : 1;
+            // Choosing the record count and appending threads for this policy.
+
+            Path directory = Files.createTempDirectory("journal-bench");
+            // Creating an empty journal directory.
+
+            try {
+                long elapsed = write(directory, policy, count, threads);
+                // Writing the journal and measuring the time taken.
+
+                double perSecond = count * 1e9 / elapsed;
+                // Computing records per second.
+
+                System.out.printf("%-14s %8d %12d %16.0f %12.1f%n", policy, threads, count, perSecond,
+                        perSecond * TransactionJournal.RECORD_SIZE / (1 << 20));
+                // Printing the throughput.
+
+                if (policy == FsyncPolicy.OS_MANAGED) {
+                    // Using the largest journal to measure recovery.
+
+                    recover(directory, count);
+                }
+            } finally {
+                delete(directory);
+                // Removing the journal files.
+            }
+        }
+    }
+
+    private static long write(Path directory, FsyncPolicy policy, int records, int threads)
+            throws IOException, InterruptedException {
+        // Method to write account openings followed by transfer records from a number of threads, returning the
+        // nanoseconds the transfers took.
+
+        long start;
+        // The start time, taken once the accounts are open.
+
+        try (TransactionJournal journal = TransactionJournal.open(directory, policy)) {
+            // Opening a fresh journal with the default group-commit interval and segment size.
+
+            appendInParallel(threads, ACCOUNTS, 7, (random, i) -> journal.append(TransactionJournal.OPEN, i + 1, 0,
+                    1_000_000_000L));
+            // Opening every account with a balance large enough for all transfers.
+
+            start = System.nanoTime();
+            // Recording the start time so only the transfer records are measured.
+
+            appendInParallel(threads, records, 42, (random, i) -> journal.awaitDurable(journal.append(
+                    TransactionJournal.TRANSFER, 1 + random.nextInt(ACCOUNTS), 1 + random.nextInt(ACCOUNTS),
+                    1 + random.nextInt(10_000))));
+            // Appending the transfer records, each waiting for its policy's durability as a transfer would.
+        }
+
+        return System.nanoTime() - start;
+        // Returning the elapsed time, including the final force on close.
+    }
+
+    private static void appendInParallel(int threads, int records, long seed, ObjIntConsumer<Random> append)
+            throws InterruptedException {
+        // Method to split a number of appends between threads, each with its own seeded Random, and wait for them.
+
+        Thread[] appenders = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            // Giving each thread every threads-th record, starting at its own index.
+
+            int first = t;
+            Random random = new Random(seed + t);
+            // Fixed seeds so every policy writes the same records.
+
+            appenders[t] = new Thread(() -> {
+                for (int i = first; i < records; i += threads) {
+                    append.accept(random, i);
+                }
+            }, "Appender-" + t);
+
+            appenders[t].start();
+        }
+
+        for (Thread appender : appenders) {
+            appender.join();
+        }
+    }
+
+    private static void recover(Path directory, int records) throws IOException {
+        // Method to measure rebuilding a TransactionSystem from the journal.
+
+        long start = System.nanoTime();
+        // Recording the start time.
+
+        try (TransactionJournal journal = TransactionJournal.open(directory, FsyncPolicy.OS_MANAGED)) {
+            // Reopening the journal, which scans it for the last sequence number.
+
+            long opened = System.nanoTime() - start;
+            // Measuring the time to reopen.
+
+            TransactionSystem system = TransactionSystem.recover(journal);
+            // Replaying every record into a new TransactionSystem.
+
+            long elapsed = System.nanoTime() - start;
+            // Measuring the total time.
+
+            System.out.printf("%nRecovery of %d records: reopen %.0f ms, total %.0f ms (%.0f records/sec)%n",
+                    ACCOUNTS + records, opened / 1e6, elapsed / 1e6, (ACCOUNTS + records) * 1e9 / (elapsed - opened));
+            // Printing the recovery times.
+
+            if (system.getAccount(ACCOUNTS) == null) {
+                // Checking the recovered system holds the accounts.
+
+                throw new IllegalStateException("Recovery lost accounts");
+            }
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        // Method to delete a directory and its files.
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            // Walking the directory tree.
+
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                // Deleting files before their directory.
+
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,568 @@
+package banking;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+// Importing the executors, per-thread random source, counters and parking used by the driver.
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+// Importing HdrHistogram: a Recorder takes values from many threads, a Histogram reports the percentiles.
+
+public class LoadDriver {
+    // Defining a configurable load-test driver for TransactionSystem, replacing the fixed three-thread demo.
+    // It runs a mix of transfers, balance reads, deposits and withdrawals over many accounts, with
+    // uniform or Zipfian account choice, on a platform thread pool or on virtual threads.
+    //
+    // Two arrival models are supported:
+    //   rate=0 (closed loop) - "threads" callers each issue the next operation as soon as the last one returns.
+    //   rate=N (open loop)   - operations are issued on a fixed schedule of N per second, whatever the
+    //                          system is doing. Latency is measured from the scheduled start, so time spent
+    //                          queued behind a slow operation is counted (no coordinated omission).
+    //
+    // Usage: java -cp benchmarks/target/benchmarks.jar banking.LoadDriver key=value ...
+    //   accounts=1000000  threads=8  executor=platform|virtual  rate=0  duration=10  warmup=2
+    //   mix=transfer:70,read:20,deposit:5,withdraw:5  theta=0.99 (0 for uniform)  maxInFlight=1000000
+    //   hgrm=<file> to also write the full percentile distribution of all operations.
+    // Each BankAccount carries two locks, so budget roughly 300 bytes of heap per account (-Xmx).
+
+    static final int TRANSFER = 0;
+    static final int READ = 1;
+    static final int DEPOSIT = 2;
+    static final int WITHDRAW = 3;
+    // Operation codes, also used as indexes into the per-operation arrays.
+
+    static final String[] OPERATION_NAMES = {"transfer", "read", "deposit", "withdraw"};
+    // Operation names as they appear in the mix option and the report.
+
+    private final int accountCount;
+    private final int threads;
+    private final String executorKind;
+    private final long rate;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final long maxInFlight;
+    private final String hgrmFile;
+    // The run settings.
+
+    private final int[] mixThresholds = new int[OPERATION_NAMES.length];
+    // Cumulative mix weights; an operation is picked by drawing below the last threshold.
+
+    private final ZipfianGenerator zipf;
+    // Declaring the skewed account picker, or null for a uniform choice.
+
+    private TransactionSystem system;
+    // Declaring the transaction system under load.
+
+    private final Recorder[] recorders = new Recorder[OPERATION_NAMES.length];
+    // Declaring one latency recorder per operation type, in nanoseconds.
+
+    private final Recorder serviceRecorder = new Recorder(3);
+    // Declaring a recorder of service time (from actual start), shown next to the response time.
+
+    private final LongAdder depositedCents = new LongAdder();
+    private final LongAdder withdrawnCents = new LongAdder();
+    // Money that entered and left the system, for the conservation check.
+
+    private final LongAdder failedOperations = new LongAdder();
+    // Counting transfers and withdrawals refused for lack of funds.
+
+    private final AtomicLong inFlight = new AtomicLong();
+    // Counting open-loop operations issued but not finished.
+
+    private final LongAdder dropped = new LongAdder();
+    // Counting open-loop operations not issued because maxInFlight was reached.
+
+    public LoadDriver(String[] args) {
+        // Constructor to parse the key=value options.
+
+        int accounts = 1_000_000;
+        int threadCount = 8;
+        String executor = "platform";
+        long opsPerSecond = 0;
+        double durationSeconds = 10;
+        double warmupSeconds = 2;
+        long inFlightLimit = 1_000_000;
+        String mix = "transfer:70,read:20,deposit:5,withdraw:5";
+        double theta = 0.99;
+        String hgrm = null;
+        // Declaring the defaults.
+
+        for (String arg : args) {
+            // Looping over every option.
+
+            int eq = arg.indexOf('=');
+            // Finding the separator between the key and the value.
+
+            if (eq < 0) {
+                // Checking the option has a value.
+
+                throw new IllegalArgumentException("Expected key=value but got: " + arg);
+            }
+
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            // Splitting the option.
+
+            switch (key) {
+                case "accounts": accounts = Integer.parseInt(value); break;
+                case "threads": threadCount = Integer.parseInt(value); break;
+                case "executor": executor = value; break;
+                case "rate": opsPerSecond = Long.parseLong(value); break;
+                case "duration": durationSeconds = Double.parseDouble(value); break;
+                case "warmup": warmupSeconds = Double.parseDouble(value); break;
+                case "maxInFlight": inFlightLimit = Long.parseLong(value); break;
+                case "mix": mix = value; break;
+                case "theta": theta = Double.parseDouble(value); break;
+                case "hgrm": hgrm = value; break;
+                default: throw new IllegalArgumentException("Unknown option: " + key);
+            }
+        }
+
+        if (accounts < 2 || threadCount < 1 || opsPerSecond < 0 || durationSeconds <= 0) {
+            // Checking the settings make sense.
+
+            throw new IllegalArgumentException("Need at least 2 accounts, 1 thread, a non-negative rate and a positive duration");
+        }
+
+        this.accountCount = accounts;
+        this.threads = threadCount;
+        this.executorKind = executor;
+        this.rate = opsPerSecond;
+        this.durationNanos = (long) (durationSeconds * 1e9);
+        this.warmupNanos = (long) (warmupSeconds * 1e9);
+        this.maxInFlight = inFlightLimit;
+        this.hgrmFile = hgrm;
+        // Storing the settings.
+
+        parseMix(mix);
+        // Turning the mix into cumulative thresholds.
+
+        this.zipf = theta > 0 ? new ZipfianGenerator(accounts, theta) : null;
+        // Creating the skewed picker unless a uniform choice was requested.
+
+        for (int op = 0; op < recorders.length; op++) {
+            // Creating a recorder for every operation type.
+
+            recorders[op] = new Recorder(3);
+        }
+    }
+
+    private void parseMix(String mix) {
+        // Method to parse "name:weight,..." into cumulative thresholds.
+
+        int[] weights = new int[OPERATION_NAMES.length];
+        // Collecting the weight of each operation; unlisted operations get 0.
+
+        for (String part : mix.split(",")) {
+            // Looping over each entry.
+
+            String[] pair = part.split(":");
+            // Splitting the name from the weight.
+
+            int op = List.of(OPERATION_NAMES).indexOf(pair[0].trim());
+            // Looking up the operation code.
+
+            if (op < 0 || pair.length != 2) {
+                // Checking the entry names a known operation and has a weight.
+
+                throw new IllegalArgumentException("Bad mix entry: " + part);
+            }
+
+            weights[op] = Integer.parseInt(pair[1].trim());
+        }
+
+        int total = 0;
+        // Accumulating the cumulative weight.
+
+        for (int op = 0; op < weights.length; op++) {
+            // Building each threshold.
+
+            total += weights[op];
+            mixThresholds[op] = total;
+        }
+
+        if (total <= 0) {
+            // Checking at least one operation has a weight.
+
+            throw new IllegalArgumentException("The mix must give some operation a positive weight");
+        }
+    }
+
+    private int pickAccount(ThreadLocalRandom random) {
+        // Method to pick an account ID, skewed or uniform.
+
+        return zipf != null ? zipf.next(random) : random.nextInt(accountCount);
+    }
+
+    private int pickOperation(ThreadLocalRandom random) {
+        // Method to pick an operation type according to the mix.
+
+        int draw = random.nextInt(mixThresholds[mixThresholds.length - 1]);
+        // Drawing below the total weight.
+
+        int op = 0;
+        // Starting at the first operation.
+
+        while (draw >= mixThresholds[op]) {
+            // Moving on until the draw falls under this operation's threshold.
+
+            op++;
+        }
+
+        return op;
+    }
+
+    private void runOperation(long intendedStart) {
+        // Method to run one random operation and record its latency from the intended start time.
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // Using the caller's own random source, so threads never contend on a shared seed.
+
+        int op = pickOperation(random);
+        // Choosing the operation.
+
+        long cents = random.nextLong(100, 20_001);
+        // Choosing an amount between $1.00 and $200.00 in whole cents.
+
+        long start = System.nanoTime();
+        // Recording when the operation actually started.
+
+        switch (op) {
+            case TRANSFER: {
+                int from = pickAccount(random);
+                int to = pickAccount(random);
+                // Choosing both accounts.
+
+                if (from == to) {
+                    // Checking both picks landed on the same account.
+
+                    to = (to + 1) % accountCount;
+                    // Moving to the next account so the transfer involves two accounts.
+                }
+
+                if (!system.transferCents(from, to, cents, 0)) {
+                    // Transferring the exact amount in cents.
+
+                    failedOperations.increment();
+                }
+                break;
+            }
+            case READ:
+                system.getAccount(pickAccount(random)).getBalanceCents();
+                // Reading one balance.
+                break;
+            case DEPOSIT:
+                system.depositCents(pickAccount(random), cents);
+                depositedCents.add(cents);
+                // Depositing and counting the money that entered the system.
+                break;
+            default:
+                if (system.withdrawCents(pickAccount(random), cents)) {
+                    // Withdrawing and counting the money that left the system.
+
+                    withdrawnCents.add(cents);
+                } else {
+                    failedOperations.increment();
+                }
+        }
+
+        long end = System.nanoTime();
+        // Recording when the operation finished.
+
+        recorders[op].recordValue(end - intendedStart);
+        // Recording the response time, including any time spent waiting to start.
+
+        serviceRecorder.recordValue(end - start);
+        // Recording the service time alone.
+    }
+
+    static ExecutorService newExecutor(String kind, int threads) {
+        // Method to create the executor the operations run on.
+
+        if ("virtual".equals(kind)) {
+            // Checking if virtual threads were requested.
+
+            ExecutorService virtual = BankingService.newVirtualThreadExecutor();
+            // Looking for a virtual-thread executor, which needs JDK 21 or later.
+
+            if (virtual != null) {
+                return virtual;
+            }
+
+            System.out.println("Virtual threads need JDK 21 or later; using " + threads + " platform threads.");
+            // Falling back to the platform pool on older JDKs.
+        } else if (!"platform".equals(kind)) {
+            // Checking the executor kind is known.
+
+            throw new IllegalArgumentException("executor must be platform or virtual");
+        }
+
+        return Executors.newFixedThreadPool(threads);
+        // Creating a fixed pool of platform threads.
+    }
+
+    public void run() throws InterruptedException, FileNotFoundException {
+        // Method to build the accounts, apply the load and print the report.
+
+        EventLog.setLevel(LogLevel.OFF);
+        // Turning event logging off so console output does not dominate the measurement.
+
+        List<BankAccount> accounts = new ArrayList<>(accountCount);
+        // Creating the list of accounts.
+
+        for (int id = 0; id < accountCount; id++) {
+            // Creating each account.
+
+            accounts.add(new BankAccount(id));
+            // Using the usual random starting balance between $1000 and $5000.
+        }
+
+        system = new TransactionSystem(accounts);
+        // Creating the transaction system without a journal.
+
+        long initialCents = system.getTotalBalanceCents();
+        // Recording the money in the system before the load starts.
+
+        System.out.println("Accounts: " + accountCount + ", executor: " + executorKind + ", threads: " + threads
+                + ", " + (rate > 0 ? "open loop at " + rate + " ops/s" : "closed loop")
+                + ", account choice: " + (zipf != null ? "zipfian" : "uniform"));
+        // Printing the run settings.
+
+        ExecutorService executor = newExecutor(executorKind, threads);
+        // Creating the executor.
+
+        long start = System.nanoTime();
+        // Recording the start of the run.
+
+        long measureStart = start + warmupNanos;
+        // Computing when the warm-up ends and measurement begins.
+
+        long end = measureStart + durationNanos;
+        // Computing when the run ends.
+
+        if (rate > 0) {
+            // Checking if the open-loop model was requested.
+
+            runOpenLoop(executor, start, end, measureStart);
+        } else {
+            runClosedLoop(executor, end, measureStart);
+        }
+
+        executor.shutdown();
+        // Letting the executor finish the operations already issued.
+
+        executor.awaitTermination(1, TimeUnit.HOURS);
+        // Waiting until every issued operation has completed.
+
+        long measuredNanos = System.nanoTime() - measureStart;
+        // Measuring how long the measured part took, including the drain of issued operations.
+
+        report(measuredNanos, initialCents);
+        // Printing throughput, latency and the conservation check.
+    }
+
+    private void runClosedLoop(ExecutorService executor, long end, long measureStart) {
+        // Method to run "threads" callers that each issue operations back to back.
+
+        for (int caller = 0; caller < threads; caller++) {
+            // Starting each caller.
+
+            executor.execute(() -> {
+                while (true) {
+                    // Issuing operations until the end time.
+
+                    long now = System.nanoTime();
+                    // Reading the clock; in a closed loop the intended start is the actual start.
+
+                    if (now >= end) {
+                        break;
+                    }
+
+                    runOperation(now);
+                }
+            });
+        }
+
+        waitUntil(measureStart);
+        // Waiting for the warm-up to end on the main thread.
+
+        resetRecorders();
+        // Discarding the warm-up latencies.
+    }
+
+    private void runOpenLoop(ExecutorService executor, long start, long end, long measureStart) {
+        // Method to issue operations on a fixed schedule, whether or not earlier ones have finished.
+
+        double intervalNanos = 1e9 / rate;
+        // Computing the gap between scheduled operations.
+
+        boolean measuring = warmupNanos == 0;
+        // Tracking whether the warm-up has ended.
+
+        for (long i = 0; ; i++) {
+            // Issuing the i-th scheduled operation.
+
+            long intended = start + (long) (i * intervalNanos);
+            // Computing when it is due.
+
+            if (intended >= end) {
+                // Checking if the run is over.
+
+                break;
+            }
+
+            if (!measuring && intended >= measureStart) {
+                // Checking if the warm-up just ended.
+
+                resetRecorders();
+                // Discarding the warm-up latencies.
+
+                measuring = true;
+            }
+
+            waitUntil(intended);
+            // Sleeping until it is due; if the driver is already late, it issues immediately and catches up.
+
+            if (inFlight.get() >= maxInFlight) {
+                // Checking if too many operations are outstanding to keep issuing without running out of memory.
+
+                dropped.increment();
+                // Counting the operation as dropped rather than silently slowing the schedule down.
+
+                continue;
+            }
+
+            inFlight.incrementAndGet();
+            // Counting the operation as outstanding.
+
+            executor.execute(() -> {
+                try {
+                    runOperation(intended);
+                    // Running the operation; its latency counts from the scheduled time.
+                } finally {
+                    inFlight.decrementAndGet();
+                    // Counting the operation as finished.
+                }
+            });
+        }
+    }
+
+    private static void waitUntil(long deadline) {
+        // Method to park the current thread until the given nanoTime.
+
+        long remaining;
+        // Declaring the time left to wait.
+
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            // Parking until the deadline; parkNanos may return early, so the loop re-checks.
+
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private void resetRecorders() {
+        // Method to discard everything recorded so far.
+
+        for (Recorder recorder : recorders) {
+            recorder.reset();
+        }
+
+        serviceRecorder.reset();
+    }
+
+    private void report(long measuredNanos, long initialCents) throws FileNotFoundException {
+        // Method to print throughput, latency percentiles and the money conservation check.
+
+        Histogram all = new Histogram(3);
+        // Creating a histogram that collects every operation type.
+
+        System.out.println();
+        System.out.println(String.format("%-10s %10s %10s %10s %10s %10s %10s %10s",
+                "operation", "count", "p50 us", "p90 us", "p99 us", "p99.9 us", "p99.99 us", "max us"));
+        // Printing the table header.
+
+        for (int op = 0; op < recorders.length; op++) {
+            // Looping over every operation type.
+
+            Histogram histogram = recorders[op].getIntervalHistogram();
+            // Taking everything recorded since the warm-up ended.
+
+            all.add(histogram);
+            // Adding it to the overall histogram.
+
+            printRow(OPERATION_NAMES[op], histogram);
+        }
+
+        printRow("all", all);
+        // Printing the overall response times.
+
+        printRow("service", serviceRecorder.getIntervalHistogram());
+        // Printing the service times; a large gap to "all" means operations waited to start.
+
+        System.out.println();
+        System.out.println(String.format("Throughput: %,.0f ops/s over %.2f s", all.getTotalCount() * 1e9 / measuredNanos,
+                measuredNanos / 1e9));
+        // Printing the completed operations per second.
+
+        System.out.println("Refused for insufficient funds: " + failedOperations.sum()
+                + (rate > 0 ? ", dropped at maxInFlight: " + dropped.sum() : ""));
+        // Printing the refused and dropped counts.
+
+        long expectedCents = initialCents + depositedCents.sum() - withdrawnCents.sum();
+        // Computing the money that should be in the system: the start, plus deposits, minus withdrawals.
+
+        long actualCents = system.getTotalBalanceCents();
+        // Summing the balances now that every operation has finished.
+
+        System.out.println("Money check: expected " + AccountUtils.formatCents(expectedCents)
+                + ", actual " + AccountUtils.formatCents(actualCents)
+                + (expectedCents == actualCents ? " - conserved" : " - MISMATCH of " + (actualCents - expectedCents) + " cents"));
+        // Printing the conservation check.
+
+        System.out.println("System metrics: " + system.getMetrics().snapshot(5));
+        // Printing the system's own counters, lock contention and hottest accounts.
+
+        if (hgrmFile != null) {
+            // Checking if the full distribution was requested.
+
+            try (PrintStream out = new PrintStream(hgrmFile)) {
+                all.outputPercentileDistribution(out, 1000.0);
+                // Writing the distribution in microseconds, in the format the HdrHistogram plotter reads.
+            }
+        }
+
+        if (expectedCents != actualCents) {
+            // Checking if money was created or destroyed.
+
+            throw new IllegalStateException("Total money was not conserved");
+        }
+    }
+
+    private static void printRow(String name, Histogram histogram) {
+        // Method to print one line of the latency table, in microseconds.
+
+        System.out.println(String.format("%-10s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f", name,
+                histogram.getTotalCount(),
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getValueAtPercentile(99.99) / 1000.0,
+                histogram.getMaxValue() / 1000.0));
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Main method to run the driver with the options given on the command line.
+
+        new LoadDriver(args).run();
+    }
+}
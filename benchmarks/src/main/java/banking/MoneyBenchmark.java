@@ -0,0 +1,149 @@
+package banking;
+
+import java.nio.charset.StandardCharsets;
+// Importing the charset used to turn the amounts into bytes.
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+// Importing the random source for the test data and the reported time unit.
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+// Importing the JMH annotations.
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyBenchmark {
+    // Defining a benchmark of the money paths, each as the previous double version against the cents version.
+    //   applyDouble / applyCents          - applying a block of transfers to a balance array.
+    //   formatString / formatBuilder / formatBytes
+    //                                     - String.format against appendCurrency into a reused StringBuilder
+    //                                       and into a reused byte[].
+    //   parseDouble / parseCents          - Double.parseDouble plus rounding against parseCents on the bytes.
+    // Run with -prof gc to see the allocation per operation of each formatting and parsing path.
+
+    private static final int SIZE = 1024;
+    // Number of transfers, amounts and balances per operation; a power of two.
+
+    private final double[] doubleBalances = new double[SIZE];
+    private final long[] centsBalances = new long[SIZE];
+    // Declaring the balances of both representations.
+
+    private final double[] doubleAmounts = new double[SIZE];
+    private final long[] centsAmounts = new long[SIZE];
+    private final int[] targets = new int[SIZE];
+    // Declaring the transfer amounts and the account each one is paid into.
+
+    private final String[] amountText = new String[SIZE];
+    private final byte[][] amountBytes = new byte[SIZE][];
+    // Declaring the amounts as text, for parsing.
+
+    private final StringBuilder builder = new StringBuilder(32);
+    private final byte[] buffer = new byte[32];
+    // Declaring the reused formatting buffers.
+
+    private int next;
+    // Declaring the index of the next amount to format or parse.
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Method to fill the balances, amounts and text with repeatable values.
+
+        Random random = new Random(15);
+        // Using a fixed seed.
+
+        for (int i = 0; i < SIZE; i++) {
+            // Creating each balance and each amount of $0.01 to $999.99.
+
+            centsBalances[i] = 100_000 + random.nextInt(400_000);
+            doubleBalances[i] = AccountUtils.fromCents(centsBalances[i]);
+            centsAmounts[i] = 1 + random.nextInt(99_999);
+            doubleAmounts[i] = AccountUtils.fromCents(centsAmounts[i]);
+            targets[i] = random.nextInt(SIZE);
+            amountText[i] = AccountUtils.formatCents(centsAmounts[i]).substring(1);
+            amountBytes[i] = amountText[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    @Benchmark
+    public double applyDouble() {
+        // Method to apply a block of transfers with double arithmetic, as the accounts used to.
+
+        for (int i = 0; i < SIZE; i++) {
+            int to = targets[i];
+
+            if (doubleBalances[i] >= doubleAmounts[i]) {
+                doubleBalances[i] -= doubleAmounts[i];
+                doubleBalances[to] += doubleAmounts[i];
+            }
+        }
+
+        return doubleBalances[0];
+    }
+
+    @Benchmark
+    public long applyCents() {
+        // Method to apply the same block of transfers with long cents, as the accounts do now.
+
+        for (int i = 0; i < SIZE; i++) {
+            int to = targets[i];
+
+            if (centsBalances[i] >= centsAmounts[i]) {
+                centsBalances[i] -= centsAmounts[i];
+                centsBalances[to] += centsAmounts[i];
+            }
+        }
+
+        return centsBalances[0];
+    }
+
+    @Benchmark
+    public String formatString() {
+        // Method to format one amount with String.format, as formatCurrency does.
+
+        return AccountUtils.formatCurrency(doubleAmounts[next++ & (SIZE - 1)]);
+    }
+
+    @Benchmark
+    public int formatBuilder() {
+        // Method to format one amount into the reused StringBuilder.
+
+        builder.setLength(0);
+        return AccountUtils.appendCurrency(builder, centsAmounts[next++ & (SIZE - 1)]).length();
+    }
+
+    @Benchmark
+    public int formatBytes() {
+        // Method to format one amount into the reused byte buffer.
+
+        return AccountUtils.appendCurrency(buffer, 0, centsAmounts[next++ & (SIZE - 1)]);
+    }
+
+    @Benchmark
+    public long parseDouble() {
+        // Method to parse one amount the usual way: from a String through a double, then rounded to cents.
+
+        return AccountUtils.toCents(Double.parseDouble(amountText[next++ & (SIZE - 1)]));
+    }
+
+    @Benchmark
+    public long parseCents() {
+        // Method to parse one amount straight from its bytes into exact cents.
+
+        byte[] bytes = amountBytes[next++ & (SIZE - 1)];
+        return AccountUtils.parseCents(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,269 @@
+package banking;
+
+import java.util.ArrayList;
+// Importing the ArrayList class to build the account list.
+
+import java.util.List;
+// Importing the List interface for the accounts.
+
+import java.util.Random;
+// Importing the Random class to generate the transfers.
+
+import java.util.SplittableRandom;
+// Importing the SplittableRandom class to give each thread its own seeded random source.
+
+public class MoneyExactnessBenchmark {
+    // Defining a check that balances kept in whole cents stay exact over millions of transfers.
+    //   Sequential run - every transfer is mirrored in a plain long[] model and in a double[] model that
+    //                    does the arithmetic the accounts used to do; every balance must match the long
+    //                    model to the cent, and the double model's drift is printed for comparison.
+    //   Threaded run   - each thread records the amounts it actually moved in its own long[] of per-account
+    //                    changes; the changes are merged at the end, and every balance must equal its
+    //                    starting balance plus its merged change, however the threads interleaved.
+    // Usage: MoneyExactnessBenchmark [transfers] [accounts] [threads]. Exits with an error on any mismatch.
+
+    public static void main(String[] args) throws InterruptedException {
+        // Main method to run both checks.
+
+        int transfers = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        // Reading the number of transfers per run, defaulting to five million.
+
+        int accountCount = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        // Reading the number of accounts, defaulting to a thousand.
+
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        // Reading the number of threads of the threaded run.
+
+        EventLog.setLevel(LogLevel.OFF);
+        // Keeping logging out of the measurement.
+
+        System.out.println("Exactness check: " + transfers + " transfers over " + accountCount + " accounts");
+        // Printing the check description.
+
+        runSequential(transfers, accountCount);
+        // Comparing every balance with the long and double models.
+
+        runThreaded(transfers, accountCount, threads);
+        // Comparing every balance with the merged per-thread changes.
+
+        System.out.println("All balances exact.");
+        // Reporting success; any mismatch has already thrown.
+    }
+
+    private static void runSequential(int transfers, int accountCount) {
+        // Method to run transfers one by one against the system and both models.
+
+        long[] initial = new long[accountCount];
+        // Declaring the starting balances in cents.
+
+        Random random = new Random(15);
+        // Using a fixed seed so runs are repeatable.
+
+        for (int id = 0; id < accountCount; id++) {
+            // Choosing a starting balance between $1000.00 and $5000.00 with random cents.
+
+            initial[id] = 100_000 + random.nextInt(400_001);
+        }
+
+        TransactionSystem system = newSystem(initial);
+        // Creating the system under test.
+
+        long[] exact = initial.clone();
+        // Declaring the long model.
+
+        double[] drifting = new double[accountCount];
+        // Declaring the double model.
+
+        for (int id = 0; id < accountCount; id++) {
+            drifting[id] = AccountUtils.fromCents(initial[id]);
+            // Starting the double model from the same dollar balances.
+        }
+
+        long refused = 0;
+        // Counting transfers refused for insufficient funds.
+
+        long start = System.nanoTime();
+        // Starting the timer.
+
+        for (int i = 0; i < transfers; i++) {
+            // Running each transfer of $0.01 to $999.99 between two distinct accounts.
+
+            int from = random.nextInt(accountCount);
+            int to = (from + 1 + random.nextInt(accountCount - 1)) % accountCount;
+            long cents = 1 + random.nextInt(99_999);
+
+            boolean completed = system.transferCents(from, to, cents, 0);
+            // Transferring through the system.
+
+            if (completed != (exact[from] >= cents)) {
+                // Checking the system refused exactly when the long model could not cover the amount.
+
+                throw new IllegalStateException("Transfer " + i + " from account " + from + " was "
+                        + (completed ? "allowed" : "refused") + " with a modelled balance of "
+                        + AccountUtils.formatCents(exact[from]));
+            }
+
+            if (completed) {
+                // Applying the transfer to both models.
+
+                exact[from] -= cents;
+                exact[to] += cents;
+
+                double amount = AccountUtils.fromCents(cents);
+                drifting[from] -= amount;
+                drifting[to] += amount;
+            } else {
+                refused++;
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        // Stopping the timer.
+
+        double maxDriftCents = 0;
+        // Tracking the largest difference between the double model and the exact balance.
+
+        long exactTotal = 0;
+        double doubleTotal = 0;
+        // Summing both models.
+
+        for (int id = 0; id < accountCount; id++) {
+            // Checking every balance.
+
+            long balance = system.getAccount(id).peekBalanceCents();
+            // Reading the system's balance.
+
+            if (balance != exact[id]) {
+                throw new IllegalStateException("Account " + id + " holds " + AccountUtils.formatCents(balance)
+                        + ", expected " + AccountUtils.formatCents(exact[id]));
+            }
+
+            maxDriftCents = Math.max(maxDriftCents, Math.abs(drifting[id] * 100.0 - exact[id]));
+            exactTotal += exact[id];
+            doubleTotal += drifting[id];
+            // Measuring the drift and adding to the totals.
+        }
+
+        if (system.getTotalBalanceCents() != exactTotal) {
+            // Checking the consistent total matches the model.
+
+            throw new IllegalStateException("Total " + AccountUtils.formatCents(system.getTotalBalanceCents())
+                    + ", expected " + AccountUtils.formatCents(exactTotal));
+        }
+
+        System.out.printf("Sequential: %d transfers (%d refused) in %.2f s, %.0f transfers/s; every balance exact%n",
+                transfers, refused, seconds, transfers / seconds);
+        System.out.printf("  double model: largest balance drift %.2e cents, total off by %.2e cents "
+                + "(%d of %d balances no longer whole cents)%n",
+                maxDriftCents, Math.abs(doubleTotal * 100.0 - exactTotal), countFractional(drifting),
+                accountCount);
+        // Printing the result and how far the old double arithmetic wandered.
+    }
+
+    private static int countFractional(double[] balances) {
+        // Method to count the double balances that are no longer an exact number of cents.
+
+        int count = 0;
+
+        for (double balance : balances) {
+            if (AccountUtils.fromCents(AccountUtils.toCents(balance)) != balance) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private static void runThreaded(int transfers, int accountCount, int threads) throws InterruptedException {
+        // Method to run transfers from several threads and check every balance against the merged changes.
+
+        long[] initial = new long[accountCount];
+        // Declaring the starting balances; kept small so many transfers are refused and the race is real.
+
+        for (int id = 0; id < accountCount; id++) {
+            initial[id] = 10_000 + id;
+        }
+
+        TransactionSystem system = newSystem(initial);
+        // Creating the system under test.
+
+        long[][] changes = new long[threads][accountCount];
+        // Declaring each thread's record of the money it moved in and out of every account.
+
+        Thread[] workers = new Thread[threads];
+        // Declaring the worker threads.
+
+        long start = System.nanoTime();
+        // Starting the timer.
+
+        for (int t = 0; t < threads; t++) {
+            // Starting each worker.
+
+            long[] mine = changes[t];
+            SplittableRandom random = new SplittableRandom(150 + t);
+            int count = transfers / threads;
+            // Giving the worker its own change array, random source and share of the transfers.
+
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < count; i++) {
+                    int from = random.nextInt(accountCount);
+                    int to = (from + 1 + random.nextInt(accountCount - 1)) % accountCount;
+                    long cents = 1 + random.nextInt(9_999);
+                    // Choosing a transfer of $0.01 to $99.99 between two distinct accounts.
+
+                    if (system.transferCents(from, to, cents, 0)) {
+                        // Recording only the money that actually moved.
+
+                        mine[from] -= cents;
+                        mine[to] += cents;
+                    }
+                }
+            });
+
+            workers[t].start();
+        }
+
+        for (Thread worker : workers) {
+            worker.join();
+            // Waiting for every worker.
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        // Stopping the timer.
+
+        for (int id = 0; id < accountCount; id++) {
+            // Checking every balance against its start plus the merged changes.
+
+            long expected = initial[id];
+
+            for (long[] threadChanges : changes) {
+                expected += threadChanges[id];
+            }
+
+            long balance = system.getAccount(id).peekBalanceCents();
+
+            if (balance != expected) {
+                throw new IllegalStateException("Account " + id + " holds " + AccountUtils.formatCents(balance)
+                        + ", expected " + AccountUtils.formatCents(expected));
+            }
+        }
+
+        System.out.printf("Threaded: %d transfers on %d threads in %.2f s, %.0f transfers/s; every balance exact%n",
+                transfers / threads * threads, threads, seconds, transfers / threads * threads / seconds);
+        // Printing the result.
+    }
+
+    private static TransactionSystem newSystem(long[] initialCents) {
+        // Method to create a system with the given starting balances.
+
+        List<BankAccount> accounts = new ArrayList<>(initialCents.length);
+        // Creating the account list.
+
+        for (int id = 0; id < initialCents.length; id++) {
+            accounts.add(new BankAccount(id, AccountUtils.fromCents(initialCents[id])));
+            // The dollar constructor rounds back to the same whole cents.
+        }
+
+        return new TransactionSystem(accounts);
+    }
+}
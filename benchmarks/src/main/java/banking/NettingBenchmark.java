@@ -0,0 +1,154 @@
+package banking;
+
+import java.util.ArrayList;
+// Importing the ArrayList class to build the account list.
+
+import java.util.Arrays;
+// Importing the Arrays class to print the overdrawn accounts.
+
+import java.util.List;
+// Importing the List interface for the accounts.
+
+import java.util.Random;
+// Importing the Random class to generate the settlement file.
+
+public class NettingBenchmark {
+    // Defining a benchmark that settles a large transfer file through NettingEngine and compares it with
+    // running records one by one through TransactionSystem.transfer. It checks every final balance in
+    // cents against a plain sequential netting of the same file, and that an overdrawing file changes nothing.
+    // Usage: NettingBenchmark [records] [accounts] [parallelism]; 10M records needs about -Xmx2g.
+
+    public static void main(String[] args) {
+        // Main method to run the netting benchmark.
+
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        // Reading the file size, defaulting to ten million records.
+
+        int accountCount = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        // Reading the number of accounts, defaulting to 100k.
+
+        int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        // Reading the fork/join parallelism, defaulting to one per core.
+
+        EventLog.setLevel(LogLevel.OFF);
+        // Keeping logging out of the measurement.
+
+        Random random = new Random(11);
+        // Using a fixed seed.
+
+        int[] from = new int[records];
+        int[] to = new int[records];
+        long[] cents = new long[records];
+        // Declaring the file as columns.
+
+        for (int i = 0; i < records; i++) {
+            // Generating each record between two distinct accounts, of $1.00 to $500.99.
+
+            from[i] = random.nextInt(accountCount);
+            to[i] = (from[i] + 1 + random.nextInt(accountCount - 1)) % accountCount;
+            cents[i] = 100 + random.nextInt(50_000);
+        }
+
+        System.out.println("Settlement file: " + records + " records over " + accountCount
+                + " accounts, parallelism " + parallelism);
+        // Printing the benchmark description.
+
+        int sample = Math.min(records, 1_000_000);
+        // Running only a sample one by one, since the whole file would take far longer.
+
+        TransactionSystem oneByOne = newSystem(accountCount);
+        // Creating the system for the one-by-one run.
+
+        long start = System.nanoTime();
+        // Starting the one-by-one timer.
+
+        for (int i = 0; i < sample; i++) {
+            // Transferring each sampled record.
+
+            oneByOne.transferCents(from[i], to[i], cents[i], 0);
+        }
+
+        double transferRate = sample * 1e9 / (System.nanoTime() - start);
+        // Computing the one-by-one rate.
+
+        TransactionSystem netted = newSystem(accountCount);
+        // Creating the system for the netted run.
+
+        long initialCents = netted.getTotalBalanceCents();
+        // Recording the money before settlement.
+
+        NettingEngine engine = new NettingEngine(netted, parallelism);
+        // Creating the engine.
+
+        NettingEngine.Result result = engine.settle(from, to, cents, records);
+        // Settling the whole file.
+
+        double seconds = (result.getNettingNanos() + result.getApplyNanos()) / 1e9;
+        // Computing the settlement time.
+
+        System.out.printf("%-14s %14s %12s%n", "mode", "records/sec", "10M file");
+        System.out.printf("%-14s %14.0f %10.1f s%n", "transfer", transferRate, 10_000_000 / transferRate);
+        System.out.printf("%-14s %14.0f %10.1f s%n", "netting", records / seconds, 10_000_000 / (records / seconds));
+        System.out.printf("Netting %.2f s, applying %d net changes %.2f s%n", result.getNettingNanos() / 1e9,
+                result.getAccountsChanged(), result.getApplyNanos() / 1e9);
+        // Printing the rates and the time a 10M-record file takes each way.
+
+        long[] expected = new long[accountCount];
+        // Netting the file again sequentially to check the result.
+
+        for (int id = 0; id < accountCount; id++) {
+            expected[id] = 1_000_000_00L;
+            // Every account opened with $1,000,000.00.
+        }
+
+        for (int i = 0; i < records; i++) {
+            expected[from[i]] -= cents[i];
+            expected[to[i]] += cents[i];
+        }
+
+        int mismatches = 0;
+        // Counting accounts that differ.
+
+        for (int id = 0; id < accountCount; id++) {
+            if (AccountUtils.toCents(netted.getAccount(id).peekBalance()) != expected[id]) {
+                mismatches++;
+            }
+        }
+
+        System.out.println("Applied: " + result.isApplied() + ", balances matching the sequential netting: "
+                + (accountCount - mismatches) + " of " + accountCount + ", money "
+                + (netted.getTotalBalanceCents() == initialCents ? "conserved" : "NOT conserved"));
+        // Printing the correctness check.
+
+        long before = netted.getTotalBalanceCents();
+        // Recording the state before a file that overdraws account 0.
+
+        double account0 = netted.getAccount(0).peekBalance();
+        // Recording account 0's balance.
+
+        NettingEngine.Result refused = engine.settle(new int[] {0, 2}, new int[] {1, 0},
+                new long[] {AccountUtils.toCents(account0) + 100, 50}, 2);
+        // Settling a file whose net debit on account 0 exceeds its balance by 50 cents.
+
+        System.out.println("Overdrawing file applied: " + refused.isApplied() + ", overdrawn accounts: "
+                + Arrays.toString(refused.getOverdrawnAccountIds()) + ", balances unchanged: "
+                + (netted.getTotalBalanceCents() == before && netted.getAccount(0).peekBalance() == account0));
+        // Printing the overdraft check.
+
+        engine.shutdown();
+        // Stopping the pool.
+    }
+
+    private static TransactionSystem newSystem(int accountCount) {
+        // Method to create a system where every account holds $1,000,000.00.
+
+        List<BankAccount> accounts = new ArrayList<>(accountCount);
+        // Creating the account list.
+
+        for (int id = 0; id < accountCount; id++) {
+            accounts.add(new BankAccount(id, 1_000_000.0));
+        }
+
+        return new TransactionSystem(accounts);
+    }
+}
@@ -0,0 +1,242 @@
+package banking;
+
+import java.io.IOException;
+// Importing the IOException class for failures while writing or recovering the journal.
+
+import java.nio.file.Files;
+// Importing the Files class to create the journal directory.
+
+import java.nio.file.Path;
+// Importing the Path class for the journal directory.
+
+import java.util.ArrayList;
+// Importing the ArrayList class to build the account list.
+
+import java.util.Arrays;
+// Importing the Arrays class to compare the recovered balances.
+
+import java.util.List;
+// Importing the List interface for the accounts.
+
+import java.util.concurrent.ThreadLocalRandom;
+// Importing the ThreadLocalRandom class so each thread picks its payments without sharing a Random.
+
+import java.util.concurrent.TimeUnit;
+// Importing the TimeUnit class for the bounded postings.
+
+public class PostingBenchmark {
+    // Defining a benchmark of three-leg card payments: the payer is debited the amount plus a fee, the
+    // merchant is credited the amount and a fee-collection account is credited the fee. Each payment runs
+    // as one of:
+    //   chained - two plain transfers, payer to merchant then payer to fee account; four lock
+    //             acquisitions, and a refused second leg leaves the first one applied;
+    //   post    - one atomic Posting with its three locks taken in ID order;
+    //   tryPost - the same Posting taking its locks with tryLock and a randomized back-off.
+    // Every mode runs with the fee credited to one of many fee accounts ("spread"), so postings rarely
+    // overlap, and to a single house account ("hot"), so every posting overlaps on it. Money must be
+    // conserved after every run. Before measuring, a journaled run with a torn last posting is recovered
+    // and must come back with every completed posting and nothing of the torn one.
+    // Usage: PostingBenchmark [durationMillis] [threads,threads,...]
+
+    private static final int ACCOUNTS = 10_000;
+    // Number of payer and merchant accounts.
+
+    private static final int FEE_ACCOUNTS = 1_000;
+    // Number of fee accounts in the spread workload; their IDs follow the other accounts.
+
+    private static final long AMOUNT_CENTS = 1_000;
+    private static final long FEE_CENTS = 30;
+    // Every payment is $10.00 with a $0.30 fee.
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        // Main method to run every mode and workload at each thread count.
+
+        long durationMillis = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+        // Reading the measurement time per data point, defaulting to two seconds.
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        // Counting the cores, for the default thread counts.
+
+        String threadList = args.length > 1 ? args[1] : 1 + "," + cores + "," + 4 * cores;
+        // Reading the thread counts, defaulting to one thread, one per core and four per core.
+
+        EventLog.setLevel(LogLevel.OFF);
+        // Keeping logging out of the measurement.
+
+        checkAllOrNothing();
+        // Making sure a refused posting changes nothing before measuring anything.
+
+        checkRecovery();
+        // Making sure recovery never applies part of a posting.
+
+        for (String mode : new String[] {"chained", "post", "tryPost"}) {
+            // Warming up every mode so the first data point is not measuring the compiler.
+
+            run(mode, "spread", 1, durationMillis / 2);
+        }
+
+        System.out.println(ACCOUNTS + " accounts, " + cores + " cores, three-leg payments/sec");
+        // Printing the benchmark description.
+
+        System.out.printf("%-8s %8s %14s %14s %14s%n", "fees", "threads", "chained", "post", "tryPost");
+        // Printing the table header.
+
+        for (String workload : new String[] {"spread", "hot"}) {
+            // Measuring each fee-account choice.
+
+            for (String count : threadList.split(",")) {
+                // Measuring each thread count.
+
+                int threads = Integer.parseInt(count.trim());
+
+                System.out.printf("%-8s %8d %14.0f %14.0f %14.0f%n", workload, threads,
+                        run("chained", workload, threads, durationMillis),
+                        run("post", workload, threads, durationMillis),
+                        run("tryPost", workload, threads, durationMillis));
+                // Printing the three modes side by side.
+            }
+        }
+    }
+
+    private static double run(String mode, String workload, int threads, long durationMillis)
+            throws InterruptedException {
+        // Method to measure one mode with fresh accounts and check money was conserved.
+
+        TransactionSystem system = newSystem();
+        // Creating fresh accounts for the run.
+
+        long before = system.getTotalBalanceCents();
+        // Recording the money before the run.
+
+        boolean hot = workload.equals("hot");
+        // Choosing where the fees go.
+
+        double throughput = BenchmarkSupport.measureThroughput(threads, durationMillis, () -> {
+            // Each operation makes one payment between two distinct random accounts.
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int payer = random.nextInt(ACCOUNTS);
+            int merchant = (payer + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+            int fees = hot ? ACCOUNTS : ACCOUNTS + random.nextInt(FEE_ACCOUNTS);
+            // Picking the payer, the merchant and the fee account.
+
+            try {
+                if (mode.equals("chained")) {
+                    // Two separate transfers.
+
+                    if (system.transferCents(payer, merchant, AMOUNT_CENTS, 0)) {
+                        system.transferCents(payer, fees, FEE_CENTS, 0);
+                    }
+                } else {
+                    Posting payment = Posting.withFee(payer, merchant, AMOUNT_CENTS, fees, FEE_CENTS);
+                    // One posting of all three legs.
+
+                    if (mode.equals("post")) {
+                        system.post(payment);
+                    } else {
+                        system.tryPost(payment, 1, TimeUnit.SECONDS);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // Re-interrupt the current thread.
+            }
+        });
+
+        if (system.getTotalBalanceCents() != before) {
+            // Checking that no leg was lost or applied twice.
+
+            throw new IllegalStateException(mode + "/" + workload + ": money not conserved, "
+                    + AccountUtils.formatCents(before) + " before, "
+                    + AccountUtils.formatCents(system.getTotalBalanceCents()) + " after");
+        }
+
+        return throughput;
+    }
+
+    private static void checkAllOrNothing() throws InterruptedException {
+        // Method to check that a posting one of whose debits cannot be covered changes no balance.
+
+        TransactionSystem system = newSystem();
+        // Creating fresh accounts.
+
+        long payer = system.getAccount(0).peekBalanceCents();
+        long merchant = system.getAccount(1).peekBalanceCents();
+        long fees = system.getAccount(ACCOUNTS).peekBalanceCents();
+        // Recording the balances of the three accounts.
+
+        Posting overdrawing = Posting.withFee(0, 1, payer, ACCOUNTS, FEE_CENTS);
+        // Paying the payer's whole balance, which leaves nothing for the fee.
+
+        TransferResult blocking = system.post(overdrawing);
+        TransferResult bounded = system.tryPost(overdrawing, 1, TimeUnit.SECONDS);
+        // Applying it both ways.
+
+        if (blocking != TransferResult.INSUFFICIENT_FUNDS || bounded != TransferResult.INSUFFICIENT_FUNDS
+                || system.getAccount(0).peekBalanceCents() != payer
+                || system.getAccount(1).peekBalanceCents() != merchant
+                || system.getAccount(ACCOUNTS).peekBalanceCents() != fees) {
+            // Every balance must be as it was.
+
+            throw new IllegalStateException("Overdrawing posting was partly applied: " + blocking + ", " + bounded);
+        }
+
+        System.out.println("Overdrawing " + overdrawing + ": " + blocking + ", balances unchanged");
+        // Reporting the check.
+    }
+
+    private static void checkRecovery() throws IOException {
+        // Method to journal some postings, tear the last one as a crash between its leg records would,
+        // and check the recovered balances are exactly those of the completed postings.
+
+        Path directory = Files.createTempDirectory("posting-journal");
+        // Creating a journal directory for the check.
+
+        TransactionJournal journal = TransactionJournal.open(directory, FsyncPolicy.OS_MANAGED);
+        TransactionSystem system = new TransactionSystem(List.of(new BankAccount(0, 100.0),
+                new BankAccount(1, 100.0), new BankAccount(2, 100.0)), journal);
+        // Creating a payer, a merchant and a fee account.
+
+        for (int i = 0; i < 3; i++) {
+            system.post(Posting.withFee(0, 1, 1_000, 2, 30));
+            // Paying $10.00 with a $0.30 fee, three times.
+        }
+
+        long[] expected = system.getBalancesCents(0, 1, 2);
+        // Recording the balances the completed postings leave.
+
+        journal.append(TransactionJournal.BEGIN, 0, 0, 3);
+        journal.append(TransactionJournal.WITHDRAW, 0, 0, 1_030);
+        journal.append(TransactionJournal.DEPOSIT, 1, 0, 1_000);
+        journal.close();
+        // Writing the first two legs of another posting and stopping, as a crash before its COMMIT would.
+
+        TransactionJournal reopened = TransactionJournal.open(directory, FsyncPolicy.OS_MANAGED);
+        long[] recovered = TransactionSystem.recover(reopened).getBalancesCents(0, 1, 2);
+        reopened.close();
+        // Rebuilding the balances from the journal.
+
+        if (!Arrays.equals(recovered, expected)) {
+            // The torn posting must be left out entirely.
+
+            throw new IllegalStateException("Recovery applied part of a torn posting: "
+                    + Arrays.toString(recovered) + " instead of " + Arrays.toString(expected));
+        }
+
+        System.out.println("Posting torn before its commit: recovered balances match the completed postings");
+        // Reporting the check.
+    }
+
+    private static TransactionSystem newSystem() {
+        // Method to create the payers and merchants, then the fee accounts, each holding $1,000,000.00.
+
+        List<BankAccount> accounts = new ArrayList<>(ACCOUNTS + FEE_ACCOUNTS);
+        // Creating the account list.
+
+        for (int id = 0; id < ACCOUNTS + FEE_ACCOUNTS; id++) {
+            accounts.add(new BankAccount(id, 1_000_000.0));
+        }
+
+        return new TransactionSystem(accounts);
+    }
+}
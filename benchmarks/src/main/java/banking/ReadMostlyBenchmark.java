@@ -0,0 +1,209 @@
+package banking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+// Importing the collections, the per-thread random source and the read-write lock of the baseline.
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+// Importing the JMH annotations.
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadMostlyBenchmark {
+    // Defining a 95% read / 5% write benchmark comparing the optimistic reads of BankAccount and
+    // TransactionSystem with the previous design, where every read took a fair ReentrantReadWriteLock.
+    //   singleAccount - 95% single balance reads, 5% deposits.
+    //   multiAccount  - 95% consistent reads of every balance, 5% transfers between two of the accounts.
+    // Run with several threads (-t 4) so readers and writers actually overlap.
+
+    @Param({"READ_WRITE_LOCK", "OPTIMISTIC"})
+    public String mode;
+    // Declaring which read path to measure.
+
+    @Param({"16"})
+    public int accountCount;
+    // Declaring how many accounts are read and written.
+
+    private static final int READ_PERCENT = 95;
+    // Percentage of operations that are reads.
+
+    private ReadWriteLockedAccount[] lockedAccounts;
+    // Declaring the baseline accounts.
+
+    private TransactionSystem system;
+    // Declaring the transaction system holding the optimistic accounts.
+
+    private int[] ids;
+    // Declaring the IDs read by the multi-account benchmark.
+
+    static final class ReadWriteLockedAccount {
+        // Defining the previous account design: a fair read-write lock around a plain balance.
+
+        final int id;
+        double balance;
+        final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock(true);
+        // The account ID, balance and fair read-write lock.
+
+        ReadWriteLockedAccount(int id, double balance) {
+            this.id = id;
+            this.balance = balance;
+        }
+
+        double getBalance() {
+            // Reading the balance under the read lock, as BankAccount.getBalance used to.
+
+            readWriteLock.readLock().lock();
+            try {
+                return balance;
+            } finally {
+                readWriteLock.readLock().unlock();
+            }
+        }
+
+        void deposit(double amount) {
+            // Changing the balance under the write lock.
+
+            readWriteLock.writeLock().lock();
+            try {
+                balance += amount;
+            } finally {
+                readWriteLock.writeLock().unlock();
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Method to create both sets of accounts.
+
+        EventLog.setLevel(LogLevel.OFF);
+        // Keeping logging out of the measurement.
+
+        lockedAccounts = new ReadWriteLockedAccount[accountCount];
+        List<BankAccount> accounts = new ArrayList<>();
+        ids = new int[accountCount];
+        // Allocating the accounts and the ID list.
+
+        for (int i = 0; i < accountCount; i++) {
+            // Creating each account with a balance large enough that transfers keep succeeding.
+
+            lockedAccounts[i] = new ReadWriteLockedAccount(i, 1_000_000_000.0);
+            accounts.add(new BankAccount(i, 1_000_000_000.0));
+            ids[i] = i;
+        }
+
+        system = new TransactionSystem(accounts);
+        // Creating the transaction system without a journal.
+    }
+
+    @Benchmark
+    public double singleAccount() {
+        // Method to measure one operation of the single-account mix.
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // Using the caller's own random source.
+
+        int id = random.nextInt(accountCount);
+        // Choosing the account.
+
+        boolean read = random.nextInt(100) < READ_PERCENT;
+        // Choosing between a read and a write.
+
+        if ("OPTIMISTIC".equals(mode)) {
+            // Measuring the current account.
+
+            BankAccount account = system.getAccount(id);
+
+            if (read) {
+                return account.getBalance();
+            }
+
+            account.deposit(0.01);
+            return 0;
+        }
+
+        if (read) {
+            return lockedAccounts[id].getBalance();
+        }
+
+        lockedAccounts[id].deposit(0.01);
+        return 0;
+    }
+
+    @Benchmark
+    public double multiAccount() {
+        // Method to measure one operation of the multi-account mix.
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // Using the caller's own random source.
+
+        if (random.nextInt(100) < READ_PERCENT) {
+            // Reading every balance as one consistent view.
+
+            if ("OPTIMISTIC".equals(mode)) {
+                double[] balances = system.getBalances(ids);
+                return balances[0] + balances[balances.length - 1];
+                // Validating stamps instead of locking.
+            }
+
+            for (ReadWriteLockedAccount account : lockedAccounts) {
+                account.readWriteLock.readLock().lock();
+                // Read-locking every account in ID order, so no transfer can run between two reads.
+            }
+
+            try {
+                double total = 0;
+                for (ReadWriteLockedAccount account : lockedAccounts) {
+                    total += account.balance;
+                }
+                return total;
+            } finally {
+                for (int i = lockedAccounts.length - 1; i >= 0; i--) {
+                    lockedAccounts[i].readWriteLock.readLock().unlock();
+                }
+            }
+        }
+
+        int from = random.nextInt(accountCount);
+        int to = (from + 1 + random.nextInt(accountCount - 1)) % accountCount;
+        // Choosing two distinct accounts.
+
+        if ("OPTIMISTIC".equals(mode)) {
+            return system.transfer(from, to, 0.01, 0) ? 1 : 0;
+            // Transferring through the transaction system.
+        }
+
+        ReadWriteLockedAccount first = lockedAccounts[Math.min(from, to)];
+        ReadWriteLockedAccount second = lockedAccounts[Math.max(from, to)];
+        // Ordering the pair by ID so write-locking cannot deadlock with the readers.
+
+        first.readWriteLock.writeLock().lock();
+        second.readWriteLock.writeLock().lock();
+        try {
+            lockedAccounts[from].balance -= 0.01;
+            lockedAccounts[to].balance += 0.01;
+            return 1;
+        } finally {
+            second.readWriteLock.writeLock().unlock();
+            first.readWriteLock.writeLock().unlock();
+        }
+    }
+}
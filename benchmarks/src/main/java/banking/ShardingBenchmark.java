@@ -0,0 +1,186 @@
+package banking;
+
+import java.io.PrintStream;
+// Importing the PrintStream class to hold the real console while transfers are measured.
+
+import java.util.ArrayList;
+// Importing the ArrayList class to build the account list.
+
+import java.util.List;
+// Importing the List interface for the accounts.
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+// Importing the ConcurrentLinkedQueue class to collect every caller's window for the final drain.
+
+import java.util.concurrent.Semaphore;
+// Importing the Semaphore class to cap the number of asynchronous transfers each caller has in flight.
+
+import java.util.concurrent.ThreadLocalRandom;
+// Importing the ThreadLocalRandom class so caller threads pick accounts without sharing a Random.
+
+import java.util.function.IntSupplier;
+// Importing the IntSupplier interface for the account-ID distributions.
+
+public class ShardingBenchmark {
+    // Defining a harness that compares the lock-ordered TransactionSystem with ShardedTransactionSystem
+    // for uniform and Zipfian choices of source and destination accounts.
+
+    private static final int ACCOUNTS = 10_000;
+    // Number of accounts in each run.
+
+    private static final int WINDOW = 256;
+    // Maximum asynchronous transfers each caller keeps in flight against the sharded system.
+
+    public static void main(String[] args) throws InterruptedException {
+        // Main method to run the comparison.
+
+        long durationMillis = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+        // Reading the measurement time per data point, defaulting to two seconds.
+
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        // Reading the number of caller threads, defaulting to one per core.
+
+        int shards = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        // Reading the number of shards, defaulting to one per core.
+
+        ZipfianGenerator zipf = new ZipfianGenerator(ACCOUNTS, 0.99);
+        // Creating the skewed distribution shared by all threads.
+
+        IntSupplier uniform = () -> 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS);
+        // Uniform account choice.
+
+        IntSupplier zipfian = () -> 1 + zipf.next(ThreadLocalRandom.current());
+        // Zipfian account choice, where account 1 is the hottest.
+
+        System.out.println(ACCOUNTS + " accounts, " + threads + " callers, " + shards + " shards, transfers/sec");
+        // Printing the benchmark description.
+
+        System.out.printf("%-10s %16s %16s%n", "workload", "lock-ordered", "sharded");
+        // Printing the table header.
+
+        for (String workload : new String[] {"uniform", "zipfian"}) {
+            // Measuring each distribution.
+
+            IntSupplier pick = workload.equals("uniform") ? uniform : zipfian;
+            // Selecting the account distribution.
+
+            double locked = runLockOrdered(pick, threads, durationMillis);
+            // Measuring the lock-ordered path.
+
+            double sharded = runSharded(pick, threads, shards, durationMillis);
+            // Measuring the sharded path.
+
+            System.out.printf("%-10s %16.0f %16.0f%n", workload, locked, sharded);
+            // Printing both results.
+        }
+    }
+
+    private static double runLockOrdered(IntSupplier pick, int threads, long durationMillis)
+            throws InterruptedException {
+        // Method to measure TransactionSystem.transfer from several threads.
+
+        TransactionSystem system = new TransactionSystem(createAccounts());
+        // Creating fresh accounts for the run.
+
+        PrintStream console = BenchmarkSupport.silenceStdout();
+        // Silencing the per-operation messages printed by TransactionSystem and BankAccount.
+
+        try {
+            return BenchmarkSupport.measureThroughput(threads, durationMillis,
+                    () -> system.transfer(pick.getAsInt(), pick.getAsInt(), 1.00, 0));
+            // Thread number 0 is not part of the demo's latch ordering, so it never waits.
+        } finally {
+            BenchmarkSupport.restoreStdout(console);
+            // Restoring the console for the results.
+        }
+    }
+
+    private static double runSharded(IntSupplier pick, int threads, int shardCount, long durationMillis)
+            throws InterruptedException {
+        // Method to measure ShardedTransactionSystem with pipelined asynchronous transfers.
+
+        PrintStream console = BenchmarkSupport.silenceStdout();
+        // Silencing the balance messages printed while the starting balances are copied.
+
+        ShardedTransactionSystem system;
+        // The sharded system under test.
+
+        try {
+            system = new ShardedTransactionSystem(createAccounts(), shardCount);
+            // Creating fresh accounts for the run.
+        } finally {
+            BenchmarkSupport.restoreStdout(console);
+            // Restoring the console.
+        }
+
+        long before = system.getTotalBalanceCents();
+        // Recording the total money before the run.
+
+        ConcurrentLinkedQueue<Semaphore> windows = new ConcurrentLinkedQueue<>();
+        // Collecting every caller's window so the run can wait for all transfers in flight.
+
+        ThreadLocal<Semaphore> window = ThreadLocal.withInitial(() -> {
+            // Giving each caller its own in-flight limit.
+
+            Semaphore permits = new Semaphore(WINDOW);
+            // Creating the caller's window.
+
+            windows.add(permits);
+            // Registering it for the final drain.
+
+            return permits;
+        });
+
+        double throughput = BenchmarkSupport.measureThroughput(threads, durationMillis, () -> {
+            // Each operation starts one transfer once the caller has room in its window.
+
+            Semaphore permits = window.get();
+            // The caller's window.
+
+            permits.acquireUninterruptibly();
+            // Waiting for one of the caller's earlier transfers to finish if the window is full.
+
+            system.transferAsync(pick.getAsInt(), pick.getAsInt(), 1.00).whenComplete((ok, error) -> permits.release());
+            // Starting the transfer and freeing the window slot when it completes.
+        });
+
+        long during = system.getTotalBalanceCents();
+        // Taking the total while the last transfers are still in flight, which the barrier makes exact.
+
+        for (Semaphore permits : windows) {
+            // Waiting until every transfer still in flight has completed.
+
+            permits.acquireUninterruptibly(WINDOW);
+        }
+
+        long after = system.getTotalBalanceCents();
+        // Recording the total money after the run.
+
+        system.shutdown();
+        // Stopping the shard threads.
+
+        if (during != before || after != before) {
+            // Checking that the two-phase protocol neither created nor lost money, even mid-flight.
+
+            throw new IllegalStateException("Money not conserved: " + AccountUtils.formatCents(before) + " before, "
+                    + AccountUtils.formatCents(during) + " in flight, " + AccountUtils.formatCents(after) + " after");
+        }
+
+        return throughput;
+    }
+
+    private static List<BankAccount> createAccounts() {
+        // Method to create the benchmark accounts with balances large enough that transfers rarely fail.
+
+        List<BankAccount> accounts = new ArrayList<>(ACCOUNTS);
+        // Creating the account list.
+
+        for (int id = 1; id <= ACCOUNTS; id++) {
+            // Creating every account.
+
+            accounts.add(new BankAccount(id, 1_000_000.0));
+        }
+
+        return accounts;
+    }
+}
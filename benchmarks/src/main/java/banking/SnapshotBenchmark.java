@@ -0,0 +1,219 @@
+package banking;
+
+import java.io.IOException;
+// Importing the IOException class for snapshot and journal file failures.
+
+import java.nio.file.Files;
+// Importing the Files class to create and delete the temporary directory.
+
+import java.nio.file.Path;
+// Importing the Path class for the snapshot and journal directory.
+
+import java.util.ArrayList;
+// Importing the ArrayList class for the accounts and the transfer threads.
+
+import java.util.Comparator;
+// Importing the Comparator interface to delete directory contents before the directory itself.
+
+import java.util.List;
+// Importing the List interface for the accounts and the transfer threads.
+
+import java.util.concurrent.ThreadLocalRandom;
+// Importing the ThreadLocalRandom class to pick the transfers each thread makes.
+
+import java.util.concurrent.atomic.AtomicBoolean;
+// Importing the AtomicBoolean class to stop the transfer threads.
+
+import java.util.concurrent.atomic.LongAdder;
+// Importing the LongAdder class to count the transfers applied.
+
+import java.util.stream.Stream;
+// Importing the Stream interface to walk a directory for deletion.
+
+public class SnapshotBenchmark {
+    // Defining a benchmark for the two halves of snapshotting on a journaled TransactionSystem.
+    // First, takeSnapshot() runs while transfer threads keep going, and the time it takes and the transfers
+    // applied during it are printed. Then the journal is reopened and TransactionSystem.recover() is timed
+    // end to end: loading the snapshot, replaying the journal tail written after it, and creating one
+    // BankAccount per account. No target is checked; the times are printed for comparison between runs.
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // Main method to run the snapshot benchmark.
+
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        // Reading the number of accounts, defaulting to 1M.
+
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        // Reading the number of transfer threads, defaulting to 4.
+
+        long tailMillis = args.length > 2 ? Long.parseLong(args[2]) : 2_000;
+        // Reading how long transfers keep running after the snapshot, to give recovery a tail to replay.
+
+        EventLog.setLevel(LogLevel.OFF);
+        // Keeping the per-transfer events out of the measurement.
+
+        Path directory = Files.createTempDirectory("snapshot-bench");
+        // Creating an empty directory for the journal and snapshot.
+
+        try {
+            long[] expected = runAndSnapshot(directory, accounts, threads, tailMillis);
+            // Taking a snapshot under load and leaving a journal tail behind it.
+
+            timeRecovery(directory, accounts, expected);
+            // Starting cold from the snapshot and the tail.
+        } finally {
+            delete(directory);
+            // Removing the files.
+        }
+    }
+
+    private static long[] runAndSnapshot(Path directory, int accounts, int threads, long tailMillis)
+            throws IOException, InterruptedException {
+        // Method to open the accounts in a journaled system, take a snapshot while transfers run, and keep
+        // transferring for a while afterwards; returns the final balances in cents by account ID.
+
+        List<BankAccount> accountList = new ArrayList<>(accounts);
+        // The accounts to open.
+
+        for (int id = 1; id <= accounts; id++) {
+            // Giving every account $1000.
+
+            accountList.add(new BankAccount(id, 100_000L));
+        }
+
+        try (TransactionJournal journal = TransactionJournal.open(directory, FsyncPolicy.OS_MANAGED)) {
+            // Creating the journal.
+
+            long start = System.nanoTime();
+            // Recording the start of the openings.
+
+            TransactionSystem system = new TransactionSystem(accountList, journal);
+            // Journaling every opening.
+
+            System.out.printf("Opening %d accounts: %.0f ms%n", accounts, (System.nanoTime() - start) / 1e6);
+            // Printing how long the openings took.
+
+            AtomicBoolean stop = new AtomicBoolean();
+            // Set to stop the transfer threads.
+
+            LongAdder applied = new LongAdder();
+            // The transfers applied so far.
+
+            List<Thread> workers = new ArrayList<>(threads);
+            // The transfer threads.
+
+            for (int t = 0; t < threads; t++) {
+                // Starting each transfer thread.
+
+                int threadNumber = t;
+
+                Thread worker = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+
+                    while (!stop.get()) {
+                        // Moving a small amount between two random accounts until told to stop.
+
+                        if (system.transferCents(1 + random.nextInt(accounts), 1 + random.nextInt(accounts),
+                                1 + random.nextInt(10_000), threadNumber)) {
+                            applied.increment();
+                        }
+                    }
+                }, "snapshot-bench-" + t);
+
+                worker.start();
+                workers.add(worker);
+            }
+
+            try {
+                Thread.sleep(500);
+                // Letting the transfers reach a steady rate before the snapshot starts.
+
+                long before = applied.sum();
+                long snapshotStart = System.nanoTime();
+                // Recording the transfers applied and the time when the snapshot starts.
+
+                system.takeSnapshot();
+                // Writing the snapshot while the transfers continue.
+
+                long snapshotNanos = System.nanoTime() - snapshotStart;
+                long during = applied.sum() - before;
+                // The snapshot's time and the transfers applied while it ran.
+
+                System.out.printf("Snapshot of %d accounts under load: %.0f ms, %d transfers applied meanwhile "
+                        + "(%.0f per second)%n", accounts, snapshotNanos / 1e6, during, during / (snapshotNanos / 1e9));
+                // Printing the snapshot time and the throughput it left the transfers.
+
+                Thread.sleep(tailMillis);
+                // Keeping the transfers going to write a journal tail after the snapshot.
+            } finally {
+                stop.set(true);
+
+                for (Thread worker : workers) {
+                    worker.join();
+                }
+            }
+
+            System.out.printf("Transfers applied in total: %d%n", applied.sum());
+            // Printing how much journal was written.
+
+            long[] expected = new long[accounts + 1];
+            // The balances recovery must give back.
+
+            for (int id = 1; id <= accounts; id++) {
+                expected[id] = system.getAccount(id).peekBalanceCents();
+            }
+
+            return expected;
+        }
+    }
+
+    private static void timeRecovery(Path directory, int accounts, long[] expected) throws IOException {
+        // Method to reopen the journal, time TransactionSystem.recover() end to end, and check the result.
+
+        long start = System.nanoTime();
+        // Recording the start of the cold start.
+
+        try (TransactionJournal journal = TransactionJournal.open(directory, FsyncPolicy.OS_MANAGED)) {
+            // Reopening the journal.
+
+            long opened = System.nanoTime();
+            // Recording when the journal was open.
+
+            TransactionSystem recovered = TransactionSystem.recover(journal);
+            // Loading the snapshot, replaying the tail and creating the accounts.
+
+            long done = System.nanoTime();
+            // Recording when the recovered system was ready.
+
+            for (int id = 1; id <= accounts; id++) {
+                // Checking every account came back with the balance it had.
+
+                BankAccount account = recovered.getAccount(id);
+
+                if (account == null || account.peekBalanceCents() != expected[id]) {
+                    throw new IllegalStateException("Recovered balance of account " + id
+                            + " does not match what was written");
+                }
+            }
+
+            System.out.printf("Cold start of %d accounts: %.0f ms%n", accounts, (done - start) / 1e6);
+            System.out.printf("  open journal   %8.0f ms%n", (opened - start) / 1e6);
+            System.out.printf("  recover()      %8.0f ms%n", (done - opened) / 1e6);
+            // Printing the cold start time and its parts.
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        // Method to delete a directory and its files.
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            // Walking the directory tree.
+
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                // Deleting files before their directory.
+
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package banking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+// Importing the collections, the random source and TimeUnit used by the benchmark.
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+// Importing the JMH annotations plus ThreadParams, which tells each thread its index for the ring topology.
+
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransferBenchmark {
+    // Defining the TransactionSystem.transfer benchmarks under three account topologies:
+    //   UNIFORM - both accounts picked uniformly at random, so threads rarely collide.
+    //   HOTSPOT - both accounts picked from a Zipfian distribution, so a few accounts take most transfers.
+    //   RING    - thread i always moves money from account i to account i+1, so each account is
+    //             shared by exactly two neighbouring threads.
+    // The thread count passed with -t sets the contention level; run with "-prof gc" for allocations.
+
+    @State(Scope.Benchmark)
+    public static class Bank {
+        // Defining the state shared by all threads: the accounts and the transaction system.
+
+        @Param({"UNIFORM", "HOTSPOT", "RING"})
+        public String topology;
+        // Declaring how the transfer endpoints are chosen.
+
+        @Param({"1024"})
+        public int accountCount;
+        // Declaring how many accounts the system holds.
+
+        @Param({"true", "false"})
+        public boolean fair;
+        // Declaring whether the account locks are fair.
+
+        @Param({"OFF"})
+        public String logLevel;
+        // Declaring the event log level; the default keeps console output out of the measurement.
+
+        @Param({"true", "false"})
+        public boolean metrics;
+        // Declaring whether the system times and counts transfers, to measure what the metrics cost.
+
+        TransactionSystem system;
+        // Declaring the transaction system under test.
+
+        ZipfianGenerator zipf;
+        // Declaring the skewed account picker for the hot-spot topology.
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            // Method to build the accounts once per parameter combination.
+
+            EventLog.setLevel(LogLevel.valueOf(logLevel));
+            // Setting the event log level before any transfer is measured.
+
+            List<BankAccount> accounts = new ArrayList<>();
+            // Creating the list of accounts handed to the transaction system.
+
+            for (int i = 0; i < accountCount; i++) {
+                // Looping over every account ID.
+
+                accounts.add(new BankAccount(i, 1_000_000_000.0, fair));
+                // Creating an account with a balance large enough that transfers keep succeeding.
+            }
+
+            system = new TransactionSystem(accounts);
+            // Creating the transaction system without a journal, so only the in-memory path is measured.
+
+            system.getMetrics().setEnabled(metrics);
+            // Turning transfer timing on or off.
+
+            zipf = new ZipfianGenerator(accountCount, 0.99);
+            // Creating the skewed picker with the usual YCSB skew.
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Caller {
+        // Defining the per-thread state: a private random source and the thread's ring position.
+
+        final Random random = new Random();
+        // Declaring a per-thread random source, so threads never share its seed.
+
+        int ringIndex;
+        // Declaring the thread's position in the ring topology.
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams threads) {
+            // Method to record this thread's index once per trial.
+
+            ringIndex = threads.getThreadIndex();
+        }
+    }
+
+    @Benchmark
+    public boolean transfer(Bank bank, Caller caller) {
+        // Method to measure one transfer between two accounts picked by the topology.
+
+        int from;
+        int to;
+        // Declaring the source and destination account IDs.
+
+        switch (bank.topology) {
+            case "HOTSPOT":
+                from = bank.zipf.next(caller.random);
+                to = bank.zipf.next(caller.random);
+                // Picking both endpoints from the skewed distribution.
+                break;
+            case "RING":
+                from = caller.ringIndex % bank.accountCount;
+                to = (caller.ringIndex + 1) % bank.accountCount;
+                // Picking this thread's fixed pair of neighbouring accounts.
+                break;
+            default:
+                from = caller.random.nextInt(bank.accountCount);
+                to = caller.random.nextInt(bank.accountCount);
+                // Picking both endpoints uniformly at random.
+        }
+
+        if (from == to) {
+            // Checking if both picks landed on the same account.
+
+            to = (to + 1) % bank.accountCount;
+            // Moving to the next account so the transfer always involves two accounts.
+        }
+
+        return bank.system.transfer(from, to, 1.0, 0);
+        // Transferring one dollar.
+    }
+}
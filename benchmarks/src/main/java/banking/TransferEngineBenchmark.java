@@ -0,0 +1,204 @@
+package banking;
+
+import java.io.PrintStream;
+// Importing the PrintStream class to hold the real console while transfers are measured.
+
+import java.util.ArrayList;
+// Importing the ArrayList class to build the account list.
+
+import java.util.List;
+// Importing the List interface for accounts and futures.
+
+import java.util.Random;
+// Importing the Random class to generate the payroll burst.
+
+import java.util.concurrent.CompletableFuture;
+// Importing the CompletableFuture class to wait for all submitted transfers.
+
+import java.util.concurrent.CountDownLatch;
+// Importing the CountDownLatch class to start the direct-transfer threads together.
+
+public class TransferEngineBenchmark {
+    // Defining a benchmark that applies a payroll burst through TransferEngine at several batch sizes
+    // and compares it with calling TransactionSystem.transfer directly from worker threads.
+
+    private static final int PAYERS = 16;
+    // Number of employer accounts paying salaries.
+
+    private static final int PAYEES = 10_000;
+    // Number of employee accounts receiving salaries.
+
+    private static final int[] BATCH_SIZES = {1, 64, 1024};
+    // Batch sizes to measure.
+
+    public static void main(String[] args) throws Exception {
+        // Main method to run the batching benchmark.
+
+        int transfers = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        // Reading the burst size from the command line, defaulting to 100k transfers.
+
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        // Reading the number of worker threads, defaulting to one per core.
+
+        int[][] burst = generateBurst(transfers);
+        // Generating the same payroll burst for every run.
+
+        System.out.println("Payroll burst: " + transfers + " transfers, " + PAYERS + " payers, "
+                + PAYEES + " payees, " + workers + " workers");
+        // Printing the benchmark description.
+
+        System.out.printf("%-16s %14s %16s %14s%n", "mode", "transfers/sec", "lock acquisitions", "batches");
+        // Printing the table header.
+
+        double direct = runDirect(burst, workers);
+        // Measuring direct calls to TransactionSystem.transfer.
+
+        System.out.printf("%-16s %14.0f %16d %14s%n", "direct transfer", direct, 2L * transfers, "-");
+        // Every direct transfer takes two account locks.
+
+        for (int batchSize : BATCH_SIZES) {
+            // Measuring the engine at each batch size.
+
+            TransactionSystem system = new TransactionSystem(createAccounts());
+            // Creating fresh accounts for the run.
+
+            TransferEngine engine = new TransferEngine(system, workers, batchSize, 65_536);
+            // Creating the engine with the batch size under test.
+
+            PrintStream console = BenchmarkSupport.silenceStdout();
+            // Silencing the per-operation messages printed by BankAccount.
+
+            long start = System.nanoTime();
+            // Recording the start time.
+
+            try {
+                List<CompletableFuture<TransferResult>> results = new ArrayList<>(transfers);
+                // Collecting the futures of the burst.
+
+                for (int[] transfer : burst) {
+                    // Submitting every transfer of the burst.
+
+                    results.add(engine.submit(transfer[0], transfer[1], 1.00));
+                }
+
+                CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).join();
+                // Waiting until every transfer has been applied.
+            } finally {
+                BenchmarkSupport.restoreStdout(console);
+                // Restoring the console for the results.
+            }
+
+            long elapsed = System.nanoTime() - start;
+            // Measuring the elapsed time.
+
+            engine.shutdown();
+            // Stopping the worker threads.
+
+            System.out.printf("%-16s %14.0f %16d %14d%n", "batch " + batchSize,
+                    transfers * 1e9 / elapsed, engine.getLockAcquisitions(), engine.getBatchCount());
+            // Printing the throughput and lock counts for this batch size.
+        }
+    }
+
+    private static double runDirect(int[][] burst, int workers) throws InterruptedException {
+        // Method to split the burst across threads that call TransactionSystem.transfer directly.
+
+        TransactionSystem system = new TransactionSystem(createAccounts());
+        // Creating fresh accounts for the run.
+
+        CountDownLatch start = new CountDownLatch(1);
+        // Latch that releases all threads together.
+
+        Thread[] threads = new Thread[workers];
+        // Array holding the caller threads.
+
+        for (int t = 0; t < workers; t++) {
+            // Giving each thread an interleaved share of the burst.
+
+            int first = t;
+            // The first transfer index for this thread.
+
+            threads[t] = new Thread(() -> {
+                // Each thread applies its share of the burst.
+
+                try {
+                    start.await();
+                    // Waiting for the start signal.
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                for (int i = first; i < burst.length; i += workers) {
+                    // Applying every transfer assigned to this thread.
+
+                    system.transfer(burst[i][0], burst[i][1], 1.00, 0);
+                    // Thread number 0 is not part of the demo's latch ordering, so it never waits.
+                }
+            });
+            threads[t].start();
+            // Starting the thread.
+        }
+
+        PrintStream console = BenchmarkSupport.silenceStdout();
+        // Silencing the per-operation messages printed by TransactionSystem and BankAccount.
+
+        long begin = System.nanoTime();
+        // Recording the start time.
+
+        try {
+            start.countDown();
+            // Releasing all threads.
+
+            for (Thread thread : threads) {
+                // Waiting for every thread to finish.
+
+                thread.join();
+            }
+        } finally {
+            BenchmarkSupport.restoreStdout(console);
+            // Restoring the console for the results.
+        }
+
+        return burst.length * 1e9 / (System.nanoTime() - begin);
+        // Returning transfers per second.
+    }
+
+    private static List<BankAccount> createAccounts() {
+        // Method to create payer accounts with large balances followed by payee accounts.
+
+        List<BankAccount> accounts = new ArrayList<>(PAYERS + PAYEES);
+        // Creating the account list.
+
+        for (int id = 1; id <= PAYERS + PAYEES; id++) {
+            // Creating every account.
+
+            accounts.add(new BankAccount(id, id <= PAYERS ? 1_000_000_000.0 : 0.0));
+            // Payers get enough money for the whole burst; payees start empty.
+        }
+
+        return accounts;
+    }
+
+    private static int[][] generateBurst(int transfers) {
+        // Method to generate payroll transfers from random payers to random payees.
+
+        Random random = new Random(42);
+        // Fixed seed so every run applies the same burst.
+
+        int[][] burst = new int[transfers][2];
+        // Each entry holds the source and destination account IDs.
+
+        for (int i = 0; i < transfers; i++) {
+            // Generating each transfer.
+
+            burst[i][0] = 1 + random.nextInt(PAYERS);
+            // Choosing a payer.
+
+            burst[i][1] = PAYERS + 1 + random.nextInt(PAYEES);
+            // Choosing a payee.
+        }
+
+        return burst;
+    }
+}
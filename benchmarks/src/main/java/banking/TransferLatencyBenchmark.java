@@ -0,0 +1,151 @@
+package banking;
+
+import java.io.PrintStream;
+// Importing the PrintStream class to hold the real console while transfers are measured.
+
+import java.util.ArrayList;
+// Importing the ArrayList class to build the account list.
+
+import java.util.List;
+// Importing the List interface for the accounts.
+
+import java.util.concurrent.ThreadLocalRandom;
+// Importing the ThreadLocalRandom class so threads pick accounts without sharing a Random.
+
+import org.HdrHistogram.Histogram;
+// Importing the HdrHistogram Histogram class for each thread's latency distribution, as TransactionMetrics uses.
+
+public class TransferLatencyBenchmark {
+    // Defining a benchmark of TransactionSystem.transfer latency with logging printed on the calling
+    // thread (the old behaviour), logging through the asynchronous EventLog, and logging off.
+
+    private static final int ACCOUNTS = 1000;
+    // Number of accounts transfers are spread across.
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+    // The precision of the latency histograms, one digit finer than TransactionMetrics since every value is kept.
+
+    public static void main(String[] args) throws InterruptedException {
+        // Main method to run the latency benchmark.
+
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        // Reading the number of caller threads.
+
+        int transfersPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        // Reading the number of transfers each thread performs.
+
+        System.out.println("TransactionSystem.transfer latency, " + threads + " threads x " + transfersPerThread
+                + " transfers, log output discarded");
+        // Printing the benchmark description.
+
+        run("sync DEBUG", LogLevel.DEBUG, true, threads, transfersPerThread);
+        // Measuring with every event formatted and printed on the calling thread.
+
+        run("async DEBUG", LogLevel.DEBUG, false, threads, transfersPerThread);
+        // Measuring with every event handed to the consumer thread.
+
+        run("async INFO", LogLevel.INFO, false, threads, transfersPerThread);
+        // Measuring with only transfer events handed to the consumer thread.
+
+        run("async WARN", LogLevel.WARN, false, threads, transfersPerThread);
+        // Measuring at the default level, where only rolled-back errors are recorded.
+
+        run("OFF", LogLevel.OFF, false, threads, transfersPerThread);
+        // Measuring with logging off.
+    }
+
+    private static void run(String name, LogLevel level, boolean synchronous, int threads, int transfersPerThread)
+            throws InterruptedException {
+        // Method to run every thread's transfers in one logging mode and print the merged histogram.
+
+        List<BankAccount> accounts = new ArrayList<>(ACCOUNTS);
+        // Creating the accounts.
+
+        for (int id = 1; id <= ACCOUNTS; id++) {
+            accounts.add(new BankAccount(id, 1_000_000.0));
+        }
+
+        TransactionSystem system = new TransactionSystem(accounts);
+        // Creating the transaction system.
+
+        LogLevel previousLevel = EventLog.getLevel();
+        // Remembering the level to restore it afterwards.
+
+        EventLog.setLevel(level);
+        EventLog.setSynchronous(synchronous);
+        // Selecting the logging mode.
+
+        long droppedBefore = EventLog.getDroppedCount();
+        // Counting events dropped before this run.
+
+        Histogram[] histograms = new Histogram[threads];
+        // One histogram per thread.
+
+        Thread[] workers = new Thread[threads];
+        // The caller threads.
+
+        PrintStream console = BenchmarkSupport.silenceStdout();
+        // Discarding the log output so only the cost of producing it is measured.
+
+        try {
+            for (int t = 0; t < threads; t++) {
+                // Starting each caller thread.
+
+                Histogram histogram = new Histogram(SIGNIFICANT_DIGITS);
+                histograms[t] = histogram;
+                // Creating the thread's histogram, which grows to fit the largest latency it sees.
+
+                workers[t] = new Thread(() -> {
+                    // Each thread times every transfer it performs.
+
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    // The thread's random source.
+
+                    for (int i = 0; i < transfersPerThread; i++) {
+                        // Performing the transfers.
+
+                        int from = 1 + random.nextInt(ACCOUNTS);
+                        int to = 1 + random.nextInt(ACCOUNTS);
+                        // Choosing the accounts.
+
+                        long start = System.nanoTime();
+                        system.transfer(from, to, 1.00, 0);
+                        histogram.recordValue(Math.max(0, System.nanoTime() - start));
+                        // Timing one transfer.
+                    }
+                });
+                workers[t].start();
+            }
+
+            for (Thread worker : workers) {
+                // Waiting for every thread.
+
+                worker.join();
+            }
+
+            EventLog.flush();
+            // Letting the consumer finish before the console is restored.
+        } finally {
+            BenchmarkSupport.restoreStdout(console);
+            // Restoring the console.
+
+            EventLog.setLevel(previousLevel);
+            EventLog.setSynchronous(false);
+            // Restoring the logging mode.
+        }
+
+        Histogram merged = new Histogram(SIGNIFICANT_DIGITS);
+        // Combining the per-thread histograms.
+
+        for (Histogram histogram : histograms) {
+            merged.add(histogram);
+        }
+
+        System.out.printf("%-12s count=%d mean=%.2fus p50=%.2fus p90=%.2fus p99=%.2fus p99.9=%.2fus max=%.2fus "
+                + "dropped=%d%n", name, merged.getTotalCount(), merged.getMean() / 1e3,
+                merged.getValueAtPercentile(50) / 1e3, merged.getValueAtPercentile(90) / 1e3,
+                merged.getValueAtPercentile(99) / 1e3, merged.getValueAtPercentile(99.9) / 1e3,
+                merged.getMaxValue() / 1e3, EventLog.getDroppedCount() - droppedBefore);
+        // Printing the distribution and the number of events dropped by a full ring.
+    }
+}
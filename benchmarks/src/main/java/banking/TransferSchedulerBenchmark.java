@@ -0,0 +1,139 @@
+package banking;
+
+import java.util.ArrayList;
+// Importing the ArrayList class to build the account lists.
+
+import java.util.List;
+// Importing the List interface for the accounts.
+
+import java.util.Random;
+// Importing the Random class to generate the end-of-day file.
+
+public class TransferSchedulerBenchmark {
+    // Defining a benchmark that replays an ordered end-of-day file of transfers twice: once one by one
+    // on a single thread, and once through TransferScheduler on a worker pool. It prints both rates
+    // and checks the scheduled replay left every account with exactly the sequential balance.
+
+    public static void main(String[] args) throws Exception {
+        // Main method to run the replay benchmark.
+
+        int transfers = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        // Reading the file size from the command line, defaulting to one million transfers.
+
+        int accountCount = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        // Reading the number of accounts, defaulting to 100k.
+
+        int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        // Reading the number of worker threads, defaulting to one per core.
+
+        EventLog.setLevel(LogLevel.OFF);
+        // Turning event logging off so only the transfers are measured.
+
+        Random random = new Random(42);
+        // Using a fixed seed so both replays see the same file.
+
+        int[] from = new int[transfers];
+        int[] to = new int[transfers];
+        double[] amounts = new double[transfers];
+        // Declaring the file as columns.
+
+        for (int i = 0; i < transfers; i++) {
+            // Generating each record.
+
+            from[i] = random.nextInt(accountCount);
+            to[i] = (from[i] + 1 + random.nextInt(accountCount - 1)) % accountCount;
+            amounts[i] = (100 + random.nextInt(50_000)) / 100.0;
+            // A transfer between two distinct accounts of $1.00 to $500.99.
+        }
+
+        double[] opening = new double[accountCount];
+        // Declaring the opening balances, shared by both replays.
+
+        for (int id = 0; id < accountCount; id++) {
+            // Generating each opening balance; small enough that some transfers are refused.
+
+            opening[id] = (50_000 + random.nextInt(200_000)) / 100.0;
+        }
+
+        System.out.println("End-of-day file: " + transfers + " transfers over " + accountCount
+                + " accounts, " + workers + " workers");
+        // Printing the benchmark description.
+
+        TransactionSystem sequential = newSystem(opening);
+        // Creating the system for the sequential replay.
+
+        long start = System.nanoTime();
+        // Starting the sequential timer.
+
+        for (int i = 0; i < transfers; i++) {
+            // Applying each record in file order.
+
+            sequential.transfer(from[i], to[i], amounts[i], 0);
+        }
+
+        double sequentialRate = transfers * 1e9 / (System.nanoTime() - start);
+        // Computing the sequential rate.
+
+        TransactionSystem scheduled = newSystem(opening);
+        // Creating the system for the scheduled replay.
+
+        TransferScheduler scheduler = new TransferScheduler(scheduled, workers);
+        // Creating the scheduler.
+
+        start = System.nanoTime();
+        // Starting the scheduled timer.
+
+        for (int i = 0; i < transfers; i++) {
+            // Scheduling each record in file order; independent records run in parallel.
+
+            scheduler.schedule(from[i], to[i], amounts[i]);
+        }
+
+        scheduler.awaitCompletion();
+        // Waiting for the whole file to be applied.
+
+        double scheduledRate = transfers * 1e9 / (System.nanoTime() - start);
+        // Computing the scheduled rate.
+
+        scheduler.shutdown();
+        // Stopping the workers.
+
+        System.out.printf("%-12s %14s%n", "replay", "transfers/sec");
+        System.out.printf("%-12s %14.0f%n", "sequential", sequentialRate);
+        System.out.printf("%-12s %14.0f%n", "scheduled", scheduledRate);
+        // Printing the results.
+
+        int mismatches = 0;
+        // Counting accounts whose balances differ between the two replays.
+
+        for (int id = 0; id < accountCount; id++) {
+            // Comparing each account.
+
+            if (sequential.getAccount(id).peekBalance() != scheduled.getAccount(id).peekBalance()) {
+                // Per-account ordering means each account saw the same operations in the same order,
+                // so even the floating-point balances must match exactly.
+
+                mismatches++;
+            }
+        }
+
+        System.out.println(mismatches == 0 ? "Balances match the sequential replay."
+                : mismatches + " accounts differ from the sequential replay!");
+        // Printing the ordering check.
+    }
+
+    private static TransactionSystem newSystem(double[] opening) {
+        // Method to create a system with the given opening balances.
+
+        List<BankAccount> accounts = new ArrayList<>(opening.length);
+        // Creating the account list.
+
+        for (int id = 0; id < opening.length; id++) {
+            // Creating each account.
+
+            accounts.add(new BankAccount(id, opening[id]));
+        }
+
+        return new TransactionSystem(accounts);
+    }
+}
@@ -0,0 +1,100 @@
+package banking;
+
+import java.util.Random;
+// Importing the Random class as the source of uniform numbers the skewed values are derived from.
+
+public class ZipfianGenerator {
+    // Defining a generator of Zipf-distributed item indexes, used to model a few hot accounts
+    // taking most of the traffic. Index 0 is the hottest item. The generator itself is immutable,
+    // so one instance can be shared by many threads, each passing its own Random.
+    // The algorithm is the one from Gray et al., "Quickly Generating Billion-Record Synthetic Databases".
+
+    private final int items;
+    // The number of distinct items to choose from.
+
+    private final double theta;
+    // The skew parameter; 0 is uniform, values close to 1 are heavily skewed.
+
+    private final double alpha;
+    // Precomputed 1 / (1 - theta).
+
+    private final double zetaN;
+    // Precomputed zeta(items, theta).
+
+    private final double eta;
+    // Precomputed correction factor for the tail of the distribution.
+
+    public ZipfianGenerator(int items, double theta) {
+        // Constructor to precompute the constants for the given number of items and skew.
+
+        if (items < 2 || theta <= 0 || theta >= 1) {
+            // Checking the parameters are in the range the algorithm supports.
+
+            throw new IllegalArgumentException("items must be at least 2 and theta must be in (0, 1)");
+        }
+
+        this.items = items;
+        // Storing the number of items.
+
+        this.theta = theta;
+        // Storing the skew.
+
+        this.alpha = 1.0 / (1.0 - theta);
+        // Computing alpha.
+
+        this.zetaN = zeta(items, theta);
+        // Computing zeta for the full item count.
+
+        this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta(2, theta) / zetaN);
+        // Computing eta from zeta(2) and zeta(items).
+    }
+
+    public int next(Random random) {
+        // Method to return the next item index between 0 (hottest) and items - 1.
+
+        double u = random.nextDouble();
+        // Drawing a uniform number in [0, 1).
+
+        double uz = u * zetaN;
+        // Scaling it by zeta(items).
+
+        if (uz < 1.0) {
+            // The hottest item covers the first unit of the scaled range.
+
+            return 0;
+        }
+
+        if (uz < 1.0 + Math.pow(0.5, theta)) {
+            // The second item covers the next 0.5^theta of the range.
+
+            return 1;
+        }
+
+        int index = (int) (items * Math.pow(eta * u - eta + 1, alpha));
+        // Mapping the rest of the range onto the tail of the distribution.
+
+        return Math.min(index, items - 1);
+        // Guarding against rounding up to one past the last item.
+    }
+
+    public int getItems() {
+        // Getter method to return the number of items.
+
+        return items;
+    }
+
+    private static double zeta(int n, double theta) {
+        // Method to compute the generalized harmonic number sum(1 / i^theta) for i = 1..n.
+
+        double sum = 0;
+        // Accumulating the sum.
+
+        for (int i = 1; i <= n; i++) {
+            // Adding each term.
+
+            sum += 1.0 / Math.pow(i, theta);
+        }
+
+        return sum;
+    }
+}
@@ -0,0 +1,48 @@
+package banking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ZipfianGeneratorTest {
+    // Checks that the generator the load drivers use to pick hot accounts stays in range and skews towards
+    // the low indexes as much as the Zipf distribution says it should.
+
+    @Test
+    void indexesStayInRangeAndTheHottestItemGetsItsShare() {
+        int items = 1_000;
+        double theta = 0.99;
+        int draws = 1_000_000;
+        ZipfianGenerator generator = new ZipfianGenerator(items, theta);
+        Random random = new Random(42);
+        int[] counts = new int[items];
+
+        for (int i = 0; i < draws; i++) {
+            int index = generator.next(random);
+            assertTrue(index >= 0 && index < items, "index " + index);
+            counts[index]++;
+        }
+
+        double zeta = 0;
+
+        for (int i = 1; i <= items; i++) {
+            zeta += 1 / Math.pow(i, theta);
+        }
+
+        assertEquals(draws / zeta, counts[0], draws / zeta * 0.02);
+        // Item 0 is drawn with probability 1 / zeta(items, theta).
+
+        assertTrue(counts[0] > counts[1] && counts[1] > counts[10] && counts[10] > counts[items - 1]);
+    }
+
+    @Test
+    void parametersOutsideTheSupportedRangeAreRefused() {
+        assertThrows(IllegalArgumentException.class, () -> new ZipfianGenerator(1, 0.5));
+        assertThrows(IllegalArgumentException.class, () -> new ZipfianGenerator(10, 0));
+        assertThrows(IllegalArgumentException.class, () -> new ZipfianGenerator(10, 1));
+    }
+}
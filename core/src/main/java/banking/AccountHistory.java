@@ -0,0 +1,458 @@
+package banking;
+
+import java.lang.invoke.MethodHandles;
+// Importing the MethodHandles class to create the VarHandles over the directory arrays.
+
+import java.lang.invoke.VarHandle;
+// Importing the VarHandle class to publish directory pages and logs with release and acquire.
+
+import java.util.Arrays;
+// Importing the Arrays class to grow the chunk tables.
+
+import java.util.concurrent.TimeUnit;
+// Importing the TimeUnit class for the length of a day.
+
+import java.util.concurrent.locks.ReentrantLock;
+// Importing the ReentrantLock class to guard each account's log.
+
+public class AccountHistory {
+    // Defining an index of every balance change per account, appended to as transfers commit, that answers
+    // statement queries without scanning anything but the one account: the last N entries, the entries in a
+    // time range, and the totals of a range or of each day.
+    // Each account has its own log of entries in chunks of primitive longs. An entry is four consecutive
+    // longs, so an append writes 32 adjacent bytes: the time, two running totals, the net change and the
+    // credits since the log began, and the other account. The running totals are the rolling aggregates:
+    // the totals of any range are the difference of two of them, and a range is found by binary search on
+    // the times, which never go backwards within a log. So totals cost O(log n) and a range of entries
+    // O(log n) plus a copy of just those entries, however long the account's history.
+    // A log starts with a small chunk that doubles up to CHUNK entries, so the many accounts with a handful
+    // of entries stay small; later chunks are full-sized and never move once written.
+    // The logs are found through a directory of pages indexed by account ID rather than a map, so an append
+    // neither boxes the ID nor walks a hash bucket; with the tail chunk kept on the log, an append touches
+    // only the page, the log and its lock, and the entry. Pages and logs are stored into the directory with
+    // release writes and read with acquire reads, so a thread that finds one without the directory lock also
+    // sees it fully constructed.
+    // Appends to one log are serialized by its lock. A query takes the lock only to read the log's size and
+    // chunk table, then reads the entries, which are never changed once written, without it.
+
+    public static final int NO_COUNTERPARTY = -1;
+    // The counterparty of a change with no single other account, such as a deposit, a withdrawal, a posting
+    // leg or a netted change.
+
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK = 1 << CHUNK_SHIFT;
+    // Number of entries in a full chunk: 4096, 128 KB.
+
+    private static final int TIME = 0;
+    private static final int NET = 1;
+    private static final int CREDITS = 2;
+    private static final int COUNTERPARTY = 3;
+    private static final int STRIDE = 4;
+    // The position of each field within an entry, and the number of longs per entry.
+
+    private static final int FIRST_CHUNK = 16;
+    // Number of entries the first chunk of a log starts with.
+
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+    // Length of the days of dailyTotals, which start at midnight UTC.
+
+    private static final int PAGE_SHIFT = 10;
+    private static final int PAGE = 1 << PAGE_SHIFT;
+    // Number of accounts per directory page.
+
+    private static final VarHandle PAGES = MethodHandles.arrayElementVarHandle(Log[][].class);
+    private static final VarHandle LOGS = MethodHandles.arrayElementVarHandle(Log[].class);
+    // VarHandles for the release stores and acquire loads of the directory's pages and of each page's logs.
+
+    private volatile Log[][] pages = new Log[0][];
+    // Declaring the directory: the log of account ID i, if it has one, is pages[i / PAGE][i % PAGE], with the
+    // ID taken as unsigned. Pages and logs are added under directoryLock; the table grows by copying. Its
+    // elements are only accessed through PAGES and LOGS.
+
+    private final ReentrantLock directoryLock = new ReentrantLock();
+    // Declaring the lock serializing additions to the directory.
+
+    public void append(int accountId, long timeMillis, long amountCents, int counterpartyId) {
+        // Method to add a change to an account's history; TransactionSystem calls it as each change commits,
+        // and it can also load older history. A time earlier than the log's last entry is raised to it.
+
+        Log log = find(accountId);
+        // Finding the account's log.
+
+        if (log == null) {
+            log = create(accountId);
+            // Creating it on the account's first entry.
+        }
+
+        log.lock.lock();
+
+        try {
+            log.append(timeMillis, amountCents, counterpartyId);
+        } finally {
+            log.lock.unlock();
+        }
+    }
+
+    public int getCount(int accountId) {
+        // Method to return the number of entries of an account.
+
+        Log log = find(accountId);
+        return log == null ? 0 : size(log);
+    }
+
+    public Statement last(int accountId, int n) {
+        // Method to return an account's last n entries, or all of them if it has fewer.
+
+        if (n < 0) {
+            throw new IllegalArgumentException("n must not be negative");
+        }
+
+        View view = view(accountId);
+        int end = view.size;
+        int start = Math.max(0, end - n);
+        // Taking the entries from the end of the log.
+
+        long from = end == 0 ? 0 : view.time(start);
+        long to = end == 0 ? 0 : view.time(end - 1) + 1;
+        // Covering the time from the first entry taken to just after the last.
+
+        return statement(accountId, view, start, end, from, to, true);
+    }
+
+    public Statement between(int accountId, long fromMillis, long toMillis) {
+        // Method to return an account's entries from fromMillis inclusive to toMillis exclusive, with their totals.
+
+        checkRange(fromMillis, toMillis);
+
+        View view = view(accountId);
+        return statement(accountId, view, view.lowerBound(fromMillis), view.lowerBound(toMillis), fromMillis, toMillis,
+                true);
+    }
+
+    public Statement totals(int accountId, long fromMillis, long toMillis) {
+        // Method to return only the totals of an account's entries in a time range, in O(log n).
+
+        checkRange(fromMillis, toMillis);
+
+        View view = view(accountId);
+        return statement(accountId, view, view.lowerBound(fromMillis), view.lowerBound(toMillis), fromMillis, toMillis,
+                false);
+    }
+
+    public Statement[] dailyTotals(int accountId, long fromMillis, int days) {
+        // Method to return the totals of each of the given number of days, starting with the day containing
+        // fromMillis; each day is two binary searches, whatever the number of entries in it.
+
+        View view = view(accountId);
+        // Reading the log once, so every day comes from the same set of entries.
+
+        Statement[] totals = new Statement[days];
+        long dayStart = Math.floorDiv(fromMillis, DAY_MILLIS) * DAY_MILLIS;
+        int start = view.lowerBound(dayStart);
+        // Starting at midnight UTC of the first day.
+
+        for (int day = 0; day < days; day++) {
+            // Each day's end is the next day's start, so each boundary is searched for once.
+
+            long dayEnd = dayStart + DAY_MILLIS;
+            int end = view.lowerBound(dayEnd);
+            totals[day] = statement(accountId, view, start, end, dayStart, dayEnd, false);
+            dayStart = dayEnd;
+            start = end;
+        }
+
+        return totals;
+    }
+
+    public long getEntryCount() {
+        // Method to return the number of entries across every account.
+
+        long total = 0;
+
+        Log[][] directory = pages;
+
+        for (int p = 0; p < directory.length; p++) {
+            Log[] page = (Log[]) PAGES.getAcquire(directory, p);
+
+            for (int i = 0; page != null && i < PAGE; i++) {
+                Log log = (Log) LOGS.getAcquire(page, i);
+                total += log == null ? 0 : size(log);
+            }
+        }
+
+        return total;
+    }
+
+    public long getTableBytes() {
+        // Method to return the memory held by the entry arrays, not counting object headers.
+
+        long bytes = 0;
+
+        Log[][] directory = pages;
+
+        for (int p = 0; p < directory.length; p++) {
+            Log[] page = (Log[]) PAGES.getAcquire(directory, p);
+
+            for (int i = 0; page != null && i < PAGE; i++) {
+                Log log = (Log) LOGS.getAcquire(page, i);
+                View view = log == null ? View.EMPTY : view(log);
+
+                for (int c = 0; c * CHUNK < view.size; c++) {
+                    bytes += (long) view.chunks[c].length * Long.BYTES;
+                }
+            }
+        }
+
+        return bytes;
+    }
+
+    private static void checkRange(long fromMillis, long toMillis) {
+        // Method to refuse a time range that ends before it starts.
+
+        if (toMillis < fromMillis) {
+            throw new IllegalArgumentException("Range ends before it starts: " + fromMillis + " to " + toMillis);
+        }
+    }
+
+    private Log find(int accountId) {
+        // Method to return an account's log, or null if it has none yet.
+
+        Log[][] directory = pages;
+        int page = accountId >>> PAGE_SHIFT;
+        // Reading the directory once.
+
+        if (page >= directory.length) {
+            return null;
+        }
+
+        Log[] logs = (Log[]) PAGES.getAcquire(directory, page);
+        // Reading the page with acquire, pairing with the release store in create, so a page found here is
+        // seen with every slot it was created with.
+
+        return logs == null ? null : (Log) LOGS.getAcquire(logs, accountId & (PAGE - 1));
+        // Reading the log the same way, so a log created by another thread is seen fully constructed; from
+        // then on everything in it is read under its lock.
+    }
+
+    private Log create(int accountId) {
+        // Method to add an account's log to the directory, unless another thread just did.
+
+        directoryLock.lock();
+
+        try {
+            Log[][] directory = pages;
+            int page = accountId >>> PAGE_SHIFT;
+
+            if (page >= directory.length) {
+                // Growing the directory table, to at least double its size so growth is amortized.
+
+                directory = Arrays.copyOf(directory, Math.max(page + 1, directory.length * 2));
+            }
+
+            Log[] logs = (Log[]) PAGES.getAcquire(directory, page);
+
+            if (logs == null) {
+                logs = new Log[PAGE];
+                PAGES.setRelease(directory, page, logs);
+                // Publishing the empty page to readers that already hold this directory table.
+            }
+
+            Log log = (Log) LOGS.getAcquire(logs, accountId & (PAGE - 1));
+
+            if (log == null) {
+                log = new Log();
+                LOGS.setRelease(logs, accountId & (PAGE - 1), log);
+                // Publishing the constructed log; a reader's acquire load of the slot sees its fields.
+            }
+
+            pages = directory;
+            // Publishing the directory, which may be a new copy.
+
+            return log;
+        } finally {
+            directoryLock.unlock();
+        }
+    }
+
+    private View view(int accountId) {
+        // Method to read an account's log, which is empty if the account has no entries.
+
+        Log log = find(accountId);
+        return log == null ? View.EMPTY : view(log);
+    }
+
+    private static int size(Log log) {
+        // Method to read a log's number of entries under its lock.
+
+        log.lock.lock();
+
+        try {
+            return log.size;
+        } finally {
+            log.lock.unlock();
+        }
+    }
+
+    private static View view(Log log) {
+        // Method to read a log's size and chunk tables under its lock; the entries they cover never change.
+
+        log.lock.lock();
+
+        try {
+            return new View(log.size, log.chunks.clone());
+            // Copying the chunk table, a few references, since the log replaces its first chunk in it as it grows.
+        } finally {
+            log.lock.unlock();
+        }
+    }
+
+    private static Statement statement(int accountId, View view, int start, int end, long fromMillis, long toMillis,
+                                       boolean withEntries) {
+        // Method to build the statement of entries start to end of a view, copying the entries if asked.
+
+        long net = view.net(end - 1) - view.net(start - 1);
+        long credits = view.credit(end - 1) - view.credit(start - 1);
+        // Taking the totals from the running totals at either end of the range.
+
+        int count = end - start;
+        long[] times = new long[withEntries ? count : 0];
+        long[] amounts = new long[times.length];
+        int[] counterparties = new int[times.length];
+        // Allocating the columns, or empty ones for totals only.
+
+        for (int i = 0; i < times.length; ) {
+            // Copying the entries a chunk at a time.
+
+            int index = start + i;
+            int c = index >>> CHUNK_SHIFT;
+            int offset = index & (CHUNK - 1);
+            int length = Math.min(times.length - i, CHUNK - offset);
+
+            long[] chunk = view.chunks[c];
+            long previous = view.net(index - 1);
+
+            for (int j = 0, at = offset * STRIDE; j < length; j++, at += STRIDE) {
+                times[i + j] = chunk[at + TIME];
+                amounts[i + j] = chunk[at + NET] - previous;
+                counterparties[i + j] = (int) chunk[at + COUNTERPARTY];
+                previous = chunk[at + NET];
+                // Recovering each amount as the step between consecutive running totals.
+            }
+
+            i += length;
+        }
+
+        return new Statement(accountId, fromMillis, toMillis, count, credits, credits - net, times, amounts,
+                counterparties);
+    }
+
+    private static final class Log {
+        // Defining one account's entries, in chunks of CHUNK entries; chunk c holds entries c * CHUNK onwards.
+
+        final ReentrantLock lock = new ReentrantLock();
+        // The lock guarding appends and the fields below.
+
+        long[][] chunks = new long[1][];
+        // The chunk table; entry i is at chunks[i / CHUNK][(i % CHUNK) * STRIDE].
+
+        long[] tail;
+        // The last chunk, which appends go to.
+
+        int size;
+        // The number of entries.
+
+        long lastTime;
+        long net;
+        long credit;
+        // The newest entry's time and running totals, kept for the next append.
+
+        void append(long timeMillis, long amountCents, int counterpartyId) {
+            // Method called with the lock held to add one entry.
+
+            int c = size >>> CHUNK_SHIFT;
+            int at = (size & (CHUNK - 1)) * STRIDE;
+
+            if (at == 0) {
+                // Starting a new chunk.
+
+                if (c == chunks.length) {
+                    chunks = Arrays.copyOf(chunks, c * 2);
+                    // Doubling the chunk table; the chunks themselves are not copied.
+                }
+
+                tail = new long[(c == 0 ? FIRST_CHUNK : CHUNK) * STRIDE];
+                chunks[c] = tail;
+            } else if (at == tail.length) {
+                // Growing the first chunk, which starts small. A query that already read the old array keeps
+                // reading it; it still holds every entry the query covers.
+
+                tail = Arrays.copyOf(tail, Math.min(CHUNK * STRIDE, at * 2));
+                chunks[c] = tail;
+            }
+
+            lastTime = size == 0 ? timeMillis : Math.max(lastTime, timeMillis);
+            net = Math.addExact(net, amountCents);
+            credit = amountCents > 0 ? Math.addExact(credit, amountCents) : credit;
+            // Keeping the times in order, so ranges can be binary searched, and updating the running totals.
+
+            long[] chunk = tail;
+            chunk[at + TIME] = lastTime;
+            chunk[at + NET] = net;
+            chunk[at + CREDITS] = credit;
+            chunk[at + COUNTERPARTY] = counterpartyId;
+            size++;
+            // Storing the entry.
+        }
+    }
+
+    private static final class View {
+        // Defining a log as it was when a query read it: its size and a copy of its chunk table. A chunk grown
+        // afterwards is not seen, and entries past size may be written meanwhile but are never read.
+
+        static final View EMPTY = new View(0, new long[0][]);
+        // The view of an account without entries.
+
+        final int size;
+        final long[][] chunks;
+
+        View(int size, long[][] chunks) {
+            this.size = size;
+            this.chunks = chunks;
+        }
+
+        long time(int index) {
+            return chunks[index >>> CHUNK_SHIFT][(index & (CHUNK - 1)) * STRIDE + TIME];
+        }
+
+        long net(int index) {
+            // Method to return the net change up to and including the index-th entry; 0 before the first.
+
+            return index < 0 ? 0 : chunks[index >>> CHUNK_SHIFT][(index & (CHUNK - 1)) * STRIDE + NET];
+        }
+
+        long credit(int index) {
+            // Method to return the credits up to and including the index-th entry; 0 before the first.
+
+            return index < 0 ? 0 : chunks[index >>> CHUNK_SHIFT][(index & (CHUNK - 1)) * STRIDE + CREDITS];
+        }
+
+        int lowerBound(long timeMillis) {
+            // Method to return the index of the first entry at or after the time, or size if there is none.
+
+            int low = 0;
+            int high = size;
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+
+                if (time(middle) < timeMillis) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+    }
+}
@@ -0,0 +1,453 @@
+package banking;
+
+import java.io.IOException;
+// Importing the IOException class for failures reading or writing snapshot files.
+
+import java.nio.MappedByteBuffer;
+// Importing the MappedByteBuffer class to read and write the columns in bulk.
+
+import java.nio.channels.FileChannel;
+// Importing the FileChannel class to map snapshot files into memory.
+
+import java.nio.file.Files;
+// Importing the Files class to list, move and delete snapshot files.
+
+import java.nio.file.Path;
+// Importing the Path class for snapshot files and their directory.
+
+import java.nio.file.StandardCopyOption;
+// Importing the StandardCopyOption enum to publish a finished snapshot with an atomic rename.
+
+import java.nio.file.StandardOpenOption;
+// Importing the StandardOpenOption enum to open snapshot files.
+
+import java.util.Arrays;
+// Importing the Arrays class for binary search over the sorted IDs and for merging new accounts.
+
+import java.util.Comparator;
+// Importing the Comparator interface to pick the newest snapshot file by name.
+
+import java.util.HashMap;
+// Importing the HashMap class for accounts opened after the snapshot was taken.
+
+import java.util.Map;
+// Importing the Map interface for accounts opened after the snapshot was taken.
+
+import java.util.stream.Stream;
+// Importing the Stream interface to list the snapshot directory.
+
+public class AccountSnapshot {
+    // Defining a point-in-time copy of every account balance in a compact columnar form:
+    // a sorted int array of account IDs and a parallel long array of balances in cents,
+    // tagged with the sequence number of the last journal record it includes.
+    // The file layout is:
+    //   int magic | int version | long sequence | int count | int reserved | int[count] ids | long[count] cents
+    // Recovery loads the newest snapshot and replays only the journal records after its sequence; the records
+    // of a multi-account group are applied only once the group's COMMIT record has been read.
+
+    private static final int MAGIC = 0x534E4150;
+    // The bytes "SNAP", marking a snapshot file.
+
+    private static final int VERSION = 1;
+    // The file format version.
+
+    private static final int HEADER_SIZE = 24;
+    // The size of the header in bytes.
+
+    private static final String FILE_PREFIX = "snapshot-";
+    // The file name prefix of snapshot files.
+
+    private static final String FILE_SUFFIX = ".snap";
+    // The file name suffix of snapshot files.
+
+    private long sequence;
+    // The sequence number of the last journal record reflected in the balances.
+
+    private int[] ids;
+    // The account IDs in ascending order.
+
+    private long[] cents;
+    // The balance in cents of the account at the same index in ids.
+
+    private Map<Integer, long[]> opened;
+    // Accounts opened by journal records after the snapshot, merged into the columns when replay finishes.
+
+    private int[] groupIds;
+    private long[] groupDeltas;
+    // The changes of the journal group being replayed, held back until its COMMIT record; groupIds is null
+    // outside a group.
+
+    private int groupSize;
+    // The number of changes of the group read so far.
+
+    public AccountSnapshot(long sequence, int[] ids, long[] cents) {
+        // Constructor to wrap sorted IDs and their balances taken at a journal sequence number.
+
+        if (ids.length != cents.length) {
+            // Checking both columns have one entry per account.
+
+            throw new IllegalArgumentException("ids and cents must have the same length");
+        }
+
+        this.sequence = sequence;
+        this.ids = ids;
+        this.cents = cents;
+        // Storing the snapshot data.
+    }
+
+    public static AccountSnapshot empty() {
+        // Method to return a snapshot with no accounts, used when a journal has never been snapshotted.
+
+        return new AccountSnapshot(0, new int[0], new long[0]);
+    }
+
+    public long getSequence() {
+        // Getter method to return the last journal sequence number the snapshot includes.
+
+        return sequence;
+    }
+
+    public int size() {
+        // Getter method to return the number of accounts.
+
+        return ids.length;
+    }
+
+    public int getId(int index) {
+        // Getter method to return the account ID at an index.
+
+        return ids[index];
+    }
+
+    public long getCents(int index) {
+        // Getter method to return the balance in cents at an index.
+
+        return cents[index];
+    }
+
+    public Path write(Path directory) throws IOException {
+        // Method to write the snapshot into a directory and return the published file.
+
+        Path file = directory.resolve(String.format("%s%020d%s", FILE_PREFIX, sequence, FILE_SUFFIX));
+        // Naming the file after the journal sequence it includes.
+
+        Path temp = directory.resolve(file.getFileName() + ".tmp");
+        // Writing to a temporary name so a crash never leaves a partial snapshot under the real name.
+
+        long size = HEADER_SIZE + ids.length * 12L;
+        // Computing the file size: the header, four bytes per ID and eight per balance.
+
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            // Creating the temporary file.
+
+            MappedByteBuffer buffer = out.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            // Mapping the whole file; each column is then copied in one bulk operation.
+
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(sequence).putInt(ids.length).putInt(0);
+            // Writing the header.
+
+            buffer.asIntBuffer().put(ids);
+            // Writing the ID column.
+
+            buffer.position(HEADER_SIZE + ids.length * 4);
+            // Moving past the ID column.
+
+            buffer.asLongBuffer().put(cents);
+            // Writing the balance column.
+
+            buffer.force();
+            // Making the file durable before it is published.
+        }
+
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        // Publishing the snapshot under its real name.
+
+        return file;
+    }
+
+    public static AccountSnapshot load(Path file) throws IOException {
+        // Method to read a snapshot file.
+
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            // Opening the file.
+
+            MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            // Mapping the whole file.
+
+            if (in.size() < HEADER_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                // Checking this is a snapshot file in the format this code writes.
+
+                throw new IOException("Not a version " + VERSION + " snapshot: " + file);
+            }
+
+            long sequence = buffer.getLong();
+            // Reading the journal sequence.
+
+            int count = buffer.getInt();
+            // Reading the number of accounts.
+
+            buffer.getInt();
+            // Skipping the reserved field.
+
+            if (in.size() != HEADER_SIZE + count * 12L) {
+                // Checking the file holds exactly the two columns.
+
+                throw new IOException("Truncated snapshot: " + file);
+            }
+
+            int[] ids = new int[count];
+            // Allocating the ID column.
+
+            long[] cents = new long[count];
+            // Allocating the balance column.
+
+            buffer.asIntBuffer().get(ids);
+            // Reading the ID column in bulk.
+
+            buffer.position(HEADER_SIZE + count * 4);
+            // Moving past the ID column.
+
+            buffer.asLongBuffer().get(cents);
+            // Reading the balance column in bulk.
+
+            return new AccountSnapshot(sequence, ids, cents);
+        }
+    }
+
+    public static AccountSnapshot loadLatest(Path directory) throws IOException {
+        // Method to load the newest snapshot in a directory, or an empty one if there is none.
+
+        Path latest = null;
+        // The newest snapshot file found so far.
+
+        if (Files.isDirectory(directory)) {
+            // Only an existing directory can hold snapshots.
+
+            try (Stream<Path> files = Files.list(directory)) {
+                // Listing the directory.
+
+                latest = files.filter(p -> p.getFileName().toString().startsWith(FILE_PREFIX)
+                        && p.getFileName().toString().endsWith(FILE_SUFFIX))
+                        .max(Comparator.naturalOrder()).orElse(null);
+                // The zero-padded sequence numbers make the greatest name the newest snapshot.
+            }
+        }
+
+        return latest == null ? empty() : load(latest);
+    }
+
+    public static void deleteOlderThan(Path directory, long sequence) throws IOException {
+        // Method to delete the snapshot files taken before a sequence number.
+
+        try (Stream<Path> files = Files.list(directory)) {
+            // Listing the directory.
+
+            for (Path file : (Iterable<Path>) files::iterator) {
+                // Checking each file.
+
+                String name = file.getFileName().toString();
+                // The file name.
+
+                if (name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX)
+                        && Long.parseLong(name.substring(FILE_PREFIX.length(),
+                                name.length() - FILE_SUFFIX.length())) < sequence) {
+                    // An older snapshot.
+
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    public long replay(TransactionJournal journal) throws IOException {
+        // Method to bring the balances up to date with the journal records after the snapshot; returns the new sequence.
+
+        opened = new HashMap<>();
+        // Collecting accounts opened after the snapshot.
+
+        sequence = journal.replay(sequence, this::apply);
+        // Applying every later record in order.
+
+        if (!opened.isEmpty()) {
+            // Merging the new accounts into the sorted columns.
+
+            int oldSize = ids.length;
+            // The number of accounts in the snapshot.
+
+            ids = Arrays.copyOf(ids, oldSize + opened.size());
+            cents = Arrays.copyOf(cents, oldSize + opened.size());
+            // Growing both columns.
+
+            int i = oldSize;
+            // The next free index.
+
+            for (Map.Entry<Integer, long[]> entry : opened.entrySet()) {
+                // Appending each new account.
+
+                ids[i] = entry.getKey();
+                cents[i++] = entry.getValue()[0];
+            }
+
+            sortColumns();
+            // Restoring ascending ID order.
+        }
+
+        opened = null;
+        groupIds = null;
+        groupDeltas = null;
+        // Releasing the temporary map, and dropping a group the journal ends inside, which never committed.
+
+        return sequence;
+    }
+
+    private void apply(long recordSequence, int type, int accountId, int otherAccountId, long amountCents) {
+        // Method to apply one journal record to the columns, holding back the records of a group until it commits.
+
+        if (type == TransactionJournal.BEGIN) {
+            // Starting a group, which also drops any group still open: its append failed before the COMMIT.
+
+            groupIds = new int[(int) amountCents];
+            groupDeltas = new long[(int) amountCents];
+            groupSize = 0;
+            return;
+        }
+
+        if (groupIds != null) {
+            // Inside a group, only its changes and its COMMIT belong here.
+
+            if ((type == TransactionJournal.DEPOSIT || type == TransactionJournal.WITHDRAW)
+                    && groupSize < groupIds.length) {
+                // Holding back one change of the group.
+
+                groupIds[groupSize] = accountId;
+                groupDeltas[groupSize++] = type == TransactionJournal.DEPOSIT ? amountCents : -amountCents;
+                return;
+            }
+
+            int[] ids = groupIds;
+            groupIds = null;
+            // Leaving the group whatever this record is.
+
+            if (type == TransactionJournal.COMMIT && groupSize == ids.length && amountCents == ids.length) {
+                // Applying the whole group now that it is known to be complete.
+
+                for (int i = 0; i < groupSize; i++) {
+                    add(recordSequence, ids[i], groupDeltas[i]);
+                }
+                return;
+            }
+
+            // Any other record means the group's append failed part-way; the group is dropped and the
+            // record is applied on its own below.
+        }
+
+        if (type == TransactionJournal.COMMIT) {
+            // A COMMIT without its group, left behind by a group that was dropped; nothing to apply.
+
+            return;
+        }
+
+        if (type == TransactionJournal.OPEN) {
+            // An account was opened with a starting balance.
+
+            int index = indexOf(accountId);
+            // Looking for the ID among the snapshot accounts.
+
+            if (index >= 0) {
+                cents[index] = amountCents;
+                // Reopening a known account resets its balance.
+            } else {
+                opened.put(accountId, new long[] {amountCents});
+                // Remembering a new account until replay finishes.
+            }
+            return;
+        }
+
+        if (type == TransactionJournal.DEPOSIT) {
+            add(recordSequence, accountId, amountCents);
+            // Re-applying a deposit.
+        } else if (type == TransactionJournal.WITHDRAW) {
+            add(recordSequence, accountId, -amountCents);
+            // Re-applying a withdrawal.
+        } else if (type == TransactionJournal.TRANSFER) {
+            add(recordSequence, accountId, -amountCents);
+            // Re-applying the debit of a transfer.
+
+            add(recordSequence, otherAccountId, amountCents);
+            // Re-applying the credit of a transfer.
+        }
+    }
+
+    private void add(long recordSequence, int accountId, long delta) {
+        // Method to add a signed amount to an account's balance.
+
+        int index = indexOf(accountId);
+        // Looking for the ID among the snapshot accounts.
+
+        if (index >= 0) {
+            cents[index] += delta;
+            return;
+        }
+
+        long[] account = opened.get(accountId);
+        // Looking for the ID among the accounts opened after the snapshot.
+
+        if (account == null) {
+            // A change to an account that was never opened means the journal is corrupt.
+
+            throw new IllegalStateException("Journal record " + recordSequence + " refers to unknown account " + accountId);
+        }
+
+        account[0] += delta;
+    }
+
+    private int indexOf(int accountId) {
+        // Method to find the index of an account ID, or a negative number if it is not in the columns.
+
+        if (ids.length > 0) {
+            // Trying the direct position first: with consecutively numbered accounts it is always right.
+
+            long guess = (long) accountId - ids[0];
+            // The index the ID would have if there were no gaps.
+
+            if (guess >= 0 && guess < ids.length && ids[(int) guess] == accountId) {
+                // The guess hit, avoiding a binary search across the whole column.
+
+                return (int) guess;
+            }
+        }
+
+        return Arrays.binarySearch(ids, accountId);
+        // Falling back to a binary search when IDs have gaps.
+    }
+
+    private void sortColumns() {
+        // Method to sort both columns by account ID.
+
+        long[] packed = new long[ids.length];
+        // Packing each ID with its original index so one primitive sort orders both columns.
+
+        for (int i = 0; i < ids.length; i++) {
+            packed[i] = ((long) ids[i] << 32) | i;
+        }
+
+        Arrays.sort(packed);
+        // Sorting by ID; the signed ID in the high bits keeps negative IDs in order.
+
+        int[] sortedIds = new int[ids.length];
+        long[] sortedCents = new long[cents.length];
+        // Allocating the sorted columns.
+
+        for (int i = 0; i < packed.length; i++) {
+            // Copying each account into its sorted position.
+
+            int from = (int) packed[i];
+            sortedIds[i] = ids[from];
+            sortedCents[i] = cents[from];
+        }
+
+        ids = sortedIds;
+        cents = sortedCents;
+    }
+}
@@ -0,0 +1,24 @@
+package banking;
+
+public interface AccountStore extends Iterable<BankAccount> {
+    // Defining where a TransactionSystem keeps its accounts. The system reads and changes every balance through
+    // the BankAccount the store returns for an ID, and locks, versions and counts transfers on it.
+    // HeapAccountStore keeps one BankAccount object per account. OffHeapAccountStore keeps the balances in
+    // direct memory and returns a short-lived BankAccount view over them, so it needs no object per account.
+    // Open every account before the system is created: the system journals the openings it finds then.
+
+    void open(int accountId, long balanceCents);
+    // Adds an account with a starting balance in cents; fails if the ID is taken or the store is full.
+
+    BankAccount get(int accountId);
+    // The account with this ID, or null if there is none.
+
+    int size();
+    // The number of accounts.
+
+    int[] sortedIds();
+    // Every account ID, in ascending order.
+
+    long getTotalBalanceCents();
+    // The money held across all accounts in cents, as one consistent view.
+}
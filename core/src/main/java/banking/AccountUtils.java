@@ -0,0 +1,301 @@
+package banking;
+
+import java.util.Random; 
+// Importing the Random class to generate random numbers.
+
+public class AccountUtils { 
+    // Defining a utility class for account-related operations.
+
+    private static final Random random = new Random(); 
+    // Creating a single instance of Random to be used across the methods in the class.
+
+    // Generate random initial balance between min and max value
+    public static double generateInitialBalance(double minBalance, double maxBalance) { 
+        // Method to generate a random initial balance within a specified range (minBalance to maxBalance).
+
+        return fromCents(generateInitialBalanceCents(toCents(minBalance), toCents(maxBalance))); 
+        // Generate the balance in whole cents and convert it, so it always has exactly two decimal places.
+    }
+
+    // Generate random initial balance in cents between min and max value
+    public static long generateInitialBalanceCents(long minCents, long maxCents) { 
+        // Method to generate a random initial balance in whole cents within a specified range.
+
+        return minCents + Math.round(random.nextDouble() * (maxCents - minCents)); 
+        // Pick a random offset into the range, rounded to a whole cent, and add it to the minimum.
+    }
+
+    // Generate random transfer amount between min and max value
+    public static double generateTransferAmount(double minAmount, double maxAmount) { 
+        // Method to generate a random transfer amount within a specified range (minAmount to maxAmount).
+
+        return fromCents(generateTransferAmountCents(toCents(minAmount), toCents(maxAmount))); 
+        // Generate the amount in whole cents and convert it, so it always has exactly two decimal places.
+    }
+
+    // Generate random transfer amount in cents between min and max value
+    public static long generateTransferAmountCents(long minCents, long maxCents) { 
+        // Method to generate a random transfer amount in whole cents within a specified range.
+
+        return minCents + Math.round(random.nextDouble() * (maxCents - minCents)); 
+        // Pick a random offset into the range, rounded to a whole cent, and add it to the minimum.
+    }
+
+    // Convert a dollar amount to whole cents
+    public static long toCents(double amount) { 
+        // Method to convert a double dollar amount into a fixed-point count of cents.
+
+        return Math.round(amount * 100.0); 
+        // Scale the amount by 100 and round to the nearest cent so no fractional cents remain.
+    }
+
+    // Convert whole cents back to a dollar amount
+    public static double fromCents(long cents) { 
+        // Method to convert a fixed-point count of cents back into a double dollar amount.
+
+        return cents / 100.0; 
+        // Divide by 100 to get the dollar value for display and for the existing double-based APIs.
+    }
+
+    // Append a cents amount as currency without allocating
+    public static StringBuilder appendCurrency(StringBuilder out, long cents) { 
+        // Method to append a cents amount to a reusable StringBuilder in the same "$1234.56" form as formatCurrency.
+
+        out.append('$'); 
+        // Appending the dollar sign; String.format puts a minus sign after it, so this does too.
+
+        if (cents < 0) { 
+            // Writing the sign for negative amounts.
+
+            out.append('-'); 
+        }
+
+        long dollars = Math.abs(cents / 100); 
+        int fraction = (int) Math.abs(cents % 100); 
+        // Splitting the amount without negating it first, so even Long.MIN_VALUE is written correctly.
+
+        out.append(dollars).append('.'); 
+        // Appending the whole dollars and the decimal point.
+
+        if (fraction < 10) { 
+            // Padding single-digit cents with a zero.
+
+            out.append('0'); 
+        }
+
+        return out.append(fraction); 
+        // Appending the cents and returning the builder for chaining.
+    }
+
+    // Write a cents amount as currency into a byte buffer without allocating
+    public static int appendCurrency(byte[] out, int offset, long cents) { 
+        // Method to write a cents amount as ASCII "$1234.56" into a reusable byte array, for output that goes
+        // straight to a stream or file; returns the offset just past the last byte written. The array must
+        // have room for 23 more bytes, the longest amount a long can hold.
+
+        out[offset++] = '$'; 
+        // Writing the dollar sign.
+
+        if (cents < 0) { 
+            // Writing the sign for negative amounts, after the dollar sign as above.
+
+            out[offset++] = '-'; 
+        }
+
+        long dollars = Math.abs(cents / 100); 
+        int fraction = (int) Math.abs(cents % 100); 
+        // Splitting the amount without negating it first, so even Long.MIN_VALUE is written correctly.
+
+        int digits = 1; 
+        // Counting the digits of the whole dollars.
+
+        for (long rest = dollars / 10; rest > 0; rest /= 10) { 
+            digits++; 
+        }
+
+        for (int i = offset + digits - 1; i >= offset; i--) { 
+            // Writing the dollar digits from the last one back.
+
+            out[i] = (byte) ('0' + dollars % 10); 
+            dollars /= 10; 
+        }
+
+        offset += digits; 
+        // Moving past the dollars.
+
+        out[offset++] = '.'; 
+        out[offset++] = (byte) ('0' + fraction / 10); 
+        out[offset++] = (byte) ('0' + fraction % 10); 
+        // Writing the decimal point and both cents digits.
+
+        return offset; 
+    }
+
+    // Parse a dollar amount into whole cents without going through a double
+    public static long parseCents(CharSequence text) { 
+        // Method to parse an amount such as "125", "-125.5", "$125.50" or "$-125.50" into exact cents.
+
+        int length = text.length(); 
+        int i = 0; 
+        // Declaring the read position.
+
+        if (i < length && text.charAt(i) == '$') { 
+            i++; 
+            // Skipping an optional dollar sign, so formatted amounts parse back.
+        }
+
+        boolean negative = i < length && text.charAt(i) == '-'; 
+        // Reading an optional minus sign.
+
+        if (negative) { 
+            i++; 
+        }
+
+        int start = i; 
+        long cents = 0; 
+        // Accumulating the amount as negative cents, since the negative range of a long is the larger one.
+
+        while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') { 
+            // Reading each digit of the dollars.
+
+            cents = accumulate(cents, text.charAt(i++), text); 
+        }
+
+        if (i == start) { 
+            // Checking there was at least one digit.
+
+            throw new NumberFormatException("Missing dollars in amount: " + text); 
+        }
+
+        int decimals = 0; 
+        // Counting the decimal digits.
+
+        if (i < length && text.charAt(i) == '.') { 
+            // Reading up to two decimal digits.
+
+            i++; 
+
+            while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') { 
+                if (++decimals > 2) { 
+                    throw new NumberFormatException("More than two decimals in amount: " + text); 
+                }
+
+                cents = accumulate(cents, text.charAt(i++), text); 
+            }
+        }
+
+        if (i != length) { 
+            // Checking nothing follows the amount.
+
+            throw new NumberFormatException("Unexpected characters in amount: " + text); 
+        }
+
+        return finishCents(cents, decimals, negative, text); 
+    }
+
+    // Parse a dollar amount held as ASCII bytes into whole cents
+    public static long parseCents(byte[] bytes, int offset, int length) { 
+        // Method to parse an amount straight from a byte buffer, such as a network or file read, without
+        // creating a String; accepts the same forms as parseCents(CharSequence).
+
+        int end = offset + length; 
+        int i = offset; 
+        // Declaring the read position.
+
+        if (i < end && bytes[i] == '$') { 
+            i++; 
+            // Skipping an optional dollar sign.
+        }
+
+        boolean negative = i < end && bytes[i] == '-'; 
+        // Reading an optional minus sign.
+
+        if (negative) { 
+            i++; 
+        }
+
+        int start = i; 
+        long cents = 0; 
+        // Accumulating the amount as negative cents, as above.
+
+        while (i < end && bytes[i] >= '0' && bytes[i] <= '9') { 
+            // Reading each digit of the dollars.
+
+            cents = accumulate(cents, (char) bytes[i++], null); 
+        }
+
+        if (i == start) { 
+            throw new NumberFormatException("Missing dollars in amount"); 
+        }
+
+        int decimals = 0; 
+        // Counting the decimal digits.
+
+        if (i < end && bytes[i] == '.') { 
+            // Reading up to two decimal digits.
+
+            i++; 
+
+            while (i < end && bytes[i] >= '0' && bytes[i] <= '9') { 
+                if (++decimals > 2) { 
+                    throw new NumberFormatException("More than two decimals in amount"); 
+                }
+
+                cents = accumulate(cents, (char) bytes[i++], null); 
+            }
+        }
+
+        if (i != end) { 
+            throw new NumberFormatException("Unexpected characters in amount"); 
+        }
+
+        return finishCents(cents, decimals, negative, null); 
+    }
+
+    private static long accumulate(long negativeCents, char digit, CharSequence text) { 
+        // Method to add one more digit to an amount held as negative cents, failing rather than overflowing.
+
+        int value = digit - '0'; 
+        // Reading the digit's value.
+
+        if (negativeCents < Long.MIN_VALUE / 10 || negativeCents * 10 < Long.MIN_VALUE + value) { 
+            throw new NumberFormatException("Amount out of range" + (text == null ? "" : ": " + text)); 
+        }
+
+        return negativeCents * 10 - value; 
+    }
+
+    private static long finishCents(long negativeCents, int decimals, boolean negative, CharSequence text) { 
+        // Method to scale a parsed amount to cents and apply its sign.
+
+        for (int i = decimals; i < 2; i++) { 
+            // Scaling "12" and "12.5" up to a whole number of cents.
+
+            negativeCents = accumulate(negativeCents, '0', text); 
+        }
+
+        if (!negative && negativeCents == Long.MIN_VALUE) { 
+            // Checking a positive amount fits once the sign is flipped.
+
+            throw new NumberFormatException("Amount out of range" + (text == null ? "" : ": " + text)); 
+        }
+
+        return negative ? negativeCents : -negativeCents; 
+    }
+
+    // Format a cents amount for display
+    public static String formatCents(long cents) { 
+        // Method to format an exact cents amount as a currency string, without String.format.
+
+        return appendCurrency(new StringBuilder(24), cents).toString(); 
+        // Building the string in one small builder sized for the longest amount.
+    }
+
+    // Format currency for display
+    public static String formatCurrency(double amount) { 
+        // Method to format a double value as a currency string.
+
+        return String.format("$%.2f", amount); 
+        // Format the amount to two decimal places and prepend a dollar sign ($).
+    }
+} 
@@ -0,0 +1,114 @@
+package banking;
+
+public class AtomicBankAccount extends BankAccount {
+    // Defining a lock-free bank account that keeps the same public methods as BankAccount.
+    // The balance is the whole-cents field inherited from BankAccount, updated with compare-and-set through
+    // BankAccount.BALANCE_CENTS, so deposits, withdrawals and balance reads never queue behind the fair
+    // read-write lock. Every compare-and-set write is bracketed by the account's version, as BankAccount's
+    // writes are, so an optimistic reader that overlaps one retries, and it records the same events.
+    // The transfer lock inherited from BankAccount is still used by TransactionSystem to pair accounts.
+    // Splitting works as for BankAccount: once split, credits are added to per-thread sub-balances instead of
+    // all racing on one compare-and-set, debits still compare-and-set the main balance, and a debit the main
+    // balance cannot cover sweeps the sub-balances into it first.
+
+    public AtomicBankAccount(int id) {
+        // Constructor for AtomicBankAccount that initializes the account ID and a random balance.
+
+        // Generate random initial balance between $1000 and $5000
+        this(id, AccountUtils.generateInitialBalance(1000, 5000));
+        // Initializing the balance by generating a random value between $1000 and $5000 using the AccountUtils class.
+    }
+
+    public AtomicBankAccount(int id, double initialBalance) {
+        // Constructor for AtomicBankAccount that initializes the account ID with a known starting balance.
+
+        super(id, initialBalance);
+        // Passing the ID and balance to BankAccount, which stores the balance as whole cents and sets up the transfer lock.
+    }
+
+    @Override
+    public boolean withdrawCents(long amountCents) {
+        // Method to withdraw a specified amount in cents if the balance covers it, using a CAS loop.
+
+        while (true) {
+            // Retrying until the update succeeds or the balance is found to be insufficient.
+
+            long current = (long) BALANCE_CENTS.getVolatile(this);
+            // Reading the current balance in cents.
+
+            if (current < amountCents) {
+                // Checking if the balance is sufficient for the withdrawal.
+
+                if (sweepSubBalances()) {
+                    continue;
+                    // A split account had credits waiting in its sub-balances; trying again with them.
+                }
+
+                return false;
+                // Returning false if the balance is insufficient for the withdrawal.
+            }
+
+            beginWrite();
+            // Marking the change so optimistic reads retry around it, including a split account's sum of its
+            // main balance and sub-balances.
+
+            try {
+                if (!BALANCE_CENTS.compareAndSet(this, current, current - amountCents)) {
+                    continue;
+                    // Another thread changed the balance since it was read; trying again.
+                }
+            } finally {
+                endWrite();
+                // Publishing the new version, whether or not the compare-and-set won.
+            }
+
+            EventLog.log(LogLevel.DEBUG, EventLog.WITHDRAWN, getId(), 0, amountCents, current - amountCents);
+            // Recording the withdrawal amount and the new balance.
+
+            return true;
+            // Returning true to indicate a successful withdrawal.
+        }
+    }
+
+    @Override
+    public void depositCents(long amountCents) {
+        // Method to deposit a specified amount in cents into the account.
+
+        if (isSplit()) {
+            // Adding the credit to this thread's sub-balance, which BankAccount does without any lock.
+
+            super.depositCents(amountCents);
+            return;
+        }
+
+        long updated;
+        // The new balance, once it has been published.
+
+        beginWrite();
+        // Marking the change so optimistic reads retry around it.
+
+        try {
+            while (true) {
+                // Retrying until no other thread changed the balance between the read and the update.
+
+                long current = (long) BALANCE_CENTS.getVolatile(this);
+                // Reading the current balance in cents.
+
+                updated = Math.addExact(current, amountCents);
+                // Adding the deposit, failing rather than wrapping around if the balance would overflow.
+
+                if (BALANCE_CENTS.compareAndSet(this, current, updated)) {
+                    // Publishing the new balance only if no other thread changed it since it was read.
+
+                    break;
+                }
+            }
+        } finally {
+            endWrite();
+            // Publishing the new version.
+        }
+
+        EventLog.log(LogLevel.DEBUG, EventLog.DEPOSITED, getId(), 0, amountCents, updated);
+        // Recording the deposit amount and the new balance.
+    }
+}
@@ -0,0 +1,673 @@
+package banking;
+
+import java.lang.invoke.MethodHandles; 
+// Importing the MethodHandles class to look up the VarHandle on the balance field.
+
+import java.lang.invoke.VarHandle; 
+// Importing the VarHandle class so the lock-free subclass can compare-and-set the balance field.
+
+import java.util.concurrent.atomic.AtomicLong; 
+// Importing the AtomicLong class for the seqlock word that versions every balance change.
+
+import java.util.concurrent.atomic.AtomicLongArray; 
+// Importing the AtomicLongArray class for the sub-balances of a split account.
+
+import java.util.concurrent.atomic.LongAdder; 
+// Importing the LongAdder class to count lock contention without a shared hot counter.
+
+import java.util.concurrent.TimeUnit; 
+// Importing the TimeUnit class for bounded lock waits.
+
+import java.util.concurrent.locks.ReentrantLock; 
+// Importing the ReentrantLock class to allow for locking mechanisms with exclusive access.
+
+import java.util.concurrent.locks.ReentrantReadWriteLock; 
+// Importing the ReentrantReadWriteLock class to provide a read-write lock mechanism.
+
+public class BankAccount { 
+    // Defining a class representing a bank account.
+
+    private int id; 
+    // Declaring an integer variable to store the account's ID.
+
+    private volatile long balanceCents; 
+    // Declaring the balance of the account in whole cents, so sums stay exact; volatile so reads need no lock.
+
+    static final VarHandle BALANCE_CENTS; 
+    // VarHandle on balanceCents, for AtomicBankAccount, which updates the same field with compare-and-set
+    // instead of the write lock.
+
+    private static final VarHandle TRANSFERS_OUT; 
+    // VarHandle on transfersOut, for its opaque reads and writes.
+
+    static { 
+        try { 
+            BALANCE_CENTS = MethodHandles.lookup().findVarHandle(BankAccount.class, "balanceCents", long.class); 
+            TRANSFERS_OUT = MethodHandles.lookup().findVarHandle(BankAccount.class, "transfersOut", long.class); 
+        } catch (ReflectiveOperationException e) { 
+            throw new ExceptionInInitializerError(e); 
+        }
+    }
+
+    static final long VERSION_UNIT = 1L << 16; 
+    // The seqlock word keeps the number of writers in progress in its low 16 bits and a version count above them.
+
+    private final AtomicLong seq; 
+    // Declaring the seqlock word; it starts at version 1 so a valid read stamp is never 0.
+
+    private final ReentrantLock lock; 
+    // Declaring a ReentrantLock to ensure exclusive access to the bank account.
+
+    private final ReentrantReadWriteLock readWriteLock; 
+    // Declaring a ReadWriteLock that lets only one thread at a time write the balance; reads take no lock.
+
+    private final LongAdder contendedLocks; 
+    // Declaring the number of times a thread found the account lock taken and had to wait for it.
+
+    private final LongAdder lockWaitNanos; 
+    // Declaring the total time threads spent waiting for the account lock.
+
+    private long transfersOut; 
+    // Declaring the number of transfers that held this account's lock as their source. It is only written
+    // under that lock, and written and read through TRANSFERS_OUT in opaque mode, so a reader without the
+    // lock never sees a torn value while counting still costs no atomic instruction or fence.
+
+    static final int SPLIT_AFTER_CONTENDED = 256; 
+    static final long SPLIT_WINDOW_NANOS = 10_000_000L; 
+    // An account splits itself once its lock is contended this many times within 10 ms.
+
+    private volatile SubBalances subBalances; 
+    // Declaring the sub-balances that take credits without the lock once the account is split, or null.
+
+    private volatile boolean autoSplit = true; 
+    // Declaring whether the account splits itself when its lock is contended often.
+
+    private long contentionWindowStart; 
+    private int contentionInWindow; 
+    // Declaring the start of the current contention window and the contended acquisitions in it; written under the lock.
+
+    public BankAccount(int id) { 
+        // Constructor for BankAccount that initializes the account ID and balance.
+
+        // Generate random initial balance between $1000 and $5000
+        this(id, AccountUtils.generateInitialBalance(1000, 5000)); 
+        // Initializing the balance by generating a random value between $1000 and $5000 using the AccountUtils class.
+    }
+
+    public BankAccount(int id, double initialBalance) { 
+        // Constructor for BankAccount that initializes the account ID with a known starting balance.
+
+        this(id, initialBalance, true); 
+        // Using fair locks, as every account always has.
+    }
+
+    BankAccount(int id, long balanceCents) { 
+        // Package-private constructor for an account whose balance is already known in whole cents, as when
+        // the accounts are rebuilt from a snapshot and the journal, so the balance never goes through a double.
+
+        this(id, 0.0, true); 
+        // Setting up the ID and the fair locks like every other account.
+
+        this.balanceCents = balanceCents; 
+        // Storing the exact balance.
+    }
+
+    public BankAccount(int id, double initialBalance, boolean fair) { 
+        // Constructor for BankAccount that also chooses whether its locks are fair, so the two policies can be compared.
+
+        this.id = id; 
+        // Setting the account ID from the constructor parameter.
+
+        this.balanceCents = AccountUtils.toCents(initialBalance); 
+        // Initializing the balance with the value supplied by the caller, rounded to whole cents.
+
+        this.lock = new ReentrantLock(fair); 
+        // Initializing the ReentrantLock; when fair, threads acquire the lock in the order they requested it.
+
+        this.readWriteLock = new ReentrantReadWriteLock(fair); 
+        // Initializing the ReadWriteLock; when fair, read and write locks are granted in the order they are requested.
+
+        this.seq = new AtomicLong(VERSION_UNIT); 
+        this.contendedLocks = new LongAdder(); 
+        this.lockWaitNanos = new LongAdder(); 
+        // Giving the account its own version and contention counters.
+    }
+
+    BankAccount(int id, ReentrantLock lock, ReentrantReadWriteLock readWriteLock, AtomicLong seq, 
+            LongAdder contendedLocks, LongAdder lockWaitNanos) { 
+        // Package-private constructor for an account that shares its locks, version and contention counters
+        // with other accounts, as the views OffHeapAccountStore hands out share those of their stripe. The
+        // subclass keeps the balance itself, and such an account never splits.
+
+        this.id = id; 
+        this.lock = lock; 
+        this.readWriteLock = readWriteLock; 
+        this.seq = seq; 
+        this.contendedLocks = contendedLocks; 
+        this.lockWaitNanos = lockWaitNanos; 
+        this.autoSplit = false; 
+    }
+
+    public int getId() { 
+        // Getter method to return the account ID.
+
+        return id; 
+        // Returning the account ID.
+    }
+
+    public double getBalance() { 
+        // Getter method to return the balance of the account in dollars.
+
+        return AccountUtils.fromCents(getBalanceCents()); 
+        // Converting the exact balance for callers that work in dollars.
+    }
+
+    public long getBalanceCents() { 
+        // Getter method to return the balance of the account in cents.
+        // Writers change the balance in a single volatile write under the write lock, so one volatile
+        // read always sees a whole, committed balance; readers never queue behind writers or each other.
+
+        long current = peekBalanceCents(); 
+        // Reading the balance once, including any sub-balances.
+
+        EventLog.log(LogLevel.DEBUG, EventLog.BALANCE_READ, id, 0, current, 0); 
+        // Recording the balance read; the event log formats and prints it off this thread.
+
+        return current; 
+        // Returning the balance that was read.
+    }
+
+    double peekBalance() { 
+        // Package-private method to read the balance in dollars without printing.
+
+        return AccountUtils.fromCents(peekBalanceCents()); 
+    }
+
+    long peekBalanceCents() { 
+        // Package-private method to read the balance in cents without printing, used by snapshots in this package.
+
+        SubBalances split = subBalances; 
+        // Reading whether the account is split.
+
+        if (split == null) { 
+            return balanceCents; 
+            // Returning the current balance with a single volatile read.
+        }
+
+        for (int attempt = 0; ; attempt++) { 
+            // Summing the main balance and the sub-balances until no debit moved money between them meanwhile.
+            // Credits only ever add to a sub-balance, so they never make the sum count a cent twice.
+
+            long stamp = tryOptimisticRead(); 
+            // Taking a stamp; debits and sweeps change the version, credits do not.
+
+            if (stamp != 0) { 
+                long total = balanceCents + split.sum(); 
+                // Adding up every part of the balance.
+
+                if (validate(stamp)) { 
+                    return total; 
+                }
+            }
+
+            if (lock.isHeldByCurrentThread() || readWriteLock.isWriteLockedByCurrentThread()) { 
+                // Every write is opened by a thread holding one of these locks, so the write in progress may be
+                // this thread's own, as in a posting or net change that reads the account while applying it.
+                // It would never close while this thread waits for it, so the sum is read under the write
+                // lock instead, which keeps every sweep and debit out of the way.
+
+                return sumUnderWriteLock(split); 
+            }
+
+            if (attempt < 64) { 
+                Thread.onSpinWait(); 
+            } else { 
+                Thread.yield(); 
+            }
+            // Waiting for the debit in progress to finish, giving up the core if it takes long, as when
+            // the debiting thread has been descheduled.
+        }
+    }
+
+    private long sumUnderWriteLock(SubBalances split) { 
+        // Method to add up the main balance and the sub-balances while no sweep or locked debit can run; credits
+        // may still arrive, but they only ever add to a sub-balance, so no cent is counted twice.
+
+        readWriteLock.writeLock().lock(); 
+        // Taking the write lock, which this thread may already hold.
+
+        try { 
+            while (true) { 
+                long main = balanceCents; 
+                long total = main + split.sum(); 
+
+                if (balanceCents == main) { 
+                    return total; 
+                }
+                // An AtomicBankAccount debits the main balance by compare-and-set without this lock. With sweeps
+                // kept out, the main balance only ever goes down, so finding it unchanged after the sum means
+                // no debit moved money between the two reads.
+            }
+        } finally { 
+            readWriteLock.writeLock().unlock(); 
+        }
+    }
+
+    public boolean isSplit() { 
+        // Method to return whether the account keeps its credits in sub-balances.
+
+        return subBalances != null; 
+    }
+
+    public void setAutoSplit(boolean autoSplit) { 
+        // Method to choose whether the account splits itself when its lock is contended often.
+
+        this.autoSplit = autoSplit; 
+    }
+
+    public void split() { 
+        // Method to split the account now, into about two sub-balances per core.
+
+        split(Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1))); 
+    }
+
+    public void split(int stripes) { 
+        // Method to split the account into the given number of sub-balances, a power of two.
+        // From then on a transfer into the account adds to one sub-balance picked by the calling thread,
+        // without taking the account lock; a debit still takes the lock and, when the main balance is short,
+        // sweeps the sub-balances into it. Splitting is one-way, and a split account is never unsplit.
+
+        if (stripes < 1 || Integer.bitCount(stripes) != 1) { 
+            // Checking the number of sub-balances can be picked with a mask.
+
+            throw new IllegalArgumentException("Sub-balances must be a power of two, got " + stripes); 
+        }
+
+        lock.lock(); 
+        // Splitting under the account lock, so it happens at most once.
+
+        try { 
+            if (subBalances == null) { 
+                subBalances = new SubBalances(stripes); 
+                // Installing empty sub-balances; the money stays in the main balance until it is spent.
+            }
+        } finally { 
+            lock.unlock(); 
+        }
+    }
+
+    long tryOptimisticRead() { 
+        // Package-private method to start an optimistic read: returns a stamp, or 0 if a change is in progress.
+
+        long stamp = seq.get(); 
+        // Reading the seqlock word.
+
+        return (stamp & (VERSION_UNIT - 1)) == 0 ? stamp : 0; 
+        // A stamp is only usable when no writer is inside beginWrite/endWrite.
+    }
+
+    boolean validate(long stamp) { 
+        // Package-private method to check that no change started or finished since the stamp was taken.
+
+        return stamp != 0 && seq.get() == stamp; 
+    }
+
+    void beginWrite() { 
+        // Package-private method to mark a change as in progress; calls nest, so a transfer can cover both of its legs.
+
+        seq.getAndIncrement(); 
+        // Counting one more writer in progress.
+    }
+
+    void endWrite() { 
+        // Package-private method to mark a change as finished.
+
+        seq.getAndAdd(VERSION_UNIT - 1); 
+        // Removing the writer and bumping the version in one atomic step.
+    }
+
+    boolean sweepSubBalances() { 
+        // Package-private method for AtomicBankAccount, whose debits compare-and-set the main balance without the
+        // write lock: moves the credits waiting in the sub-balances into the main balance with an atomic add,
+        // under the write lock so sweeps never overlap. Returns whether anything was moved.
+
+        SubBalances split = subBalances; 
+        // Reading whether the account is split.
+
+        if (split == null) { 
+            return false; 
+        }
+
+        readWriteLock.writeLock().lock(); 
+        // Keeping other sweeps out.
+
+        try { 
+            beginWrite(); 
+            // Marking the sweep, so a reader never counts the swept money in both places.
+
+            try { 
+                long moved = split.sweep((long) BALANCE_CENTS.getVolatile(this)); 
+                // Taking the credits off the sub-balances, failing first if the main balance would overflow.
+
+                BALANCE_CENTS.getAndAdd(this, moved); 
+                // Adding them atomically, since debits may compare-and-set the balance meanwhile.
+
+                return moved != 0; 
+            } finally { 
+                endWrite(); 
+            }
+        } finally { 
+            readWriteLock.writeLock().unlock(); 
+        }
+    }
+
+    public boolean withdraw(double amount) { 
+        // Method to withdraw a specified dollar amount from the account.
+
+        return withdrawCents(AccountUtils.toCents(amount)); 
+        // Converting the amount to whole cents and withdrawing it exactly.
+    }
+
+    public boolean withdrawCents(long amountCents) { 
+        // Method to withdraw a specified amount in cents from the account.
+
+        readWriteLock.writeLock().lock(); 
+        // Acquiring the write lock before modifying the balance to ensure exclusive access.
+
+        try {
+            SubBalances split = subBalances; 
+            // Reading whether the account is split.
+
+            if (split != null && balanceCents < amountCents) { 
+                // Sweeping the credits collected in the sub-balances into the main balance when it cannot cover the debit.
+
+                beginWrite(); 
+                // Marking the sweep, so a reader never counts the swept money in both places.
+
+                try { 
+                    balanceCents += split.sweep(balanceCents); 
+                    // Moving exactly the credits the sweep checked; it fails before clearing any sub-balance
+                    // if the main balance would overflow, so no money is lost.
+                } finally { 
+                    endWrite(); 
+                }
+            }
+
+            if (balanceCents >= amountCents) { 
+                // Checking if the balance is sufficient for the withdrawal.
+
+                beginWrite(); 
+                // Marking the change so optimistic multi-account reads retry around it.
+
+                balanceCents -= amountCents; 
+                // Subtracting the withdrawal amount from the balance.
+
+                endWrite(); 
+                // Publishing the new version.
+
+                EventLog.log(LogLevel.DEBUG, EventLog.WITHDRAWN, id, 0, amountCents, balanceCents); 
+                // Recording the withdrawal amount and the new balance.
+
+                return true; 
+                // Returning true to indicate a successful withdrawal.
+            }
+            return false; 
+            // Returning false if the balance is insufficient for the withdrawal.
+        } finally {
+            readWriteLock.writeLock().unlock(); 
+            // Releasing the write lock after the withdrawal operation.
+        }
+    }
+
+    public void deposit(double amount) { 
+        // Method to deposit a specified dollar amount into the account.
+
+        depositCents(AccountUtils.toCents(amount)); 
+        // Converting the amount to whole cents and depositing it exactly.
+    }
+
+    public void depositCents(long amountCents) { 
+        // Method to deposit a specified amount in cents into the account.
+
+        SubBalances split = subBalances; 
+        // Reading whether the account is split.
+
+        if (split != null) { 
+            // Adding the deposit to this thread's sub-balance, without the lock or a new version; a transfer
+            // brackets its source account's version around the credit, which is what consistent reads check.
+
+            split.add(amountCents); 
+
+            EventLog.log(LogLevel.DEBUG, EventLog.DEPOSITED, id, 0, amountCents, balanceCents); 
+            // Recording the deposit with the main balance alone, one volatile read, rather than paying for a
+            // consistent read of every sub-balance on each credit.
+
+            return; 
+        }
+
+        readWriteLock.writeLock().lock(); 
+        // Acquiring the write lock before modifying the balance to ensure exclusive access.
+
+        try {
+            long updated = Math.addExact(balanceCents, amountCents); 
+            // Adding the deposit, failing rather than wrapping around if the balance would overflow.
+
+            beginWrite(); 
+            // Marking the change so optimistic multi-account reads retry around it.
+
+            balanceCents = updated; 
+            // Storing the new balance.
+
+            endWrite(); 
+            // Publishing the new version.
+
+            EventLog.log(LogLevel.DEBUG, EventLog.DEPOSITED, id, 0, amountCents, updated); 
+            // Recording the deposit amount and the new balance.
+        } finally {
+            readWriteLock.writeLock().unlock(); 
+            // Releasing the write lock after the deposit operation.
+        }
+    }
+
+    public void lock() { 
+        // Method to explicitly acquire the ReentrantLock for the account.
+
+        lockAndMeasure(); 
+        // Acquiring the lock to perform some critical operation with exclusive access.
+    }
+
+    long lockAndMeasure() { 
+        // Package-private method to acquire the lock and return how long the caller waited for it.
+        // A free lock is taken without reading the clock, so only a thread that is about to park pays
+        // for the timing. Checking for queued threads first keeps a fair lock from being barged.
+
+        if (tryLockNow()) { 
+            // Taking the lock straight away when nobody holds it or waits for it.
+
+            return 0; 
+        }
+
+        long start = System.nanoTime(); 
+        // Recording when the wait started.
+
+        lock.lock(); 
+        // Waiting for the lock.
+
+        return contended(start); 
+    }
+
+    long tryLockAndMeasure(long timeout, TimeUnit unit) throws InterruptedException { 
+        // Package-private method to acquire the lock within the timeout and return how long the caller waited
+        // for it, or -1 if the timeout ran out first. A wait that times out is not counted as contention,
+        // since the caller reports the timeout itself.
+
+        if (tryLockNow()) { 
+            // Taking the lock straight away when nobody holds it or waits for it.
+
+            return 0; 
+        }
+
+        long start = System.nanoTime(); 
+        // Recording when the wait started.
+
+        if (!lock.tryLock(timeout, unit)) { 
+            // Giving up at the timeout.
+
+            return -1; 
+        }
+
+        return contended(start); 
+    }
+
+    private long contended(long start) { 
+        // Method called with the lock just taken after a wait that began at start; counts the wait and returns it.
+
+        long waited = System.nanoTime() - start; 
+        // Measuring the wait.
+
+        contendedLocks.increment(); 
+        lockWaitNanos.add(waited); 
+        // Adding it to this account's contention counters.
+
+        if (autoSplit && subBalances == null) { 
+            // Counting the contention towards splitting the account, with its lock now held.
+
+            if (start - contentionWindowStart > SPLIT_WINDOW_NANOS) { 
+                contentionWindowStart = start; 
+                contentionInWindow = 0; 
+                // Starting a new window.
+            }
+
+            if (++contentionInWindow >= SPLIT_AFTER_CONTENDED) { 
+                split(); 
+                // Splitting an account whose lock threads keep queueing on.
+            }
+        }
+
+        return waited; 
+    }
+
+    void countTransferOut() { 
+        // Package-private method called with the account lock held, once per transfer out of this account.
+
+        assert lock.isHeldByCurrentThread() : "Transfers out of account " + id + " are counted under its lock"; 
+        // The lock is what keeps two increments from losing one.
+
+        TRANSFERS_OUT.setOpaque(this, (long) TRANSFERS_OUT.getOpaque(this) + 1); 
+    }
+
+    public long getTransferOutCount() { 
+        // Getter method to return the number of transfers out of this account; read without the lock,
+        // so a transfer still in progress may not be included yet.
+
+        return (long) TRANSFERS_OUT.getOpaque(this); 
+    }
+
+    public long getContendedLockCount() { 
+        // Getter method to return how many times a thread had to wait for this account's lock.
+
+        return contendedLocks.sum(); 
+    }
+
+    public long getLockWaitNanos() { 
+        // Getter method to return the total time threads have waited for this account's lock.
+
+        return lockWaitNanos.sum(); 
+    }
+
+    boolean tryLockNow() { 
+        // Package-private method to take the lock only if it is free and nobody is queued for it, without waiting.
+        // Unlike ReentrantLock.tryLock() it does not barge ahead of the queue of a fair lock. A lock this thread
+        // already holds, as when two accounts share one, is taken again whoever is queued.
+
+        return (lock.isHeldByCurrentThread() || !lock.hasQueuedThreads()) && lock.tryLock(); 
+    }
+
+    public boolean tryLock(long timeout, TimeUnit unit) throws InterruptedException { 
+        // Method to acquire the ReentrantLock for the account, giving up after the timeout.
+
+        return lock.tryLock(timeout, unit); 
+        // Returning true if the lock was acquired in time.
+    }
+
+    public void unlock() { 
+        // Method to explicitly release the ReentrantLock for the account.
+
+        lock.unlock(); 
+        // Releasing the lock after the critical operation is complete.
+    }
+
+    private static final class SubBalances { 
+        // Defining the sub-balances of a split account: one counter per stripe, each on its own cache line.
+
+        private static final int PADDING = 8; 
+        // Longs per stripe, so no two stripes share a 64-byte cache line.
+
+        private final AtomicLongArray cells; 
+        // Declaring the counters; stripe i is at index i * PADDING.
+
+        private final int mask; 
+        // Declaring the mask that picks a stripe from a thread ID.
+
+        private final long[] swept; 
+        // Declaring the amount taken from each stripe by the current sweep; only used under the account's write lock.
+
+        SubBalances(int stripes) { 
+            this.cells = new AtomicLongArray(stripes * PADDING); 
+            this.mask = stripes - 1; 
+            this.swept = new long[stripes]; 
+        }
+
+        void add(long amountCents) { 
+            // Method to add a credit to the calling thread's stripe, failing rather than wrapping around.
+
+            int index = ((int) Thread.currentThread().getId() & mask) * PADDING; 
+            // Picking the stripe.
+
+            long before = cells.getAndAdd(index, amountCents); 
+            // Adding the credit.
+
+            if (((before + amountCents) ^ before) < 0 && (amountCents ^ before) >= 0) { 
+                // Undoing a credit that overflowed the stripe.
+
+                cells.getAndAdd(index, -amountCents); 
+                throw new ArithmeticException("long overflow"); 
+            }
+        }
+
+        long sum() { 
+            // Method to add up every stripe.
+
+            long total = 0; 
+
+            for (int i = 0; i < cells.length(); i += PADDING) { 
+                total += cells.get(i); 
+            }
+
+            return total; 
+        }
+
+        long sweep(long balanceCents) { 
+            // Method called under the account's write lock to take what the stripes hold for the main balance and
+            // return it. The amounts are read and added to the balance first, so an overflow throws before any
+            // stripe changes; then exactly those amounts are taken off, and credits arriving meanwhile stay
+            // for the next sweep.
+
+            long moved = 0; 
+
+            for (int i = 0, s = 0; i < cells.length(); i += PADDING, s++) { 
+                swept[s] = cells.get(i); 
+                moved = Math.addExact(moved, swept[s]); 
+            }
+
+            Math.addExact(balanceCents, moved); 
+            // Failing now if the swept balance would not fit.
+
+            for (int i = 0, s = 0; i < cells.length(); i += PADDING, s++) { 
+                cells.getAndAdd(i, -swept[s]); 
+            }
+
+            return moved; 
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package banking;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+// Importing the executors, the admission semaphore and the counters used by the service.
+
+public class BankingService implements AutoCloseable {
+    // Defining a request front end over TransactionSystem for many slow, concurrent client sessions.
+    // Each request runs on its own virtual thread when the JDK has them (21 and later); otherwise it
+    // falls back to a fixed pool of platform threads. The build targets Java 17 and finds the virtual-thread
+    // factory reflectively, so a JDK 17 runtime only ever uses the fallback pool, where requests past the
+    // pool size wait in its queue rather than each on a parked thread. The path a request takes holds no monitor
+    // (there is no synchronized block anywhere on it), and account locks are ReentrantLocks taken with
+    // tryLock and a deadline, so a parked request never pins a carrier thread and never waits forever.
+    // A semaphore caps the requests in flight: past the cap a request is rejected at once instead of
+    // queueing, which keeps memory bounded however many clients connect.
+
+    private final TransactionSystem system;
+    // Declaring the transaction system the requests run against.
+
+    private final ExecutorService executor;
+    // Declaring the executor that runs the requests.
+
+    private final boolean virtualThreads;
+    // Declaring whether the executor starts a virtual thread per request.
+
+    private final int maxInFlight;
+    // Declaring the most requests admitted at once.
+
+    private final Semaphore admission;
+    // Declaring the permits for admitted requests.
+
+    private final long timeoutNanos;
+    // Declaring how long a request may take, from admission to holding its locks.
+
+    private final LongAdder rejected = new LongAdder();
+    // Counting requests refused at the in-flight cap.
+
+    private final LongAdder timedOut = new LongAdder();
+    // Counting requests that missed their deadline.
+
+    public BankingService(TransactionSystem system, int maxInFlight, long timeout, TimeUnit unit, int fallbackThreads) {
+        // Constructor to create the service with its admission cap, request timeout and fallback pool size.
+
+        this.system = system;
+        // Storing the transaction system.
+
+        ExecutorService virtual = newVirtualThreadExecutor();
+        // Trying for a virtual-thread-per-request executor.
+
+        this.virtualThreads = virtual != null;
+        // Recording which kind was created.
+
+        this.executor = virtual != null ? virtual : Executors.newFixedThreadPool(fallbackThreads);
+        // Falling back to a fixed pool of platform threads on older JDKs.
+
+        this.maxInFlight = maxInFlight;
+        this.admission = new Semaphore(maxInFlight);
+        // Creating one permit per request that may be in flight.
+
+        this.timeoutNanos = unit.toNanos(timeout);
+        // Storing the timeout in nanoseconds.
+    }
+
+    static ExecutorService newVirtualThreadExecutor() {
+        // Method to create an executor that starts a virtual thread per task, or return null if the JDK has none.
+
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            // Looking the factory up reflectively, so the code still builds and runs on JDK 17.
+        } catch (ReflectiveOperationException e) {
+            return null;
+            // Virtual threads are not available.
+        }
+    }
+
+    public CompletableFuture<TransferResult> transfer(int fromAccountId, int toAccountId, double amount) {
+        // Method to submit a transfer of a dollar amount.
+
+        return transferCents(fromAccountId, toAccountId, AccountUtils.toCents(amount));
+        // Converting the amount to whole cents once, before the request is queued.
+    }
+
+    public CompletableFuture<TransferResult> transferCents(int fromAccountId, int toAccountId, long amountCents) {
+        // Method to submit a transfer of an amount in cents; the future completes with its outcome.
+
+        return submit(fromAccountId, toAccountId, amountCents, 0);
+    }
+
+    public CompletableFuture<TransferResult> transferOnce(long idempotencyKey, int fromAccountId, int toAccountId,
+                                                          long amountCents) {
+        // Method to submit a transfer in cents that is applied at most once per idempotency key, so a client
+        // whose request was rejected, timed out or lost its reply can resubmit it with the same key.
+
+        if (idempotencyKey == 0) {
+            // Refusing the key that marks an empty slot before the request is queued.
+
+            throw new IllegalArgumentException("Idempotency key must not be 0");
+        }
+
+        return submit(fromAccountId, toAccountId, amountCents, idempotencyKey);
+    }
+
+    private CompletableFuture<TransferResult> submit(int fromAccountId, int toAccountId, long amountCents, long key) {
+        // Method to admit and queue a transfer, with an idempotency key or 0 for none.
+
+        if (!admission.tryAcquire()) {
+            // Checking if the service is at its in-flight cap.
+
+            rejected.increment();
+            // Counting the rejection.
+
+            return CompletableFuture.completedFuture(TransferResult.REJECTED);
+            // Refusing at once so the client can back off, rather than queueing without bound.
+        }
+
+        Request request = new Request(fromAccountId, toAccountId, amountCents, key, System.nanoTime() + timeoutNanos);
+        // Computing the request's deadline at admission, so time spent waiting for a thread counts too.
+
+        try {
+            executor.execute(request);
+            // Running the request on its own virtual thread, or queueing it for the fallback pool.
+        } catch (RejectedExecutionException e) {
+            // Catching submission after the service was closed.
+
+            request.reject();
+        }
+
+        return request.result;
+    }
+
+    public double getBalance(int accountId) {
+        // Method to read a balance; reads never block, so they run on the caller without a permit.
+
+        BankAccount account = system.getAccount(accountId);
+        // Looking up the account.
+
+        if (account == null) {
+            // Check if the account is invalid.
+
+            throw new IllegalArgumentException("Unknown account " + accountId);
+        }
+
+        return account.getBalance();
+        // Returning the balance with a single lock-free read.
+    }
+
+    public int getInFlight() {
+        // Method to return the number of requests admitted and not yet finished.
+
+        return maxInFlight - admission.availablePermits();
+    }
+
+    public long getRejectedCount() {
+        // Method to return the number of requests refused at the in-flight cap.
+
+        return rejected.sum();
+    }
+
+    public long getTimedOutCount() {
+        // Method to return the number of requests that missed their deadline.
+
+        return timedOut.sum();
+    }
+
+    public boolean usesVirtualThreads() {
+        // Method to return whether requests run on virtual threads.
+
+        return virtualThreads;
+    }
+
+    @Override
+    public void close() {
+        // Method to stop accepting requests and wait for the admitted ones to finish. Requests still running
+        // or queued after a minute, or when the closing thread is interrupted, are stopped and complete as REJECTED.
+
+        executor.shutdown();
+        // Refusing new requests.
+
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // Some requests outlived the wait; each is bounded by the request timeout, so this means the
+                // timeout is longer than the wait.
+
+                stopNow();
+                // Interrupting them rather than leaving their threads behind.
+            }
+        } catch (InterruptedException e) {
+            stopNow();
+            // Interrupting the requests, since the caller will not wait for them.
+
+            Thread.currentThread().interrupt();
+            // Restoring the interrupt for the caller.
+        }
+    }
+
+    private void stopNow() {
+        // Method to interrupt the running requests and reject the ones the fallback pool had queued but not
+        // started, which shutdownNow hands back instead of running.
+
+        for (Runnable task : executor.shutdownNow()) {
+            if (task instanceof Request) {
+                ((Request) task).reject();
+            }
+        }
+    }
+
+    private final class Request implements Runnable {
+        // Defining an admitted transfer together with its deadline and the future handed back to its client.
+        // The request holds one admission permit from creation until it runs or is rejected.
+
+        final int fromAccountId;
+        final int toAccountId;
+        final long amountCents;
+        // The transfer.
+
+        final long key;
+        // The idempotency key, or 0 for none.
+
+        final long deadline;
+        // The System.nanoTime by which the request must hold its locks.
+
+        final CompletableFuture<TransferResult> result = new CompletableFuture<>();
+        // The future completed with the request's outcome.
+
+        Request(int fromAccountId, int toAccountId, long amountCents, long key, long deadline) {
+            // Constructor to create an admitted request.
+
+            this.fromAccountId = fromAccountId;
+            this.toAccountId = toAccountId;
+            this.amountCents = amountCents;
+            this.key = key;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            // Method to run the transfer with a bounded wait for the account locks, then free the request's place
+            // before reporting the outcome, so a client that sees the result also sees the place freed.
+
+            TransferResult outcome = null;
+            RuntimeException failure = null;
+            // The outcome of the transfer, or the unexpected failure that stopped it.
+
+            try {
+                long remaining = deadline - System.nanoTime();
+                // Computing the time left after waiting to start.
+
+                outcome = remaining <= 0 ? TransferResult.TIMED_OUT
+                        : key == 0 ? system.tryTransferCents(fromAccountId, toAccountId, amountCents, remaining,
+                                                             TimeUnit.NANOSECONDS)
+                        : system.tryTransferOnce(key, fromAccountId, toAccountId, amountCents, remaining,
+                                                 TimeUnit.NANOSECONDS);
+                // Running the transfer.
+
+                if (outcome == TransferResult.TIMED_OUT) {
+                    timedOut.increment();
+                    // Counting the missed deadline.
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // Restoring the interrupt, for example when the service is closed.
+
+                outcome = TransferResult.REJECTED;
+            } catch (RuntimeException e) {
+                failure = e;
+            } finally {
+                admission.release();
+                // Freeing the request's place.
+            }
+
+            if (failure != null) {
+                result.completeExceptionally(failure);
+                // Passing an unexpected failure to the client.
+            } else {
+                result.complete(outcome);
+                // Reporting the outcome.
+            }
+        }
+
+        void reject() {
+            // Method to refuse a request that will never run, freeing its place.
+
+            admission.release();
+            result.complete(TransferResult.REJECTED);
+        }
+    }
+}
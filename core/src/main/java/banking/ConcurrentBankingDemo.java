@@ -1,3 +1,5 @@
+package banking;
+
 import java.util.Arrays; 
 // Importing Arrays class to work with arrays and list conversions.
 
@@ -21,9 +23,15 @@ public class ConcurrentBankingDemo {
             // Creating a BankAccount with ID 3.
         );
 
+        EventLog.setLevel(LogLevel.INFO); 
+        // Opting in to the per-transfer events, which the demo prints to show the threads interleaving.
+
         TransactionSystem system = new TransactionSystem(accounts); 
         // Initializing a TransactionSystem instance to manage the accounts and transactions.
 
+        system.setHistory(new AccountHistory()); 
+        // Keeping each account's history so a statement can be printed at the end.
+
         // Generate random transfer amounts
         double transfer1Amount = AccountUtils.generateTransferAmount(50, 200); 
         // Generating a random transfer amount between $50 and $200 for the first transaction.
@@ -34,38 +42,22 @@ public class ConcurrentBankingDemo {
         double transfer3Amount = AccountUtils.generateTransferAmount(25, 150); 
         // Generating a random transfer amount between $25 and $150 for the third transaction.
 
-        // Create threads with random transfer amounts
-        Thread thread1 = new Thread(() -> { 
-            // Creating the first thread that performs a transfer from account 1 to account 2.
-            system.transfer(1, 2, transfer1Amount, 1); 
-            // Performing the transfer from account 1 to account 2 with the generated amount.
-        }, "Thread-1"); 
-        // Naming the thread "Thread-1".
-
-        Thread thread2 = new Thread(() -> { 
-            // Creating the second thread that performs a transfer from account 2 to account 3.
-            system.transfer(2, 3, transfer2Amount, 2); 
-            // Performing the transfer from account 2 to account 3 with the generated amount.
-        }, "Thread-2"); 
-        // Naming the thread "Thread-2".
-
-        Thread thread3 = new Thread(() -> { 
-            // Creating the third thread that performs a transfer from account 3 to account 1.
-            system.transfer(3, 1, transfer3Amount, 3); 
-            // Performing the transfer from account 3 to account 1 with the generated amount.
-        }, "Thread-3"); 
-        // Naming the thread "Thread-3".
+        TransferScheduler scheduler = new TransferScheduler(system, 3); 
+        // Creating a scheduler with three workers; it orders transfers that share an account by submission order.
 
         Thread thread4 = new Thread(() -> { 
             // Creating the fourth thread that performs balance readings for accounts 1 and 3.
             System.out.println("\nThread 4 reading balances:"); 
             // Printing a message indicating that thread 4 is reading balances.
 
-            accounts.get(0).getBalance(); 
-            // Thread 4 reads the balance of account 1.
+            for (int index : new int[] {0, 2}) { 
+                // Thread 4 reads the balances of accounts 1 and 3.
+
+                BankAccount account = accounts.get(index); 
 
-            accounts.get(2).getBalance(); 
-            // Thread 4 reads the balance of account 3.
+                EventLog.log(LogLevel.INFO, EventLog.BALANCE_READ, account.getId(), 0, account.getBalanceCents(), 0); 
+                // Logging each read at INFO, the level the demo runs at; BankAccount's own balance-read events are DEBUG.
+            }
         }, "Thread-4"); 
         // Naming the thread "Thread-4".
 
@@ -78,30 +70,24 @@ public class ConcurrentBankingDemo {
         System.out.println("\nStarting transactions with random amounts...\n"); 
         // Printing a message indicating that the transactions are starting.
 
-        // Start all threads
-        thread1.start(); 
-        // Starting thread 1 to perform the first transfer.
+        // Schedule the transfers; each shares an account with the one before it, so they run in this order
+        scheduler.schedule(1, 2, transfer1Amount); 
+        // Scheduling the transfer from account 1 to account 2 with the generated amount.
 
-        thread2.start(); 
-        // Starting thread 2 to perform the second transfer.
+        scheduler.schedule(2, 3, transfer2Amount); 
+        // Scheduling the transfer from account 2 to account 3; it waits for the first because both use account 2.
 
-        thread3.start(); 
-        // Starting thread 3 to perform the third transfer.
+        scheduler.schedule(3, 1, transfer3Amount); 
+        // Scheduling the transfer from account 3 to account 1; it waits for the second because both use account 3.
 
         thread4.start(); 
         // Starting thread 4 to perform the balance reading.
 
-        // Wait for all threads to complete
+        // Wait for the transfers and the reader to complete
         try { 
-            // Starting the try block to wait for the completion of the threads.
-            thread1.join(); 
-            // Wait for thread 1 to finish.
-
-            thread2.join(); 
-            // Wait for thread 2 to finish.
-
-            thread3.join(); 
-            // Wait for thread 3 to finish.
+            // Starting the try block to wait for the completion of the transfers and the reader.
+            scheduler.shutdown(); 
+            // Wait for every scheduled transfer to finish and stop the workers.
 
             thread4.join(); 
             // Wait for thread 4 to finish.
@@ -111,10 +97,16 @@ public class ConcurrentBankingDemo {
             // Printing the stack trace of the exception.
         }
 
+        EventLog.flush(); 
+        // Print every queued transaction event before the summary.
+
         System.out.println("\nAll transactions completed."); 
         // Printing a message indicating that all transactions have completed.
 
         system.printAccountBalances(); 
         // Printing the final account balances after all transactions have been completed.
+
+        system.printStatement(2, 10); 
+        // Printing account 2's statement, which shows the money it received and passed on.
     }
 }
@@ -0,0 +1,316 @@
+package banking;
+
+import java.io.PrintStream;
+// Importing the PrintStream class for the stream the consumer writes formatted events to.
+
+import java.util.Arrays;
+// Importing the Arrays class to list the valid levels when the configured one is not recognised.
+
+import java.util.Locale;
+// Importing the Locale class to read level names case-insensitively in any default locale.
+
+import java.util.concurrent.atomic.AtomicLong;
+// Importing the AtomicLong class for the producers' claim counter.
+
+import java.util.concurrent.atomic.AtomicLongArray;
+// Importing the AtomicLongArray class to publish each ring slot to the consumer.
+
+import java.util.concurrent.atomic.LongAdder;
+// Importing the LongAdder class to count events dropped while the ring was full.
+
+import java.util.concurrent.locks.LockSupport;
+// Importing the LockSupport class so the consumer can block while the ring is empty and producers can wake it.
+
+public class EventLog {
+    // Defining the structured event log used on the transaction hot path.
+    // Producers write fixed-layout binary events (a type, two ints and two longs) into a
+    // preallocated ring of primitive arrays: no strings, no boxing and no locks. A background
+    // consumer thread turns the events into the familiar text lines and prints them, so
+    // formatting and console I/O happen off the critical path. If the ring is full the event
+    // is dropped and counted rather than making the producer wait. While the ring is empty the consumer
+    // is parked, and a producer unparks it only if it said it was about to park, so an idle or OFF log
+    // costs no CPU at all.
+    // The level comes from the bank.log.level system property (OFF, WARN, INFO or DEBUG in any case, default
+    // and fallback WARN), so per-transfer events are opt-in and a busy system only records the errors it rolled back;
+    // bank.log.sync=true formats and prints on the calling thread instead, as the code used to.
+
+    public static final int BALANCE_READ = 1;
+    // Event: a balance was read (a = account, x = balance).
+
+    public static final int WITHDRAWN = 2;
+    // Event: an amount was withdrawn (a = account, x = amount, y = new balance).
+
+    public static final int DEPOSITED = 3;
+    // Event: an amount was deposited (a = account, x = amount, y = new balance).
+
+    public static final int TRANSFER_ATTEMPT = 4;
+    // Event: a transfer is starting (a = from, b = to, x = amount, y = thread number).
+
+    public static final int TRANSFER_INSUFFICIENT = 5;
+    // Event: a transfer failed for lack of funds (a = from).
+
+    public static final int TRANSFER_COMPLETED = 6;
+    // Event: a transfer completed (y = thread number).
+
+    public static final int TRANSFER_ERROR = 7;
+    // Event: a transfer failed with an error and is being reversed.
+
+    public static final int TRANSFER_REVERSED = 8;
+    // Event: a transfer was reversed.
+
+    private static final int CAPACITY = 1 << 16;
+    // The number of events the ring holds; a power of two.
+
+    private static final int MASK = CAPACITY - 1;
+    // Mask that maps a sequence number to a ring slot.
+
+    private static final int[] types = new int[CAPACITY];
+    private static final int[] as = new int[CAPACITY];
+    private static final int[] bs = new int[CAPACITY];
+    private static final long[] xs = new long[CAPACITY];
+    private static final long[] ys = new long[CAPACITY];
+    // The preallocated event fields, one entry per ring slot.
+
+    private static final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+    // The sequence number last written to each slot; the consumer reads a slot once it matches.
+
+    private static final AtomicLong claimed = new AtomicLong();
+    // The next sequence number a producer will claim.
+
+    private static final LongAdder dropped = new LongAdder();
+    // The number of events dropped because the ring was full.
+
+    private static volatile long consumed;
+    // The next sequence number the consumer will read.
+
+    private static volatile LogLevel level = parseLevel(System.getProperty("bank.log.level"));
+    // The current log level.
+
+    private static volatile boolean synchronous = Boolean.getBoolean("bank.log.sync");
+    // Whether events are formatted and printed on the calling thread instead of the consumer.
+
+    private static final StringBuilder consumerLine = new StringBuilder(128);
+    // The reusable line buffer of the consumer thread.
+
+    private static final Thread consumer = new Thread(EventLog::consume, "EventLog-consumer");
+    // The consumer thread.
+
+    private static volatile boolean consumerParked;
+    // Set by the consumer just before it parks on an empty ring, so producers know to unpark it.
+
+    static {
+        // Preparing the ring and starting the consumer.
+
+        for (int i = 0; i < CAPACITY; i++) {
+            // Marking every slot as not yet written.
+
+            published.set(i, -1);
+        }
+
+        consumer.setDaemon(true);
+        // Letting the JVM exit without waiting for the consumer.
+
+        consumer.start();
+        // Starting the consumer.
+    }
+
+    static LogLevel parseLevel(String value) {
+        // Package-private method to read a level name in any case, falling back to WARN with a warning on
+        // stderr if it is not one, so a mistyped property never stops the classes that log from loading.
+
+        if (value == null || value.isBlank()) {
+            return LogLevel.WARN;
+            // Using the default when the property is not set.
+        }
+
+        try {
+            return LogLevel.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown bank.log.level '" + value + "', expected one of "
+                    + Arrays.toString(LogLevel.values()) + "; using WARN");
+            return LogLevel.WARN;
+        }
+    }
+
+    public static boolean isEnabled(LogLevel eventLevel) {
+        // Method to check whether events of a level are recorded; call it before building an event.
+
+        return eventLevel.compareTo(level) <= 0;
+        // Levels are ordered OFF, WARN, INFO, DEBUG, so an event is recorded if its level is not above the current one.
+    }
+
+    public static void setLevel(LogLevel newLevel) {
+        // Method to change the log level at runtime.
+
+        level = newLevel;
+    }
+
+    public static LogLevel getLevel() {
+        // Getter method to return the current log level.
+
+        return level;
+    }
+
+    public static void setSynchronous(boolean printOnCaller) {
+        // Method to choose between printing on the calling thread and handing events to the consumer.
+
+        synchronous = printOnCaller;
+    }
+
+    public static long getDroppedCount() {
+        // Getter method to return how many events were dropped because the ring was full.
+
+        return dropped.sum();
+    }
+
+    public static void log(LogLevel eventLevel, int type, int a, int b, long x, long y) {
+        // Method to record one event if its level is enabled.
+
+        if (!isEnabled(eventLevel)) {
+            // Doing nothing at all when the level is off.
+
+            return;
+        }
+
+        if (synchronous) {
+            // Formatting and printing on this thread, as before the event log existed.
+
+            StringBuilder line = new StringBuilder(128);
+            // A line buffer for this call only.
+
+            System.out.println(format(line, type, a, b, x, y));
+            // Printing the line.
+
+            return;
+        }
+
+        long sequence;
+        // The ring sequence number this event will occupy.
+
+        do {
+            sequence = claimed.get();
+            // Reading the next free sequence number.
+
+            if (sequence - consumed >= CAPACITY) {
+                // The consumer is a full ring behind, so the event is dropped instead of waiting.
+
+                dropped.increment();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        // Claiming the sequence number, retrying if another producer took it first.
+
+        int slot = (int) (sequence & MASK);
+        // The ring slot for this sequence number.
+
+        types[slot] = type;
+        as[slot] = a;
+        bs[slot] = b;
+        xs[slot] = x;
+        ys[slot] = y;
+        // Writing the event fields.
+
+        published.set(slot, sequence);
+        // Publishing the slot; the write makes the fields visible to the consumer first, and being volatile it
+        // is ordered before the read below, so either this producer sees the consumer parking or the consumer
+        // sees this event before it parks.
+
+        if (consumerParked) {
+            // Waking the consumer, which found the ring empty.
+
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    public static void flush() {
+        // Method to wait until every event recorded so far has been printed.
+
+        long target = claimed.get();
+        // The events claimed before this call.
+
+        while (consumed < target) {
+            // Waiting for the consumer to catch up.
+
+            LockSupport.parkNanos(100_000);
+        }
+
+        System.out.flush();
+        // Pushing the printed lines out.
+    }
+
+    private static void consume() {
+        // Consumer loop: print published events in sequence order.
+
+        long next = 0;
+        // The next sequence number to print.
+
+        while (true) {
+            // Running for the life of the JVM.
+
+            int slot = (int) (next & MASK);
+            // The ring slot of the next event.
+
+            if (published.get(slot) != next) {
+                // The next event has not been published yet.
+
+                consumerParked = true;
+                // Telling producers to wake this thread.
+
+                if (published.get(slot) != next) {
+                    // Checking once more after raising the flag, so an event published just before it is not
+                    // left waiting for the next one.
+
+                    LockSupport.park();
+                    // Blocking until a producer unparks this thread; a spurious wake-up just checks again.
+                }
+
+                consumerParked = false;
+                continue;
+            }
+
+            consumerLine.setLength(0);
+            // Reusing the line buffer.
+
+            PrintStream out = System.out;
+            // Reading the current console stream, which benchmarks may have replaced.
+
+            out.println(format(consumerLine, types[slot], as[slot], bs[slot], xs[slot], ys[slot]));
+            // Formatting and printing the event.
+
+            consumed = ++next;
+            // Releasing the slot to producers.
+        }
+    }
+
+    private static StringBuilder format(StringBuilder line, int type, int a, int b, long x, long y) {
+        // Method to turn an event into the text line the code used to print directly.
+
+        switch (type) {
+            case BALANCE_READ:
+                line.append("Reading balance of Account ").append(a).append(": ");
+                return AccountUtils.appendCurrency(line, x);
+            case WITHDRAWN:
+                AccountUtils.appendCurrency(line.append("Withdrawn "), x).append(" from Account ").append(a)
+                        .append(". New balance: ");
+                return AccountUtils.appendCurrency(line, y);
+            case DEPOSITED:
+                AccountUtils.appendCurrency(line.append("Deposited "), x).append(" to Account ").append(a)
+                        .append(". New balance: ");
+                return AccountUtils.appendCurrency(line, y);
+            case TRANSFER_ATTEMPT:
+                line.append("Thread ").append(y).append(" attempting transfer of ");
+                return AccountUtils.appendCurrency(line, x).append(" from Account ").append(a)
+                        .append(" to Account ").append(b);
+            case TRANSFER_INSUFFICIENT:
+                return line.append("Transfer failed: Insufficient funds in Account ").append(a);
+            case TRANSFER_COMPLETED:
+                return line.append("Thread ").append(y).append(" completed transfer successfully");
+            case TRANSFER_ERROR:
+                return line.append("Error during transfer. Reversing transaction...");
+            case TRANSFER_REVERSED:
+                return line.append("Transaction reversed successfully");
+            default:
+                return line.append("Unknown event ").append(type);
+        }
+    }
+}
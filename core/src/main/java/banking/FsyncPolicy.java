@@ -0,0 +1,16 @@
+package banking;
+
+public enum FsyncPolicy {
+    // Defining when the TransactionJournal forces its memory-mapped segments to disk.
+
+    EVERY_RECORD,
+    // awaitDurable forces every record written so far before it returns; nothing acknowledged is ever lost, but
+    // each caller pays for a sync unless another caller's sync already covered its record.
+
+    GROUP_COMMIT,
+    // A background thread forces everything appended so far at a fixed interval, and awaitDurable returns only once
+    // the force covering its record has finished; concurrent callers share one sync, each waits up to one interval.
+
+    OS_MANAGED
+    // The journal never forces; the operating system writes dirty pages back on its own schedule.
+}
@@ -0,0 +1,97 @@
+package banking;
+
+import java.util.Collection;
+// Importing the Collection interface for the accounts a store starts with.
+
+import java.util.Iterator;
+// Importing the Iterator interface to walk the accounts.
+
+import java.util.Map;
+// Importing the Map interface for the accounts indexed by ID.
+
+import java.util.concurrent.ConcurrentHashMap;
+// Importing the ConcurrentHashMap class for thread-safe storage of BankAccount objects.
+
+public final class HeapAccountStore implements AccountStore {
+    // Defining the account store TransactionSystem has always used: one BankAccount object per account in a
+    // ConcurrentHashMap keyed by ID. Each account costs a few hundred bytes of heap, for its locks, its counters
+    // and the map entry, which is fine for millions of accounts; OffHeapAccountStore is for tens of millions.
+
+    private final Map<Integer, BankAccount> accounts = new ConcurrentHashMap<>();
+    // Declaring the accounts, indexed by their IDs.
+
+    public HeapAccountStore() {
+        // Constructor to create an empty store.
+    }
+
+    public HeapAccountStore(Collection<? extends BankAccount> accountList) {
+        // Constructor to create a store holding the given accounts.
+
+        for (BankAccount account : accountList) {
+            add(account);
+        }
+    }
+
+    public void add(BankAccount account) {
+        // Method to store an existing account, such as an AtomicBankAccount; a later account with the same ID
+        // replaces an earlier one.
+
+        accounts.put(account.getId(), account);
+    }
+
+    @Override
+    public void open(int accountId, long balanceCents) {
+        // Method to create a BankAccount with the exact starting balance.
+
+        if (accounts.putIfAbsent(accountId, new BankAccount(accountId, balanceCents)) != null) {
+            // The ID is already taken.
+
+            throw new IllegalArgumentException("Account " + accountId + " already exists");
+        }
+    }
+
+    @Override
+    public BankAccount get(int accountId) {
+        return accounts.get(accountId);
+    }
+
+    @Override
+    public int size() {
+        return accounts.size();
+    }
+
+    @Override
+    public int[] sortedIds() {
+        return accounts.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+    }
+
+    @Override
+    public long getTotalBalanceCents() {
+        // Method to sum every balance as one consistent view, with the same optimistic read as any set of accounts.
+
+        BankAccount[] all = accounts.values().toArray(new BankAccount[0]);
+        // Collecting every account.
+
+        long[] balances = new long[all.length];
+        // Allocating room for every balance.
+
+        TransactionSystem.readConsistent(all, balances);
+        // Reading the balances without locks where possible.
+
+        long total = 0;
+        // Summing the exact balances.
+
+        for (long balance : balances) {
+            total += balance;
+        }
+
+        return total;
+    }
+
+    @Override
+    public Iterator<BankAccount> iterator() {
+        // Method to walk the accounts; it sees the accounts as they are and never throws for a concurrent change.
+
+        return accounts.values().iterator();
+    }
+}
@@ -0,0 +1,389 @@
+package banking;
+
+import java.util.Arrays;
+// Importing the Arrays class to clear a table whose keys have all expired.
+
+import java.util.concurrent.TimeUnit;
+// Importing the TimeUnit class for the retention period.
+
+import java.util.concurrent.atomic.LongAdder;
+// Importing the LongAdder class to count duplicates and early rotations across shards.
+
+import java.util.concurrent.locks.ReentrantLock;
+// Importing the ReentrantLock class to guard each shard.
+
+public class IdempotencyKeys {
+    // Defining a bounded set of the 64-bit idempotency keys of applied transfers, so a client that retries
+    // a transfer it is unsure about gets DUPLICATE back instead of moving the money twice.
+    // Keys are spread over SHARDS shards by hash, each with its own lock and one hash table of primitive
+    // longs with open addressing. Time is cut into slices of a BUCKETS-th of the retention period, and next
+    // to every key the table keeps a one-byte tag of the slice it was claimed in. A lookup is a single probe
+    // sequence whatever the key's age; when a slice ends, one pass over the table removes the keys of the
+    // oldest slice. A key is therefore remembered for at least the retention period and at most one slice
+    // longer, and no key object, entry or table is allocated per transfer.
+    // Memory is fixed by maxKeys: every table is sized up front, at most half full, for its shard's share of
+    // the keys seen over the retention period. If keys arrive faster than that, a slice that has taken its
+    // share ends early, dropping the oldest keys before the retention period is up; getEarlyRotationCount
+    // reports it. Key 0 marks an empty slot, so it cannot be used.
+
+    private static final int SHARDS = 16;
+    // Number of independently locked shards; a power of two.
+
+    private static final int BUCKETS = 8;
+    // Number of time slices each shard remembers, the current one included; a power of two up to 256.
+
+    private final long bucketNanos;
+    // Declaring the length of one time slice.
+
+    private final int tableSize;
+    // Declaring the number of slots in every table; a power of two.
+
+    private final int maxPerBucket;
+    // Declaring the most keys a shard takes in one slice before the slice ends early.
+
+    private final Shard[] shards = new Shard[SHARDS];
+    // Declaring the shards.
+
+    private final LongAdder duplicates = new LongAdder();
+    // Counting keys that were claimed again while still remembered.
+
+    private final LongAdder earlyRotations = new LongAdder();
+    // Counting slices ended early because they took their share of keys before their time was up.
+
+    public IdempotencyKeys(long retention, TimeUnit unit, int maxKeys) {
+        // Constructor to create a set that remembers keys for the retention period, sized for maxKeys keys within it.
+
+        if (retention <= 0 || maxKeys < 1) {
+            // Checking the sizes make sense.
+
+            throw new IllegalArgumentException("retention and maxKeys must be positive");
+        }
+
+        this.bucketNanos = Math.max(1, unit.toNanos(retention) / (BUCKETS - 1));
+        // Slicing the retention period over every slice but the current one, which is still filling.
+
+        int slices = SHARDS * (BUCKETS - 1);
+        this.maxPerBucket = (int) Math.min(1 << 25, ((long) maxKeys + slices - 1) / slices);
+        // Sharing the keys out over the shards and the time slices of the retention period.
+
+        this.tableSize = Math.max(16, Integer.highestOneBit(maxPerBucket * BUCKETS * 2 - 1) * 2);
+        // Sizing each table so it is never more than half full with every slice at its share, which keeps
+        // probe sequences short and always leaves an empty slot.
+
+        long now = System.nanoTime();
+        // Starting every shard's first time slice now.
+
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(now);
+        }
+    }
+
+    boolean claim(long key) {
+        // Package-private method to add the key if it is not remembered yet; returns false for a duplicate.
+
+        long hash = mix(key);
+        // Spreading the key's bits, since client keys may be sequential.
+
+        Shard shard = shards[(int) (hash >>> 60) & (SHARDS - 1)];
+        // Picking the shard from the top bits and the slot from the bottom ones.
+
+        shard.lock.lock();
+
+        try {
+            long now = System.nanoTime();
+            rotate(shard, now);
+            // Retiring the time slices that have ended.
+
+            if (shard.keys == null) {
+                // Allocating the shard's table the first time it is used, so idle systems pay nothing.
+
+                shard.keys = new long[tableSize];
+                shard.tags = new byte[tableSize];
+            }
+
+            if (indexOf(shard.keys, key, hash) >= 0) {
+                // The key is remembered, whichever slice it was claimed in.
+
+                duplicates.increment();
+                return false;
+            }
+
+            if (shard.sizes[shard.epoch & (BUCKETS - 1)] >= maxPerBucket) {
+                // Ending a slice that took its share before its time was up, dropping the oldest keys early.
+
+                advance(shard, 1);
+                shard.currentStart = now;
+                earlyRotations.increment();
+            }
+
+            int slot = (int) hash & (tableSize - 1);
+
+            while (shard.keys[slot] != 0) {
+                slot = (slot + 1) & (tableSize - 1);
+                // Probing for a free slot.
+            }
+
+            shard.keys[slot] = key;
+            shard.tags[slot] = (byte) shard.epoch;
+            shard.sizes[shard.epoch & (BUCKETS - 1)]++;
+            // Storing the key, tagged with the current slice.
+
+            return true;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    void release(long key) {
+        // Package-private method to forget a claimed key whose transfer did not go through, so a retry may apply it.
+
+        long hash = mix(key);
+        Shard shard = shards[(int) (hash >>> 60) & (SHARDS - 1)];
+        // Finding the key's shard.
+
+        shard.lock.lock();
+
+        try {
+            int slot = shard.keys == null ? -1 : indexOf(shard.keys, key, hash);
+
+            if (slot >= 0) {
+                // Removing the key from the slice it was claimed in, which may no longer be the current one.
+
+                shard.sizes[shard.tags[slot] & (BUCKETS - 1)]--;
+                remove(shard, slot);
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    public boolean contains(long key) {
+        // Method to return whether the key is still remembered as applied.
+
+        long hash = mix(key);
+        Shard shard = shards[(int) (hash >>> 60) & (SHARDS - 1)];
+        // Finding the key's shard.
+
+        shard.lock.lock();
+
+        try {
+            rotate(shard, System.nanoTime());
+            // Retiring the time slices that have ended first, so an expired key is not reported.
+
+            return shard.keys != null && indexOf(shard.keys, key, hash) >= 0;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    public long size() {
+        // Method to return the number of keys remembered; approximate while keys are being claimed.
+
+        long total = 0;
+
+        for (Shard shard : shards) {
+            shard.lock.lock();
+
+            try {
+                rotate(shard, System.nanoTime());
+
+                for (int size : shard.sizes) {
+                    total += size;
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+
+        return total;
+    }
+
+    public long getTableBytes() {
+        // Method to return the memory held by the tables allocated so far; never more than getMaxTableBytes.
+
+        long tables = 0;
+
+        for (Shard shard : shards) {
+            shard.lock.lock();
+
+            try {
+                if (shard.keys != null) {
+                    tables++;
+                }
+            } finally {
+                shard.lock.unlock();
+            }
+        }
+
+        return tables * tableSize * (Long.BYTES + 1);
+    }
+
+    public long getMaxTableBytes() {
+        // Method to return the memory the tables take once every shard is in use.
+
+        return (long) SHARDS * tableSize * (Long.BYTES + 1);
+    }
+
+    public long getDuplicateCount() {
+        return duplicates.sum();
+    }
+
+    public long getEarlyRotationCount() {
+        return earlyRotations.sum();
+    }
+
+    private void rotate(Shard shard, long now) {
+        // Method called with the shard locked to start a new slice for every time slice that has ended.
+
+        long elapsed = now - shard.currentStart;
+
+        if (elapsed < bucketNanos) {
+            return;
+            // The current slice is still running.
+        }
+
+        long slices = elapsed / bucketNanos;
+
+        advance(shard, (int) Math.min(slices, BUCKETS));
+        // Retiring one slice per slice that ended, or all of them after a long quiet spell.
+
+        shard.currentStart += slices * bucketNanos;
+        // Keeping the slices aligned to the shard's start.
+    }
+
+    private void advance(Shard shard, int slices) {
+        // Method to start the given number of new slices, forgetting the keys of the oldest ones.
+
+        int retired = 0;
+        // Counting the keys of the slices whose places the new ones take.
+
+        for (int i = 1; i <= slices; i++) {
+            retired += shard.sizes[(shard.epoch + i) & (BUCKETS - 1)];
+        }
+
+        shard.epoch += slices;
+        // Moving to the newest slice.
+
+        if (retired == 0) {
+            return;
+            // Nothing to remove, as after a quiet spell.
+        }
+
+        if (slices == BUCKETS) {
+            // Every slice retires, so the table is simply cleared.
+
+            Arrays.fill(shard.keys, 0);
+        } else {
+            purge(shard);
+            // Removing the keys of the retired slices in one pass.
+        }
+
+        for (int i = 0; i < slices; i++) {
+            shard.sizes[(shard.epoch - i) & (BUCKETS - 1)] = 0;
+        }
+    }
+
+    private void purge(Shard shard) {
+        // Method to remove every key older than BUCKETS slices in one pass over the table.
+        // The pass starts just after an empty slot, so no run of occupied slots wraps around past its start,
+        // and a removal only ever shifts keys back into the slot just emptied, which is then looked at again.
+
+        int mask = tableSize - 1;
+        int start = 0;
+
+        while (shard.keys[start] != 0) {
+            start++;
+            // Finding an empty slot, which a table at most half full always has.
+        }
+
+        for (int n = 1; n < tableSize; n++) {
+            int slot = (start + n) & mask;
+
+            while (shard.keys[slot] != 0 && ((shard.epoch - shard.tags[slot]) & 0xFF) >= BUCKETS) {
+                remove(shard, slot);
+                // Removing an expired key; whatever shifts into its slot is checked in turn.
+            }
+        }
+    }
+
+    private int indexOf(long[] keys, long key, long hash) {
+        // Method to return the slot holding the key, or -1 if the table does not have it.
+
+        int slot = (int) hash & (tableSize - 1);
+
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+
+            slot = (slot + 1) & (tableSize - 1);
+        }
+
+        return -1;
+    }
+
+    private void remove(Shard shard, int slot) {
+        // Method to empty a slot and shift back the keys after it, so no probe sequence is broken
+        // and no tombstones build up.
+
+        long[] keys = shard.keys;
+        byte[] tags = shard.tags;
+        int mask = tableSize - 1;
+        int next = slot;
+
+        while (true) {
+            next = (next + 1) & mask;
+
+            if (keys[next] == 0) {
+                break;
+                // Reached the end of the run of occupied slots.
+            }
+
+            int home = (int) mix(keys[next]) & mask;
+            // The slot the key would have gone to in an empty table.
+
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                // The key's probe sequence passes through the emptied slot, so it moves there with its tag.
+
+                keys[slot] = keys[next];
+                tags[slot] = tags[next];
+                slot = next;
+            }
+        }
+
+        keys[slot] = 0;
+    }
+
+    private static long mix(long key) {
+        // Method to scramble a key's bits with the MurmurHash3 finalizer.
+
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private static final class Shard {
+        // Defining one shard: its lock, its table and which time slice is current.
+
+        final ReentrantLock lock = new ReentrantLock();
+        // The lock guarding every field of the shard.
+
+        long[] keys;
+        byte[] tags;
+        // The keys and, slot for slot, the low byte of the slice each was claimed in; allocated on first use.
+
+        final int[] sizes = new int[BUCKETS];
+        // The number of keys claimed in each remembered slice, indexed by the slice's low bits.
+
+        int epoch;
+        long currentStart;
+        // The number of the current slice, and when it started.
+
+        Shard(long start) {
+            this.currentStart = start;
+        }
+    }
+}
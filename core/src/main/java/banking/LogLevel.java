@@ -0,0 +1,17 @@
+package banking;
+
+public enum LogLevel {
+    // Defining how much the EventLog records; each level includes the ones above it.
+
+    OFF,
+    // Nothing is recorded, so the hot path only pays for one level check.
+
+    WARN,
+    // Only transfers that failed with an error and were rolled back are recorded; the default.
+
+    INFO,
+    // Every transfer's attempt and outcome, and explicit reversals, are recorded as well.
+
+    DEBUG
+    // Every balance read, deposit and withdrawal is recorded as well.
+}
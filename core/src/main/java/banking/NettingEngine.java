@@ -0,0 +1,248 @@
+package banking;
+
+import java.util.Arrays;
+// Importing the Arrays class for the binary search over account IDs.
+
+import java.util.concurrent.ConcurrentHashMap;
+// Importing the ConcurrentHashMap class to hand each pool thread its own accumulator.
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+// Importing the fork/join framework that nets the records in parallel.
+
+public class NettingEngine {
+    // Defining a bulk settlement engine for transfer files. Rather than running every record through
+    // TransactionSystem.transfer (two locks, a balance check and a reversal path each), it nets the file:
+    // the records are split across a fork/join pool, and each pool thread adds the amounts of the parts it
+    // runs into its own long[] of per-account deltas in cents, so a settlement allocates one accumulator per
+    // thread that took part, however many parts there are, and sums them once at the end. The overdraft check is
+    // then made once per account against the net position, and each account's net change is applied
+    // exactly once, all together, through TransactionSystem.applyNetChanges.
+    // Settlement is all-or-nothing: if any account's net debit exceeds its balance, nothing is applied
+    // and the overdrawn accounts are reported. Records that would bounce one by one in file order are
+    // fine as long as the account's net position is covered.
+
+    private static final int MIN_RECORDS_PER_TASK = 1 << 16;
+    // Smallest part of the file worth a task of its own.
+
+    private final TransactionSystem system;
+    // Declaring the transaction system the net changes are applied to.
+
+    private final ForkJoinPool pool;
+    // Declaring the pool that nets the records.
+
+    public static final class Result {
+        // Defining the outcome of one settlement.
+
+        private final int records;
+        private final int accountsChanged;
+        private final int[] overdrawnAccountIds;
+        private final long nettingNanos;
+        private final long applyNanos;
+        // The size of the file, the accounts with a non-zero net change, the accounts that blocked
+        // the settlement, and the time spent netting and applying.
+
+        Result(int records, int accountsChanged, int[] overdrawnAccountIds, long nettingNanos, long applyNanos) {
+            this.records = records;
+            this.accountsChanged = accountsChanged;
+            this.overdrawnAccountIds = overdrawnAccountIds;
+            this.nettingNanos = nettingNanos;
+            this.applyNanos = applyNanos;
+        }
+
+        public boolean isApplied() {
+            // Method to return true if every net change was applied.
+
+            return overdrawnAccountIds.length == 0;
+        }
+
+        public int getRecords() {
+            return records;
+        }
+
+        public int getAccountsChanged() {
+            return accountsChanged;
+        }
+
+        public int[] getOverdrawnAccountIds() {
+            // Method to return the accounts whose net debit exceeded their balance; empty if applied.
+
+            return overdrawnAccountIds.clone();
+        }
+
+        public long getNettingNanos() {
+            return nettingNanos;
+        }
+
+        public long getApplyNanos() {
+            return applyNanos;
+        }
+    }
+
+    public NettingEngine(TransactionSystem system, int parallelism) {
+        // Constructor to create an engine with its own fork/join pool.
+
+        this.system = system;
+        // Storing the transaction system.
+
+        this.pool = new ForkJoinPool(parallelism);
+        // Creating the pool that nets the records.
+    }
+
+    public Result settle(int[] fromIds, int[] toIds, long[] amountCents, int count) {
+        // Method to net and apply the first count records of a file held as columns.
+
+        long start = System.nanoTime();
+        // Starting the netting timer.
+
+        int[] ids = system.sortedAccountIds();
+        // Listing the accounts; a record's accounts are found in this list by their position.
+
+        boolean dense = ids.length > 0 && ids[0] == 0 && ids[ids.length - 1] == ids.length - 1;
+        // Sorted distinct IDs running from 0 to n - 1 are their own positions, which skips the search.
+
+        ConcurrentHashMap<Thread, long[]> accumulators = new ConcurrentHashMap<>();
+        // The accumulator of each pool thread that nets part of the file.
+
+        pool.invoke(new NetTask(ids, dense, fromIds, toIds, amountCents, 0, count,
+                Math.max(MIN_RECORDS_PER_TASK, count / pool.getParallelism() + 1), accumulators));
+        // Netting the records in parallel.
+
+        long[] deltas = null;
+        // Summing the threads' accumulators into one delta per account.
+
+        for (long[] sums : accumulators.values()) {
+            if (deltas == null) {
+                deltas = sums;
+                // Reusing the first accumulator as the total.
+            } else {
+                for (int i = 0; i < deltas.length; i++) {
+                    deltas[i] += sums[i];
+                }
+            }
+        }
+
+        if (deltas == null) {
+            deltas = new long[ids.length];
+            // An empty file nets to nothing.
+        }
+
+        int changedCount = 0;
+        // Counting the accounts with a non-zero net change.
+
+        for (long delta : deltas) {
+            if (delta != 0) {
+                changedCount++;
+            }
+        }
+
+        int[] changedIds = new int[changedCount];
+        long[] changedDeltas = new long[changedCount];
+        // Compacting the non-zero changes, still in ID order.
+
+        for (int i = 0, j = 0; i < deltas.length; i++) {
+            // Copying each non-zero change.
+
+            if (deltas[i] != 0) {
+                changedIds[j] = ids[i];
+                changedDeltas[j++] = deltas[i];
+            }
+        }
+
+        long netted = System.nanoTime();
+        // Stopping the netting timer.
+
+        int[] overdrawn = system.applyNetChanges(changedIds, changedDeltas);
+        // Checking the net positions and applying every change once, or none of them.
+
+        return new Result(count, changedCount, overdrawn, netted - start, System.nanoTime() - netted);
+    }
+
+    public void shutdown() {
+        // Method to stop the pool.
+
+        pool.shutdown();
+    }
+
+    static int indexOf(int[] ids, boolean dense, int id) {
+        // Method to return an account's position in the sorted ID list.
+
+        int index = dense ? (id >= 0 && id < ids.length ? id : -1) : Arrays.binarySearch(ids, id);
+        // Using the ID itself when the IDs are dense, and a binary search otherwise.
+
+        if (index < 0) {
+            // Checking the account exists.
+
+            throw new IllegalArgumentException("Unknown account " + id);
+        }
+
+        return index;
+    }
+
+    @SuppressWarnings("serial")
+    private static final class NetTask extends RecursiveAction {
+        // Defining a task that nets a range of records into the per-account delta array of the thread running it.
+        // Fork/join tasks are Serializable, but this one is never serialized, so it declares no serialVersionUID.
+
+        private final int[] ids;
+        private final boolean dense;
+        private final int[] fromIds;
+        private final int[] toIds;
+        private final long[] amountCents;
+        private final int begin;
+        private final int end;
+        private final int threshold;
+        private final ConcurrentHashMap<Thread, long[]> accumulators;
+        // The account list, the file columns, the record range, the largest range netted without splitting,
+        // and the accumulators of the settlement.
+
+        NetTask(int[] ids, boolean dense, int[] fromIds, int[] toIds, long[] amountCents, int begin, int end,
+                int threshold, ConcurrentHashMap<Thread, long[]> accumulators) {
+            this.ids = ids;
+            this.dense = dense;
+            this.fromIds = fromIds;
+            this.toIds = toIds;
+            this.amountCents = amountCents;
+            this.begin = begin;
+            this.end = end;
+            this.threshold = threshold;
+            this.accumulators = accumulators;
+        }
+
+        @Override
+        protected void compute() {
+            // Method to net the range, splitting it first if it is large.
+
+            if (end - begin > threshold) {
+                // Splitting the range in two.
+
+                int middle = (begin + end) >>> 1;
+                invokeAll(new NetTask(ids, dense, fromIds, toIds, amountCents, begin, middle, threshold, accumulators),
+                        new NetTask(ids, dense, fromIds, toIds, amountCents, middle, end, threshold, accumulators));
+                // Netting both halves, one of them possibly on another worker; each adds into its own thread's array.
+
+                return;
+            }
+
+            long[] sums = accumulators.computeIfAbsent(Thread.currentThread(), thread -> new long[ids.length]);
+            // Finding this thread's accumulator, one long per account, allocated on the thread's first part.
+
+            for (int r = begin; r < end; r++) {
+                // Netting each record.
+
+                long cents = amountCents[r];
+                // Reading the amount.
+
+                if (cents <= 0) {
+                    // Checking the amount is positive.
+
+                    throw new IllegalArgumentException("Record " + r + " has a non-positive amount");
+                }
+
+                sums[indexOf(ids, dense, fromIds[r])] -= cents;
+                sums[indexOf(ids, dense, toIds[r])] += cents;
+                // Debiting the source and crediting the destination.
+            }
+        }
+    }
+}
@@ -0,0 +1,543 @@
+package banking;
+
+import java.lang.invoke.MethodHandles;
+// Importing the MethodHandles class to create VarHandles over the off-heap buffers.
+
+import java.lang.invoke.VarHandle;
+// Importing the VarHandle class for atomic reads, writes and compare-and-set on buffer slots.
+
+import java.nio.ByteBuffer;
+// Importing the ByteBuffer class for the off-heap index, balances and transfer counts.
+
+import java.nio.ByteOrder;
+// Importing the ByteOrder class so the buffers use the platform's native byte order.
+
+import java.util.Arrays;
+// Importing the Arrays class to sort the account IDs.
+
+import java.util.Iterator;
+// Importing the Iterator interface to walk the accounts.
+
+import java.util.NoSuchElementException;
+// Importing the NoSuchElementException class for an iterator that has run out.
+
+import java.util.concurrent.atomic.AtomicLong;
+// Importing the AtomicLong class for each stripe's seqlock word.
+
+import java.util.concurrent.atomic.LongAdder;
+// Importing the LongAdder class for each stripe's contention counters.
+
+import java.util.concurrent.locks.ReentrantLock;
+// Importing the ReentrantLock class for the stripe locks and to serialize opening new accounts.
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+// Importing the ReentrantReadWriteLock class, which every BankAccount is given.
+
+public final class OffHeapAccountStore implements AccountStore {
+    // Defining a compact account store for tens of millions of accounts.
+    // There are no per-account objects: account IDs are mapped to slots by an open-addressing hash index, and
+    // balances and transfer counts are packed as longs, eight bytes each per slot, all held in direct (off-heap)
+    // ByteBuffers the garbage collector never scans. The index has a fixed capacity chosen at construction and
+    // never resizes.
+    // get() returns a short-lived BankAccount view over a slot, so TransactionSystem runs on the store unchanged:
+    // a view's deposits and withdrawals compare-and-set the slot, failing rather than overflowing or overdrawing.
+    // Locks and versions cannot be kept per account without an object per account, so each view takes those of
+    // its stripe instead. A stripe covers a range of consecutive IDs, so locking accounts in ascending ID order,
+    // as TransactionSystem always does, also takes the stripe locks in ascending order and cannot deadlock; two
+    // accounts in one stripe share its lock, which a thread holding it simply takes again. IDs from 0 up to the
+    // store's capacity spread evenly across the stripes; lower and higher IDs share the first and last stripe.
+    // Lock waits are counted per stripe, not per account, so a view reports none; the system's own lock-wait
+    // counters still include them. Views never split.
+
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    // VarHandle for atomic access to the int fields of the index.
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    // VarHandle for atomic access to the balances and transfer counts.
+
+    public static final int MAX_ACCOUNTS = 100_000_000;
+    // The largest store whose index (2^27 entries of 8 bytes) fits in one ByteBuffer.
+
+    static final int STRIPES = 1024;
+    // Number of lock stripes.
+
+    private static final int ENTRY_BYTES = 8;
+    // Each index entry is an int account ID followed by an int slot number plus one (zero marks an empty entry).
+
+    private static final int OPTIMISTIC_READ_ATTEMPTS = 4;
+    // Number of lock-free attempts the total makes before it locks every stripe instead.
+
+    private final ByteBuffer index;
+    // The off-heap hash index from account ID to slot.
+
+    private final ByteBuffer balances;
+    // The off-heap balances in cents, one long per slot.
+
+    private final ByteBuffer transfersOut;
+    // The off-heap number of transfers out of each account, one long per slot, written under its stripe's lock.
+
+    private final int mask;
+    // The index capacity minus one; the capacity is a power of two.
+
+    private final int maxAccounts;
+    // The maximum number of accounts the store can hold.
+
+    private final int idsPerStripe;
+    // The number of consecutive IDs each stripe covers.
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    // The locks, versions and contention counters shared by the accounts of each stripe.
+
+    private final ReentrantLock openLock = new ReentrantLock();
+    // Lock that serializes opening accounts; lookups and balance updates never take it.
+
+    private volatile int size;
+    // The number of accounts opened so far.
+
+    public OffHeapAccountStore(int maxAccounts) {
+        // Constructor to allocate the index, balances and stripes for up to maxAccounts accounts.
+
+        if (maxAccounts < 1 || maxAccounts > MAX_ACCOUNTS) {
+            // Keeping the index within the 2 GB limit of a single ByteBuffer.
+
+            throw new IllegalArgumentException("maxAccounts must be between 1 and " + MAX_ACCOUNTS);
+        }
+
+        int needed = maxAccounts + maxAccounts / 3 + 1;
+        // Sizing the index so it stays at most three quarters full and always has an empty entry to end a probe.
+
+        int capacity = Integer.highestOneBit(needed * 2 - 1);
+        // Rounding up to a power of two.
+
+        this.mask = capacity - 1;
+        // Storing the mask used to wrap probe positions.
+
+        this.maxAccounts = maxAccounts;
+        // Storing the account limit.
+
+        this.idsPerStripe = maxAccounts / STRIPES + 1;
+        // Spreading the IDs up to the limit over every stripe.
+
+        this.index = ByteBuffer.allocateDirect(capacity * ENTRY_BYTES).order(ByteOrder.nativeOrder());
+        // Allocating the zero-filled index off-heap.
+
+        this.balances = ByteBuffer.allocateDirect(maxAccounts * 8).order(ByteOrder.nativeOrder());
+        // Allocating the balances off-heap.
+
+        this.transfersOut = ByteBuffer.allocateDirect(maxAccounts * 8).order(ByteOrder.nativeOrder());
+        // Allocating the zero-filled transfer counts off-heap.
+
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    @Override
+    public void open(int accountId, long balanceCents) {
+        // Method to add an account with a starting balance in cents.
+
+        openLock.lock();
+        // Serializing inserts; concurrent lookups stay lock-free.
+
+        try {
+            if (size == maxAccounts) {
+                // Checking there is room for another account.
+
+                throw new IllegalStateException("Store is full (" + maxAccounts + " accounts)");
+            }
+
+            int position = hash(accountId) & mask;
+            // The first index entry to probe.
+
+            while ((int) INTS.getAcquire(index, position * ENTRY_BYTES + 4) != 0) {
+                // Probing until an empty entry is found.
+
+                if ((int) INTS.get(index, position * ENTRY_BYTES) == accountId) {
+                    // The ID is already taken.
+
+                    throw new IllegalArgumentException("Account " + accountId + " already exists");
+                }
+
+                position = (position + 1) & mask;
+                // Moving to the next entry.
+            }
+
+            int slot = size;
+            // The next free slot.
+
+            LONGS.setVolatile(balances, slot * 8, balanceCents);
+            // Storing the starting balance before the account becomes visible.
+
+            INTS.set(index, position * ENTRY_BYTES, accountId);
+            // Storing the ID in the entry.
+
+            INTS.setRelease(index, position * ENTRY_BYTES + 4, slot + 1);
+            // Publishing the entry last, so a reader that sees the slot also sees the ID and the balance.
+
+            size = slot + 1;
+            // Counting the account.
+        } finally {
+            openLock.unlock();
+        }
+    }
+
+    @Override
+    public BankAccount get(int accountId) {
+        // Method to return a view of the account, or null if it does not exist.
+
+        int slot = slotOf(accountId);
+        // Looking the account up.
+
+        return slot < 0 ? null : new View(this, accountId, slot, stripeOf(accountId));
+    }
+
+    @Override
+    public int size() {
+        // Getter method to return the number of accounts.
+
+        return size;
+    }
+
+    public boolean contains(int accountId) {
+        // Method to check whether an account exists.
+
+        return slotOf(accountId) >= 0;
+    }
+
+    public long getBalanceCents(int accountId) {
+        // Method to read an account's balance in cents, failing for unknown accounts.
+
+        int slot = slotOf(accountId);
+        // Looking the account up.
+
+        if (slot < 0) {
+            // The account does not exist.
+
+            throw new IllegalArgumentException("Unknown account " + accountId);
+        }
+
+        return (long) LONGS.getVolatile(balances, slot * 8);
+    }
+
+    @Override
+    public int[] sortedIds() {
+        // Method to list every account ID in ascending order, read from the index.
+
+        int[] ids = new int[size];
+        // Collecting the IDs of the accounts opened so far.
+
+        int found = 0;
+        // Counting the IDs collected.
+
+        for (int position = 0; position <= mask && found < ids.length; position++) {
+            // Scanning the index for used entries.
+
+            if ((int) INTS.getAcquire(index, position * ENTRY_BYTES + 4) != 0) {
+                ids[found++] = (int) INTS.get(index, position * ENTRY_BYTES);
+            }
+        }
+
+        Arrays.sort(ids, 0, found);
+        // Sorting the IDs.
+
+        return found == ids.length ? ids : Arrays.copyOf(ids, found);
+    }
+
+    @Override
+    public long getTotalBalanceCents() {
+        // Method to sum every balance as one consistent view: take every stripe's stamp, sum the balances, then
+        // check no stamp changed. A transfer marks both its accounts' stripes for its whole duration, so a valid
+        // sum never counts one leg without the other. After a few failed attempts, as when the sum takes long
+        // under heavy traffic, it locks every stripe in order instead.
+
+        long[] stamps = new long[STRIPES];
+        // Declaring the stamp taken for each stripe.
+
+        for (int attempt = 0; attempt < OPTIMISTIC_READ_ATTEMPTS; attempt++) {
+            // Trying the lock-free sum a few times.
+
+            boolean valid = true;
+            // Tracking whether this attempt is still usable.
+
+            for (int i = 0; i < STRIPES && valid; i++) {
+                // Taking each stamp; a change in progress makes the attempt unusable.
+
+                stamps[i] = stripes[i].seq.get();
+                valid = (stamps[i] & (BankAccount.VERSION_UNIT - 1)) == 0;
+            }
+
+            long total = valid ? sumBalances() : 0;
+            // Summing the balances.
+
+            for (int i = 0; i < STRIPES && valid; i++) {
+                // Checking nothing changed since the stamps were taken.
+
+                valid = stripes[i].seq.get() == stamps[i];
+            }
+
+            if (valid) {
+                return total;
+            }
+
+            Thread.onSpinWait();
+            // Backing off briefly before retrying.
+        }
+
+        int locked = 0;
+        // Counting the stripes locked, so exactly those are released.
+
+        try {
+            for (; locked < STRIPES; locked++) {
+                // Locking every stripe in order, the order transfers lock in, so this cannot deadlock with them.
+
+                stripes[locked].lock.lock();
+            }
+
+            return sumBalances();
+            // Summing while no transfer can touch any balance.
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                stripes[i].lock.unlock();
+            }
+        }
+    }
+
+    public long offHeapBytes() {
+        // Method to return the off-heap memory allocated by the store.
+
+        return (long) index.capacity() + balances.capacity() + transfersOut.capacity();
+    }
+
+    @Override
+    public Iterator<BankAccount> iterator() {
+        // Method to walk the accounts in index order, one view at a time.
+
+        return new Views();
+    }
+
+    private long sumBalances() {
+        // Method to add up the balances of every account opened so far.
+
+        long total = 0;
+
+        for (int slot = 0, n = size; slot < n; slot++) {
+            total += (long) LONGS.getVolatile(balances, slot * 8);
+        }
+
+        return total;
+    }
+
+    private Stripe stripeOf(int accountId) {
+        // Method to find the stripe covering an ID; it never decreases as the ID grows.
+
+        return stripes[accountId <= 0 ? 0 : Math.min(accountId / idsPerStripe, STRIPES - 1)];
+    }
+
+    private int slotOf(int accountId) {
+        // Method to find an account's slot, or -1 if it does not exist.
+
+        int position = hash(accountId) & mask;
+        // The first index entry to probe.
+
+        while (true) {
+            // Probing until the ID or an empty entry is found.
+
+            int slotPlusOne = (int) INTS.getAcquire(index, position * ENTRY_BYTES + 4);
+            // Reading the slot first; once it is non-zero the ID beside it is final.
+
+            if (slotPlusOne == 0) {
+                // An empty entry ends the probe sequence: the account does not exist.
+
+                return -1;
+            }
+
+            if ((int) INTS.get(index, position * ENTRY_BYTES) == accountId) {
+                // Found the account.
+
+                return slotPlusOne - 1;
+            }
+
+            position = (position + 1) & mask;
+            // Moving to the next entry.
+        }
+    }
+
+    private static int hash(int accountId) {
+        // Method to spread account IDs across the index so sequential IDs do not cluster.
+
+        int h = accountId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Stripe {
+        // Defining the lock, read-write lock, version and contention counters shared by a stripe's accounts.
+
+        final ReentrantLock lock = new ReentrantLock(true);
+        final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock(true);
+        // Fair, as every BankAccount's locks are by default.
+
+        final AtomicLong seq = new AtomicLong(BankAccount.VERSION_UNIT);
+        // The seqlock word, starting at version 1 like an account's.
+
+        final LongAdder contendedLocks = new LongAdder();
+        final LongAdder lockWaitNanos = new LongAdder();
+    }
+
+    private static final class View extends BankAccount {
+        // Defining the BankAccount handed out for one slot: its balance and transfer count live in the store's
+        // buffers, and its locks and version are those of its stripe. Two views of one account share everything.
+
+        private final OffHeapAccountStore store;
+        // The store holding the slot.
+
+        private final int offset;
+        // The byte offset of the slot's balance and transfer count.
+
+        View(OffHeapAccountStore store, int accountId, int slot, Stripe stripe) {
+            super(accountId, stripe.lock, stripe.readWriteLock, stripe.seq, stripe.contendedLocks, stripe.lockWaitNanos);
+            this.store = store;
+            this.offset = slot * 8;
+        }
+
+        @Override
+        long peekBalanceCents() {
+            return (long) LONGS.getVolatile(store.balances, offset);
+            // Reading the balance with a single volatile read.
+        }
+
+        @Override
+        public boolean withdrawCents(long amountCents) {
+            // Method to withdraw an amount in cents if the balance covers it, using a CAS loop on the slot.
+
+            while (true) {
+                // Retrying until the update succeeds or the balance is found to be insufficient.
+
+                long current = (long) LONGS.getVolatile(store.balances, offset);
+                // Reading the current balance.
+
+                if (current < amountCents) {
+                    return false;
+                    // Returning false if the balance is insufficient for the withdrawal.
+                }
+
+                beginWrite();
+                // Marking the change so optimistic reads retry around it.
+
+                try {
+                    if (!LONGS.compareAndSet(store.balances, offset, current, current - amountCents)) {
+                        continue;
+                        // Another thread changed the balance since it was read; trying again.
+                    }
+                } finally {
+                    endWrite();
+                    // Publishing the new version, whether or not the compare-and-set won.
+                }
+
+                EventLog.log(LogLevel.DEBUG, EventLog.WITHDRAWN, getId(), 0, amountCents, current - amountCents);
+                // Recording the withdrawal amount and the new balance.
+
+                return true;
+            }
+        }
+
+        @Override
+        public void depositCents(long amountCents) {
+            // Method to deposit an amount in cents, using a CAS loop on the slot.
+
+            long updated;
+            // The new balance, once it has been published.
+
+            beginWrite();
+            // Marking the change so optimistic reads retry around it.
+
+            try {
+                while (true) {
+                    // Retrying until no other thread changed the balance between the read and the update.
+
+                    long current = (long) LONGS.getVolatile(store.balances, offset);
+                    // Reading the current balance.
+
+                    updated = Math.addExact(current, amountCents);
+                    // Adding the deposit, failing before anything is written if the balance would overflow.
+
+                    if (LONGS.compareAndSet(store.balances, offset, current, updated)) {
+                        break;
+                    }
+                }
+            } finally {
+                endWrite();
+                // Publishing the new version.
+            }
+
+            EventLog.log(LogLevel.DEBUG, EventLog.DEPOSITED, getId(), 0, amountCents, updated);
+            // Recording the deposit amount and the new balance.
+        }
+
+        @Override
+        void countTransferOut() {
+            // Method called with the stripe lock held, which keeps two increments from losing one.
+
+            LONGS.setOpaque(store.transfersOut, offset, (long) LONGS.getOpaque(store.transfersOut, offset) + 1);
+        }
+
+        @Override
+        public long getTransferOutCount() {
+            return (long) LONGS.getOpaque(store.transfersOut, offset);
+        }
+
+        @Override
+        public long getContendedLockCount() {
+            return 0;
+            // Waits are counted for the whole stripe, not for this account.
+        }
+
+        @Override
+        public long getLockWaitNanos() {
+            return 0;
+        }
+
+        @Override
+        public void setAutoSplit(boolean autoSplit) {
+            // Views never split, so there is nothing to turn on.
+        }
+
+        @Override
+        public void split(int stripes) {
+            throw new UnsupportedOperationException("Accounts in an OffHeapAccountStore cannot be split");
+        }
+    }
+
+    private final class Views implements Iterator<BankAccount> {
+        // Defining an iterator over the used entries of the index.
+
+        private int position = next(0);
+        // The next used entry, or past the end.
+
+        @Override
+        public boolean hasNext() {
+            return position <= mask;
+        }
+
+        @Override
+        public BankAccount next() {
+            if (position > mask) {
+                throw new NoSuchElementException();
+            }
+
+            int slot = (int) INTS.getAcquire(index, position * ENTRY_BYTES + 4) - 1;
+            int accountId = (int) INTS.get(index, position * ENTRY_BYTES);
+            position = next(position + 1);
+            return new View(OffHeapAccountStore.this, accountId, slot, stripeOf(accountId));
+        }
+
+        private int next(int from) {
+            // Method to find the first used entry at or after from.
+
+            while (from <= mask && (int) INTS.getAcquire(index, from * ENTRY_BYTES + 4) == 0) {
+                from++;
+            }
+
+            return from;
+        }
+    }
+}
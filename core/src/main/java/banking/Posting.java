@@ -0,0 +1,168 @@
+package banking;
+
+import java.util.Arrays;
+// Importing the Arrays class to trim the merged legs and print them.
+
+public final class Posting {
+    // Defining an atomic multi-leg posting: a set of signed amounts in cents, one per leg, that must sum
+    // to zero. A leg with a negative amount debits its account and a positive one credits it, so a card
+    // payment with a fee, a split payout or an FX trade through a house account is one posting that
+    // TransactionSystem.post applies all-or-nothing.
+    // The legs are merged as the posting is built: legs on the same account are summed, legs that cancel
+    // out are dropped, and what is left is kept sorted by account ID, which is the order the accounts are
+    // locked in. A posting is immutable and can be applied any number of times.
+
+    private final int[] accountIds;
+    // Declaring the distinct accounts the posting changes, in ascending ID order.
+
+    private final long[] deltaCents;
+    // Declaring the net change to each of those accounts, never zero.
+
+    private final int legs;
+    // Declaring the number of legs the posting was built from, before merging.
+
+    public Posting(int[] legAccountIds, long[] legCents) {
+        // Constructor to build a posting from its legs given as columns: the account of each leg and
+        // its signed amount in cents.
+
+        if (legAccountIds.length != legCents.length) {
+            // Checking every leg has an account and an amount.
+
+            throw new IllegalArgumentException("Expected one amount per leg, got " + legAccountIds.length
+                    + " accounts and " + legCents.length + " amounts");
+        }
+
+        int[] ids = legAccountIds.clone();
+        long[] deltas = legCents.clone();
+        // Copying the legs so the caller's arrays can be reused.
+
+        for (int i = 1; i < ids.length; i++) {
+            // Sorting the legs by account with an insertion sort, since postings have a handful of legs.
+
+            int id = ids[i];
+            long delta = deltas[i];
+            int j = i - 1;
+
+            while (j >= 0 && ids[j] > id) {
+                ids[j + 1] = ids[j];
+                deltas[j + 1] = deltas[j];
+                j--;
+            }
+
+            ids[j + 1] = id;
+            deltas[j + 1] = delta;
+        }
+
+        int count = 0;
+        // Counting the merged legs.
+
+        long balance = 0;
+        // Summing every leg, which must come to zero.
+
+        for (int i = 0; i < ids.length; i++) {
+            // Merging each leg into the previous one when they share an account.
+
+            balance = Math.addExact(balance, deltas[i]);
+            // Failing rather than wrapping around on absurd amounts.
+
+            if (count > 0 && ids[count - 1] == ids[i]) {
+                deltas[count - 1] = Math.addExact(deltas[count - 1], deltas[i]);
+            } else {
+                ids[count] = ids[i];
+                deltas[count] = deltas[i];
+                count++;
+            }
+
+            if (deltas[count - 1] == 0 && (i + 1 == ids.length || ids[i + 1] != ids[count - 1])) {
+                // Dropping an account once all of its legs are merged and they cancel out.
+
+                count--;
+            }
+        }
+
+        if (balance != 0) {
+            // Refusing a posting that would create or destroy money.
+
+            throw new IllegalArgumentException("Posting legs must sum to zero, got "
+                    + AccountUtils.formatCents(balance));
+        }
+
+        this.accountIds = Arrays.copyOf(ids, count);
+        this.deltaCents = Arrays.copyOf(deltas, count);
+        this.legs = legAccountIds.length;
+        // Keeping only the merged legs.
+    }
+
+    public static Posting transfer(int fromAccountId, int toAccountId, long amountCents) {
+        // Method to build the two-leg posting of a plain transfer.
+
+        return new Posting(new int[] {fromAccountId, toAccountId}, new long[] {-amountCents, amountCents});
+    }
+
+    public static Posting withFee(int fromAccountId, int toAccountId, long amountCents, int feeAccountId,
+                                  long feeCents) {
+        // Method to build a payment that also charges the payer a fee, credited to a fee-collection account.
+
+        return new Posting(new int[] {fromAccountId, toAccountId, feeAccountId},
+                new long[] {-Math.addExact(amountCents, feeCents), amountCents, feeCents});
+    }
+
+    public int size() {
+        // Method to return the number of distinct accounts the posting changes.
+
+        return accountIds.length;
+    }
+
+    public int getLegCount() {
+        // Method to return the number of legs the posting was built from.
+
+        return legs;
+    }
+
+    public int getAccountId(int index) {
+        // Method to return the account of the index-th change, in ascending ID order.
+
+        return accountIds[index];
+    }
+
+    public long getDeltaCents(int index) {
+        // Method to return the signed net change of the index-th account.
+
+        return deltaCents[index];
+    }
+
+    int[] accountIds() {
+        // Package-private method giving TransactionSystem the sorted IDs without a copy.
+
+        return accountIds;
+    }
+
+    long[] deltaCents() {
+        // Package-private method giving TransactionSystem the net changes without a copy.
+
+        return deltaCents;
+    }
+
+    @Override
+    public String toString() {
+        // Method to describe the posting's net changes.
+
+        StringBuilder text = new StringBuilder("Posting[");
+
+        for (int i = 0; i < accountIds.length; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+
+            text.append(accountIds[i]).append(' ');
+
+            if (deltaCents[i] > 0) {
+                text.append('+');
+            }
+
+            AccountUtils.appendCurrency(text, deltaCents[i]);
+        }
+
+        return text.append(']').toString();
+    }
+}
@@ -0,0 +1,598 @@
+package banking;
+
+import java.util.Arrays;
+// Importing the Arrays class to mark the free slots of each shard's account index.
+
+import java.util.List;
+// Importing the List interface for the accounts the system starts with.
+
+import java.util.concurrent.CompletableFuture;
+// Importing the CompletableFuture class to chain the messages of a cross-shard transfer.
+
+import java.util.concurrent.CountDownLatch;
+// Importing the CountDownLatch class to hold every shard at the same point while the total is read.
+
+import java.util.concurrent.ExecutorService;
+// Importing the ExecutorService interface for each shard's single thread.
+
+import java.util.concurrent.Executors;
+// Importing the Executors class to create the single-threaded shard executors.
+
+import java.util.concurrent.TimeUnit;
+// Importing the TimeUnit class for shutdown timeouts.
+
+import java.util.concurrent.atomic.AtomicBoolean;
+// Importing the AtomicBoolean class to report a barrier task that gave up waiting.
+
+import java.util.concurrent.atomic.LongAdder;
+// Importing the LongAdder class to track credits whose reservation has not been settled yet.
+
+import java.util.concurrent.locks.ReentrantLock;
+// Importing the ReentrantLock class to let only one caller take the cut at a time.
+
+public class ShardedTransactionSystem implements AutoCloseable {
+    // Defining a transaction system where accounts are partitioned by ID across single-threaded shards.
+    // Each shard owns its accounts' balances exclusively and is the only thread that ever touches them,
+    // so no account locks exist at all. A transfer within one shard runs as a single task on that shard.
+    // A transfer across shards is a two-phase message exchange: the source shard reserves the amount,
+    // the destination shard credits it, and the source shard then settles the reservation
+    // (or returns it to the balance if the credit could not be applied).
+    // The total is read at one consistent cut: every shard runs a barrier task, all of them wait until
+    // every shard has reached it, and each shard's total is taken there. Between a credit and the settle
+    // of its reservation the money is both credited and reserved, so such credits are tracked and taken
+    // off the total once.
+
+    private final Shard[] shards;
+    // The shards the accounts are partitioned across.
+
+    private final LongAdder creditedUnsettled = new LongAdder();
+    // Cents credited by destination shards whose source shard has not settled the reservation yet; only
+    // changed by shard tasks, so it is exact while every shard waits at the barrier.
+
+    private final ReentrantLock cutLock = new ReentrantLock();
+    // Held while a total is taken. Two callers queuing barrier tasks at once could each hold some shards
+    // at their own barrier while those shards' other queued barrier belongs to the other caller, and both
+    // would wait forever.
+
+    public ShardedTransactionSystem(List<BankAccount> accountList, int shardCount) {
+        // Constructor to partition the given accounts across the requested number of shards.
+
+        if (shardCount < 1) {
+            // Checking there is at least one shard.
+
+            throw new IllegalArgumentException("shardCount must be positive");
+        }
+
+        this.shards = new Shard[shardCount];
+        // Creating the shard array.
+
+        int[] sizes = new int[shardCount];
+        // Counting how many accounts land on each shard.
+
+        for (BankAccount account : accountList) {
+            // Counting accounts per shard.
+
+            sizes[shardIndex(account.getId(), shardCount)]++;
+        }
+
+        for (int i = 0; i < shardCount; i++) {
+            // Creating each shard with room for its accounts.
+
+            shards[i] = new Shard(i, sizes[i]);
+        }
+
+        for (BankAccount account : accountList) {
+            // Copying each account's starting balance into the shard that owns it.
+
+            shards[shardIndex(account.getId(), shardCount)].open(account.getId(),
+                    account.peekBalanceCents());
+        }
+    }
+
+    public boolean transfer(int fromAccountId, int toAccountId, double amount) {
+        // Method to transfer an amount between two accounts, waiting for the result.
+
+        return transferAsync(fromAccountId, toAccountId, amount).join();
+        // Blocking until the owning shards have applied the transfer.
+    }
+
+    public boolean transferCents(int fromAccountId, int toAccountId, long amountCents) {
+        // Method to transfer an amount in cents between two accounts, waiting for the result.
+
+        return transferCentsAsync(fromAccountId, toAccountId, amountCents).join();
+    }
+
+    public CompletableFuture<Boolean> transferAsync(int fromAccountId, int toAccountId, double amount) {
+        // Method to start a transfer of a dollar amount and return a future completed with true if it was applied.
+
+        return transferCentsAsync(fromAccountId, toAccountId, AccountUtils.toCents(amount));
+        // Converting the amount to cents once.
+    }
+
+    public CompletableFuture<Boolean> transferCentsAsync(int fromAccountId, int toAccountId, long cents) {
+        // Method to start a transfer in cents and return a future completed with true if it was applied.
+
+        Shard fromShard = shardFor(fromAccountId);
+        // Finding the shard that owns the source account.
+
+        Shard toShard = shardFor(toAccountId);
+        // Finding the shard that owns the destination account.
+
+        if (!fromShard.owns(fromAccountId) || !toShard.owns(toAccountId)) {
+            // Checking both accounts exist; the indexes never change after construction, so any thread may read them.
+
+            return CompletableFuture.completedFuture(false);
+            // Returning false if either account is invalid.
+        }
+
+        if (fromShard == toShard) {
+            // Both accounts live on one shard, so the whole transfer is a single task with no locking.
+
+            return CompletableFuture.supplyAsync(() -> fromShard.transferLocal(fromAccountId, toAccountId, cents),
+                    fromShard.executor);
+        }
+
+        return CompletableFuture
+                .supplyAsync(() -> fromShard.reserve(fromAccountId, cents), fromShard.executor)
+                // Phase one: the source shard moves the amount from the balance into a reservation.
+                .thenCompose(reserved -> !reserved
+                        ? CompletableFuture.completedFuture(false)
+                        // Nothing was reserved, so the transfer fails without further messages.
+                        : CompletableFuture
+                                .supplyAsync(() -> {
+                                    // Phase two: the destination shard credits the reserved amount.
+
+                                    boolean credited = toShard.credit(toAccountId, cents);
+
+                                    if (credited) {
+                                        creditedUnsettled.add(cents);
+                                        // Counting the credit until the reservation behind it is settled.
+                                    }
+
+                                    return credited;
+                                }, toShard.executor)
+                                .thenApplyAsync(credited -> {
+                                    // Final message: the source shard settles the reservation.
+
+                                    fromShard.settle(fromAccountId, cents, credited);
+                                    // Dropping the reservation if credited, or returning it to the balance otherwise.
+
+                                    if (credited) {
+                                        creditedUnsettled.add(-cents);
+                                    }
+
+                                    return credited;
+                                }, fromShard.executor));
+    }
+
+    public double getBalance(int accountId) {
+        // Method to read an account's available balance in dollars.
+
+        return AccountUtils.fromCents(getBalanceCents(accountId));
+    }
+
+    public long getBalanceCents(int accountId) {
+        // Method to read an account's available balance in cents from the shard that owns it.
+
+        Shard shard = shardFor(accountId);
+        // Finding the owning shard.
+
+        if (!shard.owns(accountId)) {
+            // Checking the account exists.
+
+            throw new IllegalArgumentException("Unknown account " + accountId);
+        }
+
+        return CompletableFuture.supplyAsync(() -> shard.balanceOf(accountId), shard.executor).join();
+        // Reading the balance on the shard's own thread.
+    }
+
+    public double getTotalBalance() {
+        // Method to return the money held across all shards in dollars.
+
+        return AccountUtils.fromCents(getTotalBalanceCents());
+    }
+
+    public long getTotalBalanceCents() {
+        // Method to return the money held across all shards in cents, exactly, while transfers keep running.
+        // Every shard is sent a barrier task; each one takes its shard's total and then waits until all
+        // shards have taken theirs, so no shard applies a message in between and the totals form one
+        // consistent cut. A transfer in flight at the cut is counted once: as a reservation before its
+        // credit, and as a credit, less the same amount in creditedUnsettled, until its settle.
+        // Must not be called from a shard thread, which would wait for its own barrier task. Callers take
+        // the cut one at a time. If a shard has been shut down, or is stopped while the cut is taken, this
+        // throws RejectedExecutionException or IllegalStateException and every other shard carries on.
+
+        cutLock.lock();
+        // Waiting for any other caller's cut to finish.
+
+        try {
+            return takeCut();
+        } finally {
+            cutLock.unlock();
+        }
+    }
+
+    private long takeCut() {
+        // Method to run the barrier across every shard and add up their totals; called with cutLock held.
+        // Whatever goes wrong, release is opened before this returns or throws, so no shard that reached the
+        // barrier is left holding at it: a shard that refuses its barrier task, or stops without running it,
+        // fails the cut instead.
+
+        long[] totals = new long[shards.length];
+        // Each shard's total at the cut.
+
+        CountDownLatch arrived = new CountDownLatch(shards.length);
+        // Counting the shards that have reached the barrier.
+
+        CountDownLatch release = new CountDownLatch(1);
+        // Opened once every shard has arrived and the in-flight credits have been read.
+
+        AtomicBoolean abandoned = new AtomicBoolean();
+        // Set by a barrier task that was interrupted before the cut was complete and let its shard go on.
+
+        long inFlight;
+
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                // Queuing the barrier task behind whatever each shard already has to do; a shard that has been
+                // shut down throws RejectedExecutionException, and the finally below frees the ones queued so far.
+
+                Shard shard = shards[i];
+                int index = i;
+
+                shard.executor.execute(() -> {
+                    totals[index] = shard.total();
+                    arrived.countDown();
+                    // Taking this shard's total and reporting it.
+
+                    try {
+                        release.await();
+                        // Holding the shard until the cut is complete.
+                    } catch (InterruptedException e) {
+                        abandoned.set(true);
+                        Thread.currentThread().interrupt();
+                        // The shard is being stopped, as by shutdownNow; giving up the wait rather than keeping
+                        // its thread, and marking the cut as unusable.
+                    }
+                });
+            }
+
+            awaitArrivals(arrived);
+            // Waiting for every shard to reach the barrier.
+
+            inFlight = creditedUnsettled.sum();
+            // Every shard is stopped, so no credit or settle is changing this.
+        } finally {
+            release.countDown();
+            // Letting every shard continue.
+        }
+
+        if (abandoned.get()) {
+            // A shard went on applying messages before the cut was complete.
+
+            throw new IllegalStateException("A shard was interrupted while the total was being taken");
+        }
+
+        long total = -inFlight;
+        // Taking off the credits whose reservation is still counted on the source shard.
+
+        for (long shardTotal : totals) {
+            total += shardTotal;
+        }
+
+        return total;
+    }
+
+    private void awaitArrivals(CountDownLatch arrived) {
+        // Method to wait until every shard has reached the barrier, checking now and then that none of them has
+        // stopped with its barrier task still queued, which would never run. The caller's interrupts do not
+        // end the wait, since its result is what the shards are being held for; they are restored afterwards.
+
+        boolean interrupted = false;
+
+        try {
+            while (true) {
+                try {
+                    if (arrived.await(10, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                    continue;
+                }
+
+                for (Shard shard : shards) {
+                    // A terminated shard has run or dropped every task it will ever run.
+
+                    if (shard.executor.isTerminated()) {
+                        throw new IllegalStateException("Shard stopped before reaching the cut");
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+                // Restoring the caller's interrupt.
+            }
+        }
+    }
+
+    public void shutdown() throws InterruptedException {
+        // Method to stop every shard after the tasks already queued have run.
+
+        for (Shard shard : shards) {
+            // Asking each shard to finish its queue.
+
+            shard.executor.shutdown();
+        }
+
+        for (Shard shard : shards) {
+            // Waiting for each shard to stop, interrupting any that takes longer than a minute.
+
+            if (!shard.executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                shard.executor.shutdownNow();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        // Method to stop every shard as shutdown does, for try-with-resources; an interrupted caller stops
+        // the shards at once and keeps its interrupt.
+
+        try {
+            shutdown();
+        } catch (InterruptedException e) {
+            for (Shard shard : shards) {
+                shard.executor.shutdownNow();
+            }
+
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    int shardOf(int accountId) {
+        // Package-private method to return the index of the shard an account ID maps to, for tests and harnesses
+        // that need accounts on the same shard or on different ones.
+
+        return shardIndex(accountId, shards.length);
+    }
+
+    void shutdownShardNow(int index) {
+        // Package-private method to stop one shard at once, interrupting its thread, as a failing node would.
+
+        shards[index].executor.shutdownNow();
+    }
+
+    private Shard shardFor(int accountId) {
+        // Method to find the shard that owns an account ID.
+
+        return shards[shardIndex(accountId, shards.length)];
+    }
+
+    private static int shardIndex(int accountId, int shardCount) {
+        // Method to map an account ID onto a shard by hashing it.
+
+        int h = accountId * 0x9E3779B9;
+        // Mixing the bits so sequential IDs spread evenly across shards.
+
+        return ((h ^ (h >>> 16)) & 0x7fffffff) % shardCount;
+    }
+
+    private static final class Shard {
+        // Defining one partition of the accounts, owned by a single thread.
+
+        final ExecutorService executor;
+        // The single thread that runs every task touching this shard's balances.
+
+        private final int[] ids;
+        private final int[] slots;
+        // Open-addressed index from account ID to slot, a power of two at least twice the accounts; a
+        // free entry holds the slot -1. Filled during construction and read-only afterwards.
+
+        private final long[] balances;
+        // Available balance in cents per slot; only touched by this shard's thread.
+
+        private final long[] reserved;
+        // Cents reserved by outgoing cross-shard transfers per slot; only touched by this shard's thread.
+
+        private int size;
+        // The number of slots in use.
+
+        Shard(int index, int capacity) {
+            // Constructor to create a shard with room for the given number of accounts.
+
+            this.executor = Executors.newSingleThreadExecutor(r -> {
+                // Creating the shard's thread as a daemon, so a system that is never closed does not keep
+                // the JVM alive.
+
+                Thread thread = new Thread(r, "Shard-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            int entries = Integer.highestOneBit(Math.max(8, capacity) * 4 - 1);
+            // Sizing the index so it is at most half full.
+
+            this.ids = new int[entries];
+            this.slots = new int[entries];
+            Arrays.fill(slots, -1);
+            // Marking every entry free.
+
+            this.balances = new long[capacity];
+            // Allocating the balances.
+
+            this.reserved = new long[capacity];
+            // Allocating the reservations.
+        }
+
+        void open(int accountId, long cents) {
+            // Method to add an account during construction, before any task runs.
+
+            int entry = entry(accountId);
+            // Finding the account's entry, or the free one it goes into.
+
+            if (slots[entry] >= 0) {
+                // Checking the ID is not already taken.
+
+                throw new IllegalArgumentException("Duplicate account " + accountId);
+            }
+
+            ids[entry] = accountId;
+            slots[entry] = size;
+            // Assigning the next free slot.
+
+            balances[size++] = cents;
+            // Storing the starting balance.
+        }
+
+        boolean owns(int accountId) {
+            // Method to check whether this shard owns an account.
+
+            return slotOf(accountId) >= 0;
+        }
+
+        private int slotOf(int accountId) {
+            // Method to return an account's slot, or -1 if this shard does not own it.
+
+            return slots[entry(accountId)];
+        }
+
+        private int entry(int accountId) {
+            // Method to find the index entry holding an account ID, or the free entry where it would go.
+
+            int mask = ids.length - 1;
+            int h = accountId * 0x85EBCA6B;
+            // Mixing the ID with a different multiplier from shardIndex, whose choice every ID here shares.
+
+            for (int i = (h ^ (h >>> 15)) & mask; ; i = (i + 1) & mask) {
+                // Probing linearly; the index is never full, so a free entry ends the search.
+
+                if (slots[i] < 0 || ids[i] == accountId) {
+                    return i;
+                }
+            }
+        }
+
+        boolean transferLocal(int fromAccountId, int toAccountId, long cents) {
+            // Method to apply a transfer between two accounts of this shard.
+
+            int from = slotOf(fromAccountId);
+            // Finding the source slot.
+
+            int to = slotOf(toAccountId);
+            // Finding the destination slot.
+
+            if (balances[from] < cents) {
+                // Checking if the source account has enough balance for the transfer.
+
+                return false;
+            }
+
+            if (from != to && !fits(to, cents)) {
+                // Refusing a credit that would overflow the destination, before anything changes.
+
+                return false;
+            }
+
+            balances[from] -= cents;
+            // Debiting the source account.
+
+            balances[to] = Math.addExact(balances[to], cents);
+            // Crediting the destination account, which was checked above.
+
+            return true;
+        }
+
+        boolean reserve(int accountId, long cents) {
+            // Method to move an amount from the available balance into a reservation.
+
+            int slot = slotOf(accountId);
+            // Finding the slot.
+
+            if (balances[slot] < cents) {
+                // Checking if the account has enough balance.
+
+                return false;
+            }
+
+            reserved[slot] = Math.addExact(reserved[slot], cents);
+            // Holding it until the destination shard has credited it; balance plus reservations never exceeds
+            // a long, so this cannot overflow, but it would fail here before the balance changed.
+
+            balances[slot] -= cents;
+            // Taking the amount out of the available balance.
+
+            return true;
+        }
+
+        boolean credit(int accountId, long cents) {
+            // Method to credit an amount to an account of this shard.
+
+            int slot = slotOf(accountId);
+            // Finding the slot.
+
+            if (slot < 0 || !fits(slot, cents)) {
+                // The account does not exist, or the credit would overflow it, so the reservation must be returned.
+
+                return false;
+            }
+
+            balances[slot] = Math.addExact(balances[slot], cents);
+            // Crediting the account.
+
+            return true;
+        }
+
+        void settle(int accountId, long cents, boolean credited) {
+            // Method to finish a cross-shard transfer on the source shard.
+
+            int slot = slotOf(accountId);
+            // Finding the slot.
+
+            reserved[slot] -= cents;
+            // Releasing the reservation.
+
+            if (!credited) {
+                // The credit failed, so the reserved money goes back to the balance; it came out of the balance,
+                // and credits keep balance plus reservations within a long, so it always fits.
+
+                balances[slot] = Math.addExact(balances[slot], cents);
+            }
+        }
+
+        private boolean fits(int slot, long cents) {
+            // Method to check that a credit keeps the account's balance plus reservations within a long, so the
+            // credit itself and returning any reservation later can never overflow.
+
+            try {
+                Math.addExact(Math.addExact(balances[slot], reserved[slot]), cents);
+                return true;
+            } catch (ArithmeticException e) {
+                return false;
+            }
+        }
+
+        long balanceOf(int accountId) {
+            // Method to read the available balance of an account.
+
+            return balances[slotOf(accountId)];
+        }
+
+        long total() {
+            // Method to sum the balances and reservations of this shard.
+
+            long sum = 0;
+            // Accumulating the total.
+
+            for (int i = 0; i < size; i++) {
+                // Adding each account's balance and reservations.
+
+                sum += balances[i] + reserved[i];
+            }
+
+            return sum;
+        }
+    }
+}
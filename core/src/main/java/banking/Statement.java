@@ -0,0 +1,114 @@
+package banking;
+
+import java.time.Instant;
+// Importing the Instant class to print entry times.
+
+public final class Statement {
+    // Defining the answer to an AccountHistory query: the totals of the entries of one account in a time
+    // range and, unless only the totals were asked for, the entries themselves as columns of primitives.
+    // An entry's amount is signed in cents: positive credits the account and negative debits it.
+    // A statement is a copy, so it stays the same while the account keeps changing.
+
+    private final int accountId;
+    // Declaring the account the statement is for.
+
+    private final long fromMillis;
+    private final long toMillis;
+    // Declaring the time range covered, from inclusive to exclusive, in milliseconds since the epoch.
+
+    private final int count;
+    // Declaring the number of entries in the range, whether or not they are included.
+
+    private final long creditsCents;
+    private final long debitsCents;
+    // Declaring the total credited and the total debited in the range, both positive.
+
+    private final long[] timesMillis;
+    private final long[] amountsCents;
+    private final int[] counterpartyIds;
+    // Declaring the entries, oldest first; empty for a statement of totals only.
+
+    Statement(int accountId, long fromMillis, long toMillis, int count, long creditsCents, long debitsCents,
+              long[] timesMillis, long[] amountsCents, int[] counterpartyIds) {
+        // Package-private constructor used by AccountHistory, which hands over arrays it no longer touches.
+
+        this.accountId = accountId;
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        this.count = count;
+        this.creditsCents = creditsCents;
+        this.debitsCents = debitsCents;
+        this.timesMillis = timesMillis;
+        this.amountsCents = amountsCents;
+        this.counterpartyIds = counterpartyIds;
+    }
+
+    public int getAccountId() {
+        return accountId;
+    }
+
+    public long getFromMillis() {
+        return fromMillis;
+    }
+
+    public long getToMillis() {
+        return toMillis;
+    }
+
+    public int getCount() {
+        // Method to return the number of entries in the range, including any not copied into the statement.
+
+        return count;
+    }
+
+    public long getCreditsCents() {
+        return creditsCents;
+    }
+
+    public long getDebitsCents() {
+        return debitsCents;
+    }
+
+    public long getNetCents() {
+        // Method to return how much the range changed the balance by.
+
+        return creditsCents - debitsCents;
+    }
+
+    public int size() {
+        // Method to return the number of entries included, which is 0 for a statement of totals only.
+
+        return timesMillis.length;
+    }
+
+    public long getTimeMillis(int index) {
+        // Method to return when the index-th entry, oldest first, was recorded.
+
+        return timesMillis[index];
+    }
+
+    public long getAmountCents(int index) {
+        // Method to return the signed amount of the index-th entry.
+
+        return amountsCents[index];
+    }
+
+    public int getCounterpartyId(int index) {
+        // Method to return the other account of the index-th entry, or AccountHistory.NO_COUNTERPARTY.
+
+        return counterpartyIds[index];
+    }
+
+    @Override
+    public String toString() {
+        // Method to describe the statement's totals.
+
+        StringBuilder text = new StringBuilder("Statement[account ").append(accountId).append(", ")
+                .append(Instant.ofEpochMilli(fromMillis)).append(" to ").append(Instant.ofEpochMilli(toMillis))
+                .append(", ").append(count).append(" entries, credits ");
+        AccountUtils.appendCurrency(text, creditsCents);
+        text.append(", debits ");
+        AccountUtils.appendCurrency(text, debitsCents);
+        return text.append(']').toString();
+    }
+}
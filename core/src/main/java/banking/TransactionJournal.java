@@ -0,0 +1,743 @@
+package banking;
+
+import java.io.IOException;
+// Importing the IOException class for failures opening, mapping or closing segment files.
+
+import java.io.UncheckedIOException;
+// Importing the UncheckedIOException class to report write failures from the append path.
+
+import java.nio.MappedByteBuffer;
+// Importing the MappedByteBuffer class to write records straight into the mapped segment file.
+
+import java.nio.channels.FileChannel;
+// Importing the FileChannel class to map segment files into memory.
+
+import java.nio.file.Files;
+// Importing the Files class to create the journal directory and list its segments.
+
+import java.nio.file.Path;
+// Importing the Path class for the journal directory and segment files.
+
+import java.nio.file.StandardOpenOption;
+// Importing the StandardOpenOption enum to open segment files for reading and writing.
+
+import java.util.ArrayList;
+// Importing the ArrayList class to hold the sorted list of segment files.
+
+import java.util.List;
+// Importing the List interface for the segment files.
+
+import java.util.concurrent.Executors;
+// Importing the Executors class to create the group-commit thread.
+
+import java.util.concurrent.ScheduledExecutorService;
+// Importing the ScheduledExecutorService interface to run group commits at a fixed interval.
+
+import java.util.concurrent.TimeUnit;
+// Importing the TimeUnit class for the group-commit interval.
+
+import java.util.concurrent.locks.Condition;
+// Importing the Condition interface so appenders can wait for the group commit covering their records.
+
+import java.util.concurrent.locks.ReentrantLock;
+// Importing the ReentrantLock class to serialize appends.
+
+import java.util.stream.Stream;
+// Importing the Stream interface to list the journal directory.
+
+public class TransactionJournal implements AutoCloseable {
+    // Defining an append-only write-ahead journal of balance changes.
+    // Records are fixed-width (32 bytes) and are written into memory-mapped segment files named
+    // after the sequence number of their first record, so replay can read the segments in order.
+    // Each record is:
+    //   long sequence | int type | int accountId | int otherAccountId | int checksum | long amountCents
+    // Replay stops at the first record whose sequence or checksum does not match, which is where
+    // the journal ended (a preallocated segment is zero-filled) or where a crash tore the last write.
+    // A change to several accounts is written as one group: a BEGIN record, one record per account and a
+    // COMMIT record, appended back to back. Replay must apply a group only once it reaches its COMMIT, so a
+    // crash or a failed append part-way through a group leaves none of it in the recovered balances.
+    // Appending only writes a record into the mapped segment and returns its sequence number; awaitDurable
+    // then waits until the policy has put it on disk. Callers append while they hold their locks, so the
+    // journal order matches the order of the changes, and wait for durability after releasing them.
+    // A record is written only if the journal can still accept it: once closed, or once a force has failed,
+    // every append throws before writing anything, so a caller that undoes its change after a failed append
+    // never leaves a record of it behind. A force that fails marks the journal failed for good, since the
+    // records it covered may or may not have reached the disk.
+
+    public static final int RECORD_SIZE = 32;
+    // The size of one record in bytes.
+
+    public static final int OPEN = 1;
+    // Record type: an account was opened with a starting balance (accountId, amountCents).
+
+    public static final int DEPOSIT = 2;
+    // Record type: an amount was deposited into an account (accountId, amountCents).
+
+    public static final int WITHDRAW = 3;
+    // Record type: an amount was withdrawn from an account (accountId, amountCents).
+
+    public static final int TRANSFER = 4;
+    // Record type: an amount was moved between accounts (accountId is the source, otherAccountId the destination).
+
+    public static final int BEGIN = 5;
+    // Record type: the start of a group of records to apply all or none (amountCents is the number of records).
+
+    public static final int COMMIT = 6;
+    // Record type: the end of the group started by the preceding BEGIN (amountCents is the number of records).
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    // The file name prefix of segment files.
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    // The file name suffix of segment files.
+
+    public interface RecordHandler {
+        // Defining the callback that receives records during replay.
+
+        void onRecord(long sequence, int type, int accountId, int otherAccountId, long amountCents);
+        // Called once per record, in sequence order.
+    }
+
+    private final Path directory;
+    // The directory holding the segment files.
+
+    private final FsyncPolicy policy;
+    // When records are forced to disk.
+
+    private final int segmentBytes;
+    // The size of each segment file, rounded down to a whole number of records.
+
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // Lock that serializes appends and segment rolls.
+
+    private final Condition forced = appendLock.newCondition();
+    // Condition signalled whenever forcedSequence advances or a group commit fails.
+
+    private final ScheduledExecutorService groupCommitter;
+    // The thread that forces the journal at a fixed interval, or null unless the policy is GROUP_COMMIT.
+
+    private FileChannel channel;
+    // The channel of the segment currently being written.
+
+    private MappedByteBuffer segment;
+    // The mapping of the segment currently being written.
+
+    private long lastSequence;
+    // The sequence number of the last record appended.
+
+    private int forcedPosition;
+    // The position in the current segment up to which records have been forced; guarded by appendLock.
+
+    private long forcedSequence;
+    // The sequence number up to which records are known to be on disk; guarded by appendLock.
+
+    private RuntimeException commitFailure;
+    // The failure of a force, after which nothing more is written or acknowledged; guarded by appendLock.
+
+    private boolean closed;
+    // Whether close has been called, after which nothing more is written; guarded by appendLock.
+
+    private TransactionJournal(Path directory, FsyncPolicy policy, long groupCommitMicros, int segmentBytes)
+            throws IOException {
+        // Private constructor; use open() to create a journal.
+
+        this.directory = directory;
+        // Storing the directory.
+
+        this.policy = policy;
+        // Storing the fsync policy.
+
+        this.segmentBytes = segmentBytes - segmentBytes % RECORD_SIZE;
+        // Rounding the segment size down so records never straddle two segments.
+
+        Files.createDirectories(directory);
+        // Creating the directory if this is a new journal.
+
+        this.lastSequence = scanLastSequence(directory);
+        // Continuing the sequence after the last valid record already on disk.
+
+        rollSegment();
+        // Starting a fresh segment for this session's records.
+
+        if (policy == FsyncPolicy.GROUP_COMMIT) {
+            // Starting the group-commit thread only when it is needed.
+
+            this.groupCommitter = Executors.newSingleThreadScheduledExecutor(r -> {
+                // Creating a daemon thread so an unclosed journal does not keep the JVM alive.
+
+                Thread thread = new Thread(r, "TransactionJournal-group-commit");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+            groupCommitter.scheduleAtFixedRate(this::groupCommit, groupCommitMicros, groupCommitMicros,
+                    TimeUnit.MICROSECONDS);
+            // Forcing the journal every groupCommitMicros microseconds.
+        } else {
+            this.groupCommitter = null;
+            // No background thread for the other policies.
+        }
+    }
+
+    public static TransactionJournal open(Path directory, FsyncPolicy policy, long groupCommitMicros,
+            int segmentBytes) throws IOException {
+        // Method to open (or create) the journal in a directory.
+
+        if (groupCommitMicros < 1 || segmentBytes < RECORD_SIZE) {
+            // Checking the interval and segment size make sense.
+
+            throw new IllegalArgumentException("groupCommitMicros must be positive and segmentBytes must hold a record");
+        }
+
+        return new TransactionJournal(directory, policy, groupCommitMicros, segmentBytes);
+    }
+
+    public static TransactionJournal open(Path directory, FsyncPolicy policy) throws IOException {
+        // Method to open the journal with a 1 ms group-commit interval and 64 MB segments.
+
+        return open(directory, policy, 1000, 64 << 20);
+    }
+
+    public Path getDirectory() {
+        // Getter method to return the journal directory.
+
+        return directory;
+    }
+
+    public long append(int type, int accountId, int otherAccountId, long amountCents) {
+        // Method to write one record and return its sequence number, without waiting for the disk; pass the
+        // sequence number to awaitDurable before reporting the change as done.
+
+        appendLock.lock();
+        // Serializing appends so sequence numbers and file positions are handed out in the same order.
+
+        try {
+            checkWritable();
+            // Refusing before anything is written if the journal is closed or has failed.
+
+            put(type, accountId, otherAccountId, amountCents);
+            // Writing the record.
+
+            return lastSequence;
+        } catch (IOException e) {
+            // Catching a failure to create the next segment.
+
+            throw new UncheckedIOException("Could not append to journal in " + directory, e);
+        } finally {
+            appendLock.unlock();
+            // Releasing the append lock.
+        }
+    }
+
+    public long appendGroup(int[] accountIds, long[] deltaCents) {
+        // Method to write one signed change per account as a single group and return the COMMIT's sequence number,
+        // which is what to pass to awaitDurable. Each credit becomes a DEPOSIT record and each debit a WITHDRAW
+        // record, between a BEGIN and a COMMIT. The whole group is written under the append lock, so no other
+        // record lands inside it. If the append fails part-way, the group has no COMMIT and replay leaves it out.
+
+        int records = accountIds.length + 2;
+        // The changes plus the BEGIN and COMMIT records.
+
+        appendLock.lock();
+        // Serializing appends so the group's records are contiguous.
+
+        try {
+            checkWritable();
+            // Refusing before anything is written if the journal is closed or has failed.
+
+            if (segment.remaining() < records * RECORD_SIZE && records * RECORD_SIZE <= segmentBytes) {
+                // Starting a new segment when the group would not fit in the rest of this one but fits in a fresh
+                // one, so a group normally sits in one segment and is forced in one call.
+
+                rollSegment();
+            }
+
+            put(BEGIN, 0, 0, accountIds.length);
+            // Opening the group.
+
+            for (int i = 0; i < accountIds.length; i++) {
+                // Writing each change; a group larger than a segment continues in a new one.
+
+                put(deltaCents[i] > 0 ? DEPOSIT : WITHDRAW, accountIds[i], 0, Math.abs(deltaCents[i]));
+            }
+
+            put(COMMIT, 0, 0, accountIds.length);
+            // Closing the group.
+
+            return lastSequence;
+        } catch (IOException e) {
+            // Catching a failure to create the next segment; the group is left without its COMMIT.
+
+            throw new UncheckedIOException("Could not append to journal in " + directory, e);
+        } finally {
+            appendLock.unlock();
+            // Releasing the append lock.
+        }
+    }
+
+    private void checkWritable() {
+        // Method called with the append lock held to refuse a write the journal can no longer make durable.
+
+        if (closed) {
+            // Nothing will force a record written now.
+
+            throw new IllegalStateException("Journal in " + directory + " is closed");
+        }
+
+        if (commitFailure != null) {
+            // A force has failed, so the journal no longer knows what is on disk.
+
+            throw failed();
+        }
+    }
+
+    private UncheckedIOException failed() {
+        // Method to describe the force failure that stopped the journal.
+
+        return new UncheckedIOException("Journal in " + directory + " failed and accepts no more records",
+                new IOException("Force failed", commitFailure));
+    }
+
+    private void put(int type, int accountId, int otherAccountId, long amountCents) throws IOException {
+        // Method called with the append lock held to write one record, starting a new segment if this one is full.
+
+        if (!segment.hasRemaining()) {
+            // The current segment is full.
+
+            rollSegment();
+            // Continuing in a new segment.
+        }
+
+        long sequence = ++lastSequence;
+        // Assigning the next sequence number.
+
+        segment.putLong(sequence);
+        segment.putInt(type);
+        segment.putInt(accountId);
+        segment.putInt(otherAccountId);
+        segment.putInt(checksum(sequence, type, accountId, otherAccountId, amountCents));
+        segment.putLong(amountCents);
+        // Writing the record fields.
+    }
+
+    public void awaitDurable(long sequence) {
+        // Method to wait until the record with this sequence number, and every record before it, is as durable
+        // as the policy makes it: forced by this call under EVERY_RECORD, by the group commit covering it under
+        // GROUP_COMMIT, and left to the operating system under OS_MANAGED. Call it after releasing any lock
+        // held while appending, so other threads are not held up by the wait. Throws if a force fails; the
+        // record stays in the journal, and the journal accepts no more records.
+
+        if (policy == FsyncPolicy.OS_MANAGED) {
+            // Nothing is ever forced.
+
+            return;
+        }
+
+        appendLock.lock();
+        // Reading and advancing the forced position under the lock.
+
+        try {
+            if (policy == FsyncPolicy.EVERY_RECORD) {
+                forceThrough(sequence);
+                // Forcing every record not yet on disk, this one included.
+            } else {
+                awaitForced(sequence);
+                // Waiting for the group commit that covers the record.
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void forceThrough(long sequence) {
+        // Method called with the append lock held to force the current segment up to the last record written,
+        // unless a force by another caller already covered the sequence. Earlier segments were forced when
+        // they rolled, so the unforced records are all in this one.
+
+        if (forcedSequence >= sequence) {
+            // Another caller's force already covered the record.
+
+            return;
+        }
+
+        if (commitFailure != null) {
+            // An earlier force failed, so nothing more can be acknowledged.
+
+            throw failed();
+        }
+
+        int to = segment.position();
+        // The end of the records written so far.
+
+        try {
+            segment.force(forcedPosition, to - forcedPosition);
+            // Syncing just the pages holding the unforced records.
+        } catch (RuntimeException e) {
+            commitFailure = e;
+            forced.signalAll();
+            // Marking the journal failed; nobody can tell which of these records reached the disk.
+
+            throw failed();
+        }
+
+        forcedPosition = to;
+        forcedSequence = lastSequence;
+    }
+
+    private void awaitForced(long sequence) {
+        // Method called with the append lock held to wait until a group commit has forced a record. Waiting
+        // releases the lock, so other threads keep appending and their records join the same commit.
+
+        while (forcedSequence < sequence) {
+            // Waiting until the record is on disk.
+
+            if (commitFailure != null) {
+                // A force failed, so whether the record reached the disk is unknown.
+
+                throw failed();
+            }
+
+            if (closed) {
+                // Closing forces every record, so reaching this means the final force was skipped.
+
+                throw new IllegalStateException("Journal in " + directory + " is closed");
+            }
+
+            forced.awaitUninterruptibly();
+            // Waiting for the next group commit; an interrupt stays pending for the caller.
+        }
+    }
+
+    public long getLastSequence() {
+        // Getter method to return the sequence number of the last record appended.
+
+        appendLock.lock();
+        try {
+            return lastSequence;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    public long replay(long afterSequence, RecordHandler handler) throws IOException {
+        // Method to replay every record with a sequence number above afterSequence; returns the last one replayed.
+
+        return replay(directory, afterSequence, handler);
+    }
+
+    public static long replay(Path directory, long afterSequence, RecordHandler handler) throws IOException {
+        // Method to replay the records of a journal directory in sequence order.
+
+        long last = afterSequence;
+        // The last sequence number replayed so far.
+
+        List<Path> segments = listSegments(directory);
+        // Listing the segments sorted by their first sequence number.
+
+        for (int i = 0; i < segments.size(); i++) {
+            // Reading each segment that may hold records after afterSequence.
+
+            if (i + 1 < segments.size() && firstSequence(segments.get(i + 1)) <= afterSequence + 1) {
+                // The next segment starts at or before the first record wanted, so this one can be skipped.
+
+                continue;
+            }
+
+            last = replaySegment(segments.get(i), afterSequence, handler, last);
+            // Replaying the wanted records of this segment.
+        }
+
+        return last;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Method to stop the group-commit thread, force everything written, and close the current segment.
+
+        if (groupCommitter != null) {
+            // Stopping the group-commit thread.
+
+            groupCommitter.shutdown();
+        }
+
+        appendLock.lock();
+        // Blocking appends while the segment is closed.
+
+        try {
+            if (closed) {
+                return;
+                // Closing twice does nothing.
+            }
+
+            closed = true;
+            // Refusing every later append.
+
+            if (policy != FsyncPolicy.OS_MANAGED && commitFailure == null) {
+                // Making every record durable before closing; after a failed force the waiters have their answer.
+
+                segment.force();
+
+                forcedSequence = lastSequence;
+            }
+
+            forced.signalAll();
+            // Releasing the callers still waiting for a group commit.
+
+            channel.close();
+            // Closing the segment file; the mapping stays valid until it is garbage collected.
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void groupCommit() {
+        // Method run by the group-commit thread to force the records appended since the last commit.
+
+        MappedByteBuffer current;
+        // The segment to force.
+
+        int from;
+        // The first byte not yet forced.
+
+        int to;
+        // The end of the records written so far.
+
+        long through;
+        // The sequence number of the last record written so far.
+
+        appendLock.lock();
+        // Reading the positions under the lock; the force itself runs outside it so appends continue.
+
+        try {
+            if (commitFailure != null) {
+                return;
+                // A previous force failed; the waiting appenders have been told and nothing more is acknowledged.
+            }
+
+            current = segment;
+            from = forcedPosition;
+            to = segment.position();
+            through = lastSequence;
+            forcedPosition = to;
+        } finally {
+            appendLock.unlock();
+        }
+
+        RuntimeException failure = null;
+        // The failure of the force, if any.
+
+        try {
+            if (to > from) {
+                // Forcing only if something was appended.
+
+                current.force(from, to - from);
+            }
+        } catch (RuntimeException e) {
+            failure = e;
+            // Keeping the thread alive so the failure reaches the appenders instead of leaving them waiting.
+        }
+
+        appendLock.lock();
+        // Publishing the result to the waiting appenders.
+
+        try {
+            if (failure == null) {
+                forcedSequence = Math.max(forcedSequence, through);
+                // A segment roll may already have forced further.
+            } else {
+                commitFailure = failure;
+            }
+
+            forced.signalAll();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        // Method to finish the current segment and start a new one at the next sequence number.
+
+        if (segment != null) {
+            // Closing the previous segment.
+
+            if (policy != FsyncPolicy.OS_MANAGED) {
+                // Making the whole previous segment durable before moving on.
+
+                try {
+                    segment.force();
+                } catch (RuntimeException e) {
+                    commitFailure = e;
+                    forced.signalAll();
+                    throw e;
+                    // Marking the journal failed, as a failed group commit does.
+                }
+
+                forcedSequence = lastSequence;
+                forced.signalAll();
+                // Every record so far is in this segment or an earlier one, all forced now.
+            }
+
+            channel.close();
+            // Closing the previous file.
+        }
+
+        Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, lastSequence + 1, SEGMENT_SUFFIX));
+        // Naming the segment after the sequence number of its first record.
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        // Opening the new segment file.
+
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        // Mapping the full segment, which extends the file to its final, zero-filled size.
+
+        forcedPosition = 0;
+        // Nothing in the new segment has been forced yet.
+    }
+
+    public void deleteSegmentsBefore(long sequence) throws IOException {
+        // Method to delete the segments whose records all come before a sequence number, e.g. once a snapshot covers them.
+
+        appendLock.lock();
+        // Keeping the current segment from rolling while the directory is cleaned.
+
+        try {
+            List<Path> segments = listSegments(directory);
+            // Listing the segments in order.
+
+            for (int i = 0; i + 1 < segments.size(); i++) {
+                // The last segment is never deleted because it may still be written.
+
+                if (firstSequence(segments.get(i + 1)) > sequence) {
+                    // This segment holds records at or after the sequence, and so do all later ones.
+
+                    break;
+                }
+
+                Files.delete(segments.get(i));
+                // Every record of this segment is before the sequence.
+            }
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private static long scanLastSequence(Path directory) throws IOException {
+        // Method to find the sequence number of the last valid record in a journal directory.
+
+        List<Path> segments = listSegments(directory);
+        // Listing the segments in order.
+
+        if (segments.isEmpty()) {
+            // A new journal starts at sequence 1.
+
+            return 0;
+        }
+
+        long[] last = {0};
+        // Holding the last sequence seen by the handler.
+
+        for (int i = segments.size() - 1; i >= 0 && last[0] == 0; i--) {
+            // Reading segments from the newest back, skipping ones left empty by a session that wrote nothing.
+
+            replaySegment(segments.get(i), 0, (sequence, type, accountId, otherAccountId, amountCents) -> last[0] = sequence, 0);
+            // Walking the records; only the last sequence number is kept.
+        }
+
+        return Math.max(last[0], firstSequence(segments.get(segments.size() - 1)) - 1);
+        // An empty newest segment still fixes the sequence, even if the segments before it were deleted.
+    }
+
+    private static long replaySegment(Path file, long afterSequence, RecordHandler handler, long last)
+            throws IOException {
+        // Method to replay the valid records of one segment that come after afterSequence.
+
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            // Opening the segment for reading.
+
+            MappedByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            // Mapping the whole segment.
+
+            long expected = firstSequence(file);
+            // The sequence number the first record must have.
+
+            while (buffer.remaining() >= RECORD_SIZE) {
+                // Reading records until the end of the segment.
+
+                long sequence = buffer.getLong();
+                int type = buffer.getInt();
+                int accountId = buffer.getInt();
+                int otherAccountId = buffer.getInt();
+                int checksum = buffer.getInt();
+                long amountCents = buffer.getLong();
+                // Reading the record fields.
+
+                if (sequence != expected
+                        || checksum != checksum(sequence, type, accountId, otherAccountId, amountCents)) {
+                    // Reaching the zero-filled tail of the segment or a torn write.
+
+                    break;
+                }
+
+                if (sequence > afterSequence) {
+                    // Delivering only records after the requested starting point.
+
+                    handler.onRecord(sequence, type, accountId, otherAccountId, amountCents);
+                    last = sequence;
+                }
+
+                expected++;
+                // The next record must follow this one.
+            }
+        }
+
+        return last;
+    }
+
+    private static List<Path> listSegments(Path directory) throws IOException {
+        // Method to list the segment files of a directory sorted by first sequence number.
+
+        List<Path> segments = new ArrayList<>();
+        // Collecting the segment files.
+
+        if (!Files.isDirectory(directory)) {
+            // A missing directory is an empty journal.
+
+            return segments;
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            // Listing the directory.
+
+            files.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                    && p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .forEach(segments::add);
+        }
+
+        segments.sort(null);
+        // The zero-padded sequence numbers make name order the same as sequence order.
+
+        return segments;
+    }
+
+    private static long firstSequence(Path segment) {
+        // Method to read the first sequence number from a segment's file name.
+
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static int checksum(long sequence, int type, int accountId, int otherAccountId, long amountCents) {
+        // Method to compute a checksum that rejects zero-filled space and torn records.
+
+        long h = sequence * 0x9E3779B97F4A7C15L;
+        h = (h ^ type) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ accountId) * 0x94D049BB133111EBL;
+        h = (h ^ otherAccountId) * 0x9E3779B97F4A7C15L;
+        h = (h ^ amountCents) * 0xBF58476D1CE4E5B9L;
+        // Mixing every field into a 64-bit hash.
+
+        return (int) (h ^ (h >>> 32)) | 1;
+        // Folding it to an int that is never zero, so zero-filled space can never validate.
+    }
+}
@@ -0,0 +1,533 @@
+package banking;
+
+import java.lang.management.ManagementFactory;
+// Importing the ManagementFactory class to reach the platform MBean server.
+
+import java.util.PriorityQueue;
+// Importing the bounded heap used to pick the hottest ones.
+
+import java.util.concurrent.ThreadLocalRandom;
+// Importing the ThreadLocalRandom class to pick the timed sample without any shared state.
+
+import java.util.concurrent.atomic.LongAdder;
+// Importing the LongAdder class: striped counters that threads can bump without sharing a cache line.
+
+import java.util.concurrent.locks.ReentrantLock;
+// Importing the lock that serialises snapshots while they fold the recorders into the running totals.
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+// Importing the JMX classes used to publish the metrics.
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+// Importing HdrHistogram: Recorders take values from many threads, Histograms hold the running totals.
+
+public class TransactionMetrics implements TransactionMetricsMBean {
+    // Defining the counters and latency distributions of one TransactionSystem.
+    // Counters are LongAdders and latencies go to HdrHistogram Recorders, striped by thread so
+    // concurrent transfers rarely touch the same memory; recording never locks or allocates.
+    // Readers pull: snapshot() folds everything recorded since the last call into running totals
+    // and returns an immutable view, which is also what the JMX attributes are read from.
+    // An uncontended transfer takes about 300 ns, while a clock read costs about 35 ns and a LongAdder
+    // increment about 15 ns, so neither can run on every transfer within a 2% budget. Instead:
+    //   - each transfer bumps a plain counter on its source account while holding that account's lock,
+    //     and snapshots sum the accounts;
+    //   - latency is timed for a random one in LATENCY_SAMPLE transfers, drawn from the calling thread's
+    //     ThreadLocalRandom, so the sample is spread evenly over accounts and threads;
+    //   - lock waits are timed only when a lock is actually contended, and the thread is about to park;
+    //   - the rarer outcomes (insufficient funds, timeouts, failures, reversals) use LongAdders.
+
+    private static final long MAX_RECORDED_NANOS = 60_000_000_000L;
+    // Largest latency the histograms track; longer values are recorded as this.
+
+    private static final int SIGNIFICANT_DIGITS = 2;
+    // Precision of the histograms: values are kept to within 1%, which keeps each histogram small.
+
+    private static final int LATENCY_SAMPLE = 1024;
+    // One in this many transfers is timed, at random; a power of two. A sampled transfer costs
+    // two clock reads and a histogram write into memory that has usually gone cold, a few hundred
+    // nanoseconds, so sampling more often than this shows up in the throughput.
+
+    private static final int DEFAULT_HOT_ACCOUNTS = 10;
+    // Number of hottest accounts reported by the MBean.
+
+    private final Iterable<BankAccount> accounts;
+    // Declaring the live view of the system's accounts, scanned for the hottest ones.
+
+    private volatile boolean enabled = true;
+    // Declaring whether transfer latency is sampled; the counters are always kept.
+
+    private final LongAdder insufficientFunds = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder reversals = new LongAdder();
+    // Declaring the outcome counters.
+
+    private final LongAdder contendedLocks = new LongAdder();
+    private final LongAdder lockWaitNanos = new LongAdder();
+    // Declaring the system-wide lock contention counters.
+
+    private final Recorder[] latencyStripes;
+    private final Recorder[] lockWaitStripes;
+    // Declaring the striped recorders of transfer latency and of each contended lock wait.
+
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    // Declaring the lock that lets one snapshot at a time drain the recorders.
+
+    private final Histogram latencyTotal = new Histogram(MAX_RECORDED_NANOS, SIGNIFICANT_DIGITS);
+    private final Histogram lockWaitTotal = new Histogram(MAX_RECORDED_NANOS, SIGNIFICANT_DIGITS);
+    // Declaring the running totals; guarded by snapshotLock.
+
+    private final Histogram[] latencyIntervals;
+    private final Histogram[] lockWaitIntervals;
+    // Declaring each stripe's last interval, handed back to its recorder for reuse; guarded by snapshotLock.
+
+    public TransactionMetrics(Iterable<BankAccount> accounts) {
+        // Constructor to create the metrics of a system holding the given accounts.
+
+        this.accounts = accounts;
+        // Storing the live view of the accounts.
+
+        int stripes = Math.min(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+        // Using about one stripe per core, capped so a large machine does not pay for many idle histograms.
+
+        latencyStripes = new Recorder[stripes];
+        lockWaitStripes = new Recorder[stripes];
+        latencyIntervals = new Histogram[stripes];
+        lockWaitIntervals = new Histogram[stripes];
+
+        for (int i = 0; i < stripes; i++) {
+            // Creating each stripe.
+
+            latencyStripes[i] = new Recorder(MAX_RECORDED_NANOS, SIGNIFICANT_DIGITS);
+            lockWaitStripes[i] = new Recorder(MAX_RECORDED_NANOS, SIGNIFICANT_DIGITS);
+        }
+    }
+
+    public void setEnabled(boolean enabled) {
+        // Method to turn transfer latency sampling on or off, for example to measure its cost.
+
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        // Method to return whether transfer latency is sampled.
+
+        return enabled;
+    }
+
+    long startTransfer(BankAccount from) {
+        // Package-private method called as a transfer starts, before any lock is taken; returns its start
+        // time if this transfer is one of the timed sample, or 0. The sample is drawn from the thread's own
+        // random generator, which costs a few nanoseconds and shares nothing with other threads, so every
+        // transfer has the same chance of being timed whichever account it leaves.
+
+        if (!enabled || (ThreadLocalRandom.current().nextInt() & (LATENCY_SAMPLE - 1)) != 0) {
+            return 0;
+        }
+
+        return System.nanoTime();
+    }
+
+    void endTransfer(long startNanos) {
+        // Package-private method called as a transfer finishes, with the time startTransfer returned.
+
+        if (startNanos != 0) {
+            // Recording the latency of a sampled transfer, including any wait for the account locks.
+
+            stripe(latencyStripes).recordValue(Math.min(System.nanoTime() - startNanos, MAX_RECORDED_NANOS));
+        }
+    }
+
+    void recordInsufficientFunds() {
+        // Package-private method to count a transfer refused because its source could not cover it.
+        // Outcomes other than completion are counted only on their own paths; completed transfers are
+        // counted on their source accounts.
+
+        insufficientFunds.increment();
+    }
+
+    void recordTimeout() {
+        // Package-private method to count a transfer that gave up waiting for its locks.
+
+        timedOut.increment();
+    }
+
+    void recordFailure() {
+        // Package-private method to count a transfer that failed part-way.
+
+        failed.increment();
+    }
+
+    void recordLockWait(long waitedNanos) {
+        // Package-private method to record one contended lock wait; a wait of 0 means the lock was free.
+
+        if (waitedNanos > 0) {
+            contendedLocks.increment();
+            lockWaitNanos.add(waitedNanos);
+            stripe(lockWaitStripes).recordValue(Math.min(waitedNanos, MAX_RECORDED_NANOS));
+        }
+    }
+
+    void recordReversal() {
+        // Package-private method to count a transfer that had to be reversed.
+
+        reversals.increment();
+    }
+
+    private static Recorder stripe(Recorder[] stripes) {
+        // Method to pick the calling thread's stripe.
+
+        return stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+    }
+
+    public Snapshot snapshot(int hotAccounts) {
+        // Method to return the metrics so far, with the given number of accounts that waited longest for their locks.
+
+        snapshotLock.lock();
+        // Letting one snapshot at a time drain the recorders.
+
+        try {
+            for (int i = 0; i < latencyStripes.length; i++) {
+                // Folding each stripe into the running totals, recycling its previous interval.
+
+                latencyIntervals[i] = latencyStripes[i].getIntervalHistogram(latencyIntervals[i]);
+                latencyTotal.add(latencyIntervals[i]);
+
+                lockWaitIntervals[i] = lockWaitStripes[i].getIntervalHistogram(lockWaitIntervals[i]);
+                lockWaitTotal.add(lockWaitIntervals[i]);
+            }
+
+            return new Snapshot(this, latencyTotal, lockWaitTotal, hottestAccounts(hotAccounts));
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    private HotAccount[] hottestAccounts(int count) {
+        // Method to find the hottest accounts: those whose locks were waited on longest, then those with the
+        // most transfers out, keeping only count candidates at a time.
+
+        if (count <= 0) {
+            return new HotAccount[0];
+            // Skipping the scan when no accounts were asked for.
+        }
+
+        PriorityQueue<HotAccount> top = new PriorityQueue<>(count + 1, HotAccount::compareHeat);
+        // Holding the best accounts so far, with the coolest at the head so it is the one dropped.
+
+        for (BankAccount account : accounts) {
+            // Scanning every account's counters.
+
+            long waited = account.getLockWaitNanos();
+            long transfers = account.getTransferOutCount();
+
+            if (waited == 0 && transfers == 0) {
+                continue;
+                // Skipping accounts that have not been used.
+            }
+
+            HotAccount candidate = new HotAccount(account.getId(), transfers, account.getContendedLockCount(), waited);
+
+            if (top.size() < count || candidate.compareHeat(top.peek()) > 0) {
+                // Keeping the account if it beats the coolest one held.
+
+                top.add(candidate);
+
+                if (top.size() > count) {
+                    top.poll();
+                }
+            }
+        }
+
+        HotAccount[] hottest = new HotAccount[top.size()];
+
+        for (int i = hottest.length - 1; i >= 0; i--) {
+            hottest[i] = top.poll();
+            // Emptying the heap from the coolest, so the hottest ends up first.
+        }
+
+        return hottest;
+    }
+
+    public ObjectName register(String name) throws JMException {
+        // Method to publish these metrics on the platform MBean server under banking:type=TransactionSystem,name=<name>.
+
+        ObjectName objectName = new ObjectName("banking:type=TransactionSystem,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public static void unregister(ObjectName objectName) throws JMException {
+        // Method to remove metrics published by register.
+
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    }
+
+    // The MBean attributes: counters are read directly, distributions from a fresh snapshot.
+
+    @Override
+    public long getTransfers() {
+        return lockedTransfers() + timedOut.sum();
+    }
+
+    @Override
+    public long getCompleted() {
+        return completed(lockedTransfers(), insufficientFunds.sum(), failed.sum());
+    }
+
+    private long lockedTransfers() {
+        // Method to sum the transfers that got both locks, counted on their source accounts.
+
+        long total = 0;
+
+        for (BankAccount account : accounts) {
+            total += account.getTransferOutCount();
+        }
+
+        return total;
+    }
+
+    private static long completed(long lockedTransfers, long insufficientFunds, long failed) {
+        // Method to derive the completed count; counters read while transfers finish can briefly disagree.
+
+        return Math.max(0, lockedTransfers - insufficientFunds - failed);
+    }
+
+    @Override
+    public long getInsufficientFunds() {
+        return insufficientFunds.sum();
+    }
+
+    @Override
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    @Override
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    @Override
+    public long getReversals() {
+        return reversals.sum();
+    }
+
+    @Override
+    public long getContendedLocks() {
+        return contendedLocks.sum();
+    }
+
+    @Override
+    public double getLockWaitMillis() {
+        return lockWaitNanos.sum() / 1e6;
+    }
+
+    @Override
+    public double getTransferLatencyP50Micros() {
+        return snapshot(0).getLatencyMicros(50);
+    }
+
+    @Override
+    public double getTransferLatencyP99Micros() {
+        return snapshot(0).getLatencyMicros(99);
+    }
+
+    @Override
+    public double getTransferLatencyP999Micros() {
+        return snapshot(0).getLatencyMicros(99.9);
+    }
+
+    @Override
+    public double getTransferLatencyMaxMicros() {
+        return snapshot(0).getLatencyMicros(100);
+    }
+
+    @Override
+    public double getLockWaitP99Micros() {
+        return snapshot(0).getLockWaitMicros(99);
+    }
+
+    @Override
+    public String[] getHottestAccounts() {
+        HotAccount[] hottest = snapshot(DEFAULT_HOT_ACCOUNTS).getHottestAccounts();
+        String[] lines = new String[hottest.length];
+
+        for (int i = 0; i < hottest.length; i++) {
+            lines[i] = hottest[i].toString();
+        }
+
+        return lines;
+    }
+
+    public static final class HotAccount {
+        // Defining one account's traffic and lock contention, as reported in a snapshot.
+
+        private final int accountId;
+        private final long transfersOut;
+        private final long contendedLocks;
+        private final long waitNanos;
+        // The account, its transfers out, how often its lock was contended and how long threads waited for it.
+
+        HotAccount(int accountId, long transfersOut, long contendedLocks, long waitNanos) {
+            this.accountId = accountId;
+            this.transfersOut = transfersOut;
+            this.contendedLocks = contendedLocks;
+            this.waitNanos = waitNanos;
+        }
+
+        int compareHeat(HotAccount other) {
+            // Method to order accounts by lock wait, then by transfers out.
+
+            int byWait = Long.compare(waitNanos, other.waitNanos);
+            return byWait != 0 ? byWait : Long.compare(transfersOut, other.transfersOut);
+        }
+
+        public int getAccountId() {
+            return accountId;
+        }
+
+        public long getTransfersOut() {
+            return transfersOut;
+        }
+
+        public long getContendedLocks() {
+            return contendedLocks;
+        }
+
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "account " + accountId + ": " + transfersOut + " transfers out, " + contendedLocks
+                    + " contended locks, " + String.format("%.3f", waitNanos / 1e6) + " ms waiting";
+        }
+    }
+
+    public static final class Snapshot {
+        // Defining an immutable view of the metrics at one moment.
+
+        private final long transfers;
+        private final long completed;
+        private final long insufficientFunds;
+        private final long timedOut;
+        private final long failed;
+        private final long reversals;
+        private final long contendedLocks;
+        private final long lockWaitNanos;
+        // The counters.
+
+        private final Histogram latency;
+        private final Histogram lockWait;
+        // Copies of the latency distributions.
+
+        private final HotAccount[] hottestAccounts;
+        // The accounts that waited longest for their locks, hottest first.
+
+        private Snapshot(TransactionMetrics metrics, Histogram latency, Histogram lockWait,
+                         HotAccount[] hottestAccounts) {
+            // Constructor to copy the metrics; called with the snapshot lock held.
+
+            this.insufficientFunds = metrics.insufficientFunds.sum();
+            this.timedOut = metrics.timedOut.sum();
+            this.failed = metrics.failed.sum();
+            long locked = metrics.lockedTransfers();
+            this.transfers = locked + timedOut;
+            this.completed = completed(locked, insufficientFunds, failed);
+            // Reading the account counts last, so they already include every outcome counted above.
+            this.reversals = metrics.reversals.sum();
+            this.contendedLocks = metrics.contendedLocks.sum();
+            this.lockWaitNanos = metrics.lockWaitNanos.sum();
+            this.latency = latency.copy();
+            this.lockWait = lockWait.copy();
+            this.hottestAccounts = hottestAccounts;
+        }
+
+        public long getTransfers() {
+            return transfers;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getInsufficientFunds() {
+            return insufficientFunds;
+        }
+
+        public long getTimedOut() {
+            return timedOut;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getReversals() {
+            return reversals;
+        }
+
+        public long getContendedLocks() {
+            return contendedLocks;
+        }
+
+        public long getLockWaitNanos() {
+            return lockWaitNanos;
+        }
+
+        public double getLatencyMicros(double percentile) {
+            // Method to return a transfer latency percentile in microseconds; 100 gives the maximum.
+
+            return latency.getValueAtPercentile(percentile) / 1e3;
+        }
+
+        public double getLockWaitMicros(double percentile) {
+            // Method to return a percentile of the contended lock waits in microseconds.
+
+            return lockWait.getValueAtPercentile(percentile) / 1e3;
+        }
+
+        public Histogram getLatencyHistogram() {
+            // Method to return the full transfer latency distribution, in nanoseconds.
+
+            return latency.copy();
+        }
+
+        public Histogram getLockWaitHistogram() {
+            // Method to return the full distribution of contended lock waits, in nanoseconds.
+
+            return lockWait.copy();
+        }
+
+        public HotAccount[] getHottestAccounts() {
+            return hottestAccounts.clone();
+        }
+
+        @Override
+        public String toString() {
+            // Method to print the snapshot as a short report.
+
+            StringBuilder report = new StringBuilder(256);
+            report.append("transfers ").append(transfers)
+                  .append(", completed ").append(completed)
+                  .append(", insufficient funds ").append(insufficientFunds)
+                  .append(", timed out ").append(timedOut)
+                  .append(", failed ").append(failed)
+                  .append(", reversals ").append(reversals)
+                  .append(String.format("%nlatency us: p50 %.1f  p99 %.1f  p99.9 %.1f  max %.1f",
+                          getLatencyMicros(50), getLatencyMicros(99), getLatencyMicros(99.9), getLatencyMicros(100)))
+                  .append(String.format("%ncontended locks %d, waited %.3f ms, wait p99 %.1f us",
+                          contendedLocks, lockWaitNanos / 1e6, getLockWaitMicros(99)));
+
+            for (HotAccount hot : hottestAccounts) {
+                report.append(System.lineSeparator()).append("  ").append(hot);
+            }
+
+            return report.toString();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package banking;
+
+public interface TransactionMetricsMBean {
+    // Defining the attributes TransactionMetrics publishes over JMX; times are in milliseconds or microseconds.
+
+    long getTransfers();
+    // Transfers run through the system, whatever their outcome.
+
+    long getCompleted();
+    long getInsufficientFunds();
+    long getTimedOut();
+    long getFailed();
+    // Transfers by outcome.
+
+    long getReversals();
+    // Transfers that failed part-way and were reversed.
+
+    long getContendedLocks();
+    double getLockWaitMillis();
+    // Account locks that had to be waited for, and the total wait.
+
+    double getTransferLatencyP50Micros();
+    double getTransferLatencyP99Micros();
+    double getTransferLatencyP999Micros();
+    double getTransferLatencyMaxMicros();
+    // Transfer latency percentiles since the system started, from a random sample of the transfers.
+
+    double getLockWaitP99Micros();
+    // The 99th percentile of the contended lock waits.
+
+    String[] getHottestAccounts();
+    // The accounts whose locks were waited on longest, then those with the most transfers out, hottest first.
+}
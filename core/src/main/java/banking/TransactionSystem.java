@@ -0,0 +1,1657 @@
+package banking;
+
+import java.io.IOException; 
+// Importing the IOException class for failures while reading the journal or writing snapshots.
+
+import java.nio.file.Path; 
+// Importing the Path class for snapshot files.
+
+import java.time.Instant; 
+// Importing the Instant class to print the times of statement entries.
+
+import java.util.Arrays; 
+// Importing the Arrays class to sort accounts into lock order.
+
+import java.util.Comparator; 
+// Importing the Comparator interface to order accounts by ID.
+
+import java.util.List; 
+// Importing the List interface for managing a collection of BankAccount objects.
+
+import java.util.Map; 
+// Importing the Map interface for storing account data where each account is accessed by its ID.
+
+import java.util.concurrent.ConcurrentHashMap; 
+// Importing the ConcurrentHashMap class for the pre-images saved while a snapshot is read.
+
+import java.util.concurrent.ThreadLocalRandom; 
+// Importing the ThreadLocalRandom class to randomize the back-off between posting attempts.
+
+import java.util.concurrent.TimeUnit; 
+// Importing the TimeUnit class for bounded lock waits.
+
+import java.util.concurrent.locks.LockSupport; 
+// Importing the LockSupport class to sleep between posting attempts without holding a lock.
+
+import java.util.concurrent.locks.ReentrantReadWriteLock; 
+// Importing the ReentrantReadWriteLock class for the snapshot epoch barrier.
+
+public class TransactionSystem { 
+    // Defining the TransactionSystem class, which manages transfers between bank accounts.
+
+    private final AccountStore accounts; 
+    // Declaring the store that holds the accounts and their balances, indexed by their account IDs.
+
+    private static final int OPTIMISTIC_READ_ATTEMPTS = 4; 
+    // Number of lock-free attempts a multi-account read makes before it locks the accounts instead.
+
+    private static final int[] NONE_OVERDRAWN = new int[0]; 
+    // Returned when every net change was applied; empty, so it can be shared.
+
+    private static final long[] NOT_JOURNALED = new long[1]; 
+    // Passed instead of a fresh holder for the journal sequence when there is no journal. It can be shared
+    // because it is only read: the holder is written only after a journal append, which needs a journal.
+
+    private static final long MIN_BACKOFF_NANOS = 1_000; 
+    private static final long MAX_BACKOFF_NANOS = 1_000_000; 
+    // Range of the random sleep after a posting finds one of its locks busy, doubling from 1 us up to 1 ms.
+
+    private final TransactionJournal journal; 
+    // Declaring the write-ahead journal that records every balance change, or null if changes are not journaled.
+
+    private final ReentrantReadWriteLock snapshotGate = new ReentrantReadWriteLock(); 
+    // Declaring the epoch barrier: balance changes hold the read side, and a snapshot takes the write side to start.
+
+    private volatile Map<Integer, Long> preImages; 
+    // Declaring the balances saved before each account's first change while a snapshot is being read, or null.
+
+    private final TransactionMetrics metrics; 
+    // Declaring the counters and latency distributions of this system's transfers.
+
+    private volatile IdempotencyKeys idempotencyKeys = new IdempotencyKeys(60, TimeUnit.SECONDS, 1 << 20); 
+    // Declaring the keys of recently completed transfers: remembered for a minute, sized for a million keys in
+    // that minute. Its tables are only allocated as keys arrive, so a system that never sees a key pays nothing.
+
+    private volatile AccountHistory history; 
+    // Declaring the per-account history that committed changes are appended to, or null if history is not kept.
+
+    public TransactionSystem(List<BankAccount> accountList) { 
+        // Constructor to initialize the TransactionSystem with a list of BankAccount objects.
+
+        this(accountList, null); 
+        // Creating the system without a journal.
+    }
+
+    public TransactionSystem(List<BankAccount> accountList, TransactionJournal journal) { 
+        // Constructor to initialize the TransactionSystem with accounts whose changes are recorded in a journal.
+
+        this(new HeapAccountStore(accountList), journal, true); 
+        // Keeping one BankAccount object per account, and recording the opening balance of every account so
+        // the journal alone can rebuild them.
+    }
+
+    public TransactionSystem(AccountStore store) { 
+        // Constructor to initialize the TransactionSystem with the accounts already opened in a store.
+
+        this(store, null); 
+        // Creating the system without a journal.
+    }
+
+    public TransactionSystem(AccountStore store, TransactionJournal journal) { 
+        // Constructor to initialize the TransactionSystem with the accounts of a store, whose changes are recorded in a journal.
+
+        this(store, journal, true); 
+        // Recording the opening balance of every account so the journal alone can rebuild them.
+    }
+
+    private TransactionSystem(AccountStore store, TransactionJournal journal, boolean journalOpenings) { 
+        // Private constructor shared by the public constructors and by recovery, which must not journal the accounts again.
+
+        this.accounts = store; 
+        // Storing the accounts; every balance is read and changed through the store's accounts.
+
+        this.journal = journal; 
+        // Storing the journal, which may be null.
+
+        this.metrics = new TransactionMetrics(store); 
+        // Creating the metrics over the live accounts, so the hottest ones can be found later.
+
+        long opened = 0; 
+        // The sequence number of the last opening recorded.
+
+        if (journal != null && journalOpenings) { 
+            for (BankAccount account : store) { 
+                // Recording each account and its starting balance.
+
+                opened = journal.append(TransactionJournal.OPEN, account.getId(), 0, account.peekBalanceCents()); 
+            }
+        }
+
+        awaitDurable(opened); 
+        // Waiting once for every opening to be on disk.
+    }
+
+    public static TransactionSystem recover(TransactionJournal journal) throws IOException { 
+        // Method to rebuild the accounts from the newest snapshot plus the journal records after it, returning a system that keeps appending to the journal.
+
+        return recover(journal, new HeapAccountStore()); 
+        // Creating one BankAccount per recovered account.
+    }
+
+    public static TransactionSystem recover(TransactionJournal journal, AccountStore store) throws IOException { 
+        // Method to rebuild the accounts into an empty store, such as an OffHeapAccountStore large enough for them.
+
+        AccountSnapshot snapshot = AccountSnapshot.loadLatest(journal.getDirectory()); 
+        // Loading the newest snapshot, or an empty one if none has been taken.
+
+        snapshot.replay(journal); 
+        // Applying only the journal records written after the snapshot.
+
+        for (int i = 0; i < snapshot.size(); i++) { 
+            // Opening each recovered account with its exact balance.
+
+            store.open(snapshot.getId(i), snapshot.getCents(i)); 
+        }
+
+        return new TransactionSystem(store, journal, false); 
+        // The accounts are already in the journal, so their openings are not recorded again.
+    }
+
+    public Path takeSnapshot() throws IOException { 
+        // Method to write a consistent snapshot of every balance next to the journal without stopping transfers.
+        // Writers hold the shared side of snapshotGate while they change balances; the snapshot takes the
+        // exclusive side only long enough to fix the journal sequence and start collecting pre-images.
+        // From then on, the first change to each account saves its old balance, so the snapshot can read
+        // every account one lock at a time and still see the state as of that sequence number.
+
+        if (journal == null) { 
+            // Snapshots are tied to a journal sequence number, so they need a journal.
+
+            throw new IllegalStateException("Snapshots require a TransactionSystem created with a journal"); 
+        }
+
+        long sequence; 
+        // The journal sequence number the snapshot will reflect.
+
+        snapshotGate.writeLock().lock(); 
+        // Waiting for in-flight changes to finish and briefly holding off new ones.
+
+        try { 
+            sequence = journal.getLastSequence(); 
+            // Every change up to this record is in the balances, and no later change has started.
+
+            preImages = new ConcurrentHashMap<>(); 
+            // Starting to collect the balance each account had before its first later change.
+        } finally { 
+            snapshotGate.writeLock().unlock(); 
+            // Letting changes continue.
+        }
+
+        int[] ids; 
+        // The account IDs, sorted.
+
+        long[] cents; 
+        // The balances as of the snapshot sequence.
+
+        try { 
+            ids = sortedAccountIds(); 
+            // Listing the account IDs in ascending order.
+
+            cents = new long[ids.length]; 
+            // Allocating the balance column.
+
+            for (int i = 0; i < ids.length; i++) { 
+                // Reading each account under its own lock only.
+
+                BankAccount account = accounts.get(ids[i]); 
+                // Retrieve the account.
+
+                account.lock(); 
+                // Locking the account so no change is half-applied while it is read.
+
+                try { 
+                    long current = account.peekBalanceCents(); 
+                    // Reading the current balance first: a split account takes credits without its lock, but
+                    // every change saves its pre-image before it touches the balance, so a pre-image missing
+                    // below means no change since the snapshot started is in this balance yet.
+
+                    Long before = preImages.get(ids[i]); 
+                    // The balance before the first change since the snapshot started, if it has changed.
+
+                    cents[i] = before != null ? before : current; 
+                    // Using the saved balance if it changed, or the current one if it did not.
+                } finally { 
+                    account.unlock(); 
+                    // Releasing the account.
+                }
+            }
+        } finally { 
+            preImages = null; 
+            // Stopping the collection of pre-images.
+        }
+
+        Path file = new AccountSnapshot(sequence, ids, cents).write(journal.getDirectory()); 
+        // Writing the snapshot file.
+
+        AccountSnapshot.deleteOlderThan(journal.getDirectory(), sequence); 
+        // Removing snapshots this one replaces.
+
+        journal.deleteSegmentsBefore(sequence + 1); 
+        // Removing journal segments the snapshot fully covers.
+
+        return file; 
+    }
+
+    private void beginChange(BankAccount... changed) { 
+        // Method called with the account locks held, before balances change.
+
+        if (journal == null) { 
+            // Without a journal there are no snapshots to coordinate with.
+
+            return; 
+        }
+
+        snapshotGate.readLock().lock(); 
+        // Joining the current snapshot epoch; a snapshot waits for this change to end.
+
+        Map<Integer, Long> saved = preImages; 
+        // Reading the pre-image map once; it is null unless a snapshot is being read.
+
+        if (saved != null) { 
+            // A snapshot is in progress.
+
+            for (BankAccount account : changed) { 
+                // Saving the balance of each account before its first change since the snapshot started.
+
+                saved.putIfAbsent(account.getId(), account.peekBalanceCents()); 
+            }
+        }
+    }
+
+    private void endChange() { 
+        // Method called after the balances have changed and the journal record is written.
+
+        if (journal != null) { 
+            snapshotGate.readLock().unlock(); 
+            // Leaving the snapshot epoch.
+        }
+    }
+
+    public void setAutoSplit(boolean autoSplit) { 
+        // Method to choose whether accounts split themselves into sub-balances when their locks are contended often.
+
+        for (BankAccount account : accounts) { 
+            account.setAutoSplit(autoSplit); 
+        }
+    }
+
+    public void setIdempotencyKeys(IdempotencyKeys idempotencyKeys) { 
+        // Method to replace the key set, for example to remember keys longer; call it before keyed transfers start,
+        // since the keys already in the old set are forgotten.
+
+        this.idempotencyKeys = idempotencyKeys; 
+    }
+
+    public IdempotencyKeys getIdempotencyKeys() { 
+        // Method to return the keys of recently completed transfers, for their counts and memory use.
+
+        return idempotencyKeys; 
+    }
+
+    public void setHistory(AccountHistory history) { 
+        // Method to start appending every committed change to a per-account history, or to stop with null.
+        // History costs two appends per transfer and 32 bytes per entry, so it is off by default.
+
+        this.history = history; 
+    }
+
+    public AccountHistory getHistory() { 
+        // Method to return the history changes are appended to, or null if none is kept.
+
+        return history; 
+    }
+
+    public TransactionMetrics getMetrics() { 
+        // Method to return the metrics of this system, for snapshots or for registering with JMX.
+
+        return metrics; 
+    }
+
+    int[] sortedAccountIds() { 
+        // Package-private method to list every account ID in ascending order.
+
+        return accounts.sortedIds(); 
+    }
+
+    BankAccount getAccount(int accountId) { 
+        // Package-private method used by the transfer engines in this package to look up an account by ID.
+
+        return accounts.get(accountId); 
+        // Returning the account, or null if no account has this ID.
+    }
+
+    private void acquireLocksInOrder(BankAccount first, BankAccount second) { 
+        // Private method to acquire locks on two BankAccount objects in a specific order to avoid deadlocks.
+
+        if (first.getId() < second.getId()) { 
+            // If the first account's ID is smaller, lock the first account first, then the second account.
+            metrics.recordLockWait(first.lockAndMeasure());
+            metrics.recordLockWait(second.lockAndMeasure());
+        } else { 
+            // Otherwise, lock the second account first, then the first account.
+            metrics.recordLockWait(second.lockAndMeasure());
+            metrics.recordLockWait(first.lockAndMeasure());
+        }
+        // Each account records its own wait; the system records the contended waits in its lock-wait histogram.
+    }
+
+    private void releaseLocksInOrder(BankAccount first, BankAccount second) { 
+        // Private method to release locks on two BankAccount objects in the same order as they were acquired.
+
+        first.unlock(); 
+        // Unlock the first account.
+
+        second.unlock(); 
+        // Unlock the second account.
+    }
+
+    public boolean transfer(int fromAccountId, int toAccountId, double amount, int threadNumber) { 
+        // Method to perform a transfer of a dollar amount from one account to another.
+
+        return transferCents(fromAccountId, toAccountId, AccountUtils.toCents(amount), threadNumber); 
+        // Converting the amount to whole cents once and transferring it exactly.
+    }
+
+    public boolean transferCents(int fromAccountId, int toAccountId, long amountCents, int threadNumber) { 
+        // Method to perform a transfer of an amount in cents from one account to another.
+        // The thread number is only a label recorded with the transfer events; ordering between
+        // transfers is the caller's job, for example through TransferScheduler.
+
+        return runTransfer(fromAccountId, toAccountId, amountCents, threadNumber, 0) == TransferResult.COMPLETED; 
+        // Transferring without an idempotency key; false covers unknown accounts and insufficient funds alike.
+    }
+
+    public TransferResult transferOnce(long idempotencyKey, int fromAccountId, int toAccountId, long amountCents) { 
+        // Method to perform a transfer in cents at most once per idempotency key, so a client can safely retry it.
+        // A key whose transfer completed within the retention period of getIdempotencyKeys returns DUPLICATE
+        // and changes nothing; a key whose transfer did not complete may be retried. Keys must not be 0.
+
+        checkKey(idempotencyKey); 
+        // Refusing the key that marks an empty slot.
+
+        return runTransfer(fromAccountId, toAccountId, amountCents, 0, idempotencyKey); 
+    }
+
+    private TransferResult runTransfer(int fromAccountId, int toAccountId, long amountCents, int threadNumber, long key) { 
+        // Method to lock the accounts and move the money, shared by the plain and the keyed transfer; key 0 means none.
+
+        BankAccount fromAccount = accounts.get(fromAccountId); 
+        // Retrieve the source BankAccount based on the account ID.
+
+        BankAccount toAccount = accounts.get(toAccountId); 
+        // Retrieve the destination BankAccount based on the account ID.
+
+        if (fromAccount == null || toAccount == null) { 
+            // Check if either the source or destination account is null.
+
+            return TransferResult.UNKNOWN_ACCOUNT; 
+            // Nothing is changed for an invalid (null) account.
+        }
+
+        EventLog.log(LogLevel.INFO, EventLog.TRANSFER_ATTEMPT, fromAccountId, toAccountId, amountCents, threadNumber); 
+        // Record the transfer attempt; the event log formats and prints it off this thread.
+
+        long started = metrics.startTransfer(fromAccount); 
+        // Starting the latency measurement, which includes the wait for the locks.
+
+        boolean lockDestination = !toAccount.isSplit(); 
+        // A split destination takes the credit into a sub-balance without its lock, so only the source is locked.
+
+        long[] journaled = journal != null ? new long[1] : NOT_JOURNALED; 
+        // Receiving the sequence number of the transfer's journal record.
+
+        try { 
+            TransferResult result; 
+
+            if (lockDestination) { 
+                acquireLocksInOrder(fromAccount, toAccount); 
+                // Acquire locks on both accounts in a deadlock-free order.
+            } else { 
+                metrics.recordLockWait(fromAccount.lockAndMeasure()); 
+                // Acquire the lock on the source account only.
+            }
+
+            try { 
+                result = applyTransfer(fromAccount, toAccount, amountCents, threadNumber, key, journaled); 
+                // Move the money while the locks are held.
+            } finally { 
+                // Finally block to ensure locks are released.
+
+                if (lockDestination) { 
+                    releaseLocksInOrder(fromAccount, toAccount); 
+                    // Release the locks on both accounts in the correct order.
+                } else { 
+                    fromAccount.unlock(); 
+                    // Release the source account.
+                }
+            }
+
+            awaitDurable(journaled[0]); 
+            // Waiting for the journal record with the locks released, so other transfers on these accounts go ahead.
+
+            return result; 
+        } finally { 
+            metrics.endTransfer(started); 
+            // Recording the latency if this transfer is one of the timed sample, including the journal wait.
+        }
+    }
+
+    TransferResult transferLocked(BankAccount fromAccount, BankAccount toAccount, long amountCents, long[] journaled) { 
+        // Package-private method used by TransferEngine to apply one transfer whose account locks it already holds.
+        // It takes the same path as transferCents once the locks are taken, so the transfer is journaled,
+        // coordinated with snapshots, timed, added to the history and undone on failure like any other.
+        // The sequence number of its journal record is left in journaled[0]; the engine passes the batch's
+        // last one to awaitDurable once it has released the batch's locks.
+
+        EventLog.log(LogLevel.INFO, EventLog.TRANSFER_ATTEMPT, fromAccount.getId(), toAccount.getId(), amountCents, 0); 
+        // Record the transfer attempt.
+
+        long started = metrics.startTransfer(fromAccount); 
+        // Starting the latency measurement; the batch already waited for the locks.
+
+        try { 
+            return applyTransfer(fromAccount, toAccount, amountCents, 0, 0, journaled); 
+            // Move the money without an idempotency key.
+        } finally { 
+            metrics.endTransfer(started); 
+            // Recording the latency if this transfer is one of the timed sample.
+        }
+    }
+
+    private TransferResult applyTransfer(BankAccount fromAccount, BankAccount toAccount, long amountCents, int threadNumber, 
+                                         long key, long[] journaled) { 
+        // Method to move the money once the account locks are held, shared by the blocking and the bounded transfer.
+        // A key is claimed before anything changes and released again unless the transfer completes, all
+        // under the source account's lock, so two retries of one transfer can never both apply it.
+
+        IdempotencyKeys keys = idempotencyKeys; 
+        // Reading the key set once, so the claim and any release go to the same set.
+
+        if (key != 0 && !keys.claim(key)) { 
+            // The transfer with this key has already completed.
+
+            return TransferResult.DUPLICATE; 
+        }
+
+        fromAccount.countTransferOut(); 
+        // Counting the transfer on its source account, whose lock is held.
+
+        TransferResult result = moveMoney(fromAccount, toAccount, amountCents, threadNumber, journaled); 
+        // Moving the money, or leaving every balance as it was.
+
+        if (key != 0 && result != TransferResult.COMPLETED) { 
+            keys.release(key); 
+            // Forgetting the key of a transfer that changed nothing, so the client may retry it.
+        }
+
+        return result; 
+    }
+
+    private TransferResult moveMoney(BankAccount fromAccount, BankAccount toAccount, long amountCents, int threadNumber, 
+                                     long[] journaled) { 
+        // Method to withdraw and deposit the amount all-or-nothing with the account locks held.
+        // While the legs are applied it keeps an undo record of how many of them went through; if either
+        // leg or the journal record fails, exactly those legs are undone before the versions are published,
+        // so no reader ever sees the half-applied transfer and no second locking pass is needed.
+        // The journal record's sequence number is left in journaled[0] for the caller to wait on.
+
+        if (fromAccount.getBalanceCents() < amountCents) { 
+            // Check if the source account has enough balance for the transfer.
+
+            EventLog.log(LogLevel.INFO, EventLog.TRANSFER_INSUFFICIENT, fromAccount.getId(), 0, 0, 0); 
+            // Record that funds are insufficient.
+
+            metrics.recordInsufficientFunds(); 
+            return TransferResult.INSUFFICIENT_FUNDS; 
+            // Report that there are insufficient funds.
+        }
+
+        beginChange(fromAccount, toAccount); 
+        // Enter the snapshot epoch before the balances change.
+
+        boolean versionDestination = !toAccount.isSplit(); 
+        // Credits to a split account leave its version alone; the source's version covers the whole transfer.
+
+        AccountHistory history = this.history; 
+        long now = history != null ? System.currentTimeMillis() : 0; 
+        // Reading the history once, and the time of the transfer's entries if one is kept.
+
+        boolean creditListed = false; 
+        // Whether the credit's history entry has been added ahead of the credit, as it is for a split destination.
+
+        fromAccount.beginWrite(); 
+
+        if (versionDestination) { 
+            toAccount.beginWrite(); 
+        }
+        // Mark both accounts as changing, so a consistent multi-account read never sees only one leg.
+
+        int applied = 0; 
+        // The undo record: 1 once the withdrawal has been made, 2 once the deposit has been made too.
+
+        try { 
+            if (!fromAccount.withdrawCents(amountCents)) { 
+                // Attempt to withdraw the specified amount from the source account.
+
+                metrics.recordInsufficientFunds(); 
+                return TransferResult.INSUFFICIENT_FUNDS; 
+                // Report that the withdrawal failed.
+            }
+
+            applied = 1; 
+
+            if (!versionDestination && history != null) { 
+                history.append(toAccount.getId(), now, amountCents, fromAccount.getId()); 
+                creditListed = true; 
+                // A split destination's credit can be swept and spent by a debit holding its lock as soon as it
+                // is made, while this transfer holds only the source's lock. Listing the credit first keeps
+                // that debit's entry after it; if the transfer is undone, a reversing entry follows.
+            }
+
+            toAccount.depositCents(amountCents); 
+            // Deposit the amount into the destination account.
+
+            applied = 2; 
+
+            if (journal != null) { 
+                journaled[0] = journal.append(TransactionJournal.TRANSFER, fromAccount.getId(), toAccount.getId(), 
+                                              amountCents); 
+                // Record the transfer while both locks are held, so the journal order matches the balance order.
+            }
+        } catch (RuntimeException e) { 
+            // Catching a failure part-way through, such as a balance overflow or a journal that cannot be written.
+
+            EventLog.log(LogLevel.WARN, EventLog.TRANSFER_ERROR, fromAccount.getId(), toAccount.getId(), 
+                         amountCents, 0); 
+            // Record that an error occurred, and the transaction is being rolled back.
+
+            undo(fromAccount, toAccount, amountCents, applied, e); 
+            // Undo the legs that went through; this throws, changing nothing, if the money cannot be put back.
+
+            if (creditListed) { 
+                history.append(toAccount.getId(), System.currentTimeMillis(), -amountCents, fromAccount.getId()); 
+                // Reversing the credit listed ahead of it.
+            }
+
+            metrics.recordFailure(); 
+            return TransferResult.FAILED; 
+            // Report that the transfer failed and changed nothing.
+        } finally { 
+            if (versionDestination) { 
+                toAccount.endWrite(); 
+            }
+
+            fromAccount.endWrite(); 
+            // Publish the new versions of both accounts.
+
+            endChange(); 
+            // Leave the snapshot epoch.
+        }
+
+        if (history != null) { 
+            // Adding the transfer to the history while its locks are held, so each account's entries are in
+            // the order its balance changed; a split destination's credit is already listed.
+
+            history.append(fromAccount.getId(), now, -amountCents, toAccount.getId()); 
+
+            if (!creditListed) { 
+                history.append(toAccount.getId(), now, amountCents, fromAccount.getId()); 
+            }
+        }
+
+        EventLog.log(LogLevel.INFO, EventLog.TRANSFER_COMPLETED, fromAccount.getId(), toAccount.getId(), 
+                     amountCents, threadNumber); 
+        // Record that the transfer was successful.
+
+        return TransferResult.COMPLETED; 
+        // Report that the transfer was successful.
+    }
+
+    private void undo(BankAccount fromAccount, BankAccount toAccount, long amountCents, int applied, RuntimeException cause) { 
+        // Method to roll back the legs of a failed transfer named by its undo record, with the locks still held.
+        // Nothing was journaled: the record is written last, and a journal that refuses it writes nothing.
+        // The whole undo is checked before any balance changes, and the deposit, the only step that can still
+        // fail, is taken back first: a locked destination cannot come up short, but a split one, whose lock is
+        // not held, could in principle have been drained meanwhile. A failed undo throws and changes nothing,
+        // so the transfer stays whole rather than leaving only one of its legs undone.
+
+        if (applied == 2 && toAccount.peekBalanceCents() < amountCents) { 
+            // Checking the deposit can be taken back.
+
+            throw undoFailure("Could not roll back " + AccountUtils.formatCents(amountCents) 
+                    + " deposited into account " + toAccount.getId(), cause); 
+        }
+
+        if (applied >= 1 && !fits(fromAccount, amountCents)) { 
+            // Checking the withdrawal can be returned.
+
+            throw undoFailure("Could not return " + AccountUtils.formatCents(amountCents) 
+                    + " to account " + fromAccount.getId(), cause); 
+        }
+
+        if (applied == 2 && !toAccount.withdrawCents(amountCents)) { 
+            // Taking back the deposit; if a debit without the lock got there first, nothing has changed yet.
+
+            throw undoFailure("Could not roll back " + AccountUtils.formatCents(amountCents) 
+                    + " deposited into account " + toAccount.getId(), cause); 
+        }
+
+        if (applied >= 1) { 
+            fromAccount.depositCents(amountCents); 
+            // Returning the withdrawal.
+        }
+
+        metrics.recordReversal(); 
+        // Counting the rollback.
+
+        EventLog.log(LogLevel.WARN, EventLog.TRANSFER_REVERSED, fromAccount.getId(), toAccount.getId(), amountCents, 0); 
+        // Record that the rollback was successful.
+    }
+
+    private void undo(BankAccount[] changed, int[] accountIds, long[] deltaCents, int applied, RuntimeException cause) { 
+        // Method to roll back the first applied net changes; throws if that fails, with the original failure attached.
+        // Nothing needs a compensating journal record, since a journal group that failed has no COMMIT, and a
+        // journal that refuses a group writes none of it.
+        // Every step is checked before any balance changes, and the credits are taken back before the debits
+        // are returned, since only taking back a credit can still fail. If one does, the credits already taken
+        // back are put back again, so a failed undo changes nothing and the change stays whole.
+
+        for (int i = 0; i < applied; i++) { 
+            // Checking each credit can be taken back and each debit returned.
+
+            if (deltaCents[i] > 0 ? changed[i].peekBalanceCents() < deltaCents[i] : !fits(changed[i], -deltaCents[i])) { 
+                throw undoFailure("Could not roll back the change to account " + accountIds[i], cause); 
+            }
+        }
+
+        for (int i = 0; i < applied; i++) { 
+            // Taking back each credit.
+
+            if (deltaCents[i] > 0 && !changed[i].withdrawCents(deltaCents[i])) { 
+                // Spent meanwhile by a debit without the lock: putting back the credits taken back so far.
+
+                for (int j = 0; j < i; j++) { 
+                    if (deltaCents[j] > 0) { 
+                        changed[j].depositCents(deltaCents[j]); 
+                    }
+                }
+
+                throw undoFailure("Could not roll back the credit to account " + accountIds[i], cause); 
+            }
+        }
+
+        for (int i = 0; i < applied; i++) { 
+            // Returning each debit.
+
+            if (deltaCents[i] < 0) { 
+                changed[i].depositCents(-deltaCents[i]); 
+            }
+        }
+
+        metrics.recordReversal(); 
+        // Counting the rollback.
+    }
+
+    private static boolean fits(BankAccount account, long amountCents) { 
+        // Method to check that crediting an account would not overflow its balance.
+
+        try { 
+            Math.addExact(account.peekBalanceCents(), amountCents); 
+            return true; 
+        } catch (ArithmeticException e) { 
+            return false; 
+        }
+    }
+
+    private static IllegalStateException undoFailure(String message, RuntimeException cause) { 
+        // Method to describe an undo that could not be made, with the failure that called for it attached.
+
+        IllegalStateException failure = new IllegalStateException(message); 
+        failure.addSuppressed(cause); 
+        return failure; 
+    }
+
+    private static void checkKey(long idempotencyKey) { 
+        // Method to refuse the one key the idempotency set cannot hold.
+
+        if (idempotencyKey == 0) { 
+            throw new IllegalArgumentException("Idempotency key must not be 0"); 
+        }
+    }
+
+    public int[] applyNetChanges(int[] accountIds, long[] deltaCents) { 
+        // Method to apply one net change per account as a single all-or-nothing step, used by NettingEngine.
+        // The IDs must be sorted and distinct. Every account is locked in ID order, the order transfers use,
+        // and if any debit would overdraw its account nothing is changed and the overdrawn IDs are returned.
+        // Otherwise every change is applied and journaled, and an empty array is returned.
+
+        BankAccount[] changed = new BankAccount[accountIds.length]; 
+        // Collecting the accounts to change.
+
+        for (int i = 0; i < accountIds.length; i++) { 
+            // Looking up each account before anything is locked.
+
+            changed[i] = accounts.get(accountIds[i]); 
+
+            if (changed[i] == null) { 
+                // Check if the account is invalid.
+
+                throw new IllegalArgumentException("Unknown account " + accountIds[i]); 
+            }
+
+            if (i > 0 && accountIds[i] <= accountIds[i - 1]) { 
+                // Check the IDs are in lock order with no repeats.
+
+                throw new IllegalArgumentException("Account IDs must be sorted and distinct"); 
+            }
+        }
+
+        long[] journaled = journal != null ? new long[1] : NOT_JOURNALED; 
+        // Receiving the sequence number of the journal group.
+
+        int[] overdrawn; 
+
+        lockInOrder(changed); 
+        // Locking every account in ID order.
+
+        try { 
+            overdrawn = checkAndApply(changed, accountIds, deltaCents, journaled); 
+            // Applying every change, or none if an account would be overdrawn.
+        } finally { 
+            unlockInReverse(changed, changed.length); 
+            // Releasing the locks in reverse order.
+        }
+
+        awaitDurable(journaled[0]); 
+        // Waiting for the journal group with the locks released.
+
+        return overdrawn; 
+    }
+
+    public TransferResult post(Posting posting) { 
+        // Method to apply a multi-leg posting all-or-nothing, waiting as long as it takes for the account locks.
+        // The accounts are locked in ascending ID order, the order transfers and net changes also use, so
+        // postings and transfers cannot deadlock with each other however many accounts each one touches.
+        // If a leg fails after the checks, the legs already applied are rolled back and the failure is thrown.
+        // The legs are journaled as one group, so recovery applies a posting whole or not at all.
+
+        return runPost(posting, 0); 
+        // Posting without an idempotency key.
+    }
+
+    public TransferResult postOnce(long idempotencyKey, Posting posting) { 
+        // Method to apply a posting at most once per idempotency key, as transferOnce does for transfers.
+
+        checkKey(idempotencyKey); 
+        // Refusing the key that marks an empty slot.
+
+        return runPost(posting, idempotencyKey); 
+    }
+
+    private TransferResult runPost(Posting posting, long key) { 
+        // Method to lock a posting's accounts in order and apply it, shared by the plain and the keyed posting.
+
+        BankAccount[] changed = lookUp(posting.accountIds()); 
+        // Retrieve the accounts of the posting, already in lock order.
+
+        if (changed == null) { 
+            // Check if any account is invalid.
+
+            return TransferResult.UNKNOWN_ACCOUNT; 
+        }
+
+        if (changed.length == 0) { 
+            // Every leg cancelled out, so there is nothing to change.
+
+            return TransferResult.COMPLETED; 
+        }
+
+        long started = metrics.startTransfer(changed[0]); 
+        // Starting the latency measurement, which includes the wait for the locks.
+
+        long[] journaled = journal != null ? new long[1] : NOT_JOURNALED; 
+        // Receiving the sequence number of the posting's journal group.
+
+        try { 
+            TransferResult result; 
+
+            lockInOrder(changed); 
+            // Locking every account of the posting in ID order.
+
+            try { 
+                result = applyPosting(changed, posting, key, journaled); 
+                // Moving the money while every lock is held.
+            } finally { 
+                unlockInReverse(changed, changed.length); 
+                // Releasing the locks in reverse order.
+            }
+
+            awaitDurable(journaled[0]); 
+            // Waiting for the journal group with the locks released.
+
+            return result; 
+        } finally { 
+            metrics.endTransfer(started); 
+            // Recording the latency if this posting is one of the timed sample.
+        }
+    }
+
+    public TransferResult tryPost(Posting posting, long timeout, TimeUnit unit) throws InterruptedException { 
+        // Method to apply a multi-leg posting all-or-nothing, giving up if its locks cannot all be taken before the timeout.
+        // A thread never waits for a lock while holding another: each attempt takes the locks with tryLock,
+        // and if one is busy it releases the ones it holds and sleeps for a random time before trying again.
+        // The range of that sleep doubles after every failed attempt, so postings that keep colliding on the
+        // same accounts spread out instead of retrying in step. The legs are journaled as one group, as for post.
+
+        return tryRunPost(posting, System.nanoTime() + unit.toNanos(timeout), 0); 
+        // Posting before the deadline, without an idempotency key.
+    }
+
+    public TransferResult tryPostOnce(long idempotencyKey, Posting posting, long timeout, TimeUnit unit) 
+            throws InterruptedException { 
+        // Method to apply a bounded posting at most once per idempotency key, as transferOnce does for transfers.
+
+        checkKey(idempotencyKey); 
+        // Refusing the key that marks an empty slot.
+
+        return tryRunPost(posting, System.nanoTime() + unit.toNanos(timeout), idempotencyKey); 
+    }
+
+    private TransferResult tryRunPost(Posting posting, long deadline, long key) throws InterruptedException { 
+        // Method to run a bounded posting, shared by the plain and the keyed one; key 0 means none.
+
+        BankAccount[] changed = lookUp(posting.accountIds()); 
+        // Retrieve the accounts of the posting, already in lock order.
+
+        if (changed == null) { 
+            // Check if any account is invalid.
+
+            return TransferResult.UNKNOWN_ACCOUNT; 
+        }
+
+        if (changed.length == 0) { 
+            // Every leg cancelled out, so there is nothing to change.
+
+            return TransferResult.COMPLETED; 
+        }
+
+        long started = metrics.startTransfer(changed[0]); 
+        // Starting the latency measurement, which includes the retries.
+
+        long[] journaled = journal != null ? new long[1] : NOT_JOURNALED; 
+        // Receiving the sequence number of the posting's journal group.
+
+        try { 
+            long backoff = MIN_BACKOFF_NANOS; 
+            // The current upper bound of the random sleep between attempts.
+
+            while (true) { 
+                // Trying to take every lock without waiting.
+
+                int locked = 0; 
+                // Counting the locks taken in this attempt.
+
+                while (locked < changed.length && changed[locked].tryLockNow()) { 
+                    locked++; 
+                }
+
+                if (locked == changed.length) { 
+                    // Every lock is held.
+
+                    TransferResult result; 
+
+                    try { 
+                        result = applyPosting(changed, posting, key, journaled); 
+                        // Moving the money while every lock is held.
+                    } finally { 
+                        unlockInReverse(changed, locked); 
+                        // Releasing the locks in reverse order.
+                    }
+
+                    awaitDurable(journaled[0]); 
+                    // Waiting for the journal group with the locks released.
+
+                    return result; 
+                }
+
+                unlockInReverse(changed, locked); 
+                // Releasing the locks taken before the busy one, so other postings can finish.
+
+                long remaining = deadline - System.nanoTime(); 
+                // Computing the time left.
+
+                if (remaining <= 0) { 
+                    // Giving up at the deadline.
+
+                    metrics.recordTimeout(); 
+                    return TransferResult.TIMED_OUT; 
+                }
+
+                LockSupport.parkNanos(Math.min(1 + ThreadLocalRandom.current().nextLong(backoff), remaining)); 
+                // Sleeping for a random time up to the current bound, but not past the deadline.
+
+                if (Thread.interrupted()) { 
+                    // Stopping if the caller was interrupted while sleeping.
+
+                    throw new InterruptedException(); 
+                }
+
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_NANOS); 
+                // Doubling the bound for the next attempt.
+            }
+        } finally { 
+            metrics.endTransfer(started); 
+            // Recording the latency if this posting is one of the timed sample, including a timeout.
+        }
+    }
+
+    private BankAccount[] lookUp(int[] accountIds) { 
+        // Method to retrieve the accounts with the given IDs, or return null if any of them does not exist.
+
+        BankAccount[] found = new BankAccount[accountIds.length]; 
+        // Collecting the accounts in the order of the IDs.
+
+        for (int i = 0; i < accountIds.length; i++) { 
+            found[i] = accounts.get(accountIds[i]); 
+
+            if (found[i] == null) { 
+                return null; 
+            }
+        }
+
+        return found; 
+    }
+
+    private void lockInOrder(BankAccount[] sorted) { 
+        // Method to lock any number of distinct accounts already sorted by ID, the order every transfer locks in.
+
+        for (BankAccount account : sorted) { 
+            metrics.recordLockWait(account.lockAndMeasure()); 
+            // Locking each account, recording the wait if it was contended.
+        }
+    }
+
+    private static void unlockInReverse(BankAccount[] sorted, int locked) { 
+        // Method to release the first locked accounts of the array, last taken first.
+
+        for (int i = locked - 1; i >= 0; i--) { 
+            sorted[i].unlock(); 
+        }
+    }
+
+    private TransferResult applyPosting(BankAccount[] changed, Posting posting, long key, long[] journaled) { 
+        // Method to apply a posting once every one of its account locks is held; key 0 means none.
+        // As for transfers, the key is claimed before anything changes and released unless the posting completes.
+
+        IdempotencyKeys keys = idempotencyKeys; 
+        // Reading the key set once, so the claim and any release go to the same set.
+
+        if (key != 0 && !keys.claim(key)) { 
+            // The posting with this key has already completed.
+
+            return TransferResult.DUPLICATE; 
+        }
+
+        changed[0].countTransferOut(); 
+        // Counting the posting on its lowest account, whose lock is held, as transfers are counted on their source.
+
+        int[] overdrawn; 
+        // The accounts that could not cover their debit.
+
+        try { 
+            overdrawn = checkAndApply(changed, posting.accountIds(), posting.deltaCents(), journaled); 
+            // Applying every leg, or none if an account would be overdrawn.
+        } catch (RuntimeException e) { 
+            // Every leg was rolled back; counting the failure and passing it on.
+
+            if (key != 0) { 
+                keys.release(key); 
+            }
+
+            metrics.recordFailure(); 
+            throw e; 
+        }
+
+        if (overdrawn.length > 0) { 
+            // Reporting the refusal.
+
+            if (key != 0) { 
+                keys.release(key); 
+                // Forgetting the key, so the client may retry once the money is there.
+            }
+
+            EventLog.log(LogLevel.INFO, EventLog.TRANSFER_INSUFFICIENT, overdrawn[0], 0, 0, 0); 
+            // Record the first account that could not cover its debit.
+
+            metrics.recordInsufficientFunds(); 
+            return TransferResult.INSUFFICIENT_FUNDS; 
+        }
+
+        return TransferResult.COMPLETED; 
+    }
+
+    private int[] checkAndApply(BankAccount[] changed, int[] accountIds, long[] deltaCents, long[] journaled) { 
+        // Method called with every account locked to apply one net change per account all-or-nothing.
+        // The journal group's sequence number is left in journaled[0] for the caller to wait on.
+        // Every change is checked before any is made: a debit must be covered and a credit must not
+        // overflow. If something still fails, such as the journal, the changes already made are undone
+        // from the undo record before the locks are released, and the failure is thrown.
+
+        int[] overdrawn = null; 
+        int overdrawnCount = 0; 
+        // Collecting the accounts whose net debit exceeds their balance; allocated only if there are any.
+
+        for (int i = 0; i < changed.length; i++) { 
+            // Checking each net change against the current balance.
+
+            if (deltaCents[i] < 0 && changed[i].peekBalanceCents() + deltaCents[i] < 0) { 
+                // Comparing exact cents, so every debit that passes here also succeeds in withdrawCents.
+
+                if (overdrawn == null) { 
+                    overdrawn = new int[accountIds.length]; 
+                }
+
+                overdrawn[overdrawnCount++] = accountIds[i]; 
+            } else if (deltaCents[i] > 0) { 
+                Math.addExact(changed[i].peekBalanceCents(), deltaCents[i]); 
+                // Failing now, before anything changed, if the credit would overflow the balance.
+            }
+        }
+
+        if (overdrawnCount > 0) { 
+            // Refusing the whole set if any account would be overdrawn.
+
+            return Arrays.copyOf(overdrawn, overdrawnCount); 
+        }
+
+        beginChange(changed); 
+        // Enter the snapshot epoch before the balances change.
+
+        for (BankAccount account : changed) { 
+            // Marking every account as changing, so a consistent read sees all of the changes or none.
+
+            account.beginWrite(); 
+        }
+
+        int applied = 0; 
+        // The undo record: how many of the changes have been made.
+
+        try { 
+            for (; applied < changed.length; applied++) { 
+                // Applying each account's net change exactly once.
+
+                if (deltaCents[applied] > 0) { 
+                    changed[applied].depositCents(deltaCents[applied]); 
+                    // Crediting the account.
+                } else if (!changed[applied].withdrawCents(-deltaCents[applied])) { 
+                    // Debiting the account, which was checked above.
+
+                    throw new IllegalStateException("Account " + accountIds[applied] + " no longer covers its debit"); 
+                }
+            }
+
+            if (journal != null) { 
+                journaled[0] = journal.appendGroup(accountIds, deltaCents); 
+                // Recording every change as one journal group once all of them have been made. The group only
+                // counts once its COMMIT record is written, which is the last thing that can fail here, so a
+                // failed or torn append leaves nothing for recovery to apply.
+            }
+        } catch (RuntimeException e) { 
+            // Undoing every change made, last first, while the locks are still held, then reporting the failure.
+
+            undo(changed, accountIds, deltaCents, applied, e); 
+            throw e; 
+        } finally { 
+            for (BankAccount account : changed) { 
+                account.endWrite(); 
+                // Publishing the new versions.
+            }
+
+            endChange(); 
+            // Leave the snapshot epoch.
+        }
+
+        AccountHistory history = this.history; 
+
+        if (history != null) { 
+            // Adding every change to its account's history while the locks are held.
+
+            long now = System.currentTimeMillis(); 
+
+            for (int i = 0; i < changed.length; i++) { 
+                history.append(accountIds[i], now, deltaCents[i], 
+                        changed.length == 2 ? accountIds[1 - i] : AccountHistory.NO_COUNTERPARTY); 
+                // A two-account change has a counterparty; a change of more accounts has none.
+            }
+        }
+
+        return NONE_OVERDRAWN; 
+        // Reporting that every change was applied.
+    }
+
+    public TransferResult tryTransfer(int fromAccountId, int toAccountId, double amount, long timeout, TimeUnit unit) 
+            throws InterruptedException { 
+        // Method to perform a bounded transfer of a dollar amount.
+
+        return tryTransferCents(fromAccountId, toAccountId, AccountUtils.toCents(amount), timeout, unit); 
+        // Converting the amount to whole cents once and transferring it exactly.
+    }
+
+    public TransferResult tryTransferCents(int fromAccountId, int toAccountId, long amountCents, long timeout, 
+                                           TimeUnit unit) throws InterruptedException { 
+        // Method to perform a transfer that gives up if the account locks are not free before the timeout,
+        // so a caller never waits without bound behind a hot account.
+
+        return tryRunTransfer(fromAccountId, toAccountId, amountCents, System.nanoTime() + unit.toNanos(timeout), 0); 
+        // Transferring before the deadline, without an idempotency key.
+    }
+
+    public TransferResult tryTransferOnce(long idempotencyKey, int fromAccountId, int toAccountId, long amountCents, 
+                                         long timeout, TimeUnit unit) throws InterruptedException { 
+        // Method to perform a bounded transfer at most once per idempotency key, as transferOnce does.
+
+        checkKey(idempotencyKey); 
+        // Refusing the key that marks an empty slot.
+
+        return tryRunTransfer(fromAccountId, toAccountId, amountCents, System.nanoTime() + unit.toNanos(timeout), 
+                              idempotencyKey); 
+    }
+
+    private TransferResult tryRunTransfer(int fromAccountId, int toAccountId, long amountCents, long deadline, 
+                                          long key) throws InterruptedException { 
+        // Method to run a bounded transfer, shared by the plain and the keyed one; key 0 means none.
+
+        BankAccount fromAccount = accounts.get(fromAccountId); 
+        // Retrieve the source BankAccount based on the account ID.
+
+        BankAccount toAccount = accounts.get(toAccountId); 
+        // Retrieve the destination BankAccount based on the account ID.
+
+        if (fromAccount == null || toAccount == null) { 
+            // Check if either the source or destination account is null.
+
+            return TransferResult.UNKNOWN_ACCOUNT; 
+        }
+
+        EventLog.log(LogLevel.INFO, EventLog.TRANSFER_ATTEMPT, fromAccountId, toAccountId, amountCents, 0); 
+        // Record the transfer attempt.
+
+        long started = metrics.startTransfer(fromAccount); 
+        // Starting the latency measurement, which includes the wait for the locks.
+
+        long[] journaled = journal != null ? new long[1] : NOT_JOURNALED; 
+        // Receiving the sequence number of the transfer's journal record.
+
+        try { 
+            TransferResult result = lockAndApply(fromAccount, toAccount, amountCents, deadline, key, journaled); 
+            // Moving the money once both locks are taken; they are released again when this returns.
+
+            awaitDurable(journaled[0]); 
+            // Waiting for the journal record with the locks released.
+
+            return result; 
+        } finally { 
+            metrics.endTransfer(started); 
+            // Recording the latency if this transfer is one of the timed sample, including a timeout.
+        }
+    }
+
+    private TransferResult lockAndApply(BankAccount fromAccount, BankAccount toAccount, long amountCents, 
+                                        long deadline, long key, long[] journaled) throws InterruptedException { 
+        // Method to take both account locks before the deadline and move the money.
+
+        if (toAccount.isSplit()) { 
+            // A split destination takes the credit without its lock, so only the source is locked.
+
+            long waited = fromAccount.tryLockAndMeasure(deadline - System.nanoTime(), TimeUnit.NANOSECONDS); 
+            // Waiting for the source lock until the deadline.
+
+            if (waited < 0) { 
+                metrics.recordTimeout(); 
+                return TransferResult.TIMED_OUT; 
+            }
+
+            metrics.recordLockWait(waited); 
+            // Recording the wait like any other transfer's.
+
+            try { 
+                return applyTransfer(fromAccount, toAccount, amountCents, 0, key, journaled); 
+                // Move the money while the source lock is held.
+            } finally { 
+                fromAccount.unlock(); 
+                // Release the source lock.
+            }
+        }
+
+        BankAccount first = fromAccount.getId() < toAccount.getId() ? fromAccount : toAccount; 
+        BankAccount second = first == fromAccount ? toAccount : fromAccount; 
+        // Ordering the accounts by ID, the same order every other transfer locks in.
+
+        long waited = first.tryLockAndMeasure(deadline - System.nanoTime(), TimeUnit.NANOSECONDS); 
+        // Waiting for the first lock until the deadline.
+
+        if (waited < 0) { 
+            metrics.recordTimeout(); 
+            return TransferResult.TIMED_OUT; 
+        }
+
+        metrics.recordLockWait(waited); 
+        // Recording the wait like any other transfer's.
+
+        try { 
+            waited = second.tryLockAndMeasure(deadline - System.nanoTime(), TimeUnit.NANOSECONDS); 
+            // Waiting for the second lock with whatever time is left.
+
+            if (waited < 0) { 
+                metrics.recordTimeout(); 
+                return TransferResult.TIMED_OUT; 
+            }
+
+            metrics.recordLockWait(waited); 
+
+            try { 
+                return applyTransfer(fromAccount, toAccount, amountCents, 0, key, journaled); 
+                // Move the money while both locks are held.
+            } finally { 
+                second.unlock(); 
+                // Release the second lock.
+            }
+        } finally { 
+            first.unlock(); 
+            // Release the first lock.
+        }
+    }
+
+    public void deposit(int accountId, double amount) { 
+        // Method to deposit a dollar amount into an account.
+
+        depositCents(accountId, AccountUtils.toCents(amount)); 
+        // Converting the amount to whole cents once and depositing it exactly.
+    }
+
+    public void depositCents(int accountId, long amountCents) { 
+        // Method to deposit an amount in cents into an account and record it in the journal.
+
+        BankAccount account = accounts.get(accountId); 
+        // Retrieve the account.
+
+        if (account == null) { 
+            // Check if the account is invalid.
+
+            throw new IllegalArgumentException("Unknown account " + accountId); 
+        }
+
+        long sequence; 
+        // The sequence number of the deposit's journal record.
+
+        metrics.recordLockWait(account.lockAndMeasure()); 
+        // Lock the account so the journal order matches the order of its balance changes, recording the wait
+        // as transfers do.
+
+        beginChange(account); 
+        // Enter the snapshot epoch before the balance changes.
+
+        try { 
+            account.depositCents(amountCents); 
+            // Deposit the amount.
+
+            try { 
+                sequence = journal(TransactionJournal.DEPOSIT, accountId, 0, amountCents); 
+                // Record the deposit.
+            } catch (RuntimeException e) { 
+                // The journal refused the record and wrote nothing, so the deposit is taken back.
+
+                account.withdrawCents(amountCents); 
+                throw e; 
+            }
+
+            AccountHistory history = this.history; 
+
+            if (history != null) { 
+                // Adding the deposit to the account's history while its lock is held, as a transfer does.
+
+                history.append(accountId, System.currentTimeMillis(), amountCents, AccountHistory.NO_COUNTERPARTY); 
+            }
+        } finally { 
+            endChange(); 
+            // Leave the snapshot epoch.
+
+            account.unlock(); 
+            // Release the lock.
+        }
+
+        awaitDurable(sequence); 
+        // Waiting for the journal record with the lock released.
+    }
+
+    public boolean withdraw(int accountId, double amount) { 
+        // Method to withdraw a dollar amount from an account.
+
+        return withdrawCents(accountId, AccountUtils.toCents(amount)); 
+        // Converting the amount to whole cents once and withdrawing it exactly.
+    }
+
+    public boolean withdrawCents(int accountId, long amountCents) { 
+        // Method to withdraw an amount in cents from an account and record it in the journal if it succeeds.
+
+        BankAccount account = accounts.get(accountId); 
+        // Retrieve the account.
+
+        if (account == null) { 
+            // Check if the account is invalid.
+
+            return false; 
+        }
+
+        long sequence; 
+        // The sequence number of the withdrawal's journal record.
+
+        metrics.recordLockWait(account.lockAndMeasure()); 
+        // Lock the account so the journal order matches the order of its balance changes, recording the wait
+        // as transfers do.
+
+        beginChange(account); 
+        // Enter the snapshot epoch before the balance changes.
+
+        try { 
+            if (!account.withdrawCents(amountCents)) { 
+                // Attempt the withdrawal.
+
+                return false; 
+                // Return false if there are insufficient funds.
+            }
+
+            try { 
+                sequence = journal(TransactionJournal.WITHDRAW, accountId, 0, amountCents); 
+                // Record the withdrawal.
+            } catch (RuntimeException e) { 
+                // The journal refused the record and wrote nothing, so the withdrawal is put back.
+
+                account.depositCents(amountCents); 
+                throw e; 
+            }
+
+            AccountHistory history = this.history; 
+
+            if (history != null) { 
+                // Adding the withdrawal to the account's history while its lock is held, as a transfer does.
+
+                history.append(accountId, System.currentTimeMillis(), -amountCents, AccountHistory.NO_COUNTERPARTY); 
+            }
+        } finally { 
+            endChange(); 
+            // Leave the snapshot epoch.
+
+            account.unlock(); 
+            // Release the lock.
+        }
+
+        awaitDurable(sequence); 
+        // Waiting for the journal record with the lock released.
+
+        return true; 
+    }
+
+    private long journal(int type, int accountId, int otherAccountId, long amountCents) { 
+        // Method to write a record if this system has a journal, returning its sequence number or 0.
+
+        return journal != null ? journal.append(type, accountId, otherAccountId, amountCents) : 0; 
+    }
+
+    void awaitDurable(long sequence) { 
+        // Package-private method, also used by TransferEngine, to wait until a journal record is on disk, called
+        // once every account lock is released so no other change waits behind it; 0 means nothing was written.
+        // If the journal cannot confirm it, the change stays applied, since its record may already be on disk,
+        // and the failure is thrown; the journal then refuses every later change.
+
+        if (sequence != 0) { 
+            journal.awaitDurable(sequence); 
+        }
+    }
+
+    public boolean reverseTransaction(int fromAccountId, int toAccountId, double amount) { 
+        // Method to reverse a transfer of a dollar amount.
+
+        return reverseTransactionCents(fromAccountId, toAccountId, AccountUtils.toCents(amount)); 
+        // Converting the amount to whole cents once and reversing it exactly.
+    }
+
+    public boolean reverseTransactionCents(int fromAccountId, int toAccountId, long amountCents) { 
+        // Method to reverse a completed transfer by moving the amount back from its destination to its source.
+        // This is an ordinary checked and journaled transfer in the other direction: if the destination no
+        // longer holds the amount, nothing changes and false is returned. A transfer that fails part-way no
+        // longer needs it, since it is rolled back from its undo record before its locks are released.
+
+        boolean reversed = transferCents(toAccountId, fromAccountId, amountCents, 0); 
+        // Moving the money back.
+
+        if (reversed) { 
+            metrics.recordReversal(); 
+            // Counting the reversal.
+
+            EventLog.log(LogLevel.INFO, EventLog.TRANSFER_REVERSED, fromAccountId, toAccountId, amountCents, 0); 
+            // Record that the reversal was successful.
+        }
+
+        return reversed; 
+    }
+
+    public double[] getBalances(int... accountIds) { 
+        // Method to read several balances in dollars as one consistent view.
+
+        long[] cents = getBalancesCents(accountIds); 
+        // Reading the balances exactly in cents.
+
+        double[] balances = new double[cents.length]; 
+        // Allocating the result.
+
+        for (int i = 0; i < cents.length; i++) { 
+            balances[i] = AccountUtils.fromCents(cents[i]); 
+            // Converting each balance for display.
+        }
+
+        return balances; 
+    }
+
+    public long[] getBalancesCents(int... accountIds) { 
+        // Method to read several balances in cents as one consistent view, as if no transfer ran while they were read.
+
+        BankAccount[] selected = new BankAccount[accountIds.length]; 
+        // Collecting the accounts to read.
+
+        for (int i = 0; i < accountIds.length; i++) { 
+            // Looking up each account.
+
+            selected[i] = accounts.get(accountIds[i]); 
+
+            if (selected[i] == null) { 
+                // Check if the account is invalid.
+
+                throw new IllegalArgumentException("Unknown account " + accountIds[i]); 
+            }
+        }
+
+        long[] balances = new long[selected.length]; 
+        // Allocating the result.
+
+        readConsistent(selected, balances); 
+        // Reading the balances without locks where possible.
+
+        return balances; 
+    }
+
+    public double getTotalBalance() { 
+        // Method to return the money held across all accounts in dollars as one consistent view.
+
+        return AccountUtils.fromCents(getTotalBalanceCents()); 
+    }
+
+    public long getTotalBalanceCents() { 
+        // Method to return the money held across all accounts in cents as one consistent view.
+
+        return accounts.getTotalBalanceCents(); 
+        // Letting the store sum its balances, which it can do without an object per account.
+    }
+
+    static void readConsistent(BankAccount[] selected, long[] balances) { 
+        // Package-private method, also used by HeapAccountStore for its total, to read a set of balances optimistically: take every account's stamp, read every balance,
+        // then check no stamp changed. Transfers mark both accounts for their whole duration, so a valid
+        // read never sees one leg without the other. After a few failed attempts, for example when a very
+        // large set is read under heavy traffic, it falls back to locking the accounts in ID order.
+
+        long[] stamps = new long[selected.length]; 
+        // Declaring the stamp taken for each account.
+
+        for (int attempt = 0; attempt < OPTIMISTIC_READ_ATTEMPTS; attempt++) { 
+            // Trying the lock-free read a few times.
+
+            boolean valid = true; 
+            // Tracking whether this attempt is still usable.
+
+            for (int i = 0; i < selected.length && valid; i++) { 
+                // Taking each stamp; a stamp of 0 means a change is in progress.
+
+                stamps[i] = selected[i].tryOptimisticRead(); 
+                valid = stamps[i] != 0; 
+            }
+
+            for (int i = 0; i < selected.length && valid; i++) { 
+                // Reading each balance.
+
+                balances[i] = selected[i].peekBalanceCents(); 
+            }
+
+            for (int i = 0; i < selected.length && valid; i++) { 
+                // Checking nothing changed since the stamps were taken.
+
+                valid = selected[i].validate(stamps[i]); 
+            }
+
+            if (valid) { 
+                // Every account was unchanged for the whole read, so the balances form one consistent view.
+
+                return; 
+            }
+
+            Thread.onSpinWait(); 
+            // Backing off briefly before retrying.
+        }
+
+        BankAccount[] ordered = selected.clone(); 
+        // Copying the accounts so they can be locked in ID order without reordering the result.
+
+        Arrays.sort(ordered, Comparator.comparingInt(BankAccount::getId)); 
+        // Sorting by ID, the same order transfers lock in, so this cannot deadlock with them.
+
+        int locked = 0; 
+        // Counting the locks taken, so exactly those are released.
+
+        try { 
+            for (int i = 0; i < ordered.length; i++) { 
+                // Locking each distinct account once; a repeated ID sorts next to its first copy.
+
+                if (i == 0 || ordered[i - 1] != ordered[i]) { 
+                    ordered[i].lock(); 
+                }
+
+                locked = i + 1; 
+            }
+
+            for (int i = 0; i < selected.length; i++) { 
+                // Reading each balance while no transfer can touch any of them.
+
+                balances[i] = selected[i].peekBalanceCents(); 
+            }
+        } finally { 
+            for (int i = locked - 1; i >= 0; i--) { 
+                // Releasing the locks in reverse order, skipping repeats as when they were taken.
+
+                if (i == 0 || ordered[i - 1] != ordered[i]) { 
+                    ordered[i].unlock(); 
+                }
+            }
+        }
+    }
+
+    public void printAccountBalances() {
+        // Method to print the current balances of all accounts.
+
+        EventLog.flush(); 
+        // Print any queued events first so the report is not interleaved with them.
+
+        System.out.println("\nCurrent Account Balances:"); 
+        // Print the header for account balances.
+
+        StringBuilder line = new StringBuilder(32); 
+        // Reusing one builder for every line instead of formatting a new string per account.
+
+        for (BankAccount account : accounts) { 
+            // Iterate through all the accounts in the store.
+
+            line.setLength(0); 
+            line.append("Account ").append(account.getId()).append(": "); 
+            AccountUtils.appendCurrency(line, account.peekBalanceCents()); 
+            // Build the ID and exact balance of each account, without also logging a balance-read event.
+
+            System.out.println(line); 
+            // Print the line.
+        }
+    }
+
+    public void printStatement(int accountId, int lastEntries) { 
+        // Method to print an account's balance and its most recent history entries, read from the history
+        // index alone rather than from every account.
+
+        AccountHistory history = this.history; 
+        BankAccount account = accounts.get(accountId); 
+
+        if (history == null || account == null) { 
+            // Check if history is kept and the account exists.
+
+            throw new IllegalArgumentException("No history kept for account " + accountId); 
+        }
+
+        Statement statement = history.last(accountId, lastEntries); 
+        // Copying just the entries to print.
+
+        EventLog.flush(); 
+        // Print any queued events first so the statement is not interleaved with them.
+
+        StringBuilder line = new StringBuilder(64); 
+        line.append("\nStatement for account ").append(accountId).append(", balance "); 
+        AccountUtils.appendCurrency(line, account.peekBalanceCents()); 
+        line.append(", last ").append(statement.size()).append(" of ").append(history.getCount(accountId)) 
+                .append(" entries:"); 
+        System.out.println(line); 
+        // Print the header.
+
+        for (int i = statement.size() - 1; i >= 0; i--) { 
+            // Print the entries newest first.
+
+            line.setLength(0); 
+            line.append(Instant.ofEpochMilli(statement.getTimeMillis(i))).append(' '); 
+
+            if (statement.getAmountCents(i) > 0) { 
+                line.append('+'); 
+            }
+
+            AccountUtils.appendCurrency(line, statement.getAmountCents(i)); 
+
+            if (statement.getCounterpartyId(i) != AccountHistory.NO_COUNTERPARTY) { 
+                line.append(statement.getAmountCents(i) > 0 ? " from " : " to ").append(statement.getCounterpartyId(i)); 
+            }
+
+            System.out.println(line); 
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package banking;
+
+import java.util.ArrayList;
+// Importing the ArrayList class to hold the transfers drained into a batch.
+
+import java.util.List;
+// Importing the List interface for batches of transfer requests.
+
+import java.util.Map;
+// Importing the Map interface for the accounts touched by a batch.
+
+import java.util.TreeMap;
+// Importing the TreeMap class to keep a batch's accounts sorted by ID for deadlock-free locking.
+
+import java.util.concurrent.ArrayBlockingQueue;
+// Importing the ArrayBlockingQueue class for the bounded submission queue.
+
+import java.util.concurrent.BlockingQueue;
+// Importing the BlockingQueue interface for the submission queue.
+
+import java.util.concurrent.CompletableFuture;
+// Importing the CompletableFuture class so callers can wait for, or chain on, each transfer's result.
+
+import java.util.concurrent.atomic.LongAdder;
+// Importing the LongAdder class to count lock acquisitions and batches across workers.
+
+import java.util.concurrent.locks.ReadWriteLock;
+// Importing the ReadWriteLock interface to make shutdown race-free with concurrent submissions.
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+// Importing the ReentrantReadWriteLock class as the submission gate.
+
+public class TransferEngine {
+    // Defining a batched transfer pipeline in front of a TransactionSystem.
+    // Callers submit transfers to a bounded queue and get a future back. Worker threads drain
+    // the queue in batches, lock every account the batch touches once in ascending ID order,
+    // apply every transfer of the batch in submission order through TransactionSystem, then release
+    // the locks. A burst of transfers hitting the same accounts therefore pays for one lock per
+    // account per batch instead of two locks per transfer, while each transfer is still journaled,
+    // coordinated with snapshots, measured and added to the history like a direct one. Once the locks are
+    // released the worker waits once for the batch's last journal record to be durable, which covers every
+    // record before it, and only then completes the futures.
+    // If a batch fails, every future it has not completed is completed exceptionally and the
+    // worker carries on with the next batch.
+
+    private static final TransferRequest POISON = new TransferRequest(0, 0, 0);
+    // Marker request that tells a worker thread to exit.
+
+    private final TransactionSystem system;
+    // The transaction system that owns the accounts.
+
+    private final TransactionMetrics metrics;
+    // The system's metrics, which the workers' lock waits are recorded in like a direct transfer's.
+
+    private final int batchSize;
+    // The maximum number of transfers a worker applies under one set of locks.
+
+    private final BlockingQueue<TransferRequest> queue;
+    // The bounded queue of submitted transfers; a full queue blocks submitters (back-pressure).
+
+    private final Thread[] workers;
+    // The worker threads draining the queue.
+
+    private final ReadWriteLock submitGate = new ReentrantReadWriteLock();
+    // Submitters hold the read side while enqueuing; shutdown takes the write side to stop new submissions.
+
+    private final LongAdder lockAcquisitions = new LongAdder();
+    // Counting account locks taken by the workers.
+
+    private final LongAdder batches = new LongAdder();
+    // Counting batches applied by the workers.
+
+    private boolean running = true;
+    // Whether new submissions are accepted; guarded by submitGate.
+
+    public TransferEngine(TransactionSystem system, int workerCount, int batchSize, int queueCapacity) {
+        // Constructor to create the engine and start its worker threads.
+
+        if (workerCount < 1 || batchSize < 1 || queueCapacity < 1) {
+            // Checking that the sizes make sense.
+
+            throw new IllegalArgumentException("workerCount, batchSize and queueCapacity must be positive");
+        }
+
+        this.system = system;
+        // Storing the transaction system.
+
+        this.metrics = system.getMetrics();
+        // Sharing the system's metrics.
+
+        this.batchSize = batchSize;
+        // Storing the maximum batch size.
+
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        // Creating the bounded submission queue.
+
+        this.workers = new Thread[workerCount];
+        // Creating the array of worker threads.
+
+        for (int i = 0; i < workerCount; i++) {
+            // Starting each worker thread.
+
+            workers[i] = new Thread(this::runWorker, "TransferEngine-" + i);
+            // Creating a worker that loops over batches.
+
+            workers[i].start();
+            // Starting the worker.
+        }
+    }
+
+    public CompletableFuture<TransferResult> submit(int fromAccountId, int toAccountId, double amount) {
+        // Method to queue a transfer and return a future completed once a worker has applied it.
+
+        TransferRequest request = new TransferRequest(fromAccountId, toAccountId, AccountUtils.toCents(amount));
+        // Creating the request that carries the transfer, converted once to exact cents, and its future.
+
+        submitGate.readLock().lock();
+        // Holding the read side so shutdown cannot slip in between the check and the enqueue.
+
+        try {
+            if (!running) {
+                // Checking if the engine has been shut down.
+
+                request.result.complete(TransferResult.REJECTED);
+                // Rejecting the transfer without touching any account.
+
+                return request.result;
+            }
+
+            queue.put(request);
+            // Enqueuing the transfer, blocking while the queue is full.
+        } catch (InterruptedException e) {
+            // Catching InterruptedException if the caller was interrupted while the queue was full.
+
+            Thread.currentThread().interrupt();
+            // Re-interrupt the current thread.
+
+            request.result.complete(TransferResult.REJECTED);
+            // Rejecting the transfer because it was never enqueued.
+        } finally {
+            submitGate.readLock().unlock();
+            // Releasing the read side.
+        }
+
+        return request.result;
+        // Returning the future to the caller.
+    }
+
+    public void shutdown() throws InterruptedException {
+        // Method to stop accepting transfers, finish everything already queued, and stop the workers.
+
+        submitGate.writeLock().lock();
+        // Waiting for in-progress submissions to finish enqueuing.
+
+        try {
+            running = false;
+            // Rejecting every later submission.
+        } finally {
+            submitGate.writeLock().unlock();
+        }
+
+        for (int i = 0; i < workers.length; i++) {
+            // Queuing one exit marker per worker behind all accepted transfers.
+
+            queue.put(POISON);
+        }
+
+        for (Thread worker : workers) {
+            // Waiting for every worker to drain its last batch and exit.
+
+            worker.join();
+        }
+    }
+
+    public long getLockAcquisitions() {
+        // Getter method to return the number of account locks taken so far.
+
+        return lockAcquisitions.sum();
+    }
+
+    public long getBatchCount() {
+        // Getter method to return the number of batches applied so far.
+
+        return batches.sum();
+    }
+
+    private void runWorker() {
+        // Worker loop: take one transfer, drain up to a full batch behind it, and apply the batch.
+
+        List<TransferRequest> batch = new ArrayList<>(batchSize);
+        // Reusing one list for every batch this worker applies.
+
+        while (true) {
+            // Looping until an exit marker is seen.
+
+            try {
+                batch.add(queue.take());
+                // Blocking until at least one transfer is available.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // Re-interrupt the current thread.
+
+                return;
+                // Leaving the loop if the worker was interrupted.
+            }
+
+            queue.drainTo(batch, batchSize - 1);
+            // Taking whatever else is already queued, up to the batch size, without blocking.
+
+            boolean exit = false;
+            // Whether an exit marker was part of this batch.
+
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                // Removing exit markers from the batch.
+
+                if (batch.get(i) == POISON) {
+                    // Found an exit marker.
+
+                    batch.remove(i);
+                    // Removing it from the batch.
+
+                    if (exit) {
+                        // This worker already took a marker, so hand this one back for another worker.
+
+                        queue.offer(POISON);
+                    }
+
+                    exit = true;
+                    // Remembering to exit after applying the batch.
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                // Applying the real transfers in the batch.
+
+                applyBatch(batch);
+            }
+
+            batch.clear();
+            // Emptying the list for the next batch.
+
+            if (exit) {
+                // Stopping the worker after the last batch.
+
+                return;
+            }
+        }
+    }
+
+    private void applyBatch(List<TransferRequest> batch) {
+        // Method to apply a batch and complete every future in it, whatever goes wrong.
+
+        TransferResult[] results = new TransferResult[batch.size()];
+        // Holding results until the locks are released, so callbacks never run while accounts are locked.
+
+        long[] journaled = new long[1];
+        // Receiving the sequence number of the batch's last journal record.
+
+        Throwable failure = null;
+        // The failure that stopped the batch, if any.
+
+        Throwable notDurable = null;
+        // The failure to confirm the batch's journal records, if any.
+
+        try {
+            applyLocked(batch, results, journaled);
+            // Applying the transfers under the batch's locks.
+        } catch (Throwable t) {
+            // Catching anything, so the worker survives and no caller waits forever.
+
+            failure = t;
+        }
+
+        try {
+            system.awaitDurable(journaled[0]);
+            // Waiting once, with every lock released, for the records of every transfer the batch completed.
+        } catch (Throwable t) {
+            notDurable = t;
+            // The completed transfers stay applied, but cannot be reported as done.
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            // Completing each caller's future outside the locks.
+
+            if (results[i] == null) {
+                batch.get(i).result.completeExceptionally(failure);
+                // The batch failed before reaching this transfer, or while applying it.
+            } else if (results[i] == TransferResult.COMPLETED && notDurable != null) {
+                batch.get(i).result.completeExceptionally(notDurable);
+                // The transfer's journal record may not be on disk.
+            } else {
+                batch.get(i).result.complete(results[i]);
+            }
+        }
+    }
+
+    private void applyLocked(List<TransferRequest> batch, TransferResult[] results, long[] journaled) {
+        // Method to lock every account in the batch once, apply all transfers, then release the locks.
+
+        Map<Integer, BankAccount> accounts = new TreeMap<>();
+        // Collecting the distinct accounts in the batch, sorted by ID.
+
+        for (TransferRequest request : batch) {
+            // Looking up both accounts of each transfer.
+
+            BankAccount from = system.getAccount(request.fromAccountId);
+            // Retrieving the source account.
+
+            BankAccount to = system.getAccount(request.toAccountId);
+            // Retrieving the destination account.
+
+            if (from != null && to != null) {
+                // Only valid transfers need their accounts locked.
+
+                accounts.put(from.getId(), from);
+                // Adding the source account to the lock set.
+
+                accounts.put(to.getId(), to);
+                // Adding the destination account to the lock set.
+            }
+        }
+
+        List<BankAccount> locked = new ArrayList<>(accounts.size());
+        // The accounts locked so far, so exactly those are released.
+
+        try {
+            for (BankAccount account : accounts.values()) {
+                // Acquiring locks in ascending ID order, the same order every worker and TransactionSystem use.
+
+                metrics.recordLockWait(account.lockAndMeasure());
+                locked.add(account);
+                // Taking the lock and recording any wait for it.
+            }
+
+            lockAcquisitions.add(locked.size());
+            // Recording the number of locks taken for this batch.
+
+            batches.increment();
+            // Recording the batch.
+
+            for (int i = 0; i < batch.size(); i++) {
+                // Applying transfers in the order they were submitted.
+
+                TransferRequest request = batch.get(i);
+                // The transfer to apply.
+
+                BankAccount from = accounts.get(request.fromAccountId);
+                // Retrieving the locked source account.
+
+                BankAccount to = accounts.get(request.toAccountId);
+                // Retrieving the locked destination account.
+
+                if (from == null || to == null) {
+                    // One of the accounts does not exist.
+
+                    results[i] = TransferResult.UNKNOWN_ACCOUNT;
+                } else {
+                    results[i] = system.transferLocked(from, to, request.amountCents, journaled);
+                    // Moving the money through the system's own transfer path, with both locks held.
+                }
+            }
+        } finally {
+            for (BankAccount account : locked) {
+                // Releasing every lock taken for the batch.
+
+                account.unlock();
+            }
+        }
+    }
+
+    private static final class TransferRequest {
+        // Defining a queued transfer together with the future handed back to its caller.
+
+        final int fromAccountId;
+        // The source account ID.
+
+        final int toAccountId;
+        // The destination account ID.
+
+        final long amountCents;
+        // The amount to transfer, in cents.
+
+        final CompletableFuture<TransferResult> result = new CompletableFuture<>();
+        // The future completed by the worker that applies this transfer.
+
+        TransferRequest(int fromAccountId, int toAccountId, long amountCents) {
+            // Constructor to create a transfer request.
+
+            this.fromAccountId = fromAccountId;
+            this.toAccountId = toAccountId;
+            this.amountCents = amountCents;
+        }
+    }
+}
@@ -0,0 +1,467 @@
+package banking;
+
+import java.io.IOException;
+// Importing the IOException class for unreadable or malformed files.
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+// Importing the memory-mapping classes used to read the file without copying it.
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+// Importing the bounded queues and the error holder of the ingestion pipeline.
+
+public class TransferFileReader implements AutoCloseable {
+    // Defining a reader of transfer files that maps the file into memory a window at a time and parses
+    // records straight from the mapped bytes into reusable primitive columns. It creates no String or
+    // boxed object per record and holds at most one window plus the caller's chunks, however large the file.
+    // Two formats are supported:
+    //   BINARY - fixed 16-byte records: fromId int, toId int, amountCents long, big-endian.
+    //   CSV    - lines of "fromId,toId,amount" where amount is dollars with up to two decimals, such as
+    //            125, 125.5, 125.50 or $125.50; an optional header line (not starting with a digit) is skipped.
+    // Amounts are parsed digit by digit into exact cents by AccountUtils.parseCents, never through Double.parseDouble.
+
+    public enum Format {
+        BINARY,
+        CSV
+    }
+    // Declaring the supported file formats.
+
+    public static final int BINARY_RECORD_BYTES = 16;
+    // Size of one binary record.
+
+    private static final long WINDOW_BYTES = 64L << 20;
+    // Size of the part of the file mapped at a time; a multiple of the binary record size.
+
+    private static final int MAX_LINE_BYTES = 64;
+    // Longest CSV line accepted: two 10-digit IDs, a 19-digit amount with decimals and a line ending fit easily.
+
+    public static final class Chunk {
+        // Defining a reusable block of parsed records, held as columns.
+
+        final int[] fromIds;
+        final int[] toIds;
+        final long[] amountCents;
+        // The record columns.
+
+        int count;
+        // The number of records currently in the chunk.
+
+        public Chunk(int capacity) {
+            // Constructor to allocate room for capacity records.
+
+            fromIds = new int[capacity];
+            toIds = new int[capacity];
+            amountCents = new long[capacity];
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public int getFromId(int i) {
+            return fromIds[i];
+        }
+
+        public int getToId(int i) {
+            return toIds[i];
+        }
+
+        public long getAmountCents(int i) {
+            return amountCents[i];
+        }
+    }
+
+    public interface ChunkHandler {
+        // Defining the consumer of parsed chunks; a chunk is reused once the handler returns.
+
+        void accept(Chunk chunk) throws Exception;
+    }
+
+    private final FileChannel channel;
+    // Declaring the open file.
+
+    private final Format format;
+    // Declaring the file format.
+
+    private final long size;
+    // Declaring the file size in bytes.
+
+    private MappedByteBuffer window;
+    // Declaring the currently mapped part of the file.
+
+    private long windowStart;
+    // Declaring the file offset of the mapped window.
+
+    private int position;
+    // Declaring the read position inside the window.
+
+    private final byte[] amountBytes = new byte[MAX_LINE_BYTES];
+    // Declaring the scratch copy of the amount field, reused for every line.
+
+    public TransferFileReader(Path file, Format format) throws IOException {
+        // Constructor to open a transfer file.
+
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        // Opening the file for reading.
+
+        this.format = format;
+        this.size = channel.size();
+        // Storing the format and the size.
+
+        if (format == Format.BINARY && size % BINARY_RECORD_BYTES != 0) {
+            // Checking a binary file holds whole records.
+
+            channel.close();
+            throw new IOException("Truncated binary transfer file: " + file);
+        }
+
+        map(0);
+        // Mapping the first window.
+
+        if (format == Format.CSV && window.limit() > 0 && !isDigit(window.get(0))) {
+            // Checking if the file starts with a header line.
+
+            skipLine();
+            // Skipping it.
+        }
+    }
+
+    private void map(long start) throws IOException {
+        // Method to map the window starting at the given file offset.
+
+        windowStart = start;
+        // Recording the window's offset.
+
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_BYTES, size - start));
+        // Mapping the window; the previous one is unmapped when it is garbage collected.
+
+        position = 0;
+        // Starting at the beginning of the window.
+    }
+
+    public boolean next(Chunk chunk) throws IOException {
+        // Method to fill the chunk with the next records; returns false once the file is exhausted.
+
+        chunk.count = 0;
+        // Emptying the chunk.
+
+        int capacity = chunk.fromIds.length;
+        // Reading the chunk's capacity.
+
+        while (chunk.count < capacity && (format == Format.BINARY ? readBinary(chunk) : readCsv(chunk))) {
+            // Reading records until the chunk is full or the file ends.
+        }
+
+        return chunk.count > 0;
+    }
+
+    public long getBytesRead() {
+        // Method to return how far into the file the reader has got.
+
+        return windowStart + position;
+    }
+
+    private boolean readBinary(Chunk chunk) throws IOException {
+        // Method to read one binary record into the chunk.
+
+        if (position == window.limit()) {
+            // Checking if the window is used up.
+
+            if (windowStart + position == size) {
+                // Checking if the file is used up.
+
+                return false;
+            }
+
+            map(windowStart + position);
+            // Mapping the next window; windows hold whole records, so none is split.
+        }
+
+        int i = chunk.count++;
+        // Taking the next slot in the chunk.
+
+        chunk.fromIds[i] = window.getInt(position);
+        chunk.toIds[i] = window.getInt(position + 4);
+        chunk.amountCents[i] = window.getLong(position + 8);
+        // Reading the three fields straight from the mapped bytes.
+
+        position += BINARY_RECORD_BYTES;
+        // Moving past the record.
+
+        return true;
+    }
+
+    private boolean readCsv(Chunk chunk) throws IOException {
+        // Method to read one CSV line into the chunk, skipping blank lines. The line is parsed in a single
+        // pass; the window is moved forward first whenever less than a full line may be left in it.
+
+        while (true) {
+            // Looping until a record is read or the file ends.
+
+            int limit = window.limit();
+            // Reading the window size.
+
+            if (limit - position < MAX_LINE_BYTES && windowStart + limit < size) {
+                // Checking if a line could run past the window.
+
+                map(windowStart + position);
+                // Remapping so the window starts at this line.
+
+                limit = window.limit();
+            }
+
+            if (position == limit) {
+                // Checking if the file is used up.
+
+                return false;
+            }
+
+            byte first = window.get(position);
+            // Reading the first byte of the line.
+
+            if (first == '\n' || first == '\r') {
+                // Skipping a blank line or the end of a Windows line ending.
+
+                position++;
+                continue;
+            }
+
+            int i = chunk.count;
+            // Taking the next slot in the chunk.
+
+            chunk.fromIds[i] = parseId(limit);
+            expect(',', limit);
+            chunk.toIds[i] = parseId(limit);
+            expect(',', limit);
+            chunk.amountCents[i] = parseCents(limit);
+            // Parsing the three fields in place.
+
+            if (position < limit && window.get(position) == '\r') {
+                position++;
+                // Accepting a Windows line ending.
+            }
+
+            if (position < limit) {
+                // Checking the line ends here, unless it is the last line of the file.
+
+                if (window.get(position) != '\n') {
+                    throw malformed("unexpected characters after the amount");
+                }
+
+                position++;
+                // Moving past the line ending.
+            }
+
+            chunk.count++;
+            // Keeping the record.
+
+            return true;
+        }
+    }
+
+    private void skipLine() throws IOException {
+        // Method to move past the current line, used for the header.
+
+        int limit = window.limit();
+        // Reading the window size.
+
+        while (position < limit && window.get(position++) != '\n') {
+            // Scanning to just past the line ending.
+        }
+    }
+
+    private int parseId(int limit) throws IOException {
+        // Method to parse a non-negative account ID at the read position.
+
+        long value = 0;
+        int start = position;
+        // Accumulating the digits.
+
+        while (position < limit && isDigit(window.get(position))) {
+            // Reading each digit.
+
+            value = value * 10 + (window.get(position++) - '0');
+
+            if (value > Integer.MAX_VALUE) {
+                throw malformed("account ID out of range");
+            }
+        }
+
+        if (position == start) {
+            // Checking there was at least one digit.
+
+            throw malformed("missing account ID");
+        }
+
+        return (int) value;
+    }
+
+    private long parseCents(int limit) throws IOException {
+        // Method to parse a dollar amount at the read position into exact cents. The field, which ends at the line
+        // ending or the end of the file, is copied into the scratch array and parsed by AccountUtils.
+
+        int length = 0;
+        int end = Math.min(limit, position + amountBytes.length);
+        // Bounding the field by the window and the longest amount that fits on a line.
+
+        for (int i = position; i < end; i++) {
+            // Copying the field up to the line ending, without creating a String.
+
+            byte b = window.get(i);
+
+            if (b == '\r' || b == '\n') {
+                break;
+            }
+
+            amountBytes[length++] = b;
+        }
+
+        long cents;
+
+        try {
+            cents = AccountUtils.parseCents(amountBytes, 0, length);
+            // Parsing it digit by digit, as every other amount in the system is.
+        } catch (NumberFormatException e) {
+            throw malformed(length == 0 ? "missing amount" : e.getMessage());
+        }
+
+        if (cents < 0) {
+            throw malformed("negative amount");
+            // The direction of a transfer is given by its accounts, never by the sign of its amount.
+        }
+
+        position += length;
+        // Moving past the amount.
+
+        return cents;
+    }
+
+    private void expect(char separator, int limit) throws IOException {
+        // Method to consume the given separator at the read position.
+
+        if (position >= limit || window.get(position) != separator) {
+            throw malformed("expected '" + separator + "'");
+        }
+
+        position++;
+    }
+
+    private IOException malformed(String problem) {
+        // Method to build the error for a malformed record, with its file offset.
+
+        return new IOException("Malformed transfer record near byte " + (windowStart + position) + ": " + problem);
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Method to close the file.
+
+        channel.close();
+    }
+
+    public static long ingest(Path file, Format format, int chunkRecords, int queueDepth, ChunkHandler handler)
+            throws IOException, InterruptedException {
+        // Method to parse a file on a background thread and hand the chunks to the handler on this thread.
+        // Only queueDepth chunks exist; when the handler falls behind, the parser waits for one to be handed
+        // back, so memory stays at queueDepth chunks whatever the file size. Returns the number of records.
+
+        BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(queueDepth);
+        BlockingQueue<Chunk> full = new ArrayBlockingQueue<>(queueDepth + 1);
+        // Creating the queues of empty and parsed chunks.
+
+        for (int i = 0; i < queueDepth; i++) {
+            free.add(new Chunk(chunkRecords));
+            // Allocating every chunk up front.
+        }
+
+        Chunk endOfFile = new Chunk(0);
+        // Creating the marker the parser sends after the last chunk.
+
+        AtomicReference<Throwable> parseError = new AtomicReference<>();
+        // Holding the parser's failure for the caller.
+
+        TransferFileReader reader = new TransferFileReader(file, format);
+        // Opening the file on this thread, so an open failure is thrown directly.
+
+        Thread parser = new Thread(() -> {
+            try (reader) {
+                while (true) {
+                    Chunk chunk = free.take();
+                    // Waiting for an empty chunk; this is where back-pressure stops the parser.
+
+                    if (!reader.next(chunk)) {
+                        break;
+                    }
+
+                    full.put(chunk);
+                    // Handing the parsed chunk to the handler.
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // Stopping because the caller gave up.
+            } catch (Throwable e) {
+                parseError.set(e);
+                // Saving any failure, not just a malformed record, so a partial read is never reported as complete.
+            } finally {
+                full.offer(endOfFile);
+                // Telling the caller there is nothing more; the queue always has room for the marker.
+            }
+        }, "transfer-file-parser");
+        // Creating the parser thread.
+
+        parser.setDaemon(true);
+        parser.start();
+        // Starting it.
+
+        long records = 0;
+        // Counting the records handed to the handler.
+
+        try {
+            while (true) {
+                Chunk chunk = full.take();
+                // Waiting for the next parsed chunk.
+
+                if (chunk == endOfFile) {
+                    break;
+                }
+
+                handler.accept(chunk);
+                // Handing it to the handler.
+
+                records += chunk.count;
+                free.put(chunk);
+                // Returning the chunk for reuse.
+            }
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            parser.interrupt();
+            throw e;
+            // Stopping the parser if the handler fails.
+        } catch (Exception e) {
+            parser.interrupt();
+            throw new IOException("Transfer handler failed", e);
+        }
+
+        parser.join();
+        // Waiting for the parser to exit.
+
+        Throwable error = parseError.get();
+
+        if (error instanceof IOException) {
+            throw (IOException) error;
+            // Reporting a malformed or unreadable file.
+        } else if (error != null) {
+            throw new IOException("Transfer file parser failed", error);
+            // Reporting a bug or resource failure in the parser; the records handed over so far are only part of the file.
+        }
+
+        return records;
+    }
+}
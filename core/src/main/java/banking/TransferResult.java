@@ -0,0 +1,27 @@
+package banking;
+
+public enum TransferResult {
+    // Defining the possible outcomes of a transfer, as reported by TransferEngine, BankingService, tryTransfer
+    // and the multi-leg post and tryPost.
+
+    COMPLETED,
+    // The amount was withdrawn from the source account and deposited into the destination account.
+
+    INSUFFICIENT_FUNDS,
+    // The source account did not have enough balance, so nothing was changed.
+
+    UNKNOWN_ACCOUNT,
+    // The source or destination account ID does not exist, so nothing was changed.
+
+    REJECTED,
+    // The engine was shut down, or the service was at its in-flight limit, so nothing was changed.
+
+    TIMED_OUT,
+    // The account locks or a free worker were not available before the deadline, so nothing was changed.
+
+    FAILED,
+    // An unexpected error interrupted the transfer and it was rolled back.
+
+    DUPLICATE
+    // A transfer with the same idempotency key already completed, so nothing was changed.
+}
@@ -0,0 +1,332 @@
+package banking;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+// Importing the collections that hold the dependency graph.
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+// Importing the worker pool and the futures handed back to callers.
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+// Importing the lock that guards the graph and the condition used to wait for it to drain.
+
+public class TransferScheduler {
+    // Defining a scheduler that runs transfers as a dependency graph on a worker pool.
+    // Every transfer is ordered after the previously scheduled transfers on both of its accounts,
+    // so the final balances are those of running the transfers one by one in submission order.
+    // A transfer may also name other transfers it must wait for, to express ordering between
+    // transfers that share no account. Transfers with no unfinished dependency run in parallel,
+    // which lets an ordered batch, such as an end-of-day file, be replayed on every core.
+    // A transfer that is refused (for example for insufficient funds) still counts as finished
+    // for the transfers that depend on it, just as it would in a sequential replay.
+    // Once shutdown has been called, schedule refuses new transfers. If the pool refuses to run a transfer
+    // anyway, its future fails with the RejectedExecutionException and it still counts as finished, so
+    // awaitCompletion and shutdown never wait for a transfer that will not run.
+
+    public static final class Transfer {
+        // Defining one scheduled transfer: a node of the dependency graph.
+
+        private final long sequence;
+        // The submission order of the transfer, also used as its label in the event log.
+
+        private final int fromAccountId;
+        private final int toAccountId;
+        private final long amountCents;
+        // The transfer itself, with the amount in exact cents.
+
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        // Completed with the transfer's outcome once it has run.
+
+        private final List<Transfer> dependents = new ArrayList<>(2);
+        // The transfers waiting for this one; guarded by the scheduler lock.
+
+        private int pending;
+        // The number of unfinished transfers this one waits for; guarded by the scheduler lock.
+
+        private boolean done;
+        // Whether this transfer has finished; guarded by the scheduler lock.
+
+        private Transfer(long sequence, int fromAccountId, int toAccountId, long amountCents) {
+            // Constructor to create an unscheduled node.
+
+            this.sequence = sequence;
+            this.fromAccountId = fromAccountId;
+            this.toAccountId = toAccountId;
+            this.amountCents = amountCents;
+        }
+
+        public long getSequence() {
+            // Method to return the submission order of the transfer.
+
+            return sequence;
+        }
+
+        public CompletableFuture<Boolean> result() {
+            // Method to return the future completed with true if the transfer went through.
+
+            return result;
+        }
+    }
+
+    private final TransactionSystem system;
+    // Declaring the transaction system the transfers run against.
+
+    private final ExecutorService workers;
+    // Declaring the worker pool that runs ready transfers.
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Declaring the lock guarding the graph: the account tails, the nodes' links and the counters.
+
+    private final Condition drained = lock.newCondition();
+    // Declaring the condition signalled when no scheduled transfer is left unfinished.
+
+    private final Map<Integer, Transfer> tails = new HashMap<>();
+    // Declaring the last scheduled, unfinished transfer on each account; guarded by lock.
+
+    private long nextSequence = 1;
+    // Declaring the sequence number of the next scheduled transfer; guarded by lock.
+
+    private long unfinished;
+    // Declaring the number of scheduled transfers not yet finished; guarded by lock.
+
+    private boolean shutdown;
+    // Declaring whether shutdown has been called, after which no transfer may be scheduled; guarded by lock.
+
+    public TransferScheduler(TransactionSystem system, int workerCount) {
+        // Constructor to create a scheduler with its own pool of worker threads.
+
+        this(system, Executors.newFixedThreadPool(workerCount));
+        // Creating the worker pool.
+    }
+
+    TransferScheduler(TransactionSystem system, ExecutorService workers) {
+        // Constructor to create a scheduler on a given pool, which it shuts down with itself; for tests.
+
+        this.system = system;
+        // Storing the transaction system.
+
+        this.workers = workers;
+        // Storing the worker pool.
+    }
+
+    public Transfer schedule(int fromAccountId, int toAccountId, double amount, Transfer... dependsOn) {
+        // Method to schedule a transfer of a dollar amount after earlier transfers on the same accounts and after
+        // the given transfers.
+
+        return scheduleCents(fromAccountId, toAccountId, AccountUtils.toCents(amount), dependsOn);
+        // Converting the amount to cents once.
+    }
+
+    public Transfer scheduleCents(int fromAccountId, int toAccountId, long amountCents, Transfer... dependsOn) {
+        // Method to schedule a transfer in exact cents after earlier transfers on the same accounts and after the
+        // given transfers; throws RejectedExecutionException once the scheduler has been shut down.
+
+        Transfer transfer;
+        // Declaring the new node.
+
+        boolean ready;
+        // Declaring whether it can run straight away.
+
+        lock.lock();
+        // Locking the graph while the node is linked in.
+
+        try {
+            if (shutdown) {
+                // Checking the scheduler still accepts transfers.
+
+                throw new RejectedExecutionException("TransferScheduler has been shut down");
+            }
+
+            transfer = new Transfer(nextSequence++, fromAccountId, toAccountId, amountCents);
+            // Creating the node with the next sequence number.
+
+            unfinished++;
+            // Counting it as unfinished.
+
+            dependOn(transfer, tails.get(fromAccountId));
+            // Ordering it after the previous transfer on the source account.
+
+            if (toAccountId != fromAccountId) {
+                // Checking the destination is a different account.
+
+                dependOn(transfer, tails.get(toAccountId));
+                // Ordering it after the previous transfer on the destination account.
+            }
+
+            for (Transfer dependency : dependsOn) {
+                // Ordering it after each explicitly named transfer.
+
+                dependOn(transfer, dependency);
+            }
+
+            tails.put(fromAccountId, transfer);
+            tails.put(toAccountId, transfer);
+            // Making it the last transfer on both accounts.
+
+            ready = transfer.pending == 0;
+            // It is ready if everything it depends on has already finished.
+        } finally {
+            lock.unlock();
+        }
+
+        if (ready) {
+            // Checking if the transfer can run now.
+
+            dispatch(List.of(transfer));
+            // Handing it to a worker.
+        }
+
+        return transfer;
+    }
+
+    private static void dependOn(Transfer transfer, Transfer dependency) {
+        // Method to record that a transfer must wait for another; called with the lock held.
+
+        if (dependency != null && !dependency.done) {
+            // Checking the dependency exists and has not finished yet.
+
+            dependency.dependents.add(transfer);
+            // Asking the dependency to release this transfer when it finishes.
+
+            transfer.pending++;
+            // Counting one more unfinished dependency.
+        }
+    }
+
+    private void run(Transfer transfer) {
+        // Method to run a ready transfer on a worker and release the transfers waiting for it.
+
+        try {
+            boolean completed = system.transferCents(transfer.fromAccountId, transfer.toAccountId,
+                                                     transfer.amountCents, (int) transfer.sequence);
+            // Running the transfer, labelled with its sequence number in the event log.
+
+            transfer.result.complete(completed);
+            // Reporting the outcome before any dependent can start.
+        } catch (RuntimeException e) {
+            // Catching an unexpected failure so dependents are still released.
+
+            transfer.result.completeExceptionally(e);
+        }
+
+        dispatch(finish(transfer));
+        // Handing each newly ready transfer to a worker.
+    }
+
+    private void dispatch(List<Transfer> ready) {
+        // Method to hand ready transfers to the workers. A transfer the pool refuses fails with the rejection
+        // and is finished here, and the dependents that releases are dispatched in turn, so none is left
+        // unfinished.
+
+        Deque<Transfer> toRun = new ArrayDeque<>(ready);
+        // The transfers still to hand over; a loop rather than recursion, since a refused chain can be long.
+
+        while (!toRun.isEmpty()) {
+            // Handing over each transfer.
+
+            Transfer transfer = toRun.poll();
+
+            try {
+                workers.execute(() -> run(transfer));
+                // Handing it to a worker.
+            } catch (RejectedExecutionException e) {
+                // The pool will not run it, so it fails and counts as finished.
+
+                transfer.result.completeExceptionally(e);
+                toRun.addAll(finish(transfer));
+                // Releasing its dependents, which the pool will most likely refuse as well.
+            }
+        }
+    }
+
+    private List<Transfer> finish(Transfer transfer) {
+        // Method to unlink a transfer whose future is complete and return the dependents it made ready.
+
+        List<Transfer> ready = new ArrayList<>();
+        // Collecting the dependents that become ready.
+
+        lock.lock();
+        // Locking the graph while the node is unlinked.
+
+        try {
+            transfer.done = true;
+            // Marking the transfer as finished, so later transfers do not wait for it.
+
+            tails.remove(transfer.fromAccountId, transfer);
+            tails.remove(transfer.toAccountId, transfer);
+            // Forgetting it as an account tail if no later transfer has replaced it, so the map stays small.
+
+            for (Transfer dependent : transfer.dependents) {
+                // Releasing each waiting transfer.
+
+                if (--dependent.pending == 0) {
+                    // Checking if this was its last unfinished dependency.
+
+                    ready.add(dependent);
+                }
+            }
+
+            transfer.dependents.clear();
+            // Dropping the links so finished nodes can be garbage collected.
+
+            if (--unfinished == 0) {
+                // Checking if the whole graph has drained.
+
+                drained.signalAll();
+                // Waking any thread waiting in awaitCompletion.
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return ready;
+    }
+
+    public void awaitCompletion() throws InterruptedException {
+        // Method to wait until every transfer scheduled so far has finished.
+
+        lock.lock();
+        // Locking the graph to read the unfinished count.
+
+        try {
+            while (unfinished > 0) {
+                // Waiting until the last transfer finishes.
+
+                drained.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void shutdown() throws InterruptedException {
+        // Method to refuse new transfers, finish every scheduled one and stop the worker pool.
+
+        lock.lock();
+
+        try {
+            shutdown = true;
+            // Refusing transfers scheduled from now on; dependents of scheduled ones are still dispatched.
+        } finally {
+            lock.unlock();
+        }
+
+        awaitCompletion();
+        // Waiting for the graph to drain, since dependents are only handed to the pool as they become ready.
+
+        workers.shutdown();
+        // Stopping the workers.
+
+        workers.awaitTermination(1, TimeUnit.MINUTES);
+        // Waiting for them to exit.
+    }
+}
@@ -0,0 +1,179 @@
+package banking;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AccountHistoryTest {
+    // Checks the statement queries against entries with known times, that they work across chunk boundaries,
+    // that every kind of committed change in a TransactionSystem lands in the history, and that a split
+    // account's entries follow the order its balance changed in.
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @BeforeAll
+    static void quietLog() {
+        EventLog.setLevel(LogLevel.OFF);
+    }
+
+    @Test
+    void queriesReturnTheEntriesAndTotalsOfARange() {
+        AccountHistory history = new AccountHistory();
+        history.append(7, 1_000, 500, 8);
+        history.append(7, 2_000, -200, 9);
+        history.append(7, 3_000, 300, AccountHistory.NO_COUNTERPARTY);
+        history.append(8, 1_000, -500, 7);
+
+        Statement last = history.last(7, 2);
+        assertEquals(2, last.size());
+        assertEquals(-200, last.getAmountCents(0));
+        assertEquals(9, last.getCounterpartyId(0));
+        assertEquals(AccountHistory.NO_COUNTERPARTY, last.getCounterpartyId(1));
+
+        Statement between = history.between(7, 1_000, 3_000);
+        assertEquals(2, between.size());
+        assertEquals(500, between.getCreditsCents());
+        assertEquals(200, between.getDebitsCents());
+        assertEquals(300, between.getNetCents());
+
+        Statement totals = history.totals(7, 0, 10_000);
+        assertEquals(3, totals.getCount());
+        assertEquals(0, totals.size());
+        assertEquals(600, totals.getNetCents());
+
+        assertEquals(3, history.getCount(7));
+        assertEquals(1, history.getCount(8));
+        assertEquals(0, history.getCount(9));
+        assertEquals(4, history.getEntryCount());
+    }
+
+    @Test
+    void dailyTotalsSplitAtMidnightAcrossManyChunks() {
+        AccountHistory history = new AccountHistory();
+        int perDay = 5_000;
+        // More entries than one chunk holds, so the searches cross chunk boundaries.
+
+        for (int day = 0; day < 3; day++) {
+            for (int i = 0; i < perDay; i++) {
+                history.append(1, day * DAY + i, day + 1, AccountHistory.NO_COUNTERPARTY);
+            }
+        }
+
+        Statement[] days = history.dailyTotals(1, 0, 4);
+
+        assertEquals(4, days.length);
+
+        for (int day = 0; day < 3; day++) {
+            assertEquals(perDay, days[day].getCount());
+            assertEquals((long) perDay * (day + 1), days[day].getCreditsCents());
+        }
+
+        assertEquals(0, days[3].getCount());
+        assertEquals(perDay * 3, history.last(1, Integer.MAX_VALUE).size());
+        assertEquals(perDay, history.between(1, DAY, 2 * DAY).size());
+    }
+
+    @Test
+    void everyCommittedChangeIsInTheHistory() {
+        TransactionSystem system = new TransactionSystem(List.of(new BankAccount(1, 100.0),
+                new BankAccount(2, 100.0), new BankAccount(3, 100.0)));
+        AccountHistory history = new AccountHistory();
+        system.setHistory(history);
+
+        assertTrue(system.transferCents(1, 2, 1_000, 0));
+        system.depositCents(1, 250);
+        assertTrue(system.withdrawCents(1, 100));
+        assertEquals(TransferResult.COMPLETED, system.post(Posting.transfer(1, 3, 50)));
+        assertFalse(system.withdrawCents(1, 1_000_000));
+        // A refused withdrawal changes nothing, so it is not in the history.
+
+        Statement statement = history.last(1, 10);
+
+        assertArrayEquals(new long[] {-1_000, 250, -100, -50}, amounts(statement));
+        assertEquals(2, statement.getCounterpartyId(0));
+        assertEquals(AccountHistory.NO_COUNTERPARTY, statement.getCounterpartyId(1));
+        assertEquals(AccountHistory.NO_COUNTERPARTY, statement.getCounterpartyId(2));
+        assertEquals(10_000 + statement.getNetCents(), system.getBalancesCents(1)[0]);
+    }
+
+    @Test
+    void aCreditToASplitAccountIsListedBeforeADebitThatSpendsIt() {
+        TransactionSystem system = new TransactionSystem(List.of(new BankAccount(1, 100.0), new BankAccount(2, 0.0)));
+        system.getAccount(2).split(4);
+        AtomicBoolean spent = new AtomicBoolean();
+        AtomicBoolean hooked = new AtomicBoolean();
+
+        AccountHistory history = new AccountHistory() {
+            @Override
+            public void append(int accountId, long timeMillis, long amountCents, int counterpartyId) {
+                if (accountId == 2 && amountCents == 2_500 && hooked.compareAndSet(false, true)) {
+                    // Spending the credit from another thread at the moment its entry is added.
+
+                    Thread spender = new Thread(() -> spent.set(system.withdrawCents(2, 2_500)));
+                    spender.start();
+
+                    try {
+                        spender.join();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+
+                super.append(accountId, timeMillis, amountCents, counterpartyId);
+            }
+        };
+        system.setHistory(history);
+
+        assertTrue(system.transferCents(1, 2, 2_500, 0));
+
+        Statement statement = history.last(2, 10);
+        long running = 0;
+
+        for (int i = 0; i < statement.size(); i++) {
+            running += statement.getAmountCents(i);
+            assertTrue(running >= 0, "entry " + i + " spends money not yet listed");
+        }
+
+        assertEquals(system.getBalancesCents(2)[0], running);
+        assertEquals(spent.get() ? 0 : 2_500, running);
+    }
+
+    @Test
+    void anUndoneCreditToASplitAccountIsReversedInTheHistory(@TempDir Path directory) throws IOException {
+        TransactionJournal journal = TransactionJournal.open(directory, FsyncPolicy.OS_MANAGED);
+        TransactionSystem system = new TransactionSystem(List.of(new BankAccount(1, 100.0), new BankAccount(2, 0.0)),
+                journal);
+        system.getAccount(2).split(4);
+        AccountHistory history = new AccountHistory();
+        system.setHistory(history);
+        journal.close();
+        // The journal refuses the transfer after both legs are applied, so they are undone.
+
+        assertFalse(system.transferCents(1, 2, 2_500, 0));
+
+        assertArrayEquals(new long[] {2_500, -2_500}, amounts(history.last(2, 10)));
+        assertEquals(0, history.getCount(1));
+        assertArrayEquals(new long[] {10_000, 0}, system.getBalancesCents(1, 2));
+    }
+
+    private static long[] amounts(Statement statement) {
+        long[] amounts = new long[statement.size()];
+
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = statement.getAmountCents(i);
+        }
+
+        return amounts;
+    }
+}
@@ -0,0 +1,79 @@
+package banking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class AccountUtilsTest {
+    // Checks the exact cents conversions: formatting matches String.format for ordinary amounts and stays
+    // exact at the ends of the long range, the byte form matches the String form, and parsing reads back
+    // what was formatted and refuses anything it cannot represent exactly.
+
+    @Test
+    void formattingMatchesStringFormatForOrdinaryAmounts() {
+        long[] amounts = {0, 5, 10, 99, 100, 12_345, -5, -12_345, 1_000_000_000_07L};
+
+        for (long cents : amounts) {
+            assertEquals(AccountUtils.formatCurrency(cents / 100.0), AccountUtils.formatCents(cents));
+        }
+    }
+
+    @Test
+    void formattingIsExactAtTheEndsOfTheRange() {
+        assertEquals("$92233720368547758.07", AccountUtils.formatCents(Long.MAX_VALUE));
+        assertEquals("$-92233720368547758.08", AccountUtils.formatCents(Long.MIN_VALUE));
+    }
+
+    @Test
+    void theByteFormMatchesTheStringForm() {
+        byte[] buffer = new byte[32];
+        long[] amounts = {0, 7, -7, 1_234_567, Long.MAX_VALUE, Long.MIN_VALUE};
+
+        for (long cents : amounts) {
+            int end = AccountUtils.appendCurrency(buffer, 3, cents);
+
+            assertEquals(AccountUtils.formatCents(cents), new String(buffer, 3, end - 3, StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    void parsingReadsBackWhatWasFormatted() {
+        long[] amounts = {0, 1, -1, 50, 12_345, -12_345, Long.MAX_VALUE, Long.MIN_VALUE};
+
+        for (long cents : amounts) {
+            String text = AccountUtils.formatCents(cents);
+            byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+
+            assertEquals(cents, AccountUtils.parseCents(text));
+            assertEquals(cents, AccountUtils.parseCents(bytes, 0, bytes.length));
+        }
+
+        assertEquals(12_500, AccountUtils.parseCents("125"));
+        assertEquals(-12_550, AccountUtils.parseCents("-125.5"));
+        assertEquals(12_500, AccountUtils.parseCents("125."));
+    }
+
+    @Test
+    void parsingRefusesWhatItCannotRepresentExactly() {
+        String[] invalid = {"", "$", "-", ".50", "1.234", "12a", "1,000.00", "92233720368547758.08",
+                            "-92233720368547758.09", "100000000000000000000"};
+
+        for (String text : invalid) {
+            byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+
+            assertThrows(NumberFormatException.class, () -> AccountUtils.parseCents(text), text);
+            assertThrows(NumberFormatException.class, () -> AccountUtils.parseCents(bytes, 0, bytes.length), text);
+        }
+    }
+
+    @Test
+    void doubleAmountsRoundToTheNearestCent() {
+        assertEquals(30, AccountUtils.toCents(0.1 + 0.2));
+        assertEquals(101, AccountUtils.toCents(1.005 + 0.001));
+        assertEquals(-250, AccountUtils.toCents(-2.50));
+        assertEquals(12.34, AccountUtils.fromCents(1_234));
+    }
+}
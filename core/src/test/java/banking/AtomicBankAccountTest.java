@@ -0,0 +1,141 @@
+package banking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class AtomicBankAccountTest {
+    // Checks that the compare-and-set account never loses an update or overdraws, that every change bumps the
+    // version so consistent reads retry around it, and that it splits like any other account.
+
+    @BeforeAll
+    static void quietLog() {
+        EventLog.setLevel(LogLevel.OFF);
+    }
+
+    @Test
+    void concurrentDepositsAndWithdrawalsLoseNothing() throws InterruptedException {
+        AtomicBankAccount account = new AtomicBankAccount(1, 0.0);
+        AtomicLong withdrawn = new AtomicLong();
+
+        runOnThreads(8, () -> {
+            for (int i = 0; i < 20_000; i++) {
+                account.depositCents(5);
+
+                if (account.withdrawCents(7)) {
+                    withdrawn.addAndGet(7);
+                }
+            }
+        });
+
+        assertEquals(8 * 20_000 * 5 - withdrawn.get(), account.getBalanceCents());
+        assertTrue(account.getBalanceCents() >= 0);
+    }
+
+    @Test
+    void aWithdrawalThatWouldOverdrawChangesNothing() {
+        AtomicBankAccount account = new AtomicBankAccount(1, 10.00);
+
+        assertFalse(account.withdrawCents(1_001));
+        assertEquals(1_000, account.getBalanceCents());
+        assertThrows(ArithmeticException.class, () -> account.depositCents(Long.MAX_VALUE));
+        assertEquals(1_000, account.getBalanceCents());
+    }
+
+    @Test
+    void everyChangeBumpsTheVersion() {
+        AtomicBankAccount account = new AtomicBankAccount(1, 10.00);
+
+        long stamp = account.tryOptimisticRead();
+        account.depositCents(100);
+        assertFalse(account.validate(stamp));
+
+        stamp = account.tryOptimisticRead();
+        assertTrue(account.withdrawCents(50));
+        assertFalse(account.validate(stamp));
+
+        stamp = account.tryOptimisticRead();
+        assertFalse(account.withdrawCents(10_000));
+        assertTrue(account.validate(stamp));
+        assertEquals(1_050, account.getBalanceCents());
+    }
+
+    @Test
+    void consistentReadsNeverSeeADebitAndTheCreditAfterIt() throws InterruptedException {
+        AtomicBankAccount account = new AtomicBankAccount(1, 10.00);
+        AtomicBankAccount other = new AtomicBankAccount(2, 10.00);
+        account.setAutoSplit(false);
+        account.split(64);
+        TransactionSystem system = new TransactionSystem(List.of(account, other));
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong badReads = new AtomicLong();
+
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 500_000; i++) {
+                assertTrue(account.withdrawCents(300));
+                account.depositCents(300);
+                // The balance only ever dips by 300 and comes back, never above where it started.
+            }
+
+            done.set(true);
+        });
+        writer.start();
+
+        while (!done.get()) {
+            long[] balances = system.getBalancesCents(1, 2);
+
+            if (balances[0] > 1_000 || balances[0] < 700 || balances[1] != 1_000) {
+                badReads.incrementAndGet();
+            }
+        }
+
+        writer.join();
+
+        assertEquals(0, badReads.get());
+        assertEquals(1_000, account.getBalanceCents());
+    }
+
+    @Test
+    void aSplitAccountTakesCreditsInSubBalancesAndSweepsThemForADebit() throws InterruptedException {
+        AtomicBankAccount account = new AtomicBankAccount(1, 0.0);
+        account.setAutoSplit(false);
+        account.split(4);
+        assertTrue(account.isSplit());
+
+        runOnThreads(4, () -> {
+            for (int i = 0; i < 10_000; i++) {
+                account.depositCents(1);
+            }
+        });
+
+        assertEquals(40_000, account.getBalanceCents());
+        long stamp = account.tryOptimisticRead();
+        assertTrue(account.withdrawCents(40_000));
+        assertFalse(account.validate(stamp));
+        assertEquals(0, account.getBalanceCents());
+        assertFalse(account.withdrawCents(1));
+    }
+
+    private static void runOnThreads(int threads, Runnable body) throws InterruptedException {
+        List<Thread> started = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(body);
+            thread.start();
+            started.add(thread);
+        }
+
+        for (Thread thread : started) {
+            thread.join();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package banking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class BankAccountTest {
+    // Checks the sub-balances of a split account: credits from many threads are swept into a debit exactly,
+    // a sweep that would overflow loses nothing, and a thread can read the balance of an account whose
+    // write it holds open itself. Also checks the optimistic read stamps across nested writes.
+
+    @BeforeAll
+    static void quietLog() {
+        EventLog.setLevel(LogLevel.OFF);
+    }
+
+    @Test
+    void aDebitSweepsTheCreditsOfEveryThread() throws InterruptedException {
+        BankAccount account = new BankAccount(1, 0L);
+        account.split(4);
+        Thread[] depositors = new Thread[8];
+
+        for (int t = 0; t < depositors.length; t++) {
+            depositors[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    account.depositCents(3);
+                }
+            });
+
+            depositors[t].start();
+        }
+
+        for (Thread depositor : depositors) {
+            depositor.join();
+        }
+
+        assertEquals(240_000, account.peekBalanceCents());
+        assertTrue(account.withdrawCents(239_999));
+        // The main balance held nothing, so the whole debit came from the swept sub-balances.
+
+        assertEquals(1, account.peekBalanceCents());
+        assertFalse(account.withdrawCents(2));
+        assertEquals(1, account.peekBalanceCents());
+    }
+
+    @Test
+    void aSweepThatWouldOverflowLeavesTheSubBalancesAlone() {
+        BankAccount account = new BankAccount(1, Long.MAX_VALUE - 10);
+        account.split(2);
+        account.depositCents(100);
+
+        assertThrows(ArithmeticException.class, () -> account.withdrawCents(Long.MAX_VALUE));
+        assertTrue(account.withdrawCents(1_000));
+        // Covered by the main balance alone, so no sweep is attempted.
+
+        assertEquals(Long.MAX_VALUE - 910, account.peekBalanceCents());
+    }
+
+    @Test
+    void aStampIsRefusedDuringAChangeAndInvalidAfterIt() {
+        BankAccount account = new BankAccount(1, 500L);
+        long stamp = account.tryOptimisticRead();
+
+        assertTrue(stamp != 0);
+        assertTrue(account.validate(stamp));
+
+        account.beginWrite();
+        account.beginWrite();
+        // Nested, as a transfer covering both of its legs does.
+
+        assertEquals(0, account.tryOptimisticRead());
+        assertFalse(account.validate(stamp));
+
+        account.endWrite();
+        assertEquals(0, account.tryOptimisticRead());
+        account.endWrite();
+
+        assertFalse(account.validate(stamp));
+        assertTrue(account.validate(account.tryOptimisticRead()));
+    }
+
+    @Test
+    void readingASplitAccountInsideItsOwnWriteDoesNotWaitForItself() {
+        BankAccount account = new BankAccount(1, 500L);
+        account.split(2);
+        account.depositCents(200);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            // Opening and reading on the timeout's own thread, which is the one that must not wait for itself.
+
+            account.lock();
+            account.beginWrite();
+
+            try {
+                assertEquals(700, account.peekBalanceCents());
+            } finally {
+                account.endWrite();
+                account.unlock();
+            }
+        });
+    }
+}
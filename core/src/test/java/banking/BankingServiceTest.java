@@ -0,0 +1,240 @@
+package banking;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class BankingServiceTest {
+    // Checks the service on whichever executor this JDK gives it: admission, bounded memory with 100k requests
+    // in flight, deadlines, idempotent retries, and that close leaves no request behind.
+
+    @BeforeAll
+    static void quietLog() {
+        EventLog.setLevel(LogLevel.OFF);
+    }
+
+    @Test
+    void virtualThreadsAreUsedExactlyWhenTheJdkHasThem() {
+        try (BankingService service = new BankingService(newSystem(), 10, 1, TimeUnit.SECONDS, 2)) {
+            assertEquals(Runtime.version().feature() >= 21, service.usesVirtualThreads());
+        }
+    }
+
+    @Test
+    void transfersCompleteOnEitherExecutor() throws Exception {
+        TransactionSystem system = newSystem();
+        List<CompletableFuture<TransferResult>> results = new ArrayList<>();
+
+        try (BankingService service = new BankingService(system, 1_000, 5, TimeUnit.SECONDS, 4)) {
+            for (int i = 0; i < 500; i++) {
+                results.add(service.transferCents(i % 2, (i + 1) % 2, 10));
+            }
+
+            for (CompletableFuture<TransferResult> result : results) {
+                assertEquals(TransferResult.COMPLETED, result.get(10, TimeUnit.SECONDS));
+            }
+
+            assertEquals(100.0, service.getBalance(0));
+            assertEquals(TransferResult.UNKNOWN_ACCOUNT, service.transfer(0, 42, 1.0).get(10, TimeUnit.SECONDS));
+            assertThrows(IllegalArgumentException.class, () -> service.getBalance(42));
+        }
+
+        assertArrayEquals(new long[] {10_000, 10_000}, system.getBalancesCents(0, 1));
+    }
+
+    @Test
+    void aHundredThousandRequestsInFlightKeepMemoryBounded() throws Exception {
+        // Runs on whichever executor this JDK gives the service. On JDK 17, which this build uses, that is the
+        // fallback pool, so this checks admission and memory with the requests queued; the virtual-thread path,
+        // with each request parked on its own virtual thread, is only exercised when the tests run on JDK 21+.
+
+        int requests = 100_000;
+        int fallbackThreads = 2;
+        TransactionSystem system = new TransactionSystem(List.of(new BankAccount(0, 10_000.0),
+                new BankAccount(1, 0.0)));
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        try (BankingService service = new BankingService(system, requests, 1, TimeUnit.MINUTES, fallbackThreads)) {
+            List<CompletableFuture<TransferResult>> results = new ArrayList<>(requests);
+            int threadsBefore = threads.getThreadCount();
+            long heapBefore = usedHeapAfterGc();
+            system.getAccount(0).lock();
+            // Holding the source lock, so every request stays in flight: parked on it, or queued behind the
+            // fallback threads that are.
+
+            try {
+                for (int i = 0; i < requests; i++) {
+                    results.add(service.transferCents(0, 1, 1));
+                }
+
+                assertEquals(requests, service.getInFlight());
+                assertEquals(0, service.getRejectedCount());
+                assertEquals(TransferResult.REJECTED, service.transferCents(0, 1, 1).get());
+                // One past the cap is refused at once rather than queued.
+
+                long bytesPerRequest = (usedHeapAfterGc() - heapBefore) / requests;
+                assertTrue(bytesPerRequest < 4_096, bytesPerRequest + " bytes of heap per request in flight");
+                // A queued request is a few small objects, and a parked virtual thread's stack a few hundred bytes.
+
+                assertTrue(threads.getThreadCount() - threadsBefore <= fallbackThreads + 2,
+                        (threads.getThreadCount() - threadsBefore) + " platform threads started");
+                // Never a platform thread per request: either the fallback pool, or virtual threads on a few carriers.
+            } finally {
+                system.getAccount(0).unlock();
+            }
+
+            for (CompletableFuture<TransferResult> result : results) {
+                assertEquals(TransferResult.COMPLETED, result.get(1, TimeUnit.MINUTES));
+            }
+
+            assertEquals(0, service.getInFlight());
+        }
+
+        assertArrayEquals(new long[] {1_000_000 - requests, requests}, system.getBalancesCents(0, 1));
+    }
+
+    @Test
+    void requestsPastTheCapAreRejectedAtOnce() throws Exception {
+        TransactionSystem system = newSystem();
+
+        try (BankingService service = new BankingService(system, 1, 10, TimeUnit.SECONDS, 2)) {
+            system.getAccount(0).lock();
+            // Holding a lock the first request needs, so it stays in flight.
+
+            CompletableFuture<TransferResult> first;
+
+            try {
+                first = service.transferCents(0, 1, 100);
+                CompletableFuture<TransferResult> second = service.transferCents(1, 0, 100);
+
+                assertTrue(second.isDone());
+                assertEquals(TransferResult.REJECTED, second.get());
+                assertEquals(1, service.getRejectedCount());
+                assertEquals(1, service.getInFlight());
+            } finally {
+                system.getAccount(0).unlock();
+            }
+
+            assertEquals(TransferResult.COMPLETED, first.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void aRequestThatCannotGetItsLocksInTimeTimesOut() throws Exception {
+        TransactionSystem system = newSystem();
+
+        try (BankingService service = new BankingService(system, 10, 50, TimeUnit.MILLISECONDS, 2)) {
+            system.getAccount(1).lock();
+
+            try {
+                assertEquals(TransferResult.TIMED_OUT, service.transferCents(0, 1, 100).get(10, TimeUnit.SECONDS));
+            } finally {
+                system.getAccount(1).unlock();
+            }
+
+            assertEquals(1, service.getTimedOutCount());
+        }
+
+        assertArrayEquals(new long[] {10_000, 10_000}, system.getBalancesCents(0, 1));
+    }
+
+    @Test
+    void aRetriedKeyIsAppliedOnce() throws Exception {
+        TransactionSystem system = newSystem();
+
+        try (BankingService service = new BankingService(system, 10, 1, TimeUnit.SECONDS, 2)) {
+            assertEquals(TransferResult.COMPLETED, service.transferOnce(9, 0, 1, 2_500).get(10, TimeUnit.SECONDS));
+            assertEquals(TransferResult.DUPLICATE, service.transferOnce(9, 0, 1, 2_500).get(10, TimeUnit.SECONDS));
+            assertThrows(IllegalArgumentException.class, () -> service.transferOnce(0, 0, 1, 2_500));
+        }
+
+        assertArrayEquals(new long[] {7_500, 12_500}, system.getBalancesCents(0, 1));
+    }
+
+    @Test
+    void requestsAfterCloseAreRejected() throws Exception {
+        BankingService service = new BankingService(newSystem(), 10, 1, TimeUnit.SECONDS, 2);
+        service.close();
+
+        assertEquals(TransferResult.REJECTED, service.transferCents(0, 1, 100).get(10, TimeUnit.SECONDS));
+        assertEquals(0, service.getInFlight());
+    }
+
+    @Test
+    void closingFromAnInterruptedThreadInterruptsTheRequestsInFlight() throws Exception {
+        TransactionSystem system = newSystem();
+        BankingService service = new BankingService(system, 10, 1, TimeUnit.MINUTES, 2);
+        system.getAccount(0).lock();
+
+        try {
+            CompletableFuture<TransferResult> waiting = service.transferCents(0, 1, 100);
+            // Waiting for the held lock, with a deadline far beyond the test.
+
+            Thread.currentThread().interrupt();
+            service.close();
+
+            assertTrue(Thread.interrupted(), "close must restore the caller's interrupt");
+            assertEquals(TransferResult.REJECTED, waiting.get(10, TimeUnit.SECONDS));
+            assertEquals(0, service.getInFlight());
+        } finally {
+            Thread.interrupted();
+            system.getAccount(0).unlock();
+        }
+
+        assertArrayEquals(new long[] {10_000, 10_000}, system.getBalancesCents(0, 1));
+    }
+
+    @Test
+    void closingRejectsRequestsStillQueuedForTheFallbackPool() throws Exception {
+        TransactionSystem system = newSystem();
+        BankingService service = new BankingService(system, 10, 1, TimeUnit.MINUTES, 1);
+        system.getAccount(0).lock();
+
+        try {
+            List<CompletableFuture<TransferResult>> results = new ArrayList<>();
+
+            for (int i = 0; i < 3; i++) {
+                results.add(service.transferCents(0, 1, 100));
+                // With one fallback thread the first request waits for the lock and the others queue behind it.
+            }
+
+            Thread.currentThread().interrupt();
+            service.close();
+            Thread.interrupted();
+
+            for (CompletableFuture<TransferResult> result : results) {
+                assertEquals(TransferResult.REJECTED, result.get(10, TimeUnit.SECONDS));
+            }
+
+            assertEquals(0, service.getInFlight());
+        } finally {
+            Thread.interrupted();
+            system.getAccount(0).unlock();
+        }
+    }
+
+    private static long usedHeapAfterGc() {
+        Runtime runtime = Runtime.getRuntime();
+
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static TransactionSystem newSystem() {
+        return new TransactionSystem(List.of(new BankAccount(0, 100.0), new BankAccount(1, 100.0)));
+    }
+}
@@ -0,0 +1,76 @@
+package banking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class EventLogTest {
+    // Checks that levels nest in the order OFF, WARN, INFO, DEBUG, that an unknown level name falls back to
+    // WARN, and that per-transfer events are only recorded once INFO is opted in to.
+
+    @AfterEach
+    void quietLog() {
+        EventLog.setSynchronous(false);
+        EventLog.setLevel(LogLevel.OFF);
+    }
+
+    @Test
+    void eachLevelIncludesTheOnesAboveIt() {
+        EventLog.setLevel(LogLevel.WARN);
+
+        assertTrue(EventLog.isEnabled(LogLevel.WARN));
+        assertFalse(EventLog.isEnabled(LogLevel.INFO));
+        assertFalse(EventLog.isEnabled(LogLevel.DEBUG));
+
+        EventLog.setLevel(LogLevel.OFF);
+
+        assertFalse(EventLog.isEnabled(LogLevel.WARN));
+    }
+
+    @Test
+    void aMistypedLevelFallsBackToWarn() {
+        assertEquals(LogLevel.INFO, EventLog.parseLevel(" info "));
+        assertEquals(LogLevel.WARN, EventLog.parseLevel(null));
+        assertEquals(LogLevel.WARN, EventLog.parseLevel("verbose"));
+    }
+
+    @Test
+    void transferEventsAreOnlyRecordedAtInfo() {
+        TransactionSystem system = new TransactionSystem(List.of(new BankAccount(1, 100.0), new BankAccount(2, 0.0)));
+
+        assertEquals("", printedDuring(LogLevel.WARN, () -> system.transferCents(1, 2, 100, 7)));
+
+        String info = printedDuring(LogLevel.INFO, () -> system.transferCents(1, 2, 100, 7));
+
+        assertTrue(info.contains("Thread 7 attempting transfer of $1.00 from Account 1 to Account 2"), info);
+        assertTrue(info.contains("Thread 7 completed transfer successfully"), info);
+    }
+
+    private static String printedDuring(LogLevel level, Runnable body) {
+        // Runs the body with events printed on the calling thread into a buffer, and returns what was printed.
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(buffer, true, StandardCharsets.UTF_8));
+        EventLog.setSynchronous(true);
+        EventLog.setLevel(level);
+
+        try {
+            body.run();
+        } finally {
+            EventLog.setLevel(LogLevel.OFF);
+            EventLog.setSynchronous(false);
+            System.setOut(console);
+        }
+
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,125 @@
+package banking;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class IdempotencyKeysTest {
+    // Checks that claimed keys are remembered until they expire, that a released key can be claimed again
+    // without disturbing its neighbours in the table, that memory stays bounded, and how transferOnce uses them.
+
+    @BeforeAll
+    static void quietLog() {
+        EventLog.setLevel(LogLevel.OFF);
+    }
+
+    @Test
+    void aClaimedKeyIsADuplicateUntilItExpires() throws InterruptedException {
+        IdempotencyKeys keys = new IdempotencyKeys(100, TimeUnit.MILLISECONDS, 1_000);
+
+        assertTrue(keys.claim(42));
+        assertFalse(keys.claim(42));
+        assertTrue(keys.contains(42));
+        assertEquals(1, keys.getDuplicateCount());
+
+        Thread.sleep(250);
+        // Past the retention period plus the one slice a key may outlive it by.
+
+        assertFalse(keys.contains(42));
+        assertEquals(0, keys.size());
+        assertTrue(keys.claim(42), "an expired key must be accepted again");
+    }
+
+    @Test
+    void aReleasedKeyCanBeClaimedAgain() {
+        IdempotencyKeys keys = new IdempotencyKeys(1, TimeUnit.HOURS, 1_000);
+
+        assertTrue(keys.claim(7));
+        keys.release(7);
+
+        assertFalse(keys.contains(7));
+        assertEquals(0, keys.size());
+        assertTrue(keys.claim(7));
+
+        keys.release(8);
+        // Releasing a key that was never claimed changes nothing.
+
+        assertTrue(keys.contains(7));
+        assertEquals(1, keys.size());
+    }
+
+    @Test
+    void releasingKeysKeepsTheOthersFindable() {
+        // Sequential keys fill runs of neighbouring slots, so removals must shift the keys after them back.
+
+        IdempotencyKeys keys = new IdempotencyKeys(1, TimeUnit.HOURS, 100_000);
+
+        for (long key = 1; key <= 20_000; key++) {
+            assertTrue(keys.claim(key));
+        }
+
+        for (long key = 1; key <= 20_000; key += 2) {
+            keys.release(key);
+        }
+
+        for (long key = 1; key <= 20_000; key++) {
+            assertEquals(key % 2 == 0, keys.contains(key), "key " + key);
+        }
+
+        assertEquals(10_000, keys.size());
+    }
+
+    @Test
+    void keysArrivingTooFastEndSlicesEarlyInsteadOfGrowingTheTables() {
+        IdempotencyKeys keys = new IdempotencyKeys(1, TimeUnit.HOURS, 1_000);
+
+        for (long key = 1; key <= 100_000; key++) {
+            keys.claim(key);
+        }
+
+        assertTrue(keys.getEarlyRotationCount() > 0);
+        assertTrue(keys.getTableBytes() <= keys.getMaxTableBytes());
+        assertTrue(keys.size() < 100_000, "the oldest keys must have been dropped");
+        assertTrue(keys.contains(100_000), "the newest key must be remembered");
+    }
+
+    @Test
+    void transferOnceAppliesAKeyOnlyOnce() {
+        TransactionSystem system = newSystem();
+
+        assertEquals(TransferResult.COMPLETED, system.transferOnce(1, 0, 1, 2_500));
+        assertEquals(TransferResult.DUPLICATE, system.transferOnce(1, 0, 1, 2_500));
+        assertArrayEquals(new long[] {7_500, 12_500}, system.getBalancesCents(0, 1));
+    }
+
+    @Test
+    void transferOnceReleasesTheKeyOfATransferThatChangedNothing() {
+        TransactionSystem system = newSystem();
+
+        assertEquals(TransferResult.INSUFFICIENT_FUNDS, system.transferOnce(2, 0, 1, 20_000));
+        assertFalse(system.getIdempotencyKeys().contains(2));
+
+        system.depositCents(0, 10_000);
+        // The client tops up the account and retries with the same key.
+
+        assertEquals(TransferResult.COMPLETED, system.transferOnce(2, 0, 1, 20_000));
+        assertArrayEquals(new long[] {0, 30_000}, system.getBalancesCents(0, 1));
+    }
+
+    @Test
+    void keyZeroIsRefused() {
+        assertThrows(IllegalArgumentException.class, () -> newSystem().transferOnce(0, 0, 1, 100));
+    }
+
+    private static TransactionSystem newSystem() {
+        return new TransactionSystem(List.of(new BankAccount(0, 100.0), new BankAccount(1, 100.0)));
+    }
+}
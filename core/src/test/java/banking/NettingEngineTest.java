@@ -0,0 +1,122 @@
+package banking;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class NettingEngineTest {
+    // Checks that a file is settled on each account's net position, all or nothing, and that netting a file
+    // large enough to be split across the pool gives the same changes as adding the records up in order.
+
+    private NettingEngine engine;
+
+    @BeforeAll
+    static void quietLog() {
+        EventLog.setLevel(LogLevel.OFF);
+    }
+
+    @AfterEach
+    void stopPool() {
+        if (engine != null) {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    void recordsThatWouldBounceInFileOrderSettleOnTheNetPosition() {
+        TransactionSystem system = newSystem(new int[] {1, 2, 3}, new long[] {0, 0, 500});
+        engine = new NettingEngine(system, 2);
+
+        NettingEngine.Result result = engine.settle(new int[] {1, 2, 3}, new int[] {2, 3, 1},
+                new long[] {300, 300, 500}, 3);
+        // Account 1 pays 300 before it has received anything, which only the net position covers.
+
+        assertTrue(result.isApplied());
+        assertEquals(3, result.getRecords());
+        assertEquals(2, result.getAccountsChanged());
+        assertArrayEquals(new long[] {200, 0, 300}, system.getBalancesCents(1, 2, 3));
+    }
+
+    @Test
+    void aNetOverdraftRejectsTheWholeFile() {
+        TransactionSystem system = newSystem(new int[] {1, 2, 3}, new long[] {1_000, 100, 0});
+        engine = new NettingEngine(system, 2);
+
+        NettingEngine.Result result = engine.settle(new int[] {1, 2, 2}, new int[] {3, 3, 1},
+                new long[] {400, 300, 50}, 3);
+        // Account 2 owes 350 net against a balance of 100.
+
+        assertFalse(result.isApplied());
+        assertArrayEquals(new int[] {2}, result.getOverdrawnAccountIds());
+        assertArrayEquals(new long[] {1_000, 100, 0}, system.getBalancesCents(1, 2, 3));
+    }
+
+    @Test
+    void aFileSplitAcrossThePoolNetsLikeASequentialSum() {
+        int accounts = 500;
+        int records = 400_000;
+        // Several times the smallest part given to one task, so the file is split.
+
+        int[] ids = new int[accounts];
+        long[] opening = new long[accounts];
+
+        for (int i = 0; i < accounts; i++) {
+            ids[i] = 1_000 + 7 * i;
+            opening[i] = 10_000_000;
+            // Sparse IDs, so accounts are found by binary search rather than by position.
+        }
+
+        Random random = new Random(11);
+        int[] from = new int[records];
+        int[] to = new int[records];
+        long[] amounts = new long[records];
+        long[] expected = opening.clone();
+
+        for (int r = 0; r < records; r++) {
+            int f = random.nextInt(accounts);
+            int t = random.nextInt(accounts);
+            from[r] = ids[f];
+            to[r] = ids[t];
+            amounts[r] = 1 + random.nextInt(1_000);
+            expected[f] -= amounts[r];
+            expected[t] += amounts[r];
+        }
+
+        TransactionSystem system = newSystem(ids, opening);
+        engine = new NettingEngine(system, 4);
+
+        assertTrue(engine.settle(from, to, amounts, records).isApplied());
+        assertArrayEquals(expected, system.getBalancesCents(ids));
+        assertEquals(accounts * 10_000_000L, system.getTotalBalanceCents());
+    }
+
+    @Test
+    void aRecordForAnUnknownAccountIsRefused() {
+        TransactionSystem system = newSystem(new int[] {1, 2}, new long[] {100, 100});
+        engine = new NettingEngine(system, 1);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> engine.settle(new int[] {1}, new int[] {9}, new long[] {10}, 1));
+        assertArrayEquals(new long[] {100, 100}, system.getBalancesCents(1, 2));
+    }
+
+    private static TransactionSystem newSystem(int[] ids, long[] cents) {
+        List<BankAccount> accounts = new ArrayList<>();
+
+        for (int i = 0; i < ids.length; i++) {
+            accounts.add(new BankAccount(ids[i], cents[i]));
+        }
+
+        return new TransactionSystem(accounts);
+    }
+}
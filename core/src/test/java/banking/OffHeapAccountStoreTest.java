@@ -0,0 +1,189 @@
+package banking;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OffHeapAccountStoreTest {
+    // Checks that the off-heap store keeps to its bounds, that a credit that would overflow changes nothing,
+    // that compare-and-set updates on one slot lose nothing, and that a TransactionSystem runs on the store,
+    // with accounts that share a stripe lock, a consistent total and recovery from the journal.
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void quietLog() {
+        EventLog.setLevel(LogLevel.OFF);
+    }
+
+    @Test
+    void theStoreKeepsToItsBounds() {
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapAccountStore(0));
+        assertThrows(IllegalArgumentException.class, () -> new OffHeapAccountStore(OffHeapAccountStore.MAX_ACCOUNTS + 1));
+
+        OffHeapAccountStore store = new OffHeapAccountStore(3);
+        store.open(7, 700);
+        store.open(-2, 200);
+        assertThrows(IllegalArgumentException.class, () -> store.open(7, 1));
+        store.open(5, 500);
+        assertThrows(IllegalStateException.class, () -> store.open(9, 900));
+
+        assertEquals(3, store.size());
+        assertArrayEquals(new int[] {-2, 5, 7}, store.sortedIds());
+        assertEquals(700, store.getBalanceCents(7));
+        assertEquals(1_400, store.getTotalBalanceCents());
+        assertNull(store.get(9));
+        assertFalse(store.contains(9));
+        assertThrows(IllegalArgumentException.class, () -> store.getBalanceCents(9));
+
+        List<Integer> walked = new ArrayList<>();
+        store.forEach(account -> walked.add(account.getId()));
+        walked.sort(null);
+        assertEquals(List.of(-2, 5, 7), walked);
+    }
+
+    @Test
+    void aCreditThatWouldOverflowChangesNothing() {
+        OffHeapAccountStore store = new OffHeapAccountStore(2);
+        store.open(1, Long.MAX_VALUE - 10);
+        store.open(2, 100);
+        BankAccount account = store.get(1);
+
+        assertThrows(ArithmeticException.class, () -> account.depositCents(11));
+        assertEquals(Long.MAX_VALUE - 10, store.getBalanceCents(1));
+
+        TransactionSystem system = new TransactionSystem(store);
+        assertFalse(system.transferCents(2, 1, 11, 0));
+        assertEquals(Long.MAX_VALUE - 10, store.getBalanceCents(1));
+        assertEquals(100, store.getBalanceCents(2));
+
+        assertFalse(store.get(2).withdrawCents(101));
+        assertEquals(100, store.getBalanceCents(2));
+        assertThrows(UnsupportedOperationException.class, () -> store.get(2).split(4));
+    }
+
+    @Test
+    void concurrentDepositsAndWithdrawalsOnOneSlotLoseNothing() throws InterruptedException {
+        OffHeapAccountStore store = new OffHeapAccountStore(1);
+        store.open(1, 0);
+        AtomicLong withdrawn = new AtomicLong();
+        AtomicLong overdrawn = new AtomicLong();
+
+        runOnThreads(8, () -> {
+            for (int i = 0; i < 20_000; i++) {
+                store.get(1).depositCents(5);
+                // Each call gets its own view, as TransactionSystem's lookups do.
+
+                if (store.get(1).withdrawCents(7)) {
+                    withdrawn.addAndGet(7);
+                }
+
+                if (store.getBalanceCents(1) < 0) {
+                    overdrawn.incrementAndGet();
+                }
+            }
+        });
+
+        assertEquals(0, overdrawn.get());
+        assertEquals(8 * 20_000 * 5 - withdrawn.get(), store.getBalanceCents(1));
+    }
+
+    @Test
+    void transfersBetweenAccountsThatShareStripesKeepTheTotal() throws InterruptedException {
+        int accounts = 40;
+        OffHeapAccountStore store = new OffHeapAccountStore(10 * OffHeapAccountStore.STRIPES);
+        // Ten IDs per stripe, so most transfers lock two accounts that share a stripe or sit in neighbouring ones.
+
+        for (int id = 1; id <= accounts; id++) {
+            store.open(id, 10_000);
+        }
+
+        TransactionSystem system = new TransactionSystem(store);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong badTotals = new AtomicLong();
+
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                if (system.getTotalBalanceCents() != accounts * 10_000L) {
+                    badTotals.incrementAndGet();
+                }
+            }
+        });
+        reader.start();
+
+        runOnThreads(4, () -> {
+            SplittableRandom random = new SplittableRandom();
+
+            for (int i = 0; i < 20_000; i++) {
+                system.transferCents(1 + random.nextInt(accounts), 1 + random.nextInt(accounts), 1 + random.nextInt(500), 0);
+            }
+        });
+
+        done.set(true);
+        reader.join();
+
+        assertEquals(0, badTotals.get());
+        assertEquals(accounts * 10_000L, system.getTotalBalanceCents());
+        assertEquals(4 * 20_000, system.getMetrics().getTransfers());
+        // Every transfer took its locks and was counted on its source account's slot.
+
+        for (int id = 1; id <= accounts; id++) {
+            assertTrue(store.getBalanceCents(id) >= 0);
+        }
+    }
+
+    @Test
+    void aJournaledSystemRecoversIntoAnOffHeapStore() throws IOException {
+        long[] expected;
+
+        try (TransactionJournal journal = TransactionJournal.open(directory, FsyncPolicy.OS_MANAGED)) {
+            OffHeapAccountStore store = new OffHeapAccountStore(3);
+            store.open(1, 10_000);
+            store.open(2, 0);
+            store.open(3, 500);
+            TransactionSystem system = new TransactionSystem(store, journal);
+
+            assertTrue(system.transferCents(1, 2, 2_500, 0));
+            system.takeSnapshot();
+            assertTrue(system.transferCents(3, 1, 200, 0));
+            expected = system.getBalancesCents(1, 2, 3);
+        }
+
+        try (TransactionJournal journal = TransactionJournal.open(directory, FsyncPolicy.OS_MANAGED)) {
+            TransactionSystem recovered = TransactionSystem.recover(journal, new OffHeapAccountStore(3));
+
+            assertArrayEquals(new long[] {7_700, 2_500, 300}, expected);
+            assertArrayEquals(expected, recovered.getBalancesCents(1, 2, 3));
+        }
+    }
+
+    private static void runOnThreads(int threads, Runnable body) throws InterruptedException {
+        List<Thread> started = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(body);
+            thread.start();
+            started.add(thread);
+        }
+
+        for (Thread thread : started) {
+            thread.join();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package banking;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class PostingTest {
+    // Checks how a Posting merges its legs and that TransactionSystem.post applies it all-or-nothing.
+
+    @BeforeAll
+    static void quietLog() {
+        EventLog.setLevel(LogLevel.OFF);
+    }
+
+    @Test
+    void legsAreSortedByAccount() {
+        Posting posting = new Posting(new int[] {7, 2, 5}, new long[] {300, -500, 200});
+
+        assertArrayEquals(new int[] {2, 5, 7}, accountIds(posting));
+        assertArrayEquals(new long[] {-500, 200, 300}, deltas(posting));
+        assertEquals(3, posting.getLegCount());
+    }
+
+    @Test
+    void legsOnTheSameAccountAreSummed() {
+        Posting posting = new Posting(new int[] {4, 1, 4, 1}, new long[] {100, -250, 50, 100});
+
+        assertArrayEquals(new int[] {1, 4}, accountIds(posting));
+        assertArrayEquals(new long[] {-150, 150}, deltas(posting));
+        assertEquals(4, posting.getLegCount());
+    }
+
+    @Test
+    void legsThatCancelOutAreDropped() {
+        Posting posting = new Posting(new int[] {3, 9, 3, 1, 9}, new long[] {500, 70, -500, -100, 30});
+
+        assertArrayEquals(new int[] {1, 9}, accountIds(posting));
+        assertArrayEquals(new long[] {-100, 100}, deltas(posting));
+    }
+
+    @Test
+    void cancellingOutInTheMiddleOfAnAccountsLegsKeepsTheRest() {
+        // The first two legs of account 5 cancel, the third must survive the merge.
+
+        Posting posting = new Posting(new int[] {5, 5, 5, 6}, new long[] {10, -10, 3, -3});
+
+        assertArrayEquals(new int[] {5, 6}, accountIds(posting));
+        assertArrayEquals(new long[] {3, -3}, deltas(posting));
+    }
+
+    @Test
+    void aPostingWhoseLegsAllCancelChangesNothing() {
+        TransactionSystem system = newSystem();
+        Posting posting = new Posting(new int[] {0, 1, 0, 1}, new long[] {-500, 500, 500, -500});
+
+        assertEquals(0, posting.size());
+        assertEquals(TransferResult.COMPLETED, system.post(posting));
+        assertArrayEquals(new long[] {10_000, 10_000, 10_000}, system.getBalancesCents(0, 1, 2));
+    }
+
+    @Test
+    void unbalancedOrMismatchedLegsAreRefused() {
+        assertThrows(IllegalArgumentException.class, () -> new Posting(new int[] {1, 2}, new long[] {-100, 99}));
+        assertThrows(IllegalArgumentException.class, () -> new Posting(new int[] {1, 2}, new long[] {-100}));
+        assertThrows(ArithmeticException.class,
+                () -> new Posting(new int[] {1, 2, 3}, new long[] {Long.MAX_VALUE, 1, -1}));
+    }
+
+    @Test
+    void withFeeChargesThePayerAmountPlusFee() {
+        Posting posting = Posting.withFee(0, 1, 2_000, 2, 150);
+
+        assertArrayEquals(new int[] {0, 1, 2}, accountIds(posting));
+        assertArrayEquals(new long[] {-2_150, 2_000, 150}, deltas(posting));
+    }
+
+    @Test
+    void postAppliesEveryLegOrNone() {
+        TransactionSystem system = newSystem();
+
+        assertEquals(TransferResult.COMPLETED, system.post(Posting.withFee(0, 1, 2_000, 2, 150)));
+        assertArrayEquals(new long[] {7_850, 12_000, 10_150}, system.getBalancesCents(0, 1, 2));
+
+        Posting overdraws = new Posting(new int[] {0, 1, 2}, new long[] {-7_851, 7_000, 851});
+
+        assertEquals(TransferResult.INSUFFICIENT_FUNDS, system.post(overdraws));
+        assertArrayEquals(new long[] {7_850, 12_000, 10_150}, system.getBalancesCents(0, 1, 2));
+        // The credits to 1 and 2 must not have been applied either.
+
+        assertEquals(TransferResult.UNKNOWN_ACCOUNT, system.post(Posting.transfer(0, 42, 100)));
+        assertEquals(30_000, system.getTotalBalanceCents());
+    }
+
+    private static int[] accountIds(Posting posting) {
+        int[] ids = new int[posting.size()];
+
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = posting.getAccountId(i);
+        }
+
+        return ids;
+    }
+
+    private static long[] deltas(Posting posting) {
+        long[] deltas = new long[posting.size()];
+
+        for (int i = 0; i < deltas.length; i++) {
+            deltas[i] = posting.getDeltaCents(i);
+        }
+
+        return deltas;
+    }
+
+    private static TransactionSystem newSystem() {
+        // Three accounts holding $100.00 each.
+
+        return new TransactionSystem(List.of(new BankAccount(0, 100.0), new BankAccount(1, 100.0),
+                new BankAccount(2, 100.0)));
+    }
+}
@@ -0,0 +1,198 @@
+package banking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class ShardedTransactionSystemTest {
+    // Checks that transfers within and across shards conserve the total, that unknown accounts, overdrafts
+    // and overflowing credits are refused, that several threads can read the total at once while transfers
+    // run, and that a cut which meets a stopped shard fails without holding the other shards.
+
+    private static final int ACCOUNTS = 40;
+    private static final int SHARDS = 4;
+    private static final long START_CENTS = 10_000;
+
+    @BeforeAll
+    static void quietLog() {
+        EventLog.setLevel(LogLevel.OFF);
+    }
+
+    @Test
+    void transfersWithinAndAcrossShardsConserveTheTotal() throws InterruptedException {
+        try (ShardedTransactionSystem system = newSystem()) {
+            runTransfers(system, 4, 10_000);
+
+            assertEquals(ACCOUNTS * START_CENTS, system.getTotalBalanceCents());
+
+            for (int id = 0; id < ACCOUNTS; id++) {
+                assertTrue(system.getBalanceCents(id) >= 0);
+            }
+        }
+    }
+
+    @Test
+    void unknownAccountsAndOverdraftsAreRefused() {
+        try (ShardedTransactionSystem system = newSystem()) {
+            assertFalse(system.transferCents(0, ACCOUNTS + 1, 1));
+            assertFalse(system.transferCents(0, 1, START_CENTS + 1));
+            assertTrue(system.transferCents(0, 1, START_CENTS));
+
+            assertEquals(0, system.getBalanceCents(0));
+            assertEquals(2 * START_CENTS, system.getBalanceCents(1));
+            assertEquals(ACCOUNTS * START_CENTS, system.getTotalBalanceCents());
+        }
+    }
+
+    @Test
+    void aCreditThatWouldOverflowIsRefusedWithinAndAcrossShards() {
+        List<BankAccount> accounts = new ArrayList<>();
+        accounts.add(new BankAccount(0, Long.MAX_VALUE - 5));
+
+        for (int id = 1; id < ACCOUNTS; id++) {
+            accounts.add(new BankAccount(id, START_CENTS));
+        }
+
+        try (ShardedTransactionSystem system = new ShardedTransactionSystem(accounts, SHARDS)) {
+            int local = otherAccount(system, 0, true);
+            int remote = otherAccount(system, 0, false);
+
+            assertFalse(system.transferCents(local, 0, 10));
+            assertFalse(system.transferCents(remote, 0, 10));
+
+            assertEquals(Long.MAX_VALUE - 5, system.getBalanceCents(0));
+            assertEquals(START_CENTS, system.getBalanceCents(local));
+            assertEquals(START_CENTS, system.getBalanceCents(remote));
+
+            assertTrue(system.transferCents(remote, 0, 5));
+            assertEquals(Long.MAX_VALUE, system.getBalanceCents(0));
+            assertFalse(system.transferCents(local, 0, 1));
+        }
+    }
+
+    @Test
+    void aCutThatMeetsAStoppedShardLeavesTheOthersRunning() {
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            try (ShardedTransactionSystem system = newSystem()) {
+                system.shutdownShardNow(SHARDS - 1);
+                // The last shard is queued last, so every other shard is already at its barrier when it refuses.
+
+                assertThrows(RejectedExecutionException.class, system::getTotalBalanceCents);
+
+                int from = firstAccountOn(system, 0);
+                int to = otherAccount(system, from, true);
+
+                assertTrue(system.transferCents(from, to, 1));
+                assertEquals(START_CENTS - 1, system.getBalanceCents(from));
+            }
+        });
+    }
+
+    @Test
+    void severalThreadsReadTheTotalWhileTransfersRun() {
+        assertTimeoutPreemptively(Duration.ofSeconds(60), () -> {
+            try (ShardedTransactionSystem system = newSystem()) {
+                AtomicBoolean done = new AtomicBoolean();
+                AtomicReference<Long> wrong = new AtomicReference<>();
+                List<Thread> readers = new ArrayList<>();
+
+                for (int r = 0; r < 4; r++) {
+                    Thread reader = new Thread(() -> {
+                        while (!done.get()) {
+                            long total = system.getTotalBalanceCents();
+
+                            if (total != ACCOUNTS * START_CENTS) {
+                                wrong.compareAndSet(null, total);
+                            }
+                        }
+                    }, "total-reader-" + r);
+
+                    reader.start();
+                    readers.add(reader);
+                }
+
+                try {
+                    runTransfers(system, 4, 5_000);
+                } finally {
+                    done.set(true);
+
+                    for (Thread reader : readers) {
+                        reader.join();
+                    }
+                }
+
+                assertNull(wrong.get());
+                assertEquals(ACCOUNTS * START_CENTS, system.getTotalBalanceCents());
+            }
+        });
+    }
+
+    private static int firstAccountOn(ShardedTransactionSystem system, int shard) {
+        for (int id = 0; id < ACCOUNTS; id++) {
+            if (system.shardOf(id) == shard) {
+                return id;
+            }
+        }
+
+        throw new IllegalStateException("No account on shard " + shard);
+    }
+
+    private static int otherAccount(ShardedTransactionSystem system, int accountId, boolean sameShard) {
+        for (int id = 0; id < ACCOUNTS; id++) {
+            if (id != accountId && (system.shardOf(id) == system.shardOf(accountId)) == sameShard) {
+                return id;
+            }
+        }
+
+        throw new IllegalStateException("No account for " + accountId);
+    }
+
+    private static ShardedTransactionSystem newSystem() {
+        List<BankAccount> accounts = new ArrayList<>();
+
+        for (int id = 0; id < ACCOUNTS; id++) {
+            accounts.add(new BankAccount(id, START_CENTS));
+        }
+
+        return new ShardedTransactionSystem(accounts, SHARDS);
+    }
+
+    private static void runTransfers(ShardedTransactionSystem system, int threads, int transfersPerThread)
+            throws InterruptedException {
+        List<Thread> started = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+
+                for (int i = 0; i < transfersPerThread; i++) {
+                    int from = random.nextInt(ACCOUNTS);
+                    int to = random.nextInt(ACCOUNTS - 1);
+
+                    system.transferCents(from, to >= from ? to + 1 : to, random.nextLong(1, 2_000));
+                }
+            });
+
+            thread.start();
+            started.add(thread);
+        }
+
+        for (Thread thread : started) {
+            thread.join();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package banking;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TransactionJournalTest {
+    // Checks that replay and recovery stop cleanly at a torn write, leave out a group cut off before its
+    // COMMIT, that GROUP_COMMIT waits return once forced and never hang on a closed journal, that a closed
+    // journal writes nothing a rolled-back change would leave behind, and that transfers wait for the disk
+    // with their account locks released, and that a snapshot taken while transfers run recovers with the
+    // journal tail after it.
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void quietLog() {
+        EventLog.setLevel(LogLevel.OFF);
+    }
+
+    @Test
+    void replayStopsAtATornFinalRecord() throws IOException {
+        try (TransactionJournal journal = open(FsyncPolicy.OS_MANAGED)) {
+            journal.append(TransactionJournal.OPEN, 1, 0, 10_000);
+            journal.append(TransactionJournal.OPEN, 2, 0, 0);
+            journal.append(TransactionJournal.TRANSFER, 1, 2, 500);
+            journal.append(TransactionJournal.TRANSFER, 1, 2, 700);
+        }
+
+        tear(onlySegment(), 3);
+        // Damaging the amount of the fourth record, as a crash part-way through writing it would.
+
+        assertEquals(List.of(1L, 2L, 3L), sequences());
+    }
+
+    @Test
+    void reopeningAfterATornWriteContinuesFromTheLastGoodRecord() throws IOException {
+        try (TransactionJournal journal = open(FsyncPolicy.OS_MANAGED)) {
+            journal.append(TransactionJournal.OPEN, 1, 0, 10_000);
+            journal.append(TransactionJournal.DEPOSIT, 1, 0, 100);
+            journal.append(TransactionJournal.DEPOSIT, 1, 0, 200);
+        }
+
+        tear(onlySegment(), 2);
+
+        try (TransactionJournal journal = open(FsyncPolicy.OS_MANAGED)) {
+            assertEquals(2, journal.getLastSequence());
+            assertEquals(3, journal.append(TransactionJournal.DEPOSIT, 1, 0, 300));
+            // The torn record's sequence number is handed out again, in the new segment.
+        }
+
+        assertEquals(List.of(1L, 2L, 3L), sequences());
+
+        try (TransactionJournal journal = open(FsyncPolicy.OS_MANAGED)) {
+            assertEquals(10_400, TransactionSystem.recover(journal).getBalancesCents(1)[0]);
+        }
+    }
+
+    @Test
+    void recoveryLeavesOutAGroupWhoseCommitWasTorn() throws IOException {
+        try (TransactionJournal journal = open(FsyncPolicy.OS_MANAGED)) {
+            journal.append(TransactionJournal.OPEN, 1, 0, 10_000);
+            journal.append(TransactionJournal.OPEN, 2, 0, 0);
+            journal.appendGroup(new int[] {1, 2}, new long[] {-300, 300});
+            journal.appendGroup(new int[] {1, 2}, new long[] {-4_000, 4_000});
+            // Records 3 to 6 are the first group and 7 to 10 the second.
+        }
+
+        tear(onlySegment(), 9);
+        // Damaging the second group's COMMIT, so its two legs are on disk without it.
+
+        try (TransactionJournal journal = open(FsyncPolicy.OS_MANAGED)) {
+            assertArrayEquals(new long[] {9_700, 300}, TransactionSystem.recover(journal).getBalancesCents(1, 2));
+        }
+    }
+
+    @Test
+    void recoveryLeavesOutAGroupCutOffPartWayThroughItsLegs() throws IOException {
+        try (TransactionJournal journal = open(FsyncPolicy.OS_MANAGED)) {
+            journal.append(TransactionJournal.OPEN, 1, 0, 10_000);
+            journal.append(TransactionJournal.OPEN, 2, 0, 0);
+            journal.append(TransactionJournal.OPEN, 3, 0, 0);
+            journal.appendGroup(new int[] {1, 2, 3}, new long[] {-1_000, 600, 400});
+            // Records 4 to 8.
+        }
+
+        tear(onlySegment(), 5);
+        // Damaging the group's second leg; replay ends there, so the first leg must not be applied alone.
+
+        try (TransactionJournal journal = open(FsyncPolicy.OS_MANAGED)) {
+            assertArrayEquals(new long[] {10_000, 0, 0}, TransactionSystem.recover(journal).getBalancesCents(1, 2, 3));
+        }
+    }
+
+    @Test
+    void aGroupLargerThanASegmentIsRecoveredWhole() throws IOException {
+        try (TransactionJournal journal = TransactionJournal.open(directory, FsyncPolicy.OS_MANAGED, 1_000,
+                4 * TransactionJournal.RECORD_SIZE)) {
+            // Segments of four records, so the seven records of the group below span two of them.
+
+            for (int id = 1; id <= 5; id++) {
+                journal.append(TransactionJournal.OPEN, id, 0, 1_000);
+            }
+
+            journal.appendGroup(new int[] {1, 2, 3, 4, 5}, new long[] {-500, -500, 300, 300, 400});
+        }
+
+        try (TransactionJournal journal = open(FsyncPolicy.OS_MANAGED)) {
+            assertArrayEquals(new long[] {500, 500, 1_300, 1_300, 1_400},
+                    TransactionSystem.recover(journal).getBalancesCents(1, 2, 3, 4, 5));
+        }
+    }
+
+    @Test
+    void groupCommitAppendsFromManyThreadsAreAllReplayed() throws Exception {
+        int threads = 8;
+        int perThread = 200;
+
+        try (TransactionJournal journal = open(FsyncPolicy.GROUP_COMMIT)) {
+            Thread[] appenders = new Thread[threads];
+
+            for (int t = 0; t < threads; t++) {
+                int account = t;
+
+                appenders[t] = new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        journal.awaitDurable(journal.append(TransactionJournal.DEPOSIT, account, 0, 1));
+                    }
+                });
+
+                appenders[t].start();
+            }
+
+            for (Thread appender : appenders) {
+                appender.join();
+            }
+        }
+
+        assertEquals(threads * perThread, sequences().size());
+    }
+
+    @Test
+    void groupCommitAppendOnAClosedJournalFailsInsteadOfWaiting() throws IOException {
+        TransactionJournal journal = open(FsyncPolicy.GROUP_COMMIT);
+        journal.append(TransactionJournal.OPEN, 1, 0, 100);
+        journal.close();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertThrows(IllegalStateException.class,
+                () -> journal.append(TransactionJournal.DEPOSIT, 1, 0, 1)));
+    }
+
+    @Test
+    void aTransferTheJournalRefusesIsRolledBackAndLeavesNoRecord() throws IOException {
+        TransactionJournal journal = open(FsyncPolicy.GROUP_COMMIT);
+        TransactionSystem system = new TransactionSystem(List.of(new BankAccount(1, 100.0), new BankAccount(2, 0.0)),
+                journal);
+        journal.close();
+
+        assertFalse(system.transferCents(1, 2, 2_500, 0));
+        assertArrayEquals(new long[] {10_000, 0}, system.getBalancesCents(1, 2));
+        assertEquals(List.of(1L, 2L), sequences());
+        // Only the two openings; the refused transfer wrote nothing that recovery could replay.
+
+        try (TransactionJournal reopened = open(FsyncPolicy.OS_MANAGED)) {
+            assertArrayEquals(new long[] {10_000, 0}, TransactionSystem.recover(reopened).getBalancesCents(1, 2));
+        }
+    }
+
+    @Test
+    void groupCommitTransfersWaitForTheDiskWithTheirLocksReleased() throws Exception {
+        // With a 100 ms commit interval, twenty transfers on one pair of accounts would take two seconds if each
+        // waited for its commit while holding the pair's locks; released, they share one or two commits.
+
+        int transfers = 20;
+
+        try (TransactionJournal journal = TransactionJournal.open(directory, FsyncPolicy.GROUP_COMMIT, 100_000,
+                4_096)) {
+            TransactionSystem system = new TransactionSystem(List.of(new BankAccount(1, 100.0),
+                    new BankAccount(2, 0.0)), journal);
+            Thread[] senders = new Thread[transfers];
+            long start = System.nanoTime();
+
+            for (int t = 0; t < transfers; t++) {
+                senders[t] = new Thread(() -> system.transferCents(1, 2, 100, 0));
+                senders[t].start();
+            }
+
+            for (Thread sender : senders) {
+                sender.join();
+            }
+
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            assertArrayEquals(new long[] {8_000, 2_000}, system.getBalancesCents(1, 2));
+            assertTrue(elapsedMillis < 1_000, "transfers took " + elapsedMillis + " ms");
+        }
+
+        assertEquals(2 + transfers, sequences().size());
+    }
+
+    @Test
+    void aSnapshotTakenWhileTransfersRunRecoversWithTheTailAfterIt() throws Exception {
+        int accounts = 20;
+        List<BankAccount> accountList = new ArrayList<>();
+
+        for (int id = 1; id <= accounts; id++) {
+            accountList.add(new BankAccount(id, 100.0));
+        }
+
+        int[] ids = accountList.stream().mapToInt(BankAccount::getId).toArray();
+        long[] expected;
+
+        try (TransactionJournal journal = TransactionJournal.open(directory, FsyncPolicy.OS_MANAGED)) {
+            TransactionSystem system = new TransactionSystem(accountList, journal);
+            AtomicBoolean stop = new AtomicBoolean();
+            Thread[] senders = new Thread[4];
+
+            for (int t = 0; t < senders.length; t++) {
+                int threadNumber = t;
+
+                senders[t] = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+
+                    while (!stop.get()) {
+                        system.transferCents(1 + random.nextInt(accounts), 1 + random.nextInt(accounts),
+                                1 + random.nextInt(500), threadNumber);
+                    }
+                });
+
+                senders[t].start();
+            }
+
+            try {
+                Thread.sleep(50);
+                system.takeSnapshot();
+                Thread.sleep(50);
+                // Leaving a tail of transfers after the snapshot as well as before it.
+            } finally {
+                stop.set(true);
+
+                for (Thread sender : senders) {
+                    sender.join();
+                }
+            }
+
+            expected = system.getBalancesCents(ids);
+        }
+
+        try (TransactionJournal reopened = TransactionJournal.open(directory, FsyncPolicy.OS_MANAGED)) {
+            TransactionSystem recovered = TransactionSystem.recover(reopened);
+
+            assertArrayEquals(expected, recovered.getBalancesCents(ids));
+            assertEquals(accounts * 10_000L, recovered.getTotalBalanceCents());
+        }
+    }
+
+    private TransactionJournal open(FsyncPolicy policy) throws IOException {
+        // Opens the journal with the default interval and small segments, so each test's records share one.
+
+        return TransactionJournal.open(directory, policy, 1_000, 4_096);
+    }
+
+    private List<Long> sequences() throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        TransactionJournal.replay(directory, 0, (sequence, type, accountId, otherAccountId, amountCents) ->
+                sequences.add(sequence));
+        return sequences;
+    }
+
+    private Path onlySegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files.toList();
+            assertEquals(1, segments.size());
+            return segments.get(0);
+        }
+    }
+
+    private static void tear(Path segment, int record) throws IOException {
+        // Overwrites the amount of the record at the given index, leaving its sequence number intact, so only
+        // the checksum shows the record is damaged.
+
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0x5A, 0x5A, 0x5A, 0x5A, 0x5A, 0x5A, 0x5A, 0x5A}),
+                    (long) record * TransactionJournal.RECORD_SIZE + 24);
+        }
+    }
+}
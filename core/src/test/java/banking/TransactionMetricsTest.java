@@ -0,0 +1,141 @@
+package banking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class TransactionMetricsTest {
+    // Checks the outcome counters, and that a lock wait is recorded whichever path waited for the lock: a
+    // plain transfer, a transfer with a timeout, a TransferEngine batch, or a deposit or withdrawal.
+
+    @BeforeAll
+    static void quietLog() {
+        EventLog.setLevel(LogLevel.OFF);
+    }
+
+    @Test
+    void eachOutcomeIsCounted() throws InterruptedException {
+        TransactionSystem system = newSystem();
+
+        assertTrue(system.transferCents(1, 2, 1_000, 0));
+        assertTrue(system.transferCents(2, 1, 500, 0));
+        assertFalse(system.transferCents(1, 2, 1_000_000, 0));
+
+        BankAccount held = system.getAccount(1);
+        held.lock();
+
+        try {
+            CompletableFuture<TransferResult> waiting = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return system.tryTransferCents(1, 2, 100, 10, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+            assertEquals(TransferResult.TIMED_OUT, waiting.join());
+        } finally {
+            held.unlock();
+        }
+
+        TransactionMetrics.Snapshot snapshot = system.getMetrics().snapshot(0);
+
+        assertEquals(4, snapshot.getTransfers());
+        assertEquals(2, snapshot.getCompleted());
+        assertEquals(1, snapshot.getInsufficientFunds());
+        assertEquals(1, snapshot.getTimedOut());
+        assertEquals(0, snapshot.getFailed());
+    }
+
+    @Test
+    void aContendedWaitIsRecordedOnATransferWithATimeout() throws Exception {
+        TransactionSystem system = newSystem();
+
+        CompletableFuture<TransferResult> waiting = whileHeld(system, () -> {
+            try {
+                return system.tryTransferCents(1, 2, 100, 10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertEquals(TransferResult.COMPLETED, waiting.join());
+        assertLockWaitRecorded(system);
+    }
+
+    @Test
+    void aContendedWaitIsRecordedOnATransferEngineBatch() throws Exception {
+        TransactionSystem system = newSystem();
+        TransferEngine engine = new TransferEngine(system, 1, 16, 16);
+
+        try {
+            CompletableFuture<TransferResult> waiting = whileHeld(system,
+                    () -> engine.submit(1, 2, 1.00).join());
+
+            assertEquals(TransferResult.COMPLETED, waiting.join());
+        } finally {
+            engine.shutdown();
+        }
+
+        assertLockWaitRecorded(system);
+    }
+
+    @Test
+    void aContendedWaitIsRecordedOnADepositAndAWithdrawal() throws Exception {
+        TransactionSystem system = newSystem();
+
+        CompletableFuture<TransferResult> deposit = whileHeld(system, () -> {
+            system.depositCents(1, 100);
+            return TransferResult.COMPLETED;
+        });
+
+        assertEquals(TransferResult.COMPLETED, deposit.join());
+        assertLockWaitRecorded(system);
+
+        long contended = system.getMetrics().snapshot(0).getContendedLocks();
+
+        CompletableFuture<TransferResult> withdrawal = whileHeld(system,
+                () -> system.withdrawCents(1, 100) ? TransferResult.COMPLETED : TransferResult.INSUFFICIENT_FUNDS);
+
+        assertEquals(TransferResult.COMPLETED, withdrawal.join());
+        assertTrue(system.getMetrics().snapshot(0).getContendedLocks() > contended);
+    }
+
+    private static CompletableFuture<TransferResult> whileHeld(TransactionSystem system,
+                                                               Supplier<TransferResult> transfer)
+            throws InterruptedException {
+        // Starts the transfer on another thread while account 1's lock is held here, and releases the lock once
+        // the transfer has had time to queue for it.
+
+        BankAccount held = system.getAccount(1);
+        held.lock();
+
+        try {
+            CompletableFuture<TransferResult> waiting = CompletableFuture.supplyAsync(transfer);
+            Thread.sleep(50);
+            return waiting;
+        } finally {
+            held.unlock();
+        }
+    }
+
+    private static void assertLockWaitRecorded(TransactionSystem system) {
+        TransactionMetrics.Snapshot snapshot = system.getMetrics().snapshot(1);
+
+        assertTrue(snapshot.getContendedLocks() >= 1);
+        assertTrue(snapshot.getLockWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(10));
+        assertEquals(1, snapshot.getHottestAccounts()[0].getAccountId());
+    }
+
+    private static TransactionSystem newSystem() {
+        return new TransactionSystem(List.of(new BankAccount(1, 100.0), new BankAccount(2, 100.0)));
+    }
+}
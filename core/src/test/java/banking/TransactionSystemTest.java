@@ -0,0 +1,271 @@
+package banking;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TransactionSystemTest {
+    // Checks that concurrent transfers never create or lose money, on plain and split accounts and through
+    // the TransferEngine, that a consistent total or pair read while transfers run always sees every dollar,
+    // and that an undo which cannot be completed changes nothing.
+
+    private static final int ACCOUNTS = 50;
+    // Few accounts, so threads collide on the same locks often.
+
+    private static final int THREADS = 8;
+    private static final int TRANSFERS_PER_THREAD = 20_000;
+
+    @BeforeAll
+    static void quietLog() {
+        EventLog.setLevel(LogLevel.OFF);
+        // Keeping the event log out of the test output.
+    }
+
+    @Test
+    void concurrentTransfersConserveTheTotal() throws InterruptedException {
+        TransactionSystem system = newSystem(100.0);
+        long before = system.getTotalBalanceCents();
+
+        runConcurrently(() -> randomTransfer(system));
+
+        assertEquals(before, system.getTotalBalanceCents());
+        assertNoNegativeBalance(system);
+    }
+
+    @Test
+    void concurrentTransfersIntoSplitAccountsConserveTheTotal() throws InterruptedException {
+        TransactionSystem system = newSystem(100.0);
+        long before = system.getTotalBalanceCents();
+
+        for (int id = 0; id < ACCOUNTS; id += 5) {
+            system.getAccount(id).split(4);
+            // Splitting every fifth account, so transfers mix locked credits, striped credits and sweeps.
+        }
+
+        runConcurrently(() -> randomTransfer(system));
+
+        assertEquals(before, system.getTotalBalanceCents());
+        assertNoNegativeBalance(system);
+    }
+
+    @Test
+    void consistentTotalIsExactWhileTransfersRun() throws InterruptedException {
+        TransactionSystem system = newSystem(100.0);
+        long before = system.getTotalBalanceCents();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Long> wrong = new AtomicReference<>();
+
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                long total = system.getTotalBalanceCents();
+
+                if (total != before) {
+                    wrong.compareAndSet(null, total);
+                }
+            }
+        }, "total-reader");
+
+        reader.start();
+
+        try {
+            runConcurrently(() -> randomTransfer(system));
+        } finally {
+            done.set(true);
+            reader.join();
+        }
+
+        assertEquals(null, wrong.get(), "a total read mid-flight was off");
+        assertEquals(before, system.getTotalBalanceCents());
+    }
+
+    @Test
+    void aPairReadSeesBothLegsOfATransferOrNeither() throws InterruptedException {
+        TransactionSystem system = newSystem(100.0);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Long> wrong = new AtomicReference<>();
+
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                long[] pair = system.getBalancesCents(0, 1);
+
+                if (pair[0] + pair[1] != 20_000) {
+                    wrong.compareAndSet(null, pair[0] + pair[1]);
+                }
+            }
+        }, "pair-reader");
+
+        reader.start();
+
+        try {
+            runConcurrently(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int from = random.nextInt(2);
+                system.transferCents(from, 1 - from, 1 + random.nextInt(5_000), 0);
+            });
+        } finally {
+            done.set(true);
+            reader.join();
+        }
+
+        assertEquals(null, wrong.get(), "a pair read mid-transfer was off");
+    }
+
+    @Test
+    void transferEngineConservesTheTotal() throws InterruptedException {
+        TransactionSystem system = newSystem(100.0);
+        long before = system.getTotalBalanceCents();
+        TransferEngine engine = new TransferEngine(system, 4, 64, 1024);
+        List<CompletableFuture<TransferResult>> results = new ArrayList<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        for (int i = 0; i < 50_000; i++) {
+            int from = random.nextInt(ACCOUNTS);
+            int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+            results.add(engine.submit(from, to, 0.01 * (1 + random.nextInt(5_000))));
+        }
+
+        engine.shutdown();
+
+        for (CompletableFuture<TransferResult> result : results) {
+            assertTrue(result.isDone(), "shutdown returned before every queued transfer was applied");
+        }
+
+        assertEquals(before, system.getTotalBalanceCents());
+        assertNoNegativeBalance(system);
+    }
+
+    @Test
+    void debugLoggingOfCreditsToSplitAccountsDoesNotBlockTheWriter() {
+        // A credit applied inside a net change or posting must not read the account's balance consistently,
+        // since the same thread holds the account's write open.
+
+        TransactionSystem system = newSystem(100.0);
+        system.getAccount(2).split(4);
+        EventLog.setLevel(LogLevel.DEBUG);
+
+        try {
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                assertEquals(0, system.applyNetChanges(new int[] {1, 2}, new long[] {-500, 500}).length);
+                assertEquals(TransferResult.COMPLETED, system.post(Posting.transfer(3, 2, 700)));
+                system.transferCents(2, 2, 100, 0);
+            });
+        } finally {
+            EventLog.setLevel(LogLevel.OFF);
+        }
+
+        assertEquals(11_200, system.getAccount(2).peekBalanceCents());
+    }
+
+    @Test
+    void anUndoThatCannotBeCompletedChangesNothing(@TempDir Path directory) throws IOException {
+        // The journal is closed, so the net change is undone after every leg is applied; meanwhile the credit to
+        // account 2 is spent directly on the account, as an outside debit could, so it cannot be taken back.
+
+        TransactionJournal journal = TransactionJournal.open(directory, FsyncPolicy.OS_MANAGED);
+        TransactionSystem system = new TransactionSystem(List.of(new BankAccount(1, 100.0), new BankAccount(2, 0.0),
+                new BankAccount(3, 0.0)), journal);
+        journal.close();
+
+        AtomicBoolean spent = new AtomicBoolean();
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()) {
+            @Override
+            public void println(Object line) {
+                if (line.toString().contains("to Account 2.") && spent.compareAndSet(false, true)) {
+                    system.getAccount(2).withdrawCents(300);
+                }
+            }
+        });
+        EventLog.setSynchronous(true);
+        EventLog.setLevel(LogLevel.DEBUG);
+
+        try {
+            IllegalStateException failure = assertThrows(IllegalStateException.class,
+                    () -> system.applyNetChanges(new int[] {1, 2, 3}, new long[] {-500, 300, 200}));
+
+            assertEquals(1, failure.getSuppressed().length);
+        } finally {
+            EventLog.setLevel(LogLevel.OFF);
+            EventLog.setSynchronous(false);
+            System.setOut(console);
+        }
+
+        assertTrue(spent.get());
+        assertArrayEquals(new long[] {9_500, 0, 200}, system.getBalancesCents(1, 2, 3));
+        // The change stays whole: nothing was taken back from account 3 or returned to account 1.
+    }
+
+    private static void randomTransfer(TransactionSystem system) {
+        // One transfer of up to $50.00 between two distinct accounts; many fail for lack of funds.
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(ACCOUNTS);
+        int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+        system.transferCents(from, to, 1 + random.nextInt(5_000), 0);
+    }
+
+    private static void runConcurrently(Runnable transfer) throws InterruptedException {
+        // Runs the transfer TRANSFERS_PER_THREAD times on each of THREADS threads and rethrows the first failure.
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] workers = new Thread[THREADS];
+
+        for (int t = 0; t < THREADS; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < TRANSFERS_PER_THREAD; i++) {
+                        transfer.run();
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "transfer-" + t);
+
+            workers[t].start();
+        }
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError("transfer thread failed", failure.get());
+        }
+    }
+
+    private static void assertNoNegativeBalance(TransactionSystem system) {
+        for (int id = 0; id < ACCOUNTS; id++) {
+            assertTrue(system.getAccount(id).peekBalanceCents() >= 0, "account " + id + " is overdrawn");
+        }
+    }
+
+    static TransactionSystem newSystem(double balance) {
+        // Creates ACCOUNTS accounts holding the same balance each.
+
+        List<BankAccount> accounts = new ArrayList<>(ACCOUNTS);
+
+        for (int id = 0; id < ACCOUNTS; id++) {
+            accounts.add(new BankAccount(id, balance));
+        }
+
+        return new TransactionSystem(accounts);
+    }
+}
@@ -0,0 +1,116 @@
+package banking;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TransferEngineTest {
+    // Checks that every queued transfer gets its own outcome in submission order, that a burst on the same
+    // accounts is applied in batches under one set of locks, and that journaled batches are recovered whole.
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void quietLog() {
+        EventLog.setLevel(LogLevel.OFF);
+    }
+
+    @Test
+    void eachTransferGetsItsOwnOutcomeInSubmissionOrder() throws Exception {
+        TransactionSystem system = newSystem();
+        TransferEngine engine = new TransferEngine(system, 1, 16, 16);
+
+        CompletableFuture<TransferResult> first = engine.submit(1, 2, 60.00);
+        CompletableFuture<TransferResult> overdraft = engine.submit(1, 2, 60.00);
+        CompletableFuture<TransferResult> unknown = engine.submit(1, 99, 1.00);
+        CompletableFuture<TransferResult> back = engine.submit(2, 1, 10.00);
+
+        engine.shutdown();
+
+        assertEquals(TransferResult.COMPLETED, first.get());
+        assertEquals(TransferResult.INSUFFICIENT_FUNDS, overdraft.get());
+        assertEquals(TransferResult.UNKNOWN_ACCOUNT, unknown.get());
+        assertEquals(TransferResult.COMPLETED, back.get());
+        assertEquals(TransferResult.REJECTED, engine.submit(1, 2, 1.00).get());
+        assertArrayEquals(new long[] {5_000, 5_000}, system.getBalancesCents(1, 2));
+    }
+
+    @Test
+    void aBurstOnTheSameAccountsIsAppliedUnderFewLocks() throws Exception {
+        TransactionSystem system = newSystem();
+        TransferEngine engine = new TransferEngine(system, 1, 64, 2_048);
+        List<CompletableFuture<TransferResult>> results = new ArrayList<>();
+        int transfers = 1_000;
+
+        system.getAccount(1).lock();
+        // Holding the worker at its first batch, so the rest of the burst queues up behind it.
+
+        try {
+            for (int i = 0; i < transfers; i++) {
+                results.add(i % 2 == 0 ? engine.submit(1, 2, 0.01) : engine.submit(2, 1, 0.01));
+            }
+        } finally {
+            system.getAccount(1).unlock();
+        }
+
+        engine.shutdown();
+
+        for (CompletableFuture<TransferResult> result : results) {
+            assertEquals(TransferResult.COMPLETED, result.get());
+        }
+
+        assertTrue(engine.getBatchCount() < transfers / 10, "batches: " + engine.getBatchCount());
+        assertTrue(engine.getLockAcquisitions() <= 2 * engine.getBatchCount());
+        assertArrayEquals(new long[] {10_000, 0}, system.getBalancesCents(1, 2));
+    }
+
+    @Test
+    void groupCommittedBatchesAreRecoveredWhole() throws Exception {
+        int transfers = 200;
+        long[] balances;
+
+        try (TransactionJournal journal = TransactionJournal.open(directory, FsyncPolicy.GROUP_COMMIT)) {
+            TransactionSystem system = new TransactionSystem(List.of(new BankAccount(1, 100.0),
+                    new BankAccount(2, 0.0)), journal);
+            TransferEngine engine = new TransferEngine(system, 2, 32, 256);
+            List<CompletableFuture<TransferResult>> results = new ArrayList<>();
+
+            for (int i = 0; i < transfers; i++) {
+                results.add(engine.submit(1, 2, 0.25));
+            }
+
+            for (CompletableFuture<TransferResult> result : results) {
+                assertEquals(TransferResult.COMPLETED, result.get(10, TimeUnit.SECONDS));
+                // A completed future means its record was forced, before the journal is closed.
+            }
+
+            engine.shutdown();
+            balances = system.getBalancesCents(1, 2);
+        }
+
+        assertArrayEquals(new long[] {5_000, 5_000}, balances);
+        assertArrayEquals(balances, recover().getBalancesCents(1, 2));
+    }
+
+    private TransactionSystem recover() throws IOException {
+        try (TransactionJournal journal = TransactionJournal.open(directory, FsyncPolicy.OS_MANAGED)) {
+            return TransactionSystem.recover(journal);
+        }
+    }
+
+    private static TransactionSystem newSystem() {
+        return new TransactionSystem(List.of(new BankAccount(1, 100.0), new BankAccount(2, 0.0)));
+    }
+}
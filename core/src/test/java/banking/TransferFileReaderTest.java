@@ -0,0 +1,143 @@
+package banking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TransferFileReaderTest {
+    // Checks the CSV edge cases the reader accepts and refuses, the binary format, and that ingest reports
+    // a failure part-way through a file instead of returning the records read so far as if they were all.
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void csvWithHeaderAndWindowsLineEndings() throws IOException {
+        List<String> records = readCsv("fromId,toId,amount\r\n1,2,125\r\n3,4,125.5\r\n5,6,125.50\r\n");
+
+        assertEquals(List.of("1>2:12500", "3>4:12550", "5>6:12550"), records);
+    }
+
+    @Test
+    void csvWithoutHeaderOrFinalLineEnding() throws IOException {
+        assertEquals(List.of("10>20:1", "30>40:99"), readCsv("10,20,0.01\n30,40,0.99"));
+    }
+
+    @Test
+    void csvBlankLinesAreSkipped() throws IOException {
+        assertEquals(List.of("1>2:100", "2>1:200"), readCsv("1,2,1\n\n\r\n2,1,2\n\n"));
+    }
+
+    @Test
+    void csvAmountsMayCarryADollarSign() throws IOException {
+        assertEquals(List.of("1>2:70000"), readCsv("1,2,$700.00\n"));
+    }
+
+    @Test
+    void csvMalformedAmountsAreRefused() {
+        for (String line : new String[] {"1,2,12.345", "1,2,-5", "1,2,", "1,2,5x", "1,2,1.2.3",
+                "1,2,99999999999999999999", "1,2,12 ", "1,2"}) {
+            IOException e = assertThrows(IOException.class, () -> readCsv(line + "\n"), line);
+            assertTrue(e.getMessage().startsWith("Malformed transfer record near byte "), e.getMessage());
+        }
+    }
+
+    @Test
+    void csvMalformedAccountIdsAreRefused() {
+        assertThrows(IOException.class, () -> readCsv("1,x,5\n"));
+        assertThrows(IOException.class, () -> readCsv("1,2147483648,5\n"));
+        assertThrows(IOException.class, () -> readCsv("1;2;5\n"));
+    }
+
+    @Test
+    void binaryRecordsRoundTrip() throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(2 * TransferFileReader.BINARY_RECORD_BYTES);
+        bytes.putInt(7).putInt(8).putLong(12_345).putInt(9).putInt(10).putLong(Long.MAX_VALUE);
+        Path file = Files.write(directory.resolve("transfers.bin"), bytes.array());
+
+        assertEquals(List.of("7>8:12345", "9>10:" + Long.MAX_VALUE), read(file, TransferFileReader.Format.BINARY));
+    }
+
+    @Test
+    void truncatedBinaryFileIsRefused() throws IOException {
+        Path file = Files.write(directory.resolve("transfers.bin"), new byte[TransferFileReader.BINARY_RECORD_BYTES + 3]);
+
+        assertThrows(IOException.class, () -> new TransferFileReader(file, TransferFileReader.Format.BINARY));
+    }
+
+    @Test
+    void ingestReportsAMalformedLineAfterHandingOverTheRecordsBeforeIt() throws IOException {
+        StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < 100; i++) {
+            text.append(i).append(',').append(i + 1).append(",1.00\n");
+        }
+
+        text.append("100,101,oops\n");
+        Path file = Files.writeString(directory.resolve("transfers.csv"), text);
+        long[] handed = {0};
+
+        IOException e = assertThrows(IOException.class, () -> TransferFileReader.ingest(file,
+                TransferFileReader.Format.CSV, 8, 2, chunk -> handed[0] += chunk.size()));
+
+        assertTrue(e.getMessage().contains("Malformed"), e.getMessage());
+        assertTrue(handed[0] <= 100);
+    }
+
+    @Test
+    void ingestCountsEveryRecord() throws IOException, InterruptedException {
+        Path file = Files.writeString(directory.resolve("transfers.csv"), "a,b,c\n1,2,3\n4,5,6\n7,8,9\n");
+
+        assertEquals(3, TransferFileReader.ingest(file, TransferFileReader.Format.CSV, 2, 2, chunk -> { }));
+    }
+
+    @Test
+    void ingestWrapsACheckedHandlerFailure() throws IOException {
+        Path file = Files.writeString(directory.resolve("transfers.csv"), "1,2,3\n");
+        Exception cause = new Exception("handler gave up");
+
+        IOException e = assertThrows(IOException.class, () -> TransferFileReader.ingest(file,
+                TransferFileReader.Format.CSV, 2, 2, chunk -> {
+                    throw cause;
+                }));
+
+        assertEquals(cause, e.getCause());
+    }
+
+    @Test
+    void emptyFilesHoldNoRecords() throws IOException {
+        assertTrue(readCsv("").isEmpty());
+        assertTrue(readCsv("fromId,toId,amount\n").isEmpty());
+    }
+
+    private List<String> readCsv(String text) throws IOException {
+        return read(Files.writeString(directory.resolve("transfers.csv"), text), TransferFileReader.Format.CSV);
+    }
+
+    private static List<String> read(Path file, TransferFileReader.Format format) throws IOException {
+        // Reads every record through small chunks, so records span several next calls.
+
+        List<String> records = new ArrayList<>();
+        TransferFileReader.Chunk chunk = new TransferFileReader.Chunk(2);
+
+        try (TransferFileReader reader = new TransferFileReader(file, format)) {
+            while (reader.next(chunk)) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    records.add(chunk.getFromId(i) + ">" + chunk.getToId(i) + ":" + chunk.getAmountCents(i));
+                }
+            }
+        }
+
+        return records;
+    }
+}
@@ -0,0 +1,162 @@
+package banking;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+class TransferSchedulerTest {
+    // Checks that scheduled transfers end with the balances of a sequential replay, that an explicit
+    // dependency holds a transfer back, and that refused or late transfers fail instead of hanging.
+
+    private static final int ACCOUNTS = 20;
+
+    @BeforeAll
+    static void quietLog() {
+        EventLog.setLevel(LogLevel.OFF);
+    }
+
+    @Test
+    void scheduledTransfersEndWithTheBalancesOfASequentialReplay() throws InterruptedException {
+        Random random = new Random(7);
+        int transfers = 20_000;
+        int[] from = new int[transfers];
+        int[] to = new int[transfers];
+        long[] cents = new long[transfers];
+
+        for (int i = 0; i < transfers; i++) {
+            from[i] = random.nextInt(ACCOUNTS);
+            to[i] = (from[i] + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+            cents[i] = 100 + random.nextInt(20_000);
+            // Large enough against $100 openings that many transfers are refused, which makes order matter.
+        }
+
+        TransactionSystem sequential = newSystem();
+
+        for (int i = 0; i < transfers; i++) {
+            sequential.transferCents(from[i], to[i], cents[i], 0);
+        }
+
+        TransactionSystem scheduled = newSystem();
+        TransferScheduler scheduler = new TransferScheduler(scheduled, 8);
+
+        for (int i = 0; i < transfers; i++) {
+            scheduler.scheduleCents(from[i], to[i], cents[i]);
+        }
+
+        scheduler.shutdown();
+
+        assertArrayEquals(sequential.getBalancesCents(ids()), scheduled.getBalancesCents(ids()));
+    }
+
+    @Test
+    void aChainOnSharedAccountsRunsInSubmissionOrder() throws Exception {
+        TransactionSystem system = newSystem();
+        TransferScheduler scheduler = new TransferScheduler(system, 4);
+        List<TransferScheduler.Transfer> chain = new ArrayList<>();
+
+        for (int id = 0; id < ACCOUNTS - 1; id++) {
+            chain.add(scheduler.scheduleCents(id, id + 1, 10_000 + id * 10_000L));
+            // Each transfer passes on everything the account received, which only works in this order.
+        }
+
+        scheduler.shutdown();
+
+        for (TransferScheduler.Transfer transfer : chain) {
+            assertTrue(transfer.result().get());
+        }
+
+        assertEquals(0, system.getBalancesCents(0)[0]);
+        assertEquals(ACCOUNTS * 10_000L, system.getBalancesCents(ACCOUNTS - 1)[0]);
+    }
+
+    @Test
+    void anExplicitDependencyHoldsBackATransferOnOtherAccounts() throws Exception {
+        TransactionSystem system = newSystem();
+        TransferScheduler scheduler = new TransferScheduler(system, 4);
+        BankAccount held = system.getAccount(0);
+        TransferScheduler.Transfer first;
+        TransferScheduler.Transfer second;
+
+        held.lock();
+        // Keeping the first transfer waiting for its source account.
+
+        try {
+            first = scheduler.scheduleCents(0, 1, 100);
+            second = scheduler.scheduleCents(2, 3, 100, first);
+            Thread.sleep(100);
+
+            assertFalse(first.result().isDone());
+            assertFalse(second.result().isDone());
+        } finally {
+            held.unlock();
+        }
+
+        scheduler.shutdown();
+
+        assertTrue(first.result().get());
+        assertTrue(second.result().get());
+        assertTrue(first.getSequence() < second.getSequence());
+    }
+
+    @Test
+    void aTransferThePoolRefusesFailsAndStillCountsAsFinished() {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        pool.shutdown();
+        TransferScheduler scheduler = new TransferScheduler(newSystem(), pool);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            TransferScheduler.Transfer refused = scheduler.scheduleCents(0, 1, 100);
+            TransferScheduler.Transfer dependent = scheduler.scheduleCents(5, 6, 100, refused);
+
+            scheduler.awaitCompletion();
+
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> refused.result().get());
+            assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+            assertThrows(ExecutionException.class, () -> dependent.result().get());
+        });
+    }
+
+    @Test
+    void schedulingAfterShutdownIsRefused() throws InterruptedException {
+        TransferScheduler scheduler = new TransferScheduler(newSystem(), 2);
+        scheduler.shutdown();
+
+        assertThrows(RejectedExecutionException.class, () -> scheduler.schedule(0, 1, 1.00));
+    }
+
+    private static TransactionSystem newSystem() {
+        List<BankAccount> accounts = new ArrayList<>();
+
+        for (int id = 0; id < ACCOUNTS; id++) {
+            accounts.add(new BankAccount(id, 100.0));
+        }
+
+        return new TransactionSystem(accounts);
+    }
+
+    private static int[] ids() {
+        int[] ids = new int[ACCOUNTS];
+
+        for (int id = 0; id < ACCOUNTS; id++) {
+            ids[id] = id;
+        }
+
+        return ids;
+    }
+}